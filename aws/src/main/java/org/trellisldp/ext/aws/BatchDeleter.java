@@ -0,0 +1,186 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+import static org.trellisldp.ext.aws.IoExecutor.daemonThreads;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.DeleteObjectsResult.DeletedObject;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.slf4j.Logger;
+
+/**
+ * Deletes S3 objects in batches.
+ *
+ * <p>Deletions are queued and sent as multi-object delete requests, once the queue holds a full batch or
+ * when the flush interval elapses, whichever comes first. Each deletion completes, or fails, with the result
+ * for its own key.
+ */
+final class BatchDeleter {
+
+    /** The largest number of keys that S3 accepts in a single delete request. */
+    static final int MAX_BATCH_SIZE = 1000;
+
+    private static final Logger LOGGER = getLogger(BatchDeleter.class);
+
+    private final AmazonS3 client;
+    private final String bucketName;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+    private final Object lock = new Object();
+
+    private Map<String, CompletableFuture<Void>> pending = new LinkedHashMap<>();
+    private boolean shutdown;
+
+    /**
+     * Create a batch deleter.
+     * @param client the S3 client
+     * @param bucketName the bucket name
+     * @param batchSize the largest number of keys in a batch, at most {@link #MAX_BATCH_SIZE}
+     * @param flushMillis the longest time, in milliseconds, that a deletion waits to be sent
+     */
+    BatchDeleter(final AmazonS3 client, final String bucketName, final int batchSize, final long flushMillis) {
+        this.client = requireNonNull(client, "client may not be null!");
+        this.bucketName = requireNonNull(bucketName, "bucket name may not be null!");
+        this.batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("trellis-s3-delete-"));
+        scheduler.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, MILLISECONDS);
+    }
+
+    /**
+     * Queue an object for deletion.
+     * @param key the object key
+     * @return a stage that completes once the object has been deleted
+     */
+    CompletableFuture<Void> delete(final String key) {
+        synchronized (lock) {
+            if (!shutdown) {
+                // A key that is already queued shares the pending deletion
+                final CompletableFuture<Void> deleted = pending.computeIfAbsent(key, k -> new CompletableFuture<>());
+                if (pending.size() >= batchSize) {
+                    scheduler.execute(this::flush);
+                }
+                return deleted;
+            }
+        }
+        // Nothing flushes the queue once it is shut down, so the object is deleted right away
+        final CompletableFuture<Void> deleted = new CompletableFuture<>();
+        try {
+            client.deleteObject(bucketName, key);
+            deleted.complete(null);
+        } catch (final RuntimeException ex) {
+            deleted.completeExceptionally(ex);
+        }
+        return deleted;
+    }
+
+    /**
+     * Send all queued deletions.
+     */
+    void flush() {
+        final Map<String, CompletableFuture<Void>> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+        final List<KeyVersion> keys = new ArrayList<>();
+        for (final String key : batch.keySet()) {
+            keys.add(new KeyVersion(key));
+            if (keys.size() == batchSize) {
+                send(keys, batch);
+                keys.clear();
+            }
+        }
+        if (!keys.isEmpty()) {
+            send(keys, batch);
+        }
+    }
+
+    /**
+     * Stop the background flush task, sending any queued deletions. Later deletions are sent one at a time.
+     */
+    void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+        }
+        scheduler.shutdown();
+        flush();
+    }
+
+    /**
+     * Get the number of queued deletions.
+     * @return the number of keys waiting to be deleted
+     */
+    int getQueueDepth() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    private void send(final List<KeyVersion> keys, final Map<String, CompletableFuture<Void>> batch) {
+        try {
+            LOGGER.debug("Deleting {} objects from {}", keys.size(), bucketName);
+            client.deleteObjects(new DeleteObjectsRequest(bucketName).withKeys(keys).withQuiet(false))
+                .getDeletedObjects().forEach(deleted -> complete(batch, deleted));
+        } catch (final MultiObjectDeleteException ex) {
+            ex.getDeletedObjects().forEach(deleted -> complete(batch, deleted));
+            for (final DeleteError error : ex.getErrors()) {
+                final AmazonS3Exception cause = new AmazonS3Exception("Error deleting " + error.getKey() + ": "
+                        + error.getMessage());
+                cause.setErrorCode(error.getCode());
+                fail(batch, error.getKey(), cause);
+            }
+        } catch (final RuntimeException ex) {
+            LOGGER.error("Error deleting objects from {}: {}", bucketName, ex.getMessage());
+            keys.forEach(key -> fail(batch, key.getKey(), ex));
+        }
+        // S3 reports a key that does not exist as deleted, so any key still without a result was not processed
+        keys.stream().map(KeyVersion::getKey).filter(key -> !batch.get(key).isDone())
+            .forEach(key -> fail(batch, key, new AmazonS3Exception("No delete result for " + key)));
+    }
+
+    private static void complete(final Map<String, CompletableFuture<Void>> batch, final DeletedObject deleted) {
+        final CompletableFuture<Void> future = batch.get(deleted.getKey());
+        if (future != null) {
+            future.complete(null);
+        }
+    }
+
+    private static void fail(final Map<String, CompletableFuture<Void>> batch, final String key,
+            final Exception ex) {
+        final CompletableFuture<Void> future = batch.get(key);
+        if (future != null) {
+            future.completeExceptionally(ex);
+        }
+    }
+}
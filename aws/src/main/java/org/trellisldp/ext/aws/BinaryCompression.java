@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Locale.ROOT;
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.slf4j.Logger;
+
+/**
+ * Content-type-driven compression of binaries stored in S3.
+ *
+ * <p>Compressed objects are marked with a standard {@code Content-Encoding} of {@code gzip} or {@code zstd},
+ * so that they can be recognized, and decoded, by any reader. Zstandard requires the optional
+ * {@code zstd-jni} library at runtime; without it, gzip is used instead.
+ */
+final class BinaryCompression {
+
+    static final String GZIP = "gzip";
+    static final String ZSTD = "zstd";
+    static final int DEFAULT_LEVEL = -1;
+
+    private static final Logger LOGGER = getLogger(BinaryCompression.class);
+
+    private final String encoding;
+    private final List<String> exactTypes = new ArrayList<>();
+    private final List<String> typePrefixes = new ArrayList<>();
+
+    /**
+     * Create a compression policy.
+     * @param encoding the encoding, {@code gzip} or {@code zstd}
+     * @param contentTypes the compressible content types; a type ending in {@code /*} matches a whole family
+     */
+    BinaryCompression(final String encoding, final String... contentTypes) {
+        this.encoding = getAvailableEncoding(encoding);
+        for (final String type : contentTypes) {
+            final String normalized = type.trim().toLowerCase(ROOT);
+            if (normalized.endsWith("/*")) {
+                typePrefixes.add(normalized.substring(0, normalized.length() - 1));
+            } else if (!normalized.isEmpty()) {
+                exactTypes.add(normalized);
+            }
+        }
+    }
+
+    /**
+     * Get the encoding to use for content of a given type.
+     * @param contentType the content type, may be {@code null}
+     * @return the encoding, or empty if the content should be stored as is
+     */
+    Optional<String> getEncoding(final String contentType) {
+        if (contentType == null) {
+            return empty();
+        }
+        final String type = contentType.split(";", 2)[0].trim().toLowerCase(ROOT);
+        if (exactTypes.contains(type) || typePrefixes.stream().anyMatch(type::startsWith)) {
+            return of(encoding);
+        }
+        return empty();
+    }
+
+    /**
+     * Get the encoding to use in place of a configured one.
+     * @param encoding the configured encoding, {@code gzip} or {@code zstd}
+     * @return the encoding, which is {@code gzip} if Zstandard is not available
+     */
+    static String getAvailableEncoding(final String encoding) {
+        final String requested = encoding.trim().toLowerCase(ROOT);
+        if (ZSTD.equals(requested) && !ZstdUtils.isZstdCompressionAvailable()) {
+            LOGGER.warn("Zstandard compression is not available, using gzip instead");
+            return GZIP;
+        } else if (ZSTD.equals(requested) || GZIP.equals(requested)) {
+            return requested;
+        }
+        throw new IllegalArgumentException("Unsupported compression: " + encoding);
+    }
+
+    /**
+     * Wrap an output stream so that content written to it is compressed.
+     *
+     * <p>Closing the returned stream finishes the compressed content, but leaves the underlying stream open.
+     *
+     * @param encoding the encoding, or {@code null} to write the content as is
+     * @param output the underlying stream
+     * @return the compressing stream
+     * @throws IOException if the compressor could not be created
+     */
+    static OutputStream compress(final String encoding, final OutputStream output) throws IOException {
+        return compress(encoding, DEFAULT_LEVEL, output);
+    }
+
+    /**
+     * Wrap an output stream so that content written to it is compressed at a given level.
+     *
+     * <p>Closing the returned stream finishes the compressed content, but leaves the underlying stream open.
+     *
+     * @param encoding the encoding, or {@code null} to write the content as is
+     * @param level the compression level, or {@link #DEFAULT_LEVEL} for the encoder's default
+     * @param output the underlying stream
+     * @return the compressing stream
+     * @throws IOException if the compressor could not be created
+     */
+    static OutputStream compress(final String encoding, final int level, final OutputStream output)
+            throws IOException {
+        final OutputStream shielded = new CloseShieldOutputStream(output);
+        if (ZSTD.equals(encoding)) {
+            return level == DEFAULT_LEVEL ? new ZstdCompressorOutputStream(shielded)
+                : new ZstdCompressorOutputStream(shielded, level);
+        } else if (GZIP.equals(encoding)) {
+            final GzipParameters parameters = new GzipParameters();
+            if (level != DEFAULT_LEVEL) {
+                parameters.setCompressionLevel(level);
+            }
+            return new GzipCompressorOutputStream(shielded, parameters);
+        }
+        return shielded;
+    }
+
+    /**
+     * Decode a stream according to its content encoding.
+     * @param encoding the content encoding, may be {@code null}
+     * @param input the stored content
+     * @return the decoded content
+     * @throws IOException if the decompressor could not be created
+     */
+    static InputStream decompress(final String encoding, final InputStream input) throws IOException {
+        if (GZIP.equalsIgnoreCase(encoding)) {
+            return new GzipCompressorInputStream(input, true);
+        } else if (ZSTD.equalsIgnoreCase(encoding)) {
+            return new ZstdCompressorInputStream(input);
+        }
+        return input;
+    }
+
+    /**
+     * Check whether a content encoding is one that this class decodes.
+     * @param encoding the content encoding, may be {@code null}
+     * @return true if the content is compressed
+     */
+    static boolean isCompressed(final String encoding) {
+        return GZIP.equalsIgnoreCase(encoding) || ZSTD.equalsIgnoreCase(encoding);
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+import static org.trellisldp.ext.aws.IoExecutor.daemonThreads;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.trellisldp.ext.aws.PackIndex.PackEntry;
+
+/**
+ * Packs small binaries into shared S3 objects.
+ *
+ * <p>Binaries below the size threshold are appended to an in-memory pack, which is written as a single
+ * object once it reaches the target pack size or when the flush interval elapses, whichever comes first.
+ * The locations of the binaries are then recorded in the {@link PackIndex}. A write completes only once
+ * its pack and index entries are stored, so the flush interval bounds the extra latency of a packed write.
+ *
+ * <p>Purged binaries leave dead bytes in their pack. The repacker periodically copies the live binaries
+ * out of packs that are mostly dead into new packs. A moved binary keeps the version of the write that
+ * stored it, and is only recorded at its new location if the index still points at the old one, so that a
+ * binary purged or rewritten while it was being moved is not brought back. A pack with no live binaries is
+ * deleted on the following run, so that readers holding an older index entry have a full interval to finish.
+ * The repacker does not coordinate across nodes, so it should be enabled on one node only.
+ */
+final class BinaryPacker {
+
+    private static final Logger LOGGER = getLogger(BinaryPacker.class);
+
+    private final AmazonS3 client;
+    private final String bucketName;
+    private final String packPrefix;
+    private final PackIndex index;
+    private final int threshold;
+    private final int packSize;
+    private final long repackMillis;
+    private final double repackRatio;
+    private final ScheduledExecutorService scheduler;
+    private final Object lock = new Object();
+
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private Map<String, PackEntry> pendingEntries = new LinkedHashMap<>();
+    private Map<String, PackEntry> pendingMoves = new HashMap<>();
+    private CompletableFuture<Void> pendingFlush = new CompletableFuture<>();
+
+    /**
+     * Create a binary packer.
+     * @param client the S3 client
+     * @param bucketName the bucket name
+     * @param pathPrefix the path prefix
+     * @param threshold the largest binary, in bytes, that is packed
+     * @param packSize the target size of a pack, in bytes
+     * @param flushMillis the longest time, in milliseconds, that a binary waits to be written
+     * @param repackMillis the time between repacker runs, in milliseconds, or 0 to disable the repacker
+     * @param repackRatio the fraction of live bytes below which a pack is rewritten
+     */
+    BinaryPacker(final AmazonS3 client, final String bucketName, final String pathPrefix, final int threshold,
+            final int packSize, final long flushMillis, final long repackMillis, final double repackRatio) {
+        this.client = requireNonNull(client, "client may not be null!");
+        this.bucketName = requireNonNull(bucketName, "bucket name may not be null!");
+        this.packPrefix = requireNonNull(pathPrefix, "path prefix may not be null!") + "packs/";
+        this.index = new PackIndex(client, bucketName, packPrefix, flushMillis);
+        this.threshold = threshold;
+        this.packSize = packSize;
+        this.repackMillis = repackMillis;
+        this.repackRatio = repackRatio;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("trellis-s3-pack-"));
+        scheduler.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, MILLISECONDS);
+        if (repackMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::repack, repackMillis, repackMillis, MILLISECONDS);
+        }
+    }
+
+    /**
+     * Get the largest binary, in bytes, that is packed.
+     * @return the size threshold
+     */
+    int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Find a packed binary.
+     * @param key the binary key
+     * @return the pack location, or empty if the binary is not packed
+     */
+    Optional<PackEntry> find(final String key) {
+        return index.find(key);
+    }
+
+    /**
+     * Add a binary to the current pack.
+     * @param key the binary key
+     * @param content the binary content
+     * @param contentType the content type, may be {@code null}
+     * @param digests the digests of the content, as S3 user metadata
+     * @return a stage that completes once the binary has been stored
+     */
+    CompletableFuture<Void> add(final String key, final byte[] content, final String contentType,
+            final Map<String, String> digests) {
+        synchronized (lock) {
+            final long offset = pending.size();
+            pending.write(content, 0, content.length);
+            // The pack key is filled in once the pack is written
+            pendingEntries.put(key, new PackEntry("", offset, content.length, contentType, digests));
+            // A new write supersedes a pending move of the same binary
+            pendingMoves.remove(key);
+            final CompletableFuture<Void> flushed = pendingFlush;
+            if (pending.size() >= packSize) {
+                scheduler.execute(this::flush);
+            }
+            return flushed;
+        }
+    }
+
+    /**
+     * Add a binary that is being moved out of another pack to the current pack.
+     * @param key the binary key
+     * @param content the binary content
+     * @param replaced the index entry for the binary's current location
+     */
+    private void move(final String key, final byte[] content, final PackEntry replaced) {
+        synchronized (lock) {
+            if (pendingEntries.containsKey(key)) {
+                // A newer write of the same binary is already waiting to be packed
+                return;
+            }
+            final long offset = pending.size();
+            pending.write(content, 0, content.length);
+            pendingEntries.put(key, replaced.moveTo("", offset));
+            pendingMoves.put(key, replaced);
+        }
+    }
+
+    /**
+     * Mark a binary as no longer packed, after it has been purged or stored as its own object.
+     * @param key the binary key
+     */
+    void remove(final String key) {
+        if (index.find(key).isPresent()) {
+            index.record(PackIndex.newPackId(), singletonMap(key, PackEntry.tombstone()));
+        }
+    }
+
+    /**
+     * Write the current pack, if it holds any binaries.
+     */
+    void flush() {
+        final byte[] content;
+        final Map<String, PackEntry> entries;
+        final Map<String, PackEntry> moves;
+        final CompletableFuture<Void> flushed;
+        synchronized (lock) {
+            if (pendingEntries.isEmpty()) {
+                return;
+            }
+            content = pending.toByteArray();
+            entries = pendingEntries;
+            moves = pendingMoves;
+            flushed = pendingFlush;
+            pending = new ByteArrayOutputStream();
+            pendingEntries = new LinkedHashMap<>();
+            pendingMoves = new HashMap<>();
+            pendingFlush = new CompletableFuture<>();
+        }
+        try {
+            final String packId = PackIndex.newPackId();
+            final String packKey = packPrefix + packId;
+            final ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType("application/octet-stream");
+            metadata.setContentLength(content.length);
+            client.putObject(bucketName, packKey, new ByteArrayInputStream(content), metadata);
+
+            // A binary that was purged or rewritten since it was read for repacking stays as it is now
+            final Map<String, PackEntry> latest = moves.isEmpty() ? emptyMap() : index.latest(moves.keySet());
+            final Map<String, PackEntry> located = new LinkedHashMap<>();
+            entries.forEach((key, entry) -> {
+                final PackEntry replaced = moves.get(key);
+                if (replaced == null || replaced.isSameAs(latest.get(key))) {
+                    located.put(key, entry.moveTo(packKey, entry.getOffset()));
+                }
+            });
+            index.record(packId, located);
+            LOGGER.debug("Wrote {} binaries to pack {}", entries.size(), packKey);
+            flushed.complete(null);
+        } catch (final RuntimeException ex) {
+            LOGGER.error("Error writing binary pack: {}", ex.getMessage());
+            flushed.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * Stop the background flush and repack tasks, writing any pending binaries.
+     */
+    void shutdown() {
+        scheduler.shutdown();
+        flush();
+    }
+
+    /**
+     * Rewrite packs that are mostly dead, delete packs that are entirely dead, and compact the index.
+     */
+    void repack() {
+        try {
+            final Map<String, List<Map.Entry<String, PackEntry>>> live = new HashMap<>();
+            index.loadAll().entrySet()
+                .forEach(e -> live.computeIfAbsent(e.getValue().getPackKey(), k -> new ArrayList<>()).add(e));
+
+            final ListObjectsV2Request req = new ListObjectsV2Request().withBucketName(bucketName)
+                .withPrefix(packPrefix).withDelimiter("/");
+            ListObjectsV2Result result;
+            do {
+                result = client.listObjectsV2(req);
+                for (final S3ObjectSummary pack : result.getObjectSummaries()) {
+                    repack(pack, live.getOrDefault(pack.getKey(), new ArrayList<>()));
+                }
+                req.setContinuationToken(result.getNextContinuationToken());
+            } while (result.isTruncated());
+            flush();
+            index.compact();
+        } catch (final RuntimeException ex) {
+            LOGGER.error("Error repacking binaries: {}", ex.getMessage());
+        }
+    }
+
+    private void repack(final S3ObjectSummary pack, final List<Map.Entry<String, PackEntry>> live) {
+        if (pack.getLastModified() != null
+                && System.currentTimeMillis() - pack.getLastModified().getTime() < repackMillis) {
+            // A recent pack may have been written by another node whose index entries are not yet visible
+            return;
+        }
+        if (live.isEmpty()) {
+            LOGGER.debug("Deleting empty pack {}", pack.getKey());
+            client.deleteObject(bucketName, pack.getKey());
+            return;
+        }
+        final long liveBytes = live.stream().mapToLong(e -> e.getValue().getLength()).sum();
+        if (liveBytes < pack.getSize() * repackRatio) {
+            LOGGER.debug("Repacking {} of {} bytes from {}", liveBytes, pack.getSize(), pack.getKey());
+            for (final Map.Entry<String, PackEntry> e : live) {
+                move(e.getKey(), read(e.getValue()), e.getValue());
+            }
+        }
+    }
+
+    private byte[] read(final PackEntry entry) {
+        try (final InputStream input = client.getObject(new GetObjectRequest(bucketName, entry.getPackKey())
+                    .withRange(entry.getOffset(), entry.getOffset() + entry.getLength() - 1)).getObjectContent()) {
+            return IOUtils.toByteArray(input);
+        } catch (final IOException ex) {
+            throw new UncheckedIOException("Error reading from pack " + entry.getPackKey(), ex);
+        }
+    }
+}
@@ -0,0 +1,500 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.eclipse.microprofile.config.ConfigProvider.getConfig;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.rdf.api.IRI;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.trellisldp.api.Binary;
+import org.trellisldp.api.BinaryMetadata;
+import org.trellisldp.api.BinaryService;
+
+/**
+ * A {@link BinaryService} decorator that keeps recently used binaries on local disk.
+ *
+ * <p>Binaries are cached when they are written with {@link #setContent} and when their full content is
+ * read through {@link Binary#getContent()}. Cache hits are served from a {@link FileChannel} without any
+ * request to the underlying service, and {@link ChannelBinary#transferTo} moves cached bytes to the target
+ * channel without copying them through the heap. The total size of the cache is bounded and the least
+ * recently used entries are evicted first.
+ *
+ * <p>Binary identifiers are never reused for different content, so entries are only removed from the
+ * cache through eviction or {@link #purgeContent}. A direct-upload token passed to {@link #setContent} is not
+ * cached, since it is not the binary's content.
+ *
+ * <p>The applications wrap their binary service with {@link #wrap} when {@link #CONFIG_BINARY_CACHE} is set.
+ */
+public class CachingBinaryService implements BinaryService {
+
+    public static final String CONFIG_BINARY_CACHE = "trellis.s3.binary.cache";
+    public static final String CONFIG_BINARY_CACHE_DIRECTORY = "trellis.s3.binary.cache.directory";
+    public static final String CONFIG_BINARY_CACHE_MAX_BYTES = "trellis.s3.binary.cache.max.bytes";
+
+    private static final Logger LOGGER = getLogger(CachingBinaryService.class);
+    private static final long DEFAULT_MAX_BYTES = 1024L * 1024L * 1024L;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final BinaryService delegate;
+    private final Path directory;
+    private final long maxBytes;
+    private final Map<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    /**
+     * Wrap a binary service in a local cache, if the cache is enabled with {@link #CONFIG_BINARY_CACHE} in the
+     * MicroProfile configuration.
+     * @param delegate the underlying binary service
+     * @return the caching binary service, or the underlying service if the cache is not enabled
+     */
+    public static BinaryService wrap(final BinaryService delegate) {
+        return wrap(delegate, getConfig());
+    }
+
+    /**
+     * Wrap a binary service in a local cache, if the cache is enabled with {@link #CONFIG_BINARY_CACHE}.
+     * @param delegate the underlying binary service
+     * @param config the configuration
+     * @return the caching binary service, or the underlying service if the cache is not enabled
+     */
+    public static BinaryService wrap(final BinaryService delegate, final Config config) {
+        if (config.getOptionalValue(CONFIG_BINARY_CACHE, Boolean.class).orElse(false)) {
+            return new CachingBinaryService(delegate, config);
+        }
+        return delegate;
+    }
+
+    /**
+     * Get the service underneath a caching binary service.
+     * @param service a binary service
+     * @return the underlying service, if the service is a caching binary service, or else the service itself
+     */
+    static BinaryService unwrap(final BinaryService service) {
+        return service instanceof CachingBinaryService ? ((CachingBinaryService) service).delegate : service;
+    }
+
+    /**
+     * Create a caching binary service, using the MicroProfile configuration.
+     * @param delegate the underlying binary service
+     */
+    public CachingBinaryService(final BinaryService delegate) {
+        this(delegate, getConfig());
+    }
+
+    private CachingBinaryService(final BinaryService delegate, final Config config) {
+        this(delegate, Paths.get(config.getValue(CONFIG_BINARY_CACHE_DIRECTORY, String.class)),
+                config.getOptionalValue(CONFIG_BINARY_CACHE_MAX_BYTES, Long.class).orElse(DEFAULT_MAX_BYTES));
+    }
+
+    /**
+     * Create a caching binary service.
+     * @param delegate the underlying binary service
+     * @param directory the cache directory
+     * @param maxBytes the maximum number of bytes to keep in the cache
+     */
+    public CachingBinaryService(final BinaryService delegate, final Path directory, final long maxBytes) {
+        this.delegate = requireNonNull(delegate, "delegate binary service may not be null!");
+        this.directory = requireNonNull(directory, "cache directory may not be null!");
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(directory);
+            loadEntries();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException("Unable to initialize binary cache at " + directory, ex);
+        }
+    }
+
+    @Override
+    public CompletionStage<Binary> get(final IRI identifier) {
+        final String name = getName(identifier);
+        if (isCached(name)) {
+            return completedFuture(new CachedBinary(identifier, directory.resolve(name)));
+        }
+        return delegate.get(identifier).thenApply(binary -> new ReadThroughBinary(name, binary));
+    }
+
+    @Override
+    public CompletionStage<Void> purgeContent(final IRI identifier) {
+        evict(getName(identifier));
+        return delegate.purgeContent(identifier);
+    }
+
+    @Override
+    public CompletionStage<Void> setContent(final BinaryMetadata metadata, final InputStream stream) {
+        final String name = getName(metadata.getIdentifier());
+        // Nothing is read here: the content is copied to the cache file as the delegate uploads it
+        final CacheFileOutputStream cacheFile = new CacheFileOutputStream(name);
+        return delegate.setContent(metadata, new TeeInputStream(stream, cacheFile, true))
+            .whenComplete((v, err) -> {
+                if (err != null) {
+                    cacheFile.discard();
+                } else if (cacheFile.isToken()) {
+                    // The token stands in for content that the client uploaded directly to S3, so it is not cached
+                    cacheFile.discard();
+                    evict(name);
+                } else {
+                    cacheFile.commit();
+                }
+            });
+    }
+
+    @Override
+    public String generateIdentifier() {
+        return delegate.generateIdentifier();
+    }
+
+    /**
+     * Get the number of bytes currently held in the cache.
+     * @return the cache size in bytes
+     */
+    public synchronized long getCacheSize() {
+        return totalBytes;
+    }
+
+    private static ReadableByteChannel openRange(final Path path, final long from, final long to)
+            throws IOException {
+        final FileChannel channel = FileChannel.open(path, READ);
+        channel.position(from);
+        return new BoundedChannel(channel, to - from + 1);
+    }
+
+    private static String getName(final IRI identifier) {
+        return UUID.nameUUIDFromBytes(identifier.getIRIString().getBytes(UTF_8)).toString();
+    }
+
+    private synchronized boolean isCached(final String name) {
+        return entries.get(name) != null;
+    }
+
+    private synchronized void commit(final String name, final Path temp, final long size) throws IOException {
+        Files.move(temp, directory.resolve(name), REPLACE_EXISTING, ATOMIC_MOVE);
+        final Long previous = entries.put(name, size);
+        totalBytes += size - (previous != null ? previous : 0L);
+        final Iterator<Map.Entry<String, Long>> iter = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iter.hasNext()) {
+            final Map.Entry<String, Long> eldest = iter.next();
+            iter.remove();
+            totalBytes -= eldest.getValue();
+            deleteQuietly(directory.resolve(eldest.getKey()));
+        }
+    }
+
+    private synchronized void evict(final String name) {
+        final Long size = entries.remove(name);
+        if (size != null) {
+            totalBytes -= size;
+            deleteQuietly(directory.resolve(name));
+        }
+    }
+
+    private void loadEntries() throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            files.filter(Files::isRegularFile).sorted(Comparator.comparing(CachingBinaryService::lastModified))
+                .forEachOrdered(path -> {
+                    final String name = path.getFileName().toString();
+                    if (name.endsWith(TEMP_SUFFIX)) {
+                        deleteQuietly(path);
+                    } else {
+                        final long size = path.toFile().length();
+                        entries.put(name, size);
+                        totalBytes += size;
+                    }
+                });
+        }
+    }
+
+    private static long lastModified(final Path path) {
+        return path.toFile().lastModified();
+    }
+
+    private static void deleteQuietly(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (final IOException ex) {
+            LOGGER.warn("Unable to delete cached binary {}: {}", path, ex.getMessage());
+        }
+    }
+
+    /**
+     * A binary served from the local cache.
+     */
+    private final class CachedBinary implements ChannelBinary {
+
+        private final IRI identifier;
+        private final Path path;
+
+        CachedBinary(final IRI identifier, final Path path) {
+            this.identifier = identifier;
+            this.path = path;
+        }
+
+        @Override
+        public InputStream getContent() {
+            try {
+                return Channels.newInputStream(FileChannel.open(path, READ));
+            } catch (final NoSuchFileException ex) {
+                return fetch().getContent();
+            } catch (final IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public ReadableByteChannel getChannel(final long from, final long to) {
+            try {
+                return openRange(path, from, to);
+            } catch (final NoSuchFileException ex) {
+                return fetch().getChannel(from, to);
+            } catch (final IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public long transferTo(final long from, final long to, final WritableByteChannel target)
+                throws IOException {
+            try (final FileChannel channel = FileChannel.open(path, READ)) {
+                final long end = Math.min(to + 1, channel.size());
+                long position = from;
+                while (position < end) {
+                    position += channel.transferTo(position, end - position, target);
+                }
+                return position - from;
+            } catch (final NoSuchFileException ex) {
+                return fetch().transferTo(from, to, target);
+            }
+        }
+
+        private ChannelBinary fetch() {
+            // The entry was evicted after this binary was handed out, so read it through again
+            LOGGER.debug("Cached binary for {} was evicted, reading from the underlying service", identifier);
+            return (ChannelBinary) get(identifier).toCompletableFuture().join();
+        }
+    }
+
+    /**
+     * A binary that populates the cache as its full content is read.
+     */
+    private final class ReadThroughBinary implements ChannelBinary {
+
+        private final String name;
+        private final Binary binary;
+
+        ReadThroughBinary(final String name, final Binary binary) {
+            this.name = name;
+            this.binary = binary;
+        }
+
+        @Override
+        public InputStream getContent() {
+            final CacheFileOutputStream cacheFile = new CacheFileOutputStream(name);
+            return new TeeInputStream(binary.getContent(), cacheFile, true) {
+                private boolean complete;
+
+                @Override
+                protected void afterRead(final int n) {
+                    if (n < 0) {
+                        complete = true;
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    if (complete) {
+                        cacheFile.commit();
+                    } else {
+                        cacheFile.discard();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public ReadableByteChannel getChannel(final long from, final long to) {
+            if (binary instanceof ChannelBinary) {
+                return ((ChannelBinary) binary).getChannel(from, to);
+            }
+            if (to > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Range exceeds the limits of the underlying binary: " + to);
+            }
+            return Channels.newChannel(binary.getContent((int) from, (int) to));
+        }
+    }
+
+    /**
+     * An output stream that writes a cache entry to a temporary file, giving up quietly on any error or
+     * once the content grows beyond the size of the cache. The file is created on the first write, on the
+     * thread that uploads the content, and the first bytes are kept to tell a direct-upload token from content.
+     */
+    private final class CacheFileOutputStream extends OutputStream {
+
+        private final String name;
+        private final byte[] head = new byte[DirectUploads.TOKEN_LENGTH + 1];
+        private Path temp;
+        private OutputStream output;
+        private long size;
+        private boolean discarded;
+
+        CacheFileOutputStream(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void write(final int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            if (size < head.length) {
+                System.arraycopy(b, off, head, (int) size, (int) Math.min(len, head.length - size));
+            }
+            size += len;
+            if (discarded) {
+                return;
+            }
+            if (size > maxBytes) {
+                discard();
+                return;
+            }
+            try {
+                open().write(b, off, len);
+            } catch (final IOException ex) {
+                LOGGER.warn("Unable to write cache file for {}: {}", name, ex.getMessage());
+                discard();
+            }
+        }
+
+        @Override
+        public void close() {
+            // The file is closed when it is committed or discarded
+        }
+
+        boolean isToken() {
+            return DirectUploads.isToken(head, (int) Math.min(size, head.length));
+        }
+
+        void commit() {
+            if (discarded) {
+                return;
+            }
+            try {
+                open().close();
+                output = null;
+                CachingBinaryService.this.commit(name, temp, size);
+            } catch (final IOException ex) {
+                LOGGER.warn("Unable to commit cache file for {}: {}", name, ex.getMessage());
+                discard();
+            }
+        }
+
+        void discard() {
+            discarded = true;
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (final IOException ex) {
+                    LOGGER.debug("Error closing cache file for {}: {}", name, ex.getMessage());
+                }
+                output = null;
+            }
+            if (temp != null) {
+                deleteQuietly(temp);
+            }
+        }
+
+        private OutputStream open() throws IOException {
+            if (output == null) {
+                temp = Files.createTempFile(directory, name, TEMP_SUFFIX);
+                output = Files.newOutputStream(temp);
+            }
+            return output;
+        }
+    }
+
+    /**
+     * A channel that reads at most a fixed number of bytes from a file channel.
+     */
+    private static final class BoundedChannel implements ReadableByteChannel {
+
+        private final FileChannel channel;
+        private long remaining;
+
+        BoundedChannel(final FileChannel channel, final long length) {
+            this.channel = channel;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int limit = dst.limit();
+            if (dst.remaining() > remaining) {
+                dst.limit(dst.position() + (int) remaining);
+            }
+            try {
+                final int count = channel.read(dst);
+                if (count > 0) {
+                    remaining -= count;
+                }
+                return count;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.trellisldp.api.Binary;
+
+/**
+ * A {@link Binary} whose content can be addressed with {@code long} offsets and read as a
+ * {@link ReadableByteChannel}.
+ *
+ * <p>The {@code int}-based range method of {@link Binary} is implemented as an adapter over the
+ * {@code long}-based methods defined here, so that content past 2 GB remains addressable.
+ */
+public interface ChannelBinary extends Binary {
+
+    /**
+     * Get a channel over the full content.
+     * @return the content
+     */
+    default ReadableByteChannel getChannel() {
+        return Channels.newChannel(getContent());
+    }
+
+    /**
+     * Get a channel over a range of the content.
+     * @param from the first byte, zero-based
+     * @param to the last byte, inclusive
+     * @return the content in the range
+     */
+    ReadableByteChannel getChannel(long from, long to);
+
+    /**
+     * Get a stream over a range of the content.
+     * @param from the first byte, zero-based
+     * @param to the last byte, inclusive
+     * @return the content in the range
+     */
+    default InputStream getContent(final long from, final long to) {
+        return Channels.newInputStream(getChannel(from, to));
+    }
+
+    @Override
+    default InputStream getContent(final int from, final int to) {
+        return getContent((long) from, (long) to);
+    }
+
+    /**
+     * Write a range of the content to a channel.
+     *
+     * @implSpec the default implementation copies the content through a pooled heap buffer; implementations
+     *           backed by a {@link java.nio.channels.FileChannel} may transfer the bytes without copying them
+     *           through the heap
+     * @param from the first byte, zero-based
+     * @param to the last byte, inclusive
+     * @param target the channel to write to
+     * @return the number of bytes written
+     * @throws IOException if the content could not be read or written
+     */
+    default long transferTo(final long from, final long to, final WritableByteChannel target) throws IOException {
+        long total = 0L;
+        final ByteBuffer buffer = TransferBuffers.acquire();
+        try (final ReadableByteChannel channel = getChannel(from, to)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    total += target.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            TransferBuffers.release(buffer);
+        }
+        return total;
+    }
+}
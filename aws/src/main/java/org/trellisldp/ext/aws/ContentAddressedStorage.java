@@ -0,0 +1,292 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+import static org.trellisldp.ext.aws.IoExecutor.daemonThreads;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+
+/**
+ * Content-addressed storage for binaries.
+ *
+ * <p>Binary content is stored once, under a key derived from its SHA-256 digest. The object at a binary's
+ * own key is a zero-length pointer that records the content key in its user metadata. Each pointer also
+ * registers a reference marker under the content key, so that content is only deleted once the last
+ * binary that refers to it has been purged.
+ *
+ * <p>Content up to the inline limit is hashed in memory before anything is sent to S3, so a duplicate of
+ * an existing object costs no upload at all. Larger content is hashed while it is uploaded to a staging
+ * key; it is then either discarded, if the content already exists, or copied into place server-side.
+ *
+ * <p>S3 offers no atomic reference counting. A store always records its reference before it checks whether the
+ * content exists, and releasing the last reference never deletes the content directly: it leaves a marker, and
+ * a background sweep deletes the content once the marker is older than the grace period and the references have
+ * been checked once more. A store of the same content within the grace period simply refers to it again, and no
+ * content is copied or moved aside. Replacing a binary releases its reference to the content it previously
+ * pointed to.
+ *
+ * <p>The content object is shared, so each binary keeps its own {@code Content-Type} on its pointer.
+ */
+final class ContentAddressedStorage {
+
+    /** The user metadata field that links a binary to its content. */
+    static final String CONTENT_KEY = "trellis.contentKey";
+
+    private static final Logger LOGGER = getLogger(ContentAddressedStorage.class);
+    private static final String ALGORITHM = "SHA-256";
+    private static final String CONTENT_PREFIX = "sha256/";
+    private static final String STAGING_PREFIX = "staging/";
+    private static final String ORPHANS_PREFIX = "orphans/";
+    private static final long MAX_SWEEP_INTERVAL = 60 * 60 * 1000L;
+    private static final String REFS = "/refs/";
+
+    private final AmazonS3 client;
+    private final String bucketName;
+    private final String pathPrefix;
+    private final int inlineLimit;
+    private final ObjectUploader uploader;
+    private final S3Copier copier;
+    private final long gracePeriod;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Create a content-addressed store.
+     * @param client the S3 client
+     * @param bucketName the bucket name
+     * @param pathPrefix the path prefix
+     * @param inlineLimit the largest object, in bytes, to hash in memory before it is uploaded
+     * @param uploader the uploader for content that exceeds the inline limit
+     * @param copier the server-side copier
+     * @param gracePeriod the time, in milliseconds, for which unreferenced content is kept
+     */
+    ContentAddressedStorage(final AmazonS3 client, final String bucketName, final String pathPrefix,
+            final int inlineLimit, final ObjectUploader uploader, final S3Copier copier, final long gracePeriod) {
+        this.client = requireNonNull(client, "client may not be null!");
+        this.bucketName = requireNonNull(bucketName, "bucket name may not be null!");
+        this.pathPrefix = requireNonNull(pathPrefix, "path prefix may not be null!");
+        this.uploader = requireNonNull(uploader, "uploader may not be null!");
+        this.copier = requireNonNull(copier, "copier may not be null!");
+        this.inlineLimit = inlineLimit;
+        this.gracePeriod = gracePeriod;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("trellis-s3-content-"));
+        final long interval = Math.max(1L, Math.min(gracePeriod, MAX_SWEEP_INTERVAL));
+        scheduler.scheduleWithFixedDelay(this::sweep, interval, interval, MILLISECONDS);
+    }
+
+    /**
+     * Store binary content.
+     * @param key the binary's key
+     * @param metadata the object metadata
+     * @param stream the content
+     * @param pointerMetadata additional user metadata for the pointer, resolved once the content is read
+     * @throws IOException if the content could not be read or stored
+     */
+    void store(final String key, final ObjectMetadata metadata, final InputStream stream,
+            final Supplier<Map<String, String>> pointerMetadata) throws IOException {
+        final String previous = getPointer(key).map(ContentAddressedStorage::getContentKey).orElse(null);
+        final MessageDigest digest = getDigest();
+        final byte[] head = new byte[inlineLimit + 1];
+        final int length = IOUtils.read(stream, head);
+        final String contentKey;
+        if (length <= inlineLimit) {
+            digest.update(head, 0, length);
+            contentKey = getContentKey(digest.digest());
+            addReference(contentKey, key);
+            if (!client.doesObjectExist(bucketName, contentKey)) {
+                metadata.setContentLength(length);
+                client.putObject(new PutObjectRequest(bucketName, contentKey,
+                            new ByteArrayInputStream(head, 0, length), metadata));
+            } else {
+                LOGGER.debug("Content for {} already exists at {}", key, contentKey);
+            }
+        } else {
+            final String staging = pathPrefix + STAGING_PREFIX + UUID.randomUUID();
+            uploader.upload(staging, metadata, new DigestInputStream(
+                        new SequenceInputStream(new ByteArrayInputStream(head, 0, length), stream), digest));
+            contentKey = getContentKey(digest.digest());
+            try {
+                addReference(contentKey, key);
+                if (!client.doesObjectExist(bucketName, contentKey)) {
+                    copier.copy(new CopyObjectRequest(bucketName, staging, bucketName, contentKey));
+                } else {
+                    LOGGER.debug("Content for {} already exists at {}", key, contentKey);
+                }
+            } finally {
+                client.deleteObject(bucketName, staging);
+            }
+        }
+
+        final ObjectMetadata pointer = new ObjectMetadata();
+        pointer.setContentLength(0L);
+        if (metadata.getContentType() != null) {
+            pointer.setContentType(metadata.getContentType());
+        }
+        final Map<String, String> userMetadata = new HashMap<>(pointerMetadata.get());
+        userMetadata.put(CONTENT_KEY, contentKey);
+        pointer.setUserMetadata(userMetadata);
+        client.putObject(new PutObjectRequest(bucketName, key, new ByteArrayInputStream(new byte[0]), pointer));
+        if (previous != null && !previous.equals(contentKey)) {
+            release(previous, key);
+        }
+    }
+
+    /**
+     * Find the pointer of a content-addressed binary.
+     * @param key the binary's key
+     * @return the pointer's metadata, or nothing if the binary does not exist or is not content-addressed
+     */
+    Optional<ObjectMetadata> getPointer(final String key) {
+        try {
+            return Optional.of(client.getObjectMetadata(bucketName, key)).filter(md -> getContentKey(md) != null);
+        } catch (final AmazonS3Exception ex) {
+            if (ex.getStatusCode() == 404) {
+                return Optional.empty();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Get the key of the object that holds a binary's content.
+     * @param pointer the binary's pointer
+     * @return the content key
+     */
+    static String getContentKey(final ObjectMetadata pointer) {
+        return pointer.getUserMetaDataOf(CONTENT_KEY);
+    }
+
+    /**
+     * Remove a binary, deleting its content if no other binary refers to it.
+     * @param key the binary's key
+     */
+    void purge(final String key) {
+        final Optional<String> contentKey = getPointer(key).map(ContentAddressedStorage::getContentKey);
+        client.deleteObject(bucketName, key);
+        contentKey.ifPresent(k -> release(k, key));
+    }
+
+    /**
+     * Delete content that has had no references for longer than the grace period.
+     */
+    void sweep() {
+        try {
+            final Date cutoff = new Date(System.currentTimeMillis() - gracePeriod);
+            final ListObjectsV2Request req = new ListObjectsV2Request().withBucketName(bucketName)
+                .withPrefix(pathPrefix + ORPHANS_PREFIX);
+            ListObjectsV2Result result;
+            do {
+                result = client.listObjectsV2(req);
+                for (final S3ObjectSummary marker : result.getObjectSummaries()) {
+                    if (marker.getLastModified() != null && marker.getLastModified().before(cutoff)) {
+                        final String contentKey = pathPrefix + CONTENT_PREFIX
+                            + marker.getKey().substring(req.getPrefix().length());
+                        // The content may have been stored again since it was released
+                        if (!isReferenced(contentKey)) {
+                            LOGGER.debug("Removing unreferenced content {}", contentKey);
+                            client.deleteObject(bucketName, contentKey);
+                        }
+                        client.deleteObject(bucketName, marker.getKey());
+                    }
+                }
+                req.setContinuationToken(result.getNextContinuationToken());
+            } while (result.isTruncated());
+        } catch (final RuntimeException ex) {
+            LOGGER.error("Error sweeping unreferenced content: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Stop the background sweeper.
+     */
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    private void release(final String contentKey, final String key) {
+        client.deleteObject(bucketName, getReferenceKey(contentKey, key));
+        if (!isReferenced(contentKey)) {
+            // The content is only deleted by the sweep, once it has stayed unreferenced for the grace period
+            LOGGER.debug("Marking unreferenced content {}", contentKey);
+            putEmpty(pathPrefix + ORPHANS_PREFIX + contentKey.substring((pathPrefix + CONTENT_PREFIX).length()));
+        }
+    }
+
+    private boolean isReferenced(final String contentKey) {
+        return !client.listObjectsV2(new ListObjectsV2Request().withBucketName(bucketName)
+                .withPrefix(contentKey + REFS).withMaxKeys(1)).getObjectSummaries().isEmpty();
+    }
+
+    private void addReference(final String contentKey, final String key) {
+        putEmpty(getReferenceKey(contentKey, key));
+    }
+
+    private void putEmpty(final String key) {
+        final ObjectMetadata md = new ObjectMetadata();
+        md.setContentLength(0L);
+        client.putObject(new PutObjectRequest(bucketName, key, new ByteArrayInputStream(new byte[0]), md));
+    }
+
+    private String getReferenceKey(final String contentKey, final String key) {
+        return contentKey + REFS + key.substring(pathPrefix.length());
+    }
+
+    private String getContentKey(final byte[] digest) {
+        return pathPrefix + CONTENT_PREFIX + toHex(digest);
+    }
+
+    static MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("The " + ALGORITHM + " algorithm is not available", ex);
+        }
+    }
+
+    static String toHex(final byte[] bytes) {
+        final StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Collections.emptyList;
+
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.spi.ConfigSource;
+
+/**
+ * A configuration without any properties, so that every optional setting takes its default value.
+ *
+ * <p>This lets the constructors that take explicit settings share their initialization with the constructors
+ * that read a {@link Config}, without consulting the MicroProfile configuration.
+ */
+final class DefaultConfig implements Config {
+
+    /** The configuration without any properties. */
+    static final Config INSTANCE = new DefaultConfig();
+
+    private DefaultConfig() {
+        // Use the shared instance
+    }
+
+    @Override
+    public <T> T getValue(final String propertyName, final Class<T> propertyType) {
+        throw new NoSuchElementException("No value for " + propertyName);
+    }
+
+    @Override
+    public <T> Optional<T> getOptionalValue(final String propertyName, final Class<T> propertyType) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Iterable<String> getPropertyNames() {
+        return emptyList();
+    }
+
+    @Override
+    public Iterable<ConfigSource> getConfigSources() {
+        return emptyList();
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+import static org.trellisldp.ext.aws.IoExecutor.daemonThreads;
+
+import com.amazonaws.HttpMethod;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListMultipartUploadsRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.MultipartUpload;
+import com.amazonaws.services.s3.model.MultipartUploadListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+
+/**
+ * Uploads of binary content that clients send directly to S3.
+ *
+ * <p>An upload is initiated as a multipart upload of a staging object under {@code direct/}, and the client
+ * is given a presigned URL for each part. Once the parts are uploaded, the upload is completed: the parts that
+ * S3 holds are checked against the length declared at initiation and, if the client lists them, the MD5
+ * digests of the parts. The completed upload is then identified by a short, random token, which stands in for
+ * the content of the binary when Trellis stores it, and is moved to the binary key with a server-side copy.
+ * The content never passes through this host.
+ *
+ * <p>A background sweeper aborts uploads, and deletes staging objects, that are older than the expiry time.
+ */
+final class DirectUploads {
+
+    /** The largest number of parts in an upload, which bounds the size of the handshake response. */
+    static final int MAX_PARTS = 1000;
+
+    /** The length of a token for a completed upload. */
+    static final int TOKEN_LENGTH = 50;
+
+    private static final Logger LOGGER = getLogger(DirectUploads.class);
+    private static final String DIRECT_PREFIX = "direct/";
+    private static final String TOKEN_PREFIX = "trellis-s3-upload:";
+    private static final String LENGTH = "trellis.upload.length";
+    private static final long MAX_PART_SIZE = 5L * 1024 * 1024 * 1024;
+    private static final long MAX_SWEEP_INTERVAL = 60 * 60 * 1000L;
+    private static final Pattern HANDLE = Pattern.compile("([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-"
+            + "[0-9a-f]{12}):(.+)");
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Completed> tokens = new ConcurrentHashMap<>();
+    private final AmazonS3 client;
+    private final String bucketName;
+    private final String pathPrefix;
+    private final long partSize;
+    private final long expiryMillis;
+    private final S3Copier copier;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Create a record of direct uploads.
+     * @param client the S3 client
+     * @param bucketName the bucket name
+     * @param pathPrefix the path prefix of the binaries
+     * @param partSize the smallest part size
+     * @param expiryMillis the time, in milliseconds, for which part URLs are valid and after which an
+     *                     unfinished upload is removed
+     * @param copier the copier for server-side copies
+     */
+    DirectUploads(final AmazonS3 client, final String bucketName, final String pathPrefix, final long partSize,
+            final long expiryMillis, final S3Copier copier) {
+        this.client = requireNonNull(client, "client may not be null!");
+        this.bucketName = requireNonNull(bucketName, "bucket name may not be null!");
+        this.pathPrefix = requireNonNull(pathPrefix, "path prefix may not be null!");
+        this.partSize = partSize;
+        this.expiryMillis = expiryMillis;
+        this.copier = requireNonNull(copier, "copier may not be null!");
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("trellis-s3-direct-"));
+        final long interval = Math.max(1L, Math.min(expiryMillis, MAX_SWEEP_INTERVAL));
+        scheduler.scheduleWithFixedDelay(this::sweep, interval, interval, MILLISECONDS);
+    }
+
+    /**
+     * Initiate an upload.
+     * @param length the length of the content, in bytes
+     * @param contentType the content type, may be {@code null}
+     * @return the upload, with a presigned URL for each part
+     * @throws IllegalArgumentException if the length is not positive or is too large for an upload
+     */
+    Upload initiate(final long length, final String contentType) {
+        if (length <= 0 || length > MAX_PARTS * MAX_PART_SIZE) {
+            throw new IllegalArgumentException("Invalid upload length: " + length);
+        }
+        final long size = Math.max(partSize, (length + MAX_PARTS - 1) / MAX_PARTS);
+        final int count = (int) ((length + size - 1) / size);
+        final String name = UUID.randomUUID().toString();
+        final String key = getStagedKey(name);
+
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        metadata.addUserMetadata(LENGTH, Long.toString(length));
+        final String uploadId = client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key,
+                    metadata)).getUploadId();
+
+        final Date expiration = new Date(System.currentTimeMillis() + expiryMillis);
+        final List<URL> parts = new ArrayList<>();
+        for (int partNumber = 1; partNumber <= count; partNumber++) {
+            final GeneratePresignedUrlRequest req = new GeneratePresignedUrlRequest(bucketName, key, HttpMethod.PUT)
+                .withExpiration(expiration);
+            req.addRequestParameter("uploadId", uploadId);
+            req.addRequestParameter("partNumber", Integer.toString(partNumber));
+            parts.add(client.generatePresignedUrl(req));
+        }
+        LOGGER.debug("Initiated direct upload {} of {} bytes in {} parts", key, length, count);
+        return new Upload(name + ":" + uploadId, size, expiration, parts);
+    }
+
+    /**
+     * Complete an upload.
+     *
+     * <p>The parts must be numbered from one without gaps. A part digest is compared with the ETag of the part,
+     * which S3 sets to the MD5 digest of the part unless the bucket is encrypted with KMS keys.
+     *
+     * @param handle the upload handle
+     * @param digests the base64-encoded MD5 digests of the parts, in order, or an empty list
+     * @return the token that stands for the uploaded content
+     * @throws IllegalArgumentException if the upload is not valid or does not match the declared length
+     *                                  or digests
+     */
+    String complete(final String handle, final List<String> digests) {
+        final Matcher matcher = HANDLE.matcher(handle);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid upload: " + handle);
+        }
+        final String key = getStagedKey(matcher.group(1));
+        final String uploadId = matcher.group(2);
+
+        final List<PartETag> parts = new ArrayList<>();
+        final ListPartsRequest req = new ListPartsRequest(bucketName, key, uploadId);
+        PartListing listing;
+        do {
+            listing = client.listParts(req);
+            for (final PartSummary part : listing.getParts()) {
+                final int partNumber = parts.size() + 1;
+                if (part.getPartNumber() != partNumber) {
+                    throw new IllegalArgumentException("Part " + partNumber + " of the upload is missing");
+                }
+                if (!digests.isEmpty() && (digests.size() < partNumber || !toHex(digests.get(partNumber - 1))
+                            .equalsIgnoreCase(part.getETag().replace("\"", "")))) {
+                    throw new IllegalArgumentException("Part " + partNumber + " does not match its digest");
+                }
+                parts.add(new PartETag(part.getPartNumber(), part.getETag()));
+            }
+            req.setPartNumberMarker(listing.getNextPartNumberMarker());
+        } while (listing.isTruncated());
+        if (parts.isEmpty() || !digests.isEmpty() && digests.size() != parts.size()) {
+            throw new IllegalArgumentException("The upload has " + parts.size() + " parts, expected "
+                    + (digests.isEmpty() ? "at least one" : digests.size()));
+        }
+
+        client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, parts));
+        final ObjectMetadata metadata = client.getObjectMetadata(bucketName, key);
+        final String declared = metadata.getUserMetaDataOf(LENGTH);
+        if (!Long.toString(metadata.getContentLength()).equals(declared)) {
+            client.deleteObject(bucketName, key);
+            throw new IllegalArgumentException("Uploaded " + metadata.getContentLength() + " bytes, expected "
+                    + declared);
+        }
+
+        final byte[] bytes = new byte[(TOKEN_LENGTH - TOKEN_PREFIX.length()) / 2];
+        random.nextBytes(bytes);
+        final String token = TOKEN_PREFIX + ContentAddressedStorage.toHex(bytes);
+        tokens.put(token, new Completed(key, System.currentTimeMillis()));
+        LOGGER.debug("Completed direct upload {} of {} bytes", key, declared);
+        return token;
+    }
+
+    /**
+     * Check whether content has the form of a token for a completed upload.
+     * @param content the content
+     * @param length the length of the content
+     * @return true if the content looks like a token, whether or not it has been issued
+     */
+    static boolean isToken(final byte[] content, final int length) {
+        return length == TOKEN_LENGTH && new String(content, 0, length, UTF_8).startsWith(TOKEN_PREFIX);
+    }
+
+    /**
+     * Claim a completed upload.
+     * @param content the content that may be a token for a completed upload
+     * @return the key of the staging object, if the content was a token that has not been claimed
+     */
+    Optional<String> claim(final byte[] content) {
+        if (content.length != TOKEN_LENGTH) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(tokens.remove(new String(content, UTF_8))).map(upload -> upload.key);
+    }
+
+    /**
+     * Move a completed upload to its binary key.
+     * @param stagedKey the key of the staging object
+     * @param key the binary key
+     * @param metadata the binary metadata
+     * @throws InterruptedIOException if the thread is interrupted while copying
+     */
+    void transfer(final String stagedKey, final String key, final ObjectMetadata metadata)
+            throws InterruptedIOException {
+        copier.copy(new CopyObjectRequest(bucketName, stagedKey, bucketName, key).withNewObjectMetadata(metadata));
+        client.deleteObject(bucketName, stagedKey);
+    }
+
+    /**
+     * Abort uploads, and delete staging objects, that are older than the expiry time.
+     */
+    void sweep() {
+        final long cutoff = System.currentTimeMillis() - expiryMillis;
+        tokens.values().removeIf(upload -> upload.completed < cutoff);
+        try {
+            final ListMultipartUploadsRequest uploads = new ListMultipartUploadsRequest(bucketName)
+                .withPrefix(pathPrefix + DIRECT_PREFIX);
+            MultipartUploadListing listing;
+            do {
+                listing = client.listMultipartUploads(uploads);
+                for (final MultipartUpload upload : listing.getMultipartUploads()) {
+                    if (upload.getInitiated() != null && upload.getInitiated().getTime() < cutoff) {
+                        LOGGER.info("Aborting direct upload {} for {}", upload.getUploadId(), upload.getKey());
+                        client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, upload.getKey(),
+                                    upload.getUploadId()));
+                    }
+                }
+                uploads.setKeyMarker(listing.getNextKeyMarker());
+                uploads.setUploadIdMarker(listing.getNextUploadIdMarker());
+            } while (listing.isTruncated());
+
+            // Completed uploads that were never claimed, because their request failed after completion
+            final ListObjectsV2Request objects = new ListObjectsV2Request().withBucketName(bucketName)
+                .withPrefix(pathPrefix + DIRECT_PREFIX);
+            ListObjectsV2Result result;
+            do {
+                result = client.listObjectsV2(objects);
+                for (final S3ObjectSummary summary : result.getObjectSummaries()) {
+                    if (summary.getLastModified() != null && summary.getLastModified().getTime() < cutoff) {
+                        LOGGER.info("Deleting unclaimed direct upload {}", summary.getKey());
+                        client.deleteObject(bucketName, summary.getKey());
+                    }
+                }
+                objects.setContinuationToken(result.getNextContinuationToken());
+            } while (result.isTruncated());
+        } catch (final RuntimeException ex) {
+            LOGGER.error("Error sweeping direct uploads: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Stop the background sweeper.
+     */
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    private String getStagedKey(final String name) {
+        return pathPrefix + DIRECT_PREFIX + name;
+    }
+
+    private static String toHex(final String digest) {
+        try {
+            return ContentAddressedStorage.toHex(Base64.getDecoder().decode(digest.trim()));
+        } catch (final IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid part digest: " + digest, ex);
+        }
+    }
+
+    /**
+     * An initiated upload.
+     */
+    static final class Upload {
+
+        private final String handle;
+        private final long partSize;
+        private final Date expiration;
+        private final List<URL> parts;
+
+        private Upload(final String handle, final long partSize, final Date expiration, final List<URL> parts) {
+            this.handle = handle;
+            this.partSize = partSize;
+            this.expiration = expiration;
+            this.parts = parts;
+        }
+
+        /**
+         * Get the handle with which the upload is completed.
+         * @return the upload handle
+         */
+        String getHandle() {
+            return handle;
+        }
+
+        /**
+         * Get the size of each part but the last.
+         * @return the part size, in bytes
+         */
+        long getPartSize() {
+            return partSize;
+        }
+
+        /**
+         * Get the time at which the part URLs expire.
+         * @return the expiration time
+         */
+        Date getExpiration() {
+            return expiration;
+        }
+
+        /**
+         * Get the presigned URLs to which the parts are uploaded, in order.
+         * @return the part URLs
+         */
+        List<URL> getParts() {
+            return parts;
+        }
+    }
+
+    private static final class Completed {
+        private final String key;
+        private final long completed;
+
+        private Completed(final String key, final long completed) {
+            this.key = key;
+            this.completed = completed;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Base64.getEncoder;
+import static java.util.Locale.ROOT;
+import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.toList;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.Tag;
+
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Message digests computed while binary content is uploaded.
+ *
+ * <p>The digests are stored, base64-encoded, in the user metadata of the S3 object, so that they can
+ * later be answered with a single HEAD request instead of reading the content back from S3. S3 fixes the
+ * metadata of a multipart upload when the upload starts, so the digests of such an upload are stored in the
+ * object tags instead.
+ */
+final class InlineDigests {
+
+    private static final String DIGEST_PREFIX = "trellis.digest.";
+    private static final String TAGGED = "trellis.digests.tagged";
+
+    private final List<MessageDigest> digests = new ArrayList<>();
+
+    /**
+     * Create a set of digests.
+     * @param algorithms the digest algorithms, e.g. MD5, SHA-1 or SHA-256
+     */
+    InlineDigests(final String... algorithms) {
+        for (final String algorithm : algorithms) {
+            try {
+                digests.add(MessageDigest.getInstance(algorithm.trim().toUpperCase(ROOT)));
+            } catch (final NoSuchAlgorithmException ex) {
+                throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm, ex);
+            }
+        }
+    }
+
+    /**
+     * Wrap a stream so that all of the digests are updated as it is read.
+     * @param stream the content
+     * @return the wrapped stream
+     */
+    InputStream wrap(final InputStream stream) {
+        InputStream input = stream;
+        for (final MessageDigest digest : digests) {
+            input = new DigestInputStream(input, digest);
+        }
+        return input;
+    }
+
+    /**
+     * Get the user metadata for the digests, once the wrapped stream has been consumed.
+     * @return the user metadata
+     */
+    Map<String, String> getUserMetadata() {
+        final Map<String, String> metadata = new HashMap<>();
+        for (final MessageDigest digest : digests) {
+            metadata.put(getMetadataKey(digest.getAlgorithm()), getEncoder().encodeToString(digest.digest()));
+        }
+        return metadata;
+    }
+
+    /**
+     * Read a stored digest from object metadata.
+     * @param metadata the object metadata
+     * @param algorithm the digest algorithm
+     * @return the base64-encoded digest, if one was stored
+     */
+    static Optional<String> getDigest(final ObjectMetadata metadata, final String algorithm) {
+        return ofNullable(metadata.getUserMetaDataOf(getMetadataKey(algorithm)));
+    }
+
+    /**
+     * Read a stored digest from user metadata.
+     * @param userMetadata the user metadata
+     * @param algorithm the digest algorithm
+     * @return the base64-encoded digest, if one was stored
+     */
+    static Optional<String> getDigest(final Map<String, String> userMetadata, final String algorithm) {
+        return ofNullable(userMetadata.get(getMetadataKey(algorithm)));
+    }
+
+    /**
+     * Read a stored digest from object tags.
+     * @param tags the object tags
+     * @param algorithm the digest algorithm
+     * @return the base64-encoded digest, if one was stored
+     */
+    static Optional<String> getDigest(final List<Tag> tags, final String algorithm) {
+        final String key = getMetadataKey(algorithm);
+        return tags.stream().filter(tag -> key.equals(tag.getKey())).map(Tag::getValue).findFirst();
+    }
+
+    /**
+     * Convert the user metadata for the digests to object tags.
+     * @param userMetadata the user metadata
+     * @return the object tags
+     */
+    static List<Tag> toTags(final Map<String, String> userMetadata) {
+        return userMetadata.entrySet().stream().map(e -> new Tag(e.getKey(), e.getValue())).collect(toList());
+    }
+
+    /**
+     * Mark object metadata to show that the digests may be stored in the object tags.
+     * @param metadata the object metadata
+     */
+    static void setTagged(final ObjectMetadata metadata) {
+        metadata.addUserMetadata(TAGGED, "true");
+    }
+
+    /**
+     * Check whether the digests of an object may be stored in its tags.
+     * @param metadata the object metadata
+     * @return true if the object was marked when it was uploaded
+     */
+    static boolean isTagged(final ObjectMetadata metadata) {
+        return "true".equals(metadata.getUserMetaDataOf(TAGGED));
+    }
+
+    private static String getMetadataKey(final String algorithm) {
+        return DIGEST_PREFIX + algorithm.trim().toLowerCase(ROOT);
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+
+/**
+ * A bounded, instrumented executor for blocking AWS client calls.
+ *
+ * <p>Each service runs its S3 or SNS requests on its own named pool rather than on the common
+ * fork-join pool, so that slow network calls neither saturate nor are starved by other asynchronous work
+ * in the JVM. The task queue is bounded: once it is full, new tasks run on the submitting thread, which
+ * pushes back on callers instead of queueing without limit.
+ *
+ * <p>On a JDK with virtual threads, tasks may instead each run on a new virtual thread. There is then no
+ * queue: a blocked S3 request holds only its own virtual thread, and concurrency is bounded by the
+ * connection pool of the AWS client.
+ */
+final class IoExecutor implements Executor, IoExecutorMXBean {
+
+    private static final Logger LOGGER = getLogger(IoExecutor.class);
+
+    private final ExecutorService delegate;
+    private final ThreadPoolExecutor pool;
+    private final int queueCapacity;
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder callerRuns = new LongAdder();
+    private final LongAdder waitCount = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Create an executor.
+     * @param name the service name, used for thread names and the JMX object name
+     * @param threads the maximum number of threads
+     * @param queueCapacity the maximum number of waiting tasks
+     */
+    IoExecutor(final String name, final int threads, final int queueCapacity) {
+        if (threads <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Executor threads and queue size must be positive!");
+        }
+        this.queueCapacity = queueCapacity;
+        this.pool = new ThreadPoolExecutor(threads, threads, 60L, SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                daemonThreads("trellis-" + name + "-"), (task, executor) -> {
+                    callerRuns.increment();
+                    if (!executor.isShutdown()) {
+                        task.run();
+                    }
+                });
+        this.pool.allowCoreThreadTimeOut(true);
+        this.delegate = pool;
+        export("Executor", name, this, IoExecutorMXBean.class);
+    }
+
+    private IoExecutor(final String name, final ExecutorService virtualThreads) {
+        this.queueCapacity = 0;
+        this.pool = null;
+        this.delegate = virtualThreads;
+        export("Executor", name, this, IoExecutorMXBean.class);
+    }
+
+    /**
+     * Create an executor.
+     * @param name the service name, used for thread names and the JMX object name
+     * @param virtual whether to run each task on its own virtual thread, if the JDK supports them
+     * @param threads the maximum number of threads, when virtual threads are not used
+     * @param queueCapacity the maximum number of waiting tasks, when virtual threads are not used
+     * @return the executor
+     */
+    static IoExecutor create(final String name, final boolean virtual, final int threads,
+            final int queueCapacity) {
+        if (virtual) {
+            final Optional<ExecutorService> virtualThreads = newVirtualThreadExecutor("trellis-" + name + "-");
+            if (virtualThreads.isPresent()) {
+                return new IoExecutor(name, virtualThreads.get());
+            }
+            LOGGER.warn("Virtual threads are not available on this JDK, using a pool of {} threads for {}",
+                    threads, name);
+        }
+        return new IoExecutor(name, threads, queueCapacity);
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        final long submitted = System.nanoTime();
+        delegate.execute(() -> {
+            recordWait(System.nanoTime() - submitted);
+            active.incrementAndGet();
+            try {
+                command.run();
+            } finally {
+                active.decrementAndGet();
+            }
+        });
+    }
+
+    @Override
+    public boolean isVirtualThreads() {
+        return pool == null;
+    }
+
+    @Override
+    public int getMaximumThreads() {
+        return pool != null ? pool.getMaximumPoolSize() : -1;
+    }
+
+    @Override
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return pool != null ? pool.getQueue().size() : 0;
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return waitCount.sum() - active.get();
+    }
+
+    @Override
+    public long getCallerRunsCount() {
+        return callerRuns.sum();
+    }
+
+    @Override
+    public double getAverageWaitMillis() {
+        final long count = waitCount.sum();
+        return count > 0 ? toMillis(waitNanos.sum()) / count : 0.0;
+    }
+
+    @Override
+    public double getMaximumWaitMillis() {
+        return toMillis(maxWaitNanos.get());
+    }
+
+    /**
+     * Create a factory for named daemon threads.
+     * @param prefix the thread name prefix
+     * @return the thread factory
+     */
+    static ThreadFactory daemonThreads(final String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Create a thread-per-task executor of named virtual threads.
+     *
+     * <p>The virtual thread API is called reflectively, so that this module still runs on older JDKs.
+     *
+     * @param prefix the thread name prefix
+     * @return the executor, or empty if virtual threads are not supported
+     */
+    static Optional<ExecutorService> newVirtualThreadExecutor(final String prefix) {
+        return virtualThreads(prefix).flatMap(factory -> {
+            try {
+                return Optional.of((ExecutorService) Executors.class
+                        .getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory));
+            } catch (final ReflectiveOperationException | LinkageError ex) {
+                LOGGER.debug("Virtual threads are not supported: {}", ex.getMessage());
+                return Optional.empty();
+            }
+        });
+    }
+
+    /**
+     * Create a factory of named virtual threads.
+     * @param prefix the thread name prefix
+     * @return the thread factory, or empty if virtual threads are not supported
+     */
+    static Optional<ThreadFactory> virtualThreads(final String prefix) {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Object builder = builderClass.getMethod("name", String.class, long.class)
+                .invoke(Thread.class.getMethod("ofVirtual").invoke(null), prefix, 1L);
+            return Optional.of((ThreadFactory) builderClass.getMethod("factory").invoke(builder));
+        } catch (final ReflectiveOperationException | LinkageError ex) {
+            LOGGER.debug("Virtual threads are not supported: {}", ex.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void recordWait(final long nanos) {
+        waitCount.increment();
+        waitNanos.add(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Export metrics over JMX as {@code org.trellisldp.ext.aws:type=<type>,name=<name>}.
+     * @param type the metrics type
+     * @param name the service name
+     * @param bean the metrics
+     * @param beanInterface the MXBean interface
+     * @param <T> the MXBean type
+     */
+    static <T> void export(final String type, final String name, final T bean, final Class<T> beanInterface) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName("org.trellisldp.ext.aws:type=" + type + ",name=" + name);
+            // The most recently created service owns the metrics name
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new StandardMBean(bean, beanInterface, true), objectName);
+        } catch (final JMException | SecurityException ex) {
+            LOGGER.warn("Unable to export {} metrics for {}: {}", type, name, ex.getMessage());
+        }
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / (double) NANOSECONDS.convert(1L, MILLISECONDS);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+/**
+ * Metrics for the executor on which an AWS service runs its blocking client calls.
+ *
+ * <p>These are exported over JMX as {@code org.trellisldp.ext.aws:type=Executor,name=<service>}.
+ */
+public interface IoExecutorMXBean {
+
+    /**
+     * Check whether tasks run on virtual threads, one thread per task.
+     * @return true if tasks run on virtual threads
+     */
+    boolean isVirtualThreads();
+
+    /**
+     * Get the maximum number of threads.
+     * @return the maximum number of threads, or -1 if tasks run on virtual threads
+     */
+    int getMaximumThreads();
+
+    /**
+     * Get the number of tasks that are currently running.
+     * @return the number of active tasks
+     */
+    int getActiveCount();
+
+    /**
+     * Get the number of tasks waiting for a thread.
+     * @return the queue depth
+     */
+    int getQueueDepth();
+
+    /**
+     * Get the capacity of the task queue.
+     * @return the queue capacity
+     */
+    int getQueueCapacity();
+
+    /**
+     * Get the number of tasks that have completed.
+     * @return the number of completed tasks
+     */
+    long getCompletedTaskCount();
+
+    /**
+     * Get the number of tasks that were run on the submitting thread because the queue was full.
+     * @return the number of tasks run by callers
+     */
+    long getCallerRunsCount();
+
+    /**
+     * Get the mean time that tasks waited in the queue before starting.
+     * @return the mean wait time, in milliseconds
+     */
+    double getAverageWaitMillis();
+
+    /**
+     * Get the longest time that a task waited in the queue before starting.
+     * @return the maximum wait time, in milliseconds
+     */
+    double getMaximumWaitMillis();
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+/**
+ * A layout of binary keys that spreads them over a number of shards.
+ *
+ * <p>S3 scales request rates per key prefix, so keys that are written together should not share a long
+ * prefix. Each new identifier is given a short, hexadecimal shard component that is derived from a hash of the
+ * rest of the identifier, such as {@code s3://2f/<uuid>}. The shard is part of the identifier, so existing
+ * identifiers, and identifiers created with a different number of shards, keep resolving to the same keys.
+ */
+final class KeyShards {
+
+    /** The largest number of shards. */
+    static final int MAX_SHARDS = 4096;
+
+    private final int shards;
+    private final int width;
+
+    /**
+     * Create a key layout.
+     * @param shards the number of shards, at most {@link #MAX_SHARDS}
+     */
+    KeyShards(final int shards) {
+        if (shards < 1 || shards > MAX_SHARDS) {
+            throw new IllegalArgumentException("The number of shards must be between 1 and " + MAX_SHARDS);
+        }
+        this.shards = shards;
+        this.width = Integer.toHexString(shards - 1).length();
+    }
+
+    /**
+     * Add a shard to a name.
+     * @param name the name, such as a UUID
+     * @return the name, prefixed by its shard
+     */
+    String apply(final String name) {
+        // Spread the bits of the hash, so that names that differ only in their last characters still scatter
+        final int hash = name.hashCode() * 0x9E3779B9;
+        final String shard = Integer.toHexString(Math.floorMod(hash ^ (hash >>> 16), shards));
+        final StringBuilder builder = new StringBuilder(width + 1 + name.length());
+        for (int i = shard.length(); i < width; i++) {
+            builder.append('0');
+        }
+        return builder.append(shard).append('/').append(name).toString();
+    }
+}
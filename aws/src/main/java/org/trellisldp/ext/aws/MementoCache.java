@@ -0,0 +1,306 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * A bounded cache of parsed mementos, which never change once written.
+ *
+ * <p>Each memento is held as a dictionary of its distinct RDF terms, followed by its quads as variable-length
+ * indexes into that dictionary, in a direct buffer outside the Java heap. Entries are evicted in
+ * least-recently-used order once their total size exceeds the byte budget.
+ */
+final class MementoCache implements MementoCacheMXBean {
+
+    /** The largest number of quads in a memento that is cached. */
+    static final int MAX_ENTRY_QUADS = 100000;
+
+    private static final byte IRI = 0;
+    private static final byte BLANK = 1;
+    private static final byte TYPED_LITERAL = 2;
+    private static final byte LANG_LITERAL = 3;
+    private static final byte DEFAULT_GRAPH = 4;
+
+    private final long budget;
+    private final LinkedHashMap<String, ByteBuffer> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long size;
+
+    /**
+     * Create a memento cache.
+     * @param name the service name, used for the JMX object name
+     * @param budget the largest number of bytes to hold
+     */
+    MementoCache(final String name, final long budget) {
+        this.budget = budget;
+        IoExecutor.export("MementoCache", name, this, MementoCacheMXBean.class);
+    }
+
+    /**
+     * Get the quads of a cached memento.
+     * @param key the object key of the memento
+     * @return the quads, or {@code null} if the memento is not cached
+     */
+    Iterator<Quad> get(final String key) {
+        final ByteBuffer entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new Decoder(entry.duplicate());
+    }
+
+    /**
+     * Cache the quads of a memento as they are read.
+     *
+     * <p>The memento is cached once the returned iterator has been read to its end, unless it holds more than
+     * {@link #MAX_ENTRY_QUADS} quads.
+     *
+     * @param key the object key of the memento
+     * @param quads the quads of the memento
+     * @return the quads of the memento
+     */
+    Iterator<Quad> fill(final String key, final Iterator<Quad> quads) {
+        return new Iterator<Quad>() {
+            private List<Quad> seen = new ArrayList<>();
+
+            @Override
+            public boolean hasNext() {
+                final boolean hasNext = quads.hasNext();
+                if (!hasNext && seen != null) {
+                    put(key, seen);
+                    seen = null;
+                }
+                return hasNext;
+            }
+
+            @Override
+            public Quad next() {
+                final Quad quad = quads.next();
+                if (seen != null) {
+                    seen.add(quad);
+                    if (seen.size() > MAX_ENTRY_QUADS) {
+                        seen = null;
+                    }
+                }
+                return quad;
+            }
+        };
+    }
+
+    /**
+     * Cache the quads of a memento.
+     * @param key the object key of the memento
+     * @param quads the quads of the memento
+     */
+    void put(final String key, final List<Quad> quads) {
+        final byte[] encoded = encode(quads);
+        if (encoded.length > budget) {
+            return;
+        }
+        final ByteBuffer entry = ByteBuffer.allocateDirect(encoded.length);
+        entry.put(encoded).flip();
+        synchronized (entries) {
+            final ByteBuffer previous = entries.put(key, entry);
+            size += entry.capacity() - (previous != null ? previous.capacity() : 0);
+            final Iterator<ByteBuffer> eldest = entries.values().iterator();
+            while (size > budget && eldest.hasNext()) {
+                size -= eldest.next().capacity();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public long getBudget() {
+        return budget;
+    }
+
+    @Override
+    public long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    @Override
+    public int getEntryCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private static byte[] encode(final List<Quad> quads) {
+        final Map<Node, Integer> dictionary = new HashMap<>();
+        final ByteArrayOutputStream terms = new ByteArrayOutputStream();
+        final ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        for (final Quad quad : quads) {
+            final Node graph = quad.isDefaultGraph() ? Quad.defaultGraphNodeGenerated : quad.getGraph();
+            for (final Node node : new Node[] {graph, quad.getSubject(), quad.getPredicate(), quad.getObject()}) {
+                Integer index = dictionary.get(node);
+                if (index == null) {
+                    index = dictionary.size();
+                    dictionary.put(node, index);
+                    writeTerm(terms, node);
+                }
+                writeVarInt(rows, index);
+            }
+        }
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(terms.size() + rows.size() + 10);
+        writeVarInt(output, dictionary.size());
+        writeVarInt(output, quads.size());
+        terms.writeTo(output);
+        rows.writeTo(output);
+        return output.toByteArray();
+    }
+
+    private static void writeTerm(final ByteArrayOutputStream output, final Node node) {
+        if (Quad.isDefaultGraph(node)) {
+            output.write(DEFAULT_GRAPH);
+        } else if (node.isURI()) {
+            output.write(IRI);
+            writeString(output, node.getURI());
+        } else if (node.isBlank()) {
+            output.write(BLANK);
+            writeString(output, node.getBlankNodeLabel());
+        } else if (!node.getLiteralLanguage().isEmpty()) {
+            output.write(LANG_LITERAL);
+            writeString(output, node.getLiteralLexicalForm());
+            writeString(output, node.getLiteralLanguage());
+        } else {
+            output.write(TYPED_LITERAL);
+            writeString(output, node.getLiteralLexicalForm());
+            writeString(output, node.getLiteralDatatypeURI());
+        }
+    }
+
+    private static void writeString(final ByteArrayOutputStream output, final String value) {
+        final byte[] bytes = value.getBytes(UTF_8);
+        writeVarInt(output, bytes.length);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarInt(final ByteArrayOutputStream output, final int value) {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            output.write((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        output.write(remaining);
+    }
+
+    private static int readVarInt(final ByteBuffer input) {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = input.get();
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return value;
+    }
+
+    private static String readString(final ByteBuffer input) {
+        final byte[] bytes = new byte[readVarInt(input)];
+        input.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static final class Decoder implements Iterator<Quad> {
+        private final ByteBuffer input;
+        private final Node[] terms;
+        private int remaining;
+
+        private Decoder(final ByteBuffer input) {
+            this.input = input;
+            this.terms = new Node[readVarInt(input)];
+            this.remaining = readVarInt(input);
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = readTerm(input);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Quad next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            return new Quad(terms[readVarInt(input)], terms[readVarInt(input)], terms[readVarInt(input)],
+                    terms[readVarInt(input)]);
+        }
+
+        private static Node readTerm(final ByteBuffer input) {
+            final byte type = input.get();
+            switch (type) {
+                case DEFAULT_GRAPH:
+                    return Quad.defaultGraphNodeGenerated;
+                case IRI:
+                    return NodeFactory.createURI(readString(input));
+                case BLANK:
+                    return NodeFactory.createBlankNode(readString(input));
+                case LANG_LITERAL:
+                    return NodeFactory.createLiteral(readString(input), readString(input));
+                default:
+                    return NodeFactory.createLiteral(readString(input),
+                            TypeMapper.getInstance().getSafeTypeByName(readString(input)));
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+/**
+ * Metrics for the memento cache of a memento service.
+ *
+ * <p>These are exported over JMX as {@code org.trellisldp.ext.aws:type=MementoCache,name=<service>}.
+ */
+public interface MementoCacheMXBean {
+
+    /**
+     * Get the largest number of bytes that the cache may hold.
+     * @return the byte budget
+     */
+    long getBudget();
+
+    /**
+     * Get the number of bytes of encoded mementos that the cache holds.
+     * @return the size, in bytes
+     */
+    long getSize();
+
+    /**
+     * Get the number of cached mementos.
+     * @return the number of entries
+     */
+    int getEntryCount();
+
+    /**
+     * Get the number of lookups that found a cached memento.
+     * @return the number of hits
+     */
+    long getHitCount();
+
+    /**
+     * Get the number of lookups that did not find a cached memento.
+     * @return the number of misses
+     */
+    long getMissCount();
+
+    /**
+     * Get the number of mementos that were evicted to stay within the byte budget.
+     * @return the number of evictions
+     */
+    long getEvictionCount();
+}
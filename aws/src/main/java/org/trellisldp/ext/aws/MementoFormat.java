@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Locale.ROOT;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFLanguages;
+
+/**
+ * The RDF syntaxes in which mementos are stored.
+ *
+ * <p>The syntax of a memento is recorded in the {@code Content-Type} of its S3 object, so that mementos written
+ * in any supported syntax remain readable after the configured format changes.
+ */
+enum MementoFormat {
+
+    /** N-Quads, a line-based text syntax. */
+    NQUADS("application/n-quads", ".nq", RDFFormat.NQUADS, Lang.NQUADS),
+
+    /** RDF Thrift, a binary syntax that is considerably cheaper to parse than text. */
+    THRIFT("application/rdf+thrift", ".trdf", RDFFormat.RDF_THRIFT, RDFLanguages.THRIFT);
+
+    private final String contentType;
+    private final String suffix;
+    private final RDFFormat format;
+    private final Lang lang;
+
+    MementoFormat(final String contentType, final String suffix, final RDFFormat format, final Lang lang) {
+        this.contentType = contentType;
+        this.suffix = suffix;
+        this.format = format;
+        this.lang = lang;
+    }
+
+    /**
+     * Get the content type of a memento in this format.
+     * @return the content type
+     */
+    String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Get a file name suffix for a memento in this format.
+     * @return the file name suffix
+     */
+    String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * Get the format with which to write a memento.
+     * @return the RDF output format
+     */
+    RDFFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Get the language with which to parse a memento.
+     * @return the RDF language
+     */
+    Lang getLang() {
+        return lang;
+    }
+
+    /**
+     * Get a memento format by its configured name.
+     * @param name the name, {@code nquads} or {@code thrift}
+     * @return the memento format
+     */
+    static MementoFormat of(final String name) {
+        for (final MementoFormat value : values()) {
+            if (value.name().equals(name.trim().toUpperCase(ROOT))) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported memento format: " + name);
+    }
+
+    /**
+     * Get the format of a stored memento.
+     * @param contentType the content type of the S3 object, may be {@code null}
+     * @return the memento format
+     */
+    static MementoFormat forContentType(final String contentType) {
+        if (contentType != null) {
+            final String type = contentType.split(";", 2)[0].trim().toLowerCase(ROOT);
+            for (final MementoFormat value : values()) {
+                if (value.contentType.equals(type)) {
+                    return value;
+                }
+            }
+        }
+        // Mementos have always been written as N-Quads unless marked otherwise
+        return NQUADS;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Objects.requireNonNull;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, in-process cache of S3 object metadata.
+ *
+ * <p>Entries are evicted in least-recently-used order once the cache is full, and expire after a fixed
+ * time so that writes made by other nodes are eventually seen. Concurrent lookups of a key that is not
+ * cached share a single HEAD request.
+ */
+final class ObjectMetadataCache {
+
+    private final AmazonS3 client;
+    private final String bucketName;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+    private final Map<String, CompletableFuture<ObjectMetadata>> inflight = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Create a metadata cache.
+     * @param client the S3 client
+     * @param bucketName the bucket name
+     * @param maxEntries the largest number of entries to hold
+     * @param ttlMillis the time, in milliseconds, after which an entry expires
+     */
+    ObjectMetadataCache(final AmazonS3 client, final String bucketName, final int maxEntries,
+            final long ttlMillis) {
+        this.client = requireNonNull(client, "client may not be null!");
+        this.bucketName = requireNonNull(bucketName, "bucket name may not be null!");
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the metadata of an object.
+     * @param key the object key
+     * @return the object metadata
+     */
+    ObjectMetadata get(final String key) {
+        final ObjectMetadata cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final CompletableFuture<ObjectMetadata> request = new CompletableFuture<>();
+        final CompletableFuture<ObjectMetadata> existing = inflight.putIfAbsent(key, request);
+        if (existing != null) {
+            return await(existing);
+        }
+        final long generation = invalidations.get();
+        try {
+            final ObjectMetadata metadata = client.getObjectMetadata(bucketName, key);
+            store(key, metadata, generation);
+            request.complete(metadata);
+            return metadata;
+        } catch (final RuntimeException ex) {
+            request.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inflight.remove(key, request);
+        }
+    }
+
+    /**
+     * Remove an object from the cache, after it has been written or deleted.
+     * @param key the object key
+     */
+    void invalidate(final String key) {
+        invalidations.incrementAndGet();
+        inflight.remove(key);
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Get the number of cached entries.
+     * @return the number of entries
+     */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private ObjectMetadata lookup(final String key) {
+        synchronized (entries) {
+            final Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() >= entry.expires) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.metadata;
+        }
+    }
+
+    private void store(final String key, final ObjectMetadata metadata, final long generation) {
+        synchronized (entries) {
+            // A HEAD that raced with a write may have read the old object, so its result is not kept
+            if (invalidations.get() == generation) {
+                entries.put(key, new Entry(metadata, System.currentTimeMillis() + ttlMillis));
+            }
+        }
+    }
+
+    private static ObjectMetadata await(final CompletableFuture<ObjectMetadata> request) {
+        try {
+            return request.join();
+        } catch (final CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private static final class Entry {
+        private final ObjectMetadata metadata;
+        private final long expires;
+
+        private Entry(final ObjectMetadata metadata, final long expires) {
+            this.metadata = metadata;
+            this.expires = expires;
+        }
+    }
+}
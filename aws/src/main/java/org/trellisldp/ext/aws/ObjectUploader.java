@@ -0,0 +1,35 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A strategy for writing the content of a stream to an S3 object.
+ */
+@FunctionalInterface
+interface ObjectUploader {
+
+    /**
+     * Upload content to S3.
+     * @param key the object key
+     * @param metadata the object metadata
+     * @param stream the content
+     * @throws IOException if the content could not be read or written
+     */
+    void upload(String key, ObjectMetadata metadata, InputStream stream) throws IOException;
+}
@@ -0,0 +1,443 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
+import static java.util.Objects.requireNonNull;
+import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+/**
+ * An index that maps binary keys to their location in pack objects.
+ *
+ * <p>The index is stored as immutable delta objects, one per pack and shard, under
+ * {@code packs/index/<shard>/<pack id>}. Each line of a delta maps a URL-encoded binary key either to a pack
+ * key, offset, length, content type and stored digests, or, for a purged binary, to a tombstone. Pack ids
+ * sort by creation time and later deltas take precedence over earlier ones. A line may carry its own version
+ * instead of that of its delta: a binary that the repacker moves keeps the version of the write that stored
+ * it, so that a later purge still takes precedence over the moved copy. A shard is brought up to date by
+ * listing only the deltas created since shortly before its last refresh; the overlap covers clock skew
+ * between nodes and packs that took a while to write.
+ *
+ * <p>The repacker folds the deltas of each shard into a snapshot, which is itself a delta whose lines carry
+ * their own versions, and deletes the folded deltas, so that loading a shard reads a snapshot and the deltas
+ * written since. Tombstones are left out of a snapshot once they are older than the overlap: by then, any
+ * delta holding an older entry for the same binary has been folded and deleted.
+ *
+ * <p>Shards are loaded lazily and cached. A shard is refreshed when a lookup misses, at most once per
+ * refresh interval, which bounds the listing cost of reading binaries that were never packed.
+ */
+final class PackIndex {
+
+    /** The number of index shards. */
+    static final int SHARDS = 16;
+
+    private static final Logger LOGGER = getLogger(PackIndex.class);
+    private static final String TOMBSTONE = "-";
+    private static final String SEPARATOR = "\t";
+    private static final long OVERLAP_MILLIS = 5 * 60 * 1000L;
+    private static final AtomicLong CLOCK = new AtomicLong();
+
+    private final AmazonS3 client;
+    private final String bucketName;
+    private final String indexPrefix;
+    private final long refreshMillis;
+    private final Map<String, Shard> shards = new ConcurrentHashMap<>();
+
+    /**
+     * Create a pack index.
+     * @param client the S3 client
+     * @param bucketName the bucket name
+     * @param packPrefix the key prefix for pack objects
+     * @param refreshMillis the minimum time between refreshes of a shard, in milliseconds
+     */
+    PackIndex(final AmazonS3 client, final String bucketName, final String packPrefix, final long refreshMillis) {
+        this.client = requireNonNull(client, "client may not be null!");
+        this.bucketName = requireNonNull(bucketName, "bucket name may not be null!");
+        this.indexPrefix = requireNonNull(packPrefix, "pack prefix may not be null!") + "index/";
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * Find the pack location of a binary.
+     * @param key the binary key
+     * @return the location, or empty if the binary is not packed
+     */
+    Optional<PackEntry> find(final String key) {
+        final Shard shard = shards.computeIfAbsent(getShard(key), Shard::new);
+        synchronized (shard) {
+            if (!shard.entries.containsKey(key) && shard.isStale()) {
+                shard.refresh();
+            }
+            return ofNullable(shard.entries.get(key)).filter(entry -> !entry.isTombstone());
+        }
+    }
+
+    /**
+     * Load every shard of the index.
+     * @return the locations of all packed binaries
+     */
+    Map<String, PackEntry> loadAll() {
+        final Map<String, PackEntry> all = new HashMap<>();
+        for (int i = 0; i < SHARDS; i++) {
+            final Shard shard = shards.computeIfAbsent(Integer.toHexString(i), Shard::new);
+            synchronized (shard) {
+                shard.refresh();
+                shard.entries.forEach((key, entry) -> {
+                    if (!entry.isTombstone()) {
+                        all.put(key, entry);
+                    }
+                });
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Get the latest entries for some binaries, reading any deltas written since their shards were last
+     * refreshed.
+     * @param keys the binary keys
+     * @return the latest entry, tombstones included, for each key that has one
+     */
+    Map<String, PackEntry> latest(final Collection<String> keys) {
+        final Map<String, PackEntry> latest = new HashMap<>();
+        final Map<String, List<String>> byShard = new HashMap<>();
+        keys.forEach(key -> byShard.computeIfAbsent(getShard(key), s -> new ArrayList<>()).add(key));
+        byShard.forEach((name, shardKeys) -> {
+            final Shard shard = shards.computeIfAbsent(name, Shard::new);
+            synchronized (shard) {
+                shard.refresh();
+                shardKeys.forEach(key -> ofNullable(shard.entries.get(key)).ifPresent(e -> latest.put(key, e)));
+            }
+        });
+        return latest;
+    }
+
+    /**
+     * Record the locations of a set of binaries.
+     * @param packId the id of the pack, which orders this update after earlier ones, unless an entry carries
+     *               its own version
+     * @param entries the binary locations, or tombstones
+     */
+    void record(final String packId, final Map<String, PackEntry> entries) {
+        final Map<String, StringBuilder> deltas = new HashMap<>();
+        entries.forEach((key, entry) -> deltas.computeIfAbsent(getShard(key), s -> new StringBuilder())
+                .append(entry.format(key)).append('\n'));
+        deltas.forEach((shard, delta) -> write(indexPrefix + shard + "/" + packId, delta));
+        // Apply the update locally, so that this node reads its own writes without waiting for a refresh
+        entries.forEach((key, entry) -> shards.computeIfAbsent(getShard(key), Shard::new).put(key,
+                    entry.version.isEmpty() ? entry.withVersion(packId) : entry));
+    }
+
+    /**
+     * Fold the deltas of every shard into a snapshot, and delete the folded deltas.
+     */
+    void compact() {
+        for (int i = 0; i < SHARDS; i++) {
+            final Shard shard = shards.computeIfAbsent(Integer.toHexString(i), Shard::new);
+            synchronized (shard) {
+                shard.compact();
+            }
+        }
+    }
+
+    private void write(final String deltaKey, final CharSequence delta) {
+        final byte[] bytes = delta.toString().getBytes(UTF_8);
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType("text/tab-separated-values");
+        metadata.setContentLength(bytes.length);
+        client.putObject(bucketName, deltaKey, new ByteArrayInputStream(bytes), metadata);
+    }
+
+    /**
+     * Create a new pack id, which sorts after the ids of packs created earlier.
+     * @return the pack id
+     */
+    static String newPackId() {
+        // Ids from this node strictly increase, so that an update never ties with one made in the same millisecond
+        final long now = System.currentTimeMillis();
+        return getPackId(CLOCK.updateAndGet(last -> Math.max(last + 1, now)), UUID.randomUUID().toString());
+    }
+
+    static String getShard(final String key) {
+        return Integer.toHexString(Math.floorMod(key.hashCode(), SHARDS));
+    }
+
+    private static String getPackId(final long millis, final String suffix) {
+        return String.format("%013d-%s", millis, suffix);
+    }
+
+    /**
+     * The location of a packed binary.
+     */
+    static final class PackEntry {
+
+        private final String packKey;
+        private final long offset;
+        private final long length;
+        private final String contentType;
+        private final Map<String, String> digests;
+        private final String version;
+
+        /**
+         * Create a pack location.
+         * @param packKey the pack key, or {@code null} for a tombstone
+         * @param offset the offset of the content in the pack
+         * @param length the length of the content
+         * @param contentType the content type of the binary, may be {@code null}
+         * @param digests the digests of the content, as S3 user metadata
+         */
+        PackEntry(final String packKey, final long offset, final long length, final String contentType,
+                final Map<String, String> digests) {
+            this(packKey, offset, length, contentType, digests, "");
+        }
+
+        private PackEntry(final String packKey, final long offset, final long length, final String contentType,
+                final Map<String, String> digests, final String version) {
+            this.packKey = packKey;
+            this.offset = offset;
+            this.length = length;
+            this.contentType = contentType;
+            this.digests = requireNonNull(digests, "digests may not be null!");
+            this.version = version;
+        }
+
+        /**
+         * Create a tombstone, which marks a binary as no longer packed.
+         * @return the tombstone
+         */
+        static PackEntry tombstone() {
+            return new PackEntry(null, 0L, 0L, null, emptyMap());
+        }
+
+        String getPackKey() {
+            return packKey;
+        }
+
+        long getOffset() {
+            return offset;
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        Optional<String> getContentType() {
+            return ofNullable(contentType);
+        }
+
+        Map<String, String> getDigests() {
+            return digests;
+        }
+
+        boolean isTombstone() {
+            return packKey == null;
+        }
+
+        /**
+         * Move this binary to another location, keeping the version of the write that stored it.
+         * @param newPackKey the new pack key
+         * @param newOffset the new offset of the content in the pack
+         * @return the moved entry
+         */
+        PackEntry moveTo(final String newPackKey, final long newOffset) {
+            return new PackEntry(newPackKey, newOffset, length, contentType, digests, version);
+        }
+
+        /**
+         * Check whether another entry is the same stored binary, at the same location.
+         * @param other the other entry
+         * @return true if both entries record the same write at the same location
+         */
+        boolean isSameAs(final PackEntry other) {
+            return other != null && Objects.equals(packKey, other.packKey) && offset == other.offset
+                && version.equals(other.version);
+        }
+
+        private PackEntry withVersion(final String packId) {
+            return new PackEntry(packKey, offset, length, contentType, digests, packId);
+        }
+
+        private boolean isNewerThan(final PackEntry other) {
+            return version.compareTo(other.version) >= 0;
+        }
+
+        private String format(final String key) {
+            if (isTombstone()) {
+                return encode(key) + SEPARATOR + TOMBSTONE + SEPARATOR + version;
+            }
+            return encode(key) + SEPARATOR + encode(packKey) + SEPARATOR + offset + SEPARATOR + length + SEPARATOR
+                + version + SEPARATOR + encode(contentType != null ? contentType : "") + SEPARATOR
+                + digests.entrySet().stream().map(e -> encode(e.getKey()) + "=" + encode(e.getValue()))
+                    .collect(joining(","));
+        }
+    }
+
+    private final class Shard {
+
+        private final String prefix;
+        private final Map<String, PackEntry> entries = new ConcurrentHashMap<>();
+        private final Set<String> loaded = new HashSet<>();
+        private long lastRefresh;
+
+        private Shard(final String shard) {
+            this.prefix = indexPrefix + shard + "/";
+        }
+
+        private boolean isStale() {
+            return System.currentTimeMillis() - lastRefresh >= refreshMillis;
+        }
+
+        private void put(final String key, final PackEntry entry) {
+            entries.merge(key, entry, (existing, update) -> update.isNewerThan(existing) ? update : existing);
+        }
+
+        private void compact() {
+            final long started = System.currentTimeMillis();
+            refresh();
+            if (loaded.size() <= 1) {
+                // The shard is already a single snapshot, or empty
+                return;
+            }
+            final List<String> folded = new ArrayList<>(loaded);
+            final String cutoff = getPackId(started - OVERLAP_MILLIS, "");
+            entries.values().removeIf(entry -> entry.isTombstone() && entry.version.compareTo(cutoff) < 0);
+
+            final StringBuilder snapshot = new StringBuilder();
+            entries.forEach((key, entry) -> snapshot.append(entry.format(key)).append('\n'));
+            loaded.clear();
+            if (snapshot.length() > 0) {
+                final String snapshotKey = prefix + newPackId();
+                write(snapshotKey, snapshot);
+                loaded.add(snapshotKey);
+            }
+            for (int i = 0; i < folded.size(); i += BatchDeleter.MAX_BATCH_SIZE) {
+                client.deleteObjects(new DeleteObjectsRequest(bucketName).withQuiet(true).withKeys(folded
+                            .subList(i, Math.min(i + BatchDeleter.MAX_BATCH_SIZE, folded.size())).stream()
+                            .map(KeyVersion::new).collect(toList())));
+            }
+            LOGGER.debug("Folded {} pack index deltas into a snapshot of {}", folded.size(), prefix);
+        }
+
+        private void refresh() {
+            final long started = System.currentTimeMillis();
+            final ListObjectsV2Request req = new ListObjectsV2Request().withBucketName(bucketName).withPrefix(prefix)
+                .withStartAfter(lastRefresh > 0 ? prefix + getPackId(lastRefresh - OVERLAP_MILLIS, "") : null);
+            ListObjectsV2Result result;
+            do {
+                result = client.listObjectsV2(req);
+                for (final S3ObjectSummary summary : result.getObjectSummaries()) {
+                    if (loaded.add(summary.getKey())) {
+                        load(summary.getKey(), summary.getKey().substring(prefix.length()));
+                    }
+                }
+                req.setContinuationToken(result.getNextContinuationToken());
+            } while (result.isTruncated());
+            lastRefresh = started;
+        }
+
+        private void load(final String deltaKey, final String packId) {
+            LOGGER.debug("Loading pack index delta {}", deltaKey);
+            try (final InputStream input = client.getObject(bucketName, deltaKey).getObjectContent();
+                    final BufferedReader reader = new BufferedReader(new InputStreamReader(input, UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final String[] fields = line.split(SEPARATOR, -1);
+                    if (fields.length >= 2 && TOMBSTONE.equals(fields[1])) {
+                        put(decode(fields[0]), PackEntry.tombstone().withVersion(getVersion(fields, 2, packId)));
+                    } else if (fields.length >= 4) {
+                        put(decode(fields[0]), parseEntry(fields, packId));
+                    }
+                }
+            } catch (final IOException ex) {
+                throw new UncheckedIOException("Error reading pack index " + deltaKey, ex);
+            }
+        }
+    }
+
+    private static PackEntry parseEntry(final String[] fields, final String packId) {
+        // Lines written before entries held a content type and digests have fewer fields
+        final String contentType = fields.length > 5 && !fields[5].isEmpty() ? decode(fields[5]) : null;
+        final Map<String, String> digests = fields.length > 6 ? parseDigests(fields[6]) : emptyMap();
+        return new PackEntry(decode(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3]), contentType,
+                digests, getVersion(fields, 4, packId));
+    }
+
+    private static Map<String, String> parseDigests(final String field) {
+        final Map<String, String> digests = new HashMap<>();
+        for (final String digest : field.split(",")) {
+            final int separator = digest.indexOf('=');
+            if (separator > 0) {
+                digests.put(decode(digest.substring(0, separator)), decode(digest.substring(separator + 1)));
+            }
+        }
+        return digests;
+    }
+
+    private static String getVersion(final String[] fields, final int index, final String packId) {
+        // Lines without a version of their own, including those written before lines had one, take the delta's
+        return fields.length > index && !fields[index].isEmpty() ? fields[index] : packId;
+    }
+
+    private static String encode(final String value) {
+        try {
+            return URLEncoder.encode(value, UTF_8.name());
+        } catch (final UnsupportedEncodingException ex) {
+            throw new IllegalStateException("UTF-8 is not supported", ex);
+        }
+    }
+
+    private static String decode(final String value) {
+        try {
+            return URLDecoder.decode(value, UTF_8.name());
+        } catch (final UnsupportedEncodingException ex) {
+            throw new IllegalStateException("UTF-8 is not supported", ex);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Objects.requireNonNull;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Optional;
+
+import org.trellisldp.ext.aws.PackIndex.PackEntry;
+
+/**
+ * A binary stored as a byte range of a shared pack object.
+ *
+ * <p>The content type and digests of a packed binary are kept in its index entry, since the pack object's
+ * metadata is shared. Packed binaries are never compressed.
+ */
+final class PackedBinary implements ChannelBinary {
+
+    private final AmazonS3 client;
+    private final String bucketName;
+    private final PackEntry entry;
+
+    /**
+     * Create a packed binary.
+     * @param client the S3 client
+     * @param bucketName the bucket name
+     * @param entry the location of the binary in its pack
+     */
+    PackedBinary(final AmazonS3 client, final String bucketName, final PackEntry entry) {
+        this.client = requireNonNull(client, "client may not be null!");
+        this.bucketName = requireNonNull(bucketName, "bucket name may not be null!");
+        this.entry = requireNonNull(entry, "pack entry may not be null!");
+    }
+
+    /**
+     * Get the size of the binary.
+     * @return the size, in bytes
+     */
+    public long getSize() {
+        return entry.getLength();
+    }
+
+    /**
+     * Get the content type that was stored with the binary.
+     * @return the content type, if one was stored
+     */
+    public Optional<String> getContentType() {
+        return entry.getContentType();
+    }
+
+    @Override
+    public InputStream getContent() {
+        return getContent(0L, entry.getLength() - 1);
+    }
+
+    @Override
+    public ReadableByteChannel getChannel(final long from, final long to) {
+        return Channels.newChannel(getContent(from, to));
+    }
+
+    @Override
+    public InputStream getContent(final long from, final long to) {
+        // Clamp the range to this binary, so that it never reads into a neighbour in the pack
+        final long last = Math.min(to, entry.getLength() - 1);
+        if (from > last) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        return client.getObject(new GetObjectRequest(bucketName, entry.getPackKey())
+                .withRange(entry.getOffset() + from, entry.getOffset() + last)).getObjectContent();
+    }
+}
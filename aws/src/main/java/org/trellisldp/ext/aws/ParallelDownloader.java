@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Objects.requireNonNull;
+
+import com.amazonaws.services.s3.AmazonS3;
+
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Settings for reading large S3 objects with concurrent, ranged GET requests.
+ */
+final class ParallelDownloader {
+
+    private final long threshold;
+    private final int chunkSize;
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    /**
+     * Create a parallel downloader.
+     * @param threshold the smallest range, in bytes, that will be fetched in parallel
+     * @param chunkSize the size of each ranged request
+     * @param parallelism the maximum number of ranged requests in flight for a single stream
+     * @param executor the executor on which ranged requests are run, shared by every stream
+     */
+    ParallelDownloader(final long threshold, final int chunkSize, final int parallelism,
+            final ExecutorService executor) {
+        if (chunkSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("Chunk size and parallelism must be positive!");
+        }
+        this.threshold = threshold;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.executor = requireNonNull(executor, "executor may not be null!");
+    }
+
+    /**
+     * Check whether a range is large enough to be fetched in parallel.
+     * @param length the length of the range, in bytes
+     * @return true if the range should be fetched in parallel
+     */
+    boolean accepts(final long length) {
+        return length >= threshold && length > chunkSize;
+    }
+
+    /**
+     * Open a stream over a byte range of an S3 object.
+     * @param client the S3 client
+     * @param bucketName the bucket name
+     * @param key the object key
+     * @param from the first byte
+     * @param to the last byte, inclusive
+     * @return the content
+     */
+    InputStream open(final AmazonS3 client, final String bucketName, final String key, final long from,
+            final long to) {
+        return new S3PrefetchInputStream(client, bucketName, key, from, to, chunkSize, parallelism, executor);
+    }
+
+    /**
+     * Stop the executor on which ranged requests are run.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+}
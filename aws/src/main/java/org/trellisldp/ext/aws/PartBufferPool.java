@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A bounded pool of reusable byte buffers.
+ *
+ * <p>Buffers are allocated lazily, up to the configured maximum. Once that many buffers are checked out,
+ * callers block until one is released, so the memory held by the pool never exceeds
+ * {@code bufferSize * maxBuffers} bytes.
+ *
+ * <p>The buffer size and count may be changed while the pool is in use. Buffers that are already checked
+ * out keep their size; those released after a change of size are discarded rather than reused.
+ */
+class PartBufferPool {
+
+    private final Deque<byte[]> available = new ArrayDeque<>();
+    private int bufferSize;
+    private int maxBuffers;
+    private int checkedOut;
+
+    /**
+     * Create a buffer pool.
+     * @param bufferSize the size of each buffer
+     * @param maxBuffers the maximum number of buffers
+     */
+    PartBufferPool(final int bufferSize, final int maxBuffers) {
+        resize(bufferSize, maxBuffers);
+    }
+
+    /**
+     * Get the size of new buffers in this pool.
+     * @return the buffer size
+     */
+    synchronized int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Get the maximum number of buffers.
+     * @return the maximum number of buffers
+     */
+    synchronized int getMaxBuffers() {
+        return maxBuffers;
+    }
+
+    /**
+     * Change the size and number of buffers.
+     * @param bufferSize the size of each new buffer
+     * @param maxBuffers the maximum number of buffers
+     */
+    synchronized void resize(final int bufferSize, final int maxBuffers) {
+        if (bufferSize <= 0 || maxBuffers <= 0) {
+            throw new IllegalArgumentException("Buffer size and count must be positive!");
+        }
+        if (bufferSize != this.bufferSize) {
+            available.clear();
+        }
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        notifyAll();
+    }
+
+    /**
+     * Check out a buffer, waiting until one is available.
+     * @return a buffer
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    synchronized byte[] acquire() throws InterruptedIOException {
+        try {
+            while (checkedOut >= maxBuffers) {
+                wait();
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an upload buffer");
+        }
+        checkedOut++;
+        final byte[] buffer = available.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    /**
+     * Return a buffer to the pool.
+     * @param buffer the buffer
+     */
+    synchronized void release(final byte[] buffer) {
+        checkedOut--;
+        if (buffer.length == bufferSize && available.size() < maxBuffers) {
+            available.push(buffer);
+        }
+        notifyAll();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+
+/**
+ * The content of an S3 object whose first bytes were read along with its metadata.
+ *
+ * <p>The head is fetched with a bounded, ranged GET that is read to the end, so its connection goes straight back
+ * to the pool. Anything beyond the head is only requested once a reader gets that far.
+ */
+final class PrefetchedContent {
+
+    /** The number of bytes fetched along with the metadata. */
+    static final int HEAD_SIZE = 65536;
+
+    private final byte[] head;
+    private final long length;
+    private final BiFunction<Long, Long, InputStream> ranges;
+
+    /**
+     * Create the content of an S3 object.
+     * @param head the first bytes of the object
+     * @param length the full length of the object
+     * @param ranges a function that fetches an inclusive byte range of the object
+     */
+    PrefetchedContent(final byte[] head, final long length, final BiFunction<Long, Long, InputStream> ranges) {
+        this.head = head;
+        this.length = length;
+        this.ranges = ranges;
+    }
+
+    /**
+     * Read the whole object.
+     * @return the content
+     */
+    InputStream stream() {
+        if (head.length >= length) {
+            return new ByteArrayInputStream(head);
+        }
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            private int next;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < 2;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                switch (next++) {
+                    case 0:
+                        return new ByteArrayInputStream(head);
+                    case 1:
+                        // The rest of the object is fetched once the head has been read
+                        return ranges.apply((long) head.length, length - 1);
+                    default:
+                        throw new NoSuchElementException();
+                }
+            }
+        });
+    }
+
+    /**
+     * Read an inclusive byte range of the object.
+     * @param from the first byte of the range
+     * @param to the last byte of the range
+     * @return the range
+     */
+    InputStream range(final long from, final long to) {
+        if (to < head.length) {
+            return new ByteArrayInputStream(head, (int) from, (int) (to - from + 1));
+        }
+        return ranges.apply(from, to);
+    }
+}
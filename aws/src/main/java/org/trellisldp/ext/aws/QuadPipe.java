@@ -0,0 +1,240 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.trellisldp.ext.aws.IoExecutor.daemonThreads;
+
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.Quad;
+import org.trellisldp.api.RuntimeTrellisException;
+
+/**
+ * Parses RDF incrementally, handing quads to a reader as they are parsed.
+ *
+ * <p>The input is parsed on a thread of the given executor, which passes quads to the reader through a bounded
+ * queue, so memory use does not grow with the size of the input and the first quad is available as soon as it is
+ * parsed. The parser waits while the queue is full. If the executor runs the parser on the reader's own thread,
+ * which a saturated {@link IoExecutor} does, there is nobody to drain the queue, so the parser moves to a thread
+ * of its own instead. Input that is parsed to its end is closed normally, so that its connection can be reused.
+ * Closing the pipe, or abandoning it, stops the parser and releases the input; an S3 object stream is then
+ * aborted rather than read to its end.
+ */
+final class QuadPipe implements Iterator<Quad>, AutoCloseable {
+
+    private static final Object END = new Object();
+    private static final long OFFER_MILLIS = 100L;
+    private static final ThreadFactory INLINE_PARSERS = daemonThreads("trellis-s3-parse-inline-");
+
+    private final Parser parser;
+    private Object next;
+
+    /**
+     * Start parsing an input.
+     * @param input the input
+     * @param lang the RDF syntax of the input
+     * @param capacity the largest number of parsed quads to hold
+     * @param executor the executor that runs the parser
+     */
+    QuadPipe(final InputStream input, final Lang lang, final int capacity, final Executor executor) {
+        this(input, null, lang, capacity, executor);
+    }
+
+    /**
+     * Start parsing a compressed input.
+     * @param input the input
+     * @param encoding the content encoding of the input, may be {@code null}
+     * @param lang the RDF syntax of the input
+     * @param capacity the largest number of parsed quads to hold
+     * @param executor the executor that runs the parser
+     */
+    QuadPipe(final InputStream input, final String encoding, final Lang lang, final int capacity,
+            final Executor executor) {
+        // The parser only holds a weak reference to the pipe, so that it stops if a reader abandons the pipe
+        // without closing it
+        this.parser = new Parser(input, encoding, lang, capacity, new WeakReference<>(this));
+        executor.execute(parser);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = parser.closed ? END : take();
+        }
+        return next != END;
+    }
+
+    @Override
+    public Quad next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final Quad quad = (Quad) next;
+        next = null;
+        return quad;
+    }
+
+    @Override
+    public void close() {
+        parser.close();
+    }
+
+    private Object take() {
+        final Object item;
+        try {
+            item = parser.queue.take();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new RuntimeTrellisException("Interrupted while parsing input from S3", ex);
+        }
+        if (item instanceof Exception) {
+            next = END;
+            throw new RuntimeTrellisException("Error parsing input from S3", (Exception) item);
+        }
+        return item;
+    }
+
+    private static final class Parser implements Runnable {
+
+        private final InputStream input;
+        private final String encoding;
+        private final Lang lang;
+        private final WeakReference<QuadPipe> reader;
+        private final Thread owner = Thread.currentThread();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final BlockingQueue<Object> queue;
+        private volatile InputStream decoded;
+        private volatile boolean closed;
+
+        private Parser(final InputStream input, final String encoding, final Lang lang, final int capacity,
+                final WeakReference<QuadPipe> reader) {
+            this.input = requireNonNull(input, "input may not be null!");
+            this.encoding = encoding;
+            this.lang = requireNonNull(lang, "lang may not be null!");
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.reader = reader;
+        }
+
+        @Override
+        public void run() {
+            if (Thread.currentThread() == owner) {
+                // The reader only starts taking quads once this returns, so the queue would never drain
+                INLINE_PARSERS.newThread(this).start();
+                return;
+            }
+            Object last = END;
+            try {
+                // Decompressing on this thread keeps the caller from waiting on the first bytes of the object
+                decoded = BinaryCompression.decompress(encoding, input);
+                if (closed) {
+                    release(true);
+                    return;
+                }
+                RDFParser.source(decoded).lang(lang).parse(new StreamRDFBase() {
+                    @Override
+                    public void triple(final Triple triple) {
+                        put(new Quad(Quad.defaultGraphNodeGenerated, triple));
+                    }
+
+                    @Override
+                    public void quad(final Quad quad) {
+                        put(quad);
+                    }
+                });
+            } catch (final IOException | RuntimeException ex) {
+                last = ex;
+            } finally {
+                if (!closed) {
+                    // Only input that failed to parse is left unread
+                    release(last != END);
+                }
+            }
+            if (!closed) {
+                try {
+                    put(last);
+                } catch (final Closed ex) {
+                    // The reader closed the pipe after the input was parsed
+                }
+            }
+        }
+
+        private void put(final Object item) {
+            try {
+                while (!closed) {
+                    if (queue.offer(item, OFFER_MILLIS, MILLISECONDS)) {
+                        return;
+                    }
+                    if (reader.get() == null) {
+                        close();
+                    }
+                }
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            // The reader has gone away, so stop parsing
+            throw new Closed();
+        }
+
+        private void close() {
+            if (!closed) {
+                closed = true;
+                release(true);
+                queue.clear();
+            }
+        }
+
+        private void release(final boolean abort) {
+            if (released.getAndSet(true)) {
+                return;
+            }
+            try {
+                if (abort && input instanceof S3ObjectInputStream) {
+                    // Skip reading the rest of the object before the connection is released
+                    ((S3ObjectInputStream) input).abort();
+                }
+                // Closing a decompressor also frees its native buffers
+                final InputStream stream = decoded;
+                if (stream != null) {
+                    stream.close();
+                } else {
+                    input.close();
+                }
+            } catch (final IOException ex) {
+                // The input is no longer needed
+            }
+        }
+    }
+
+    private static final class Closed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+import static org.trellisldp.ext.aws.IoExecutor.daemonThreads;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.HeadBucketRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+
+/**
+ * Routes reads to the nearest of a set of replicated buckets.
+ *
+ * <p>The primary bucket and its replicas, such as buckets kept in sync with S3 Cross-Region Replication, are
+ * ranked by a moving average of their request latency, which is measured by a periodic probe of each bucket
+ * and by the reads themselves. A read is sent to the fastest healthy bucket. A replica that does not hold the
+ * object yet, because replication lags behind writes, or that fails, is passed over for the primary bucket; a
+ * replica that fails is not used again until a probe succeeds.
+ *
+ * <p>Replication may lag, but it never serves the wrong content of an object that exists, because binaries
+ * and mementos are written once under keys that are not reused.
+ */
+final class ReplicaRouter {
+
+    private static final Logger LOGGER = getLogger(ReplicaRouter.class);
+    private static final double WEIGHT = 0.2;
+
+    private final List<Replica> replicas;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Create a router.
+     * @param primary the primary bucket
+     * @param replicas the replica buckets
+     * @param probeMillis the time, in milliseconds, between probes of the buckets
+     */
+    ReplicaRouter(final Replica primary, final List<Replica> replicas, final long probeMillis) {
+        this.replicas = new ArrayList<>();
+        this.replicas.add(requireNonNull(primary, "primary bucket may not be null!"));
+        this.replicas.addAll(replicas);
+        // Rank the buckets before the first read
+        probe();
+        final long interval = Math.max(1L, probeMillis);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("trellis-s3-replica-"));
+        scheduler.scheduleWithFixedDelay(this::probe, interval, interval, MILLISECONDS);
+    }
+
+    /**
+     * Create the replicas named in the configuration.
+     *
+     * <p>Each replica is named as {@code bucket@region}, or just {@code bucket} for a bucket that is reached
+     * through the client's default region.
+     *
+     * @param names the replica names
+     * @param cacheSize the size of each replica's metadata cache, or zero for none
+     * @param cacheTtl the time, in milliseconds, after which cached metadata expires
+     * @return the replicas
+     */
+    static List<Replica> connect(final String[] names, final int cacheSize, final long cacheTtl) {
+        final List<Replica> replicas = new ArrayList<>();
+        for (final String name : names) {
+            final String[] parts = name.trim().split("@", 2);
+            final AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard();
+            if (parts.length == 2) {
+                builder.withRegion(parts[1]);
+            } else {
+                builder.withForceGlobalBucketAccessEnabled(true);
+            }
+            final AmazonS3 client = builder.build();
+            replicas.add(new Replica(client, parts[0],
+                        cacheSize > 0 ? new ObjectMetadataCache(client, parts[0], cacheSize, cacheTtl) : null));
+        }
+        return replicas;
+    }
+
+    /**
+     * Find the nearest bucket that holds an object.
+     * @param key the object key
+     * @return the bucket and the object metadata
+     * @throws AmazonS3Exception if the object is not in the primary bucket
+     */
+    Located locate(final String key) {
+        return route(key, replica -> new Located(replica, replica.head(key)));
+    }
+
+    /**
+     * Send a request for an object to the nearest bucket that holds it.
+     *
+     * <p>If the nearest replica does not yet hold the object, or fails, the request is sent to the primary bucket.
+     *
+     * @param key the object key
+     * @param request the request, given the bucket to send it to
+     * @param <T> the response type
+     * @return the response
+     * @throws AmazonS3Exception if the object is not in the primary bucket
+     */
+    <T> T route(final String key, final Function<Replica, T> request) {
+        final Replica primary = replicas.get(0);
+        final Replica nearest = getNearest();
+        if (nearest != primary) {
+            final long start = System.nanoTime();
+            try {
+                final T response = request.apply(nearest);
+                nearest.record(System.nanoTime() - start);
+                return response;
+            } catch (final AmazonS3Exception ex) {
+                if (ex.getStatusCode() == 404) {
+                    LOGGER.debug("{} is not yet replicated to {}", key, nearest.getBucketName());
+                    nearest.record(System.nanoTime() - start);
+                } else {
+                    nearest.fail(ex);
+                }
+            } catch (final SdkClientException ex) {
+                nearest.fail(ex);
+            }
+        }
+        final long start = System.nanoTime();
+        final T response = request.apply(primary);
+        primary.record(System.nanoTime() - start);
+        return response;
+    }
+
+    /**
+     * Measure the latency of each bucket, and return failed replicas to use when they respond again.
+     */
+    void probe() {
+        for (final Replica replica : replicas) {
+            final long start = System.nanoTime();
+            try {
+                replica.getClient().headBucket(new HeadBucketRequest(replica.getBucketName()));
+                replica.record(System.nanoTime() - start);
+                replica.healthy = true;
+            } catch (final RuntimeException ex) {
+                replica.fail(ex);
+            }
+        }
+    }
+
+    /**
+     * Stop the background probe.
+     */
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    private Replica getNearest() {
+        Replica nearest = replicas.get(0);
+        for (final Replica replica : replicas) {
+            if (replica.healthy && replica.latency < nearest.latency) {
+                nearest = replica;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * A bucket that holds a copy of the objects.
+     */
+    static final class Replica {
+
+        private final AmazonS3 client;
+        private final String bucketName;
+        private final ObjectMetadataCache metadataCache;
+        private volatile double latency = Double.MAX_VALUE;
+        private volatile boolean healthy = true;
+
+        /**
+         * Create a replica.
+         * @param client the S3 client for the bucket
+         * @param bucketName the bucket name
+         * @param metadataCache the metadata cache for the bucket, may be {@code null}
+         */
+        Replica(final AmazonS3 client, final String bucketName, final ObjectMetadataCache metadataCache) {
+            this.client = requireNonNull(client, "client may not be null!");
+            this.bucketName = requireNonNull(bucketName, "bucket name may not be null!");
+            this.metadataCache = metadataCache;
+        }
+
+        AmazonS3 getClient() {
+            return client;
+        }
+
+        String getBucketName() {
+            return bucketName;
+        }
+
+        ObjectMetadataCache getMetadataCache() {
+            return metadataCache;
+        }
+
+        /**
+         * Get the latency of the bucket.
+         * @return the moving average of the request latency, in nanoseconds
+         */
+        double getLatency() {
+            return latency;
+        }
+
+        boolean isHealthy() {
+            return healthy;
+        }
+
+        private ObjectMetadata head(final String key) {
+            return metadataCache != null ? metadataCache.get(key) : client.getObjectMetadata(bucketName, key);
+        }
+
+        private synchronized void record(final long nanos) {
+            latency = latency == Double.MAX_VALUE ? nanos : latency + WEIGHT * (nanos - latency);
+        }
+
+        private void fail(final RuntimeException ex) {
+            if (healthy) {
+                LOGGER.warn("Bucket {} is not responding, reading from other buckets: {}", bucketName,
+                        ex.getMessage());
+            }
+            healthy = false;
+        }
+    }
+
+    /**
+     * An object found in one of the buckets.
+     */
+    static final class Located {
+
+        private final Replica replica;
+        private final ObjectMetadata metadata;
+
+        private Located(final Replica replica, final ObjectMetadata metadata) {
+            this.replica = replica;
+            this.metadata = metadata;
+        }
+
+        Replica getReplica() {
+            return replica;
+        }
+
+        ObjectMetadata getMetadata() {
+            return metadata;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+import static org.trellisldp.ext.aws.IoExecutor.daemonThreads;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ListMultipartUploadsRequest;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.MultipartUpload;
+import com.amazonaws.services.s3.model.MultipartUploadListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+
+import java.io.ByteArrayInputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.slf4j.Logger;
+
+/**
+ * Records the state of multipart uploads so that a failed upload can be resumed.
+ *
+ * <p>When a multipart upload starts, its upload id is recorded in a small state object under
+ * {@code uploads/}, keyed by the binary key, together with the content type and encoding that were fixed
+ * when it was initiated. S3 keeps the parts of an upload that is neither completed nor aborted, so a
+ * later upload to the same key, with the same type and encoding, continues the recorded upload. The
+ * parts that S3 already holds are listed, and a part is skipped when its size and MD5 match the new
+ * content. Concurrent uploads to the same key are not coordinated, so only retries should overlap.
+ *
+ * <p>A background sweeper aborts uploads that were started longer ago than the expiry time.
+ */
+final class ResumableUploads {
+
+    private static final Logger LOGGER = getLogger(ResumableUploads.class);
+    private static final String UPLOAD_ID = "trellis.upload.id";
+    private static final String FINGERPRINT = "trellis.upload.fingerprint";
+    private static final String UPLOADS_PREFIX = "uploads/";
+    private static final long MAX_SWEEP_INTERVAL = 60 * 60 * 1000L;
+
+    private final AmazonS3 client;
+    private final String bucketName;
+    private final String pathPrefix;
+    private final long expiryMillis;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Create a record of resumable uploads.
+     * @param client the S3 client
+     * @param bucketName the bucket name
+     * @param pathPrefix the path prefix of the binaries
+     * @param expiryMillis the time, in milliseconds, after which an incomplete upload is aborted
+     */
+    ResumableUploads(final AmazonS3 client, final String bucketName, final String pathPrefix,
+            final long expiryMillis) {
+        this.client = requireNonNull(client, "client may not be null!");
+        this.bucketName = requireNonNull(bucketName, "bucket name may not be null!");
+        this.pathPrefix = requireNonNull(pathPrefix, "path prefix may not be null!");
+        this.expiryMillis = expiryMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("trellis-s3-sweep-"));
+        final long interval = Math.max(1L, Math.min(expiryMillis, MAX_SWEEP_INTERVAL));
+        scheduler.scheduleWithFixedDelay(this::sweep, interval, interval, MILLISECONDS);
+    }
+
+    /**
+     * Find an incomplete upload that can be continued.
+     * @param key the object key
+     * @param metadata the metadata of the new upload
+     * @return the upload, if one was recorded with matching metadata and S3 still holds it
+     */
+    Optional<Upload> find(final String key, final ObjectMetadata metadata) {
+        final ObjectMetadata state;
+        try {
+            state = client.getObjectMetadata(bucketName, getStateKey(key));
+        } catch (final AmazonS3Exception ex) {
+            if (ex.getStatusCode() == 404) {
+                return Optional.empty();
+            }
+            throw ex;
+        }
+        final String uploadId = state.getUserMetaDataOf(UPLOAD_ID);
+        if (uploadId == null || !getFingerprint(metadata).equals(state.getUserMetaDataOf(FINGERPRINT))) {
+            return Optional.empty();
+        }
+
+        final Map<Integer, PartSummary> parts = new HashMap<>();
+        final ListPartsRequest req = new ListPartsRequest(bucketName, key, uploadId);
+        try {
+            PartListing listing;
+            do {
+                listing = client.listParts(req);
+                listing.getParts().forEach(part -> parts.put(part.getPartNumber(), part));
+                req.setPartNumberMarker(listing.getNextPartNumberMarker());
+            } while (listing.isTruncated());
+        } catch (final AmazonS3Exception ex) {
+            if (ex.getStatusCode() == 404) {
+                // The upload was completed, aborted or swept since its state was recorded
+                return Optional.empty();
+            }
+            throw ex;
+        }
+        LOGGER.debug("Found upload {} for {} with {} parts", uploadId, key, parts.size());
+        return Optional.of(new Upload(uploadId, parts));
+    }
+
+    /**
+     * Record a new multipart upload.
+     * @param key the object key
+     * @param uploadId the upload id
+     * @param metadata the metadata with which the upload was initiated
+     */
+    void record(final String key, final String uploadId, final ObjectMetadata metadata) {
+        final ObjectMetadata state = new ObjectMetadata();
+        state.setContentLength(0L);
+        state.addUserMetadata(UPLOAD_ID, uploadId);
+        state.addUserMetadata(FINGERPRINT, getFingerprint(metadata));
+        client.putObject(bucketName, getStateKey(key), new ByteArrayInputStream(new byte[0]), state);
+    }
+
+    /**
+     * Remove the record of an upload, once it has been completed.
+     * @param key the object key
+     */
+    void clear(final String key) {
+        client.deleteObject(bucketName, getStateKey(key));
+    }
+
+    /**
+     * Abort incomplete uploads that are older than the expiry time.
+     */
+    void sweep() {
+        try {
+            final Date cutoff = new Date(System.currentTimeMillis() - expiryMillis);
+            final ListMultipartUploadsRequest req = new ListMultipartUploadsRequest(bucketName)
+                .withPrefix(pathPrefix);
+            MultipartUploadListing listing;
+            do {
+                listing = client.listMultipartUploads(req);
+                for (final MultipartUpload upload : listing.getMultipartUploads()) {
+                    if (upload.getInitiated() != null && upload.getInitiated().before(cutoff)) {
+                        abort(upload);
+                    }
+                }
+                req.setKeyMarker(listing.getNextKeyMarker());
+                req.setUploadIdMarker(listing.getNextUploadIdMarker());
+            } while (listing.isTruncated());
+        } catch (final RuntimeException ex) {
+            LOGGER.error("Error sweeping incomplete uploads: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Stop the background sweeper.
+     */
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    private void abort(final MultipartUpload upload) {
+        LOGGER.info("Aborting incomplete upload {} for {}, started {}", upload.getUploadId(), upload.getKey(),
+                upload.getInitiated());
+        client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, upload.getKey(),
+                    upload.getUploadId()));
+        try {
+            final String stateKey = getStateKey(upload.getKey());
+            if (upload.getUploadId().equals(client.getObjectMetadata(bucketName, stateKey)
+                        .getUserMetaDataOf(UPLOAD_ID))) {
+                client.deleteObject(bucketName, stateKey);
+            }
+        } catch (final AmazonS3Exception ex) {
+            if (ex.getStatusCode() != 404) {
+                throw ex;
+            }
+        }
+    }
+
+    private String getStateKey(final String key) {
+        return pathPrefix + UPLOADS_PREFIX + key.substring(Math.min(pathPrefix.length(), key.length()));
+    }
+
+    private static String getFingerprint(final ObjectMetadata metadata) {
+        return Objects.toString(metadata.getContentType(), "") + ";"
+            + Objects.toString(metadata.getContentEncoding(), "");
+    }
+
+    /**
+     * An incomplete multipart upload.
+     */
+    static final class Upload {
+
+        private final String uploadId;
+        private final Map<Integer, PartSummary> parts;
+
+        private Upload(final String uploadId, final Map<Integer, PartSummary> parts) {
+            this.uploadId = uploadId;
+            this.parts = parts;
+        }
+
+        String getUploadId() {
+            return uploadId;
+        }
+
+        /**
+         * Get a part that S3 already holds.
+         * @param partNumber the part number
+         * @return the part, if it was uploaded
+         */
+        Optional<PartSummary> getPart(final int partNumber) {
+            return Optional.ofNullable(parts.get(partNumber));
+        }
+    }
+}
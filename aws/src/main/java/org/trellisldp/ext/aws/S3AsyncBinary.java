@@ -0,0 +1,155 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Objects.requireNonNull;
+import static org.trellisldp.ext.aws.BinaryCompression.isCompressed;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+/**
+ * A Trellis binary backed by the asynchronous S3 client.
+ *
+ * <p>The content is streamed from the client's event loop: opening a stream waits only for the response
+ * headers, and the body is delivered into the returned stream as it arrives.
+ *
+ * <p>Objects written by {@link S3BinaryService} are read in the same way: compressed content is decoded
+ * according to its {@code Content-Encoding}, and a content-addressed pointer is followed to its content.
+ */
+public class S3AsyncBinary implements ChannelBinary {
+
+    private static final int INVALID_RANGE = 416;
+
+    private final S3AsyncClient client;
+    private final String bucketName;
+    private final String key;
+
+    /**
+     * Create an S3-based Binary object.
+     * @param client the asynchronous S3 client
+     * @param bucketName the bucket name
+     * @param key the key
+     */
+    public S3AsyncBinary(final S3AsyncClient client, final String bucketName, final String key) {
+        this.client = requireNonNull(client, "client may not be null!");
+        this.bucketName = requireNonNull(bucketName, "bucket name may not be null!");
+        this.key = requireNonNull(key, "key may not be null!");
+    }
+
+    @Override
+    public InputStream getContent() {
+        final ResponseInputStream<GetObjectResponse> content = getObject(key, null);
+        final Optional<String> contentKey = getContentKey(content.response().metadata());
+        if (contentKey.isPresent()) {
+            content.abort();
+            return decode(getObject(contentKey.get(), null));
+        }
+        return decode(content);
+    }
+
+    @Override
+    public ReadableByteChannel getChannel(final long from, final long to) {
+        return Channels.newChannel(getContent(from, to));
+    }
+
+    @Override
+    public InputStream getContent(final long from, final long to) {
+        final String range = "bytes=" + from + "-" + to;
+        ResponseInputStream<GetObjectResponse> content;
+        try {
+            content = getObject(key, range);
+        } catch (final S3Exception ex) {
+            // A content-addressed pointer is an empty object, which has no ranges
+            final Optional<String> contentKey = ex.statusCode() == INVALID_RANGE ? getContentKey(join(client
+                        .headObject(HeadObjectRequest.builder().bucket(bucketName).key(key).build())).metadata())
+                : Optional.empty();
+            if (!contentKey.isPresent()) {
+                throw ex;
+            }
+            content = getObject(contentKey.get(), range);
+        }
+        if (isCompressed(content.response().contentEncoding())) {
+            // The stored bytes are compressed, so a range of them is not a range of the content
+            content.abort();
+            return getDecodedRange(from, to);
+        }
+        return content;
+    }
+
+    private InputStream getDecodedRange(final long from, final long to) {
+        final InputStream content = getContent();
+        try {
+            IOUtils.skip(content, from);
+        } catch (final IOException ex) {
+            try {
+                content.close();
+            } catch (final IOException inner) {
+                ex.addSuppressed(inner);
+            }
+            throw new UncheckedIOException("Error reading binary from S3", ex);
+        }
+        return new BoundedInputStream(content, to - from + 1);
+    }
+
+    private ResponseInputStream<GetObjectResponse> getObject(final String objectKey, final String range) {
+        return join(client.getObject(GetObjectRequest.builder().bucket(bucketName).key(objectKey).range(range)
+                    .build(), AsyncResponseTransformer.toBlockingInputStream()));
+    }
+
+    private static InputStream decode(final ResponseInputStream<GetObjectResponse> content) {
+        try {
+            return BinaryCompression.decompress(content.response().contentEncoding(), content);
+        } catch (final IOException ex) {
+            content.abort();
+            throw new UncheckedIOException("Error decoding binary from S3", ex);
+        }
+    }
+
+    private static Optional<String> getContentKey(final Map<String, String> metadata) {
+        // S3 returns user metadata keys in lower case
+        return metadata.entrySet().stream()
+            .filter(e -> e.getKey().equalsIgnoreCase(ContentAddressedStorage.CONTENT_KEY))
+            .map(Map.Entry::getValue).findFirst();
+    }
+
+    private static <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (final CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+}
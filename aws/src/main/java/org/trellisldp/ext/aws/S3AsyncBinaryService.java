@@ -0,0 +1,189 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static com.amazonaws.ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.eclipse.microprofile.config.ConfigProvider.getConfig;
+import static org.trellisldp.ext.aws.S3BinaryService.CONFIG_BINARY_BUCKET;
+import static org.trellisldp.ext.aws.S3BinaryService.CONFIG_BINARY_CONTENT_ADDRESSED;
+import static org.trellisldp.ext.aws.S3BinaryService.CONFIG_BINARY_DIRECT_UPLOAD;
+import static org.trellisldp.ext.aws.S3BinaryService.CONFIG_BINARY_EXECUTOR_QUEUE;
+import static org.trellisldp.ext.aws.S3BinaryService.CONFIG_BINARY_EXECUTOR_THREADS;
+import static org.trellisldp.ext.aws.S3BinaryService.CONFIG_BINARY_EXECUTOR_VIRTUAL;
+import static org.trellisldp.ext.aws.S3BinaryService.CONFIG_BINARY_KEY_SHARDS;
+import static org.trellisldp.ext.aws.S3BinaryService.CONFIG_BINARY_PACK_THRESHOLD;
+import static org.trellisldp.ext.aws.S3BinaryService.CONFIG_BINARY_PATH_PREFIX;
+import static org.trellisldp.ext.aws.S3BinaryService.CONFIG_BINARY_UPLOAD_BUFFERS;
+import static org.trellisldp.ext.aws.S3BinaryService.CONFIG_BINARY_UPLOAD_PART_SIZE;
+import static org.trellisldp.ext.aws.S3BinaryService.MIN_PART_SIZE;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Alternative;
+import javax.inject.Inject;
+
+import org.apache.commons.rdf.api.IRI;
+import org.eclipse.microprofile.config.Config;
+import org.trellisldp.api.Binary;
+import org.trellisldp.api.BinaryMetadata;
+import org.trellisldp.api.BinaryService;
+import org.trellisldp.api.DefaultIdentifierService;
+import org.trellisldp.api.IdentifierService;
+import org.trellisldp.api.RuntimeTrellisException;
+
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+
+/**
+ * An S3-based binary service built on the non-blocking AWS SDK v2 client.
+ *
+ * <p>S3 requests run on the client's event loop, so an in-flight request does not hold a thread. Only
+ * reading the caller's input stream during {@link #setContent} blocks, and that runs on a dedicated
+ * executor. This service uses the same bucket, path prefix, upload and executor settings as
+ * {@link S3BinaryService}, and reads and writes the same object layout.
+ *
+ * <p>Binaries are read as {@link S3BinaryService} stores them: compressed content is decoded and
+ * content-addressed pointers are followed. Content is always written uncompressed, as its own object, and
+ * without stored digests. Packing, content-addressed writes and direct uploads are not supported; the service
+ * refuses to start if {@link S3BinaryService#CONFIG_BINARY_PACK_THRESHOLD},
+ * {@link S3BinaryService#CONFIG_BINARY_CONTENT_ADDRESSED} or {@link S3BinaryService#CONFIG_BINARY_DIRECT_UPLOAD}
+ * is set, since binaries stored that way could not be read or purged correctly.
+ *
+ * <p>This is a CDI alternative; it must be selected in {@code beans.xml} to replace {@link S3BinaryService}.
+ */
+@Alternative
+@ApplicationScoped
+public class S3AsyncBinaryService implements BinaryService {
+
+    private static final String PREFIX = "s3://";
+    private static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    private static final int DEFAULT_UPLOAD_BUFFERS = 8;
+    private static final int DEFAULT_EXECUTOR_QUEUE = 1000;
+
+    private final IdentifierService idService = new DefaultIdentifierService();
+    private final S3AsyncClient client;
+    private final String bucketName;
+    private final String pathPrefix;
+    private final KeyShards keyShards;
+    private final int partSize;
+    private final int partsInFlight;
+    private final Executor executor;
+
+    /**
+     * Create an asynchronous S3-based binary service.
+     */
+    @Inject
+    public S3AsyncBinaryService() {
+        this(S3AsyncClient.create(), getConfig());
+    }
+
+    /**
+     * Create an asynchronous S3-based binary service.
+     * @param client the asynchronous S3 client
+     * @param config the configuration
+     */
+    public S3AsyncBinaryService(final S3AsyncClient client, final Config config) {
+        this(client, config.getValue(CONFIG_BINARY_BUCKET, String.class),
+                config.getOptionalValue(CONFIG_BINARY_PATH_PREFIX, String.class).orElse(""), config);
+    }
+
+    /**
+     * Create an asynchronous S3-based binary service.
+     *
+     * <p>All other settings take their default values.
+     *
+     * @param client the asynchronous S3 client
+     * @param bucketName the bucket name
+     * @param pathPrefix the path prefix, may be {@code null}
+     */
+    public S3AsyncBinaryService(final S3AsyncClient client, final String bucketName, final String pathPrefix) {
+        this(client, bucketName, pathPrefix, DefaultConfig.INSTANCE);
+    }
+
+    /**
+     * Create an asynchronous S3-based binary service.
+     *
+     * <p>Any remaining settings are read from the given configuration.
+     *
+     * @param client the asynchronous S3 client
+     * @param bucketName the bucket name
+     * @param pathPrefix the path prefix, may be {@code null}
+     * @param config the configuration
+     */
+    public S3AsyncBinaryService(final S3AsyncClient client, final String bucketName, final String pathPrefix,
+            final Config config) {
+        checkUnsupported(config, CONFIG_BINARY_PACK_THRESHOLD, Integer.class, threshold -> threshold > 0);
+        checkUnsupported(config, CONFIG_BINARY_CONTENT_ADDRESSED, Boolean.class, Boolean::booleanValue);
+        checkUnsupported(config, CONFIG_BINARY_DIRECT_UPLOAD, Boolean.class, Boolean::booleanValue);
+        this.client = requireNonNull(client, "client may not be null!");
+        this.bucketName = requireNonNull(bucketName, "bucket name may not be null!");
+        this.pathPrefix = pathPrefix != null ? pathPrefix : "";
+        final int shards = config.getOptionalValue(CONFIG_BINARY_KEY_SHARDS, Integer.class).orElse(0);
+        this.keyShards = shards > 0 ? new KeyShards(shards) : null;
+        this.partSize = Math.max(MIN_PART_SIZE,
+                config.getOptionalValue(CONFIG_BINARY_UPLOAD_PART_SIZE, Integer.class).orElse(DEFAULT_PART_SIZE));
+        this.partsInFlight = config.getOptionalValue(CONFIG_BINARY_UPLOAD_BUFFERS, Integer.class)
+            .orElse(DEFAULT_UPLOAD_BUFFERS);
+        this.executor = IoExecutor.create("s3-async-binary",
+                config.getOptionalValue(CONFIG_BINARY_EXECUTOR_VIRTUAL, Boolean.class).orElse(false),
+                config.getOptionalValue(CONFIG_BINARY_EXECUTOR_THREADS, Integer.class)
+                    .orElse(DEFAULT_MAX_CONNECTIONS),
+                config.getOptionalValue(CONFIG_BINARY_EXECUTOR_QUEUE, Integer.class).orElse(DEFAULT_EXECUTOR_QUEUE));
+    }
+
+    private static <T> void checkUnsupported(final Config config, final String name, final Class<T> type,
+            final Predicate<T> enabled) {
+        if (config.getOptionalValue(name, type).filter(enabled).isPresent()) {
+            throw new IllegalArgumentException(name + " is not supported by " + S3AsyncBinaryService.class
+                    .getSimpleName() + "; use " + S3BinaryService.class.getSimpleName() + " instead");
+        }
+    }
+
+    @Override
+    public CompletionStage<Binary> get(final IRI identifier) {
+        return completedFuture(new S3AsyncBinary(client, bucketName, getKey(identifier)));
+    }
+
+    @Override
+    public CompletionStage<Void> purgeContent(final IRI identifier) {
+        return client.deleteObject(DeleteObjectRequest.builder().bucket(bucketName).key(getKey(identifier)).build())
+            .thenApply(response -> null);
+    }
+
+    @Override
+    public CompletionStage<Void> setContent(final BinaryMetadata metadata, final InputStream stream) {
+        return new S3AsyncUpload(client, bucketName, getKey(metadata.getIdentifier()),
+                metadata.getMimeType().orElse(null), partSize, partsInFlight, executor).upload(stream);
+    }
+
+    @Override
+    public String generateIdentifier() {
+        final String id = idService.getSupplier(PREFIX).get();
+        return keyShards != null ? PREFIX + keyShards.apply(id.substring(PREFIX.length())) : id;
+    }
+
+    private String getKey(final IRI identifier) {
+        final String id = identifier.getIRIString();
+        if (id.startsWith(PREFIX)) {
+            return pathPrefix + id.substring(PREFIX.length());
+        }
+        throw new RuntimeTrellisException("Invalid identifier: " + identifier);
+    }
+}
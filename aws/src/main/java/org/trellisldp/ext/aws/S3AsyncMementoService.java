@@ -0,0 +1,267 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static com.amazonaws.ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static java.util.Collections.unmodifiableSortedSet;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static org.eclipse.microprofile.config.ConfigProvider.getConfig;
+import static org.slf4j.LoggerFactory.getLogger;
+import static org.trellisldp.api.Resource.SpecialResources.MISSING_RESOURCE;
+import static org.trellisldp.ext.aws.S3MementoService.CONFIG_MEMENTO_BUCKET;
+import static org.trellisldp.ext.aws.S3MementoService.CONFIG_MEMENTO_CACHE_SIZE;
+import static org.trellisldp.ext.aws.S3MementoService.CONFIG_MEMENTO_COMPRESSION;
+import static org.trellisldp.ext.aws.S3MementoService.CONFIG_MEMENTO_COMPRESSION_LEVEL;
+import static org.trellisldp.ext.aws.S3MementoService.CONFIG_MEMENTO_EXECUTOR_QUEUE;
+import static org.trellisldp.ext.aws.S3MementoService.CONFIG_MEMENTO_EXECUTOR_THREADS;
+import static org.trellisldp.ext.aws.S3MementoService.CONFIG_MEMENTO_EXECUTOR_VIRTUAL;
+import static org.trellisldp.ext.aws.S3MementoService.CONFIG_MEMENTO_FORMAT;
+import static org.trellisldp.ext.aws.S3MementoService.CONFIG_MEMENTO_PATH_PREFIX;
+import static org.trellisldp.ext.aws.S3MementoService.getKey;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Alternative;
+import javax.inject.Inject;
+
+import org.apache.commons.rdf.api.IRI;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.trellisldp.api.MementoService;
+import org.trellisldp.api.Resource;
+
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+/**
+ * An S3-based Memento service built on the non-blocking AWS SDK v2 client.
+ *
+ * <p>S3 requests run on the client's event loop, so an in-flight request does not hold a thread.
+ * Serializing a resource may block on the resource's own storage, so that step, like parsing a memento
+ * as it is read, runs on a dedicated executor. This service uses the same bucket, path prefix and executor
+ * settings as {@link S3MementoService} and reads and writes the same object layout.
+ *
+ * <p>This is a CDI alternative; it must be selected in {@code beans.xml} to replace {@link S3MementoService}.
+ */
+@Alternative
+@ApplicationScoped
+public class S3AsyncMementoService implements MementoService {
+
+    private static final Logger LOGGER = getLogger(S3AsyncMementoService.class);
+    private static final int DEFAULT_EXECUTOR_QUEUE = 1000;
+    private static final int NOT_FOUND = 404;
+
+    private final S3AsyncClient client;
+    private final String bucketName;
+    private final String pathPrefix;
+    private final Executor executor;
+    private final MementoFormat format;
+    private final String compression;
+    private final int compressionLevel;
+    private final MementoCache cache;
+
+    /**
+     * Create an asynchronous S3-based memento service.
+     */
+    @Inject
+    public S3AsyncMementoService() {
+        this(S3AsyncClient.create(), getConfig());
+    }
+
+    /**
+     * Create an asynchronous S3-based memento service.
+     * @param client the asynchronous S3 client
+     * @param config the configuration
+     */
+    public S3AsyncMementoService(final S3AsyncClient client, final Config config) {
+        this(client, config.getValue(CONFIG_MEMENTO_BUCKET, String.class),
+                config.getOptionalValue(CONFIG_MEMENTO_PATH_PREFIX, String.class).orElse(""), config);
+    }
+
+    /**
+     * Create an asynchronous S3-based memento service.
+     *
+     * <p>All other settings take their default values.
+     *
+     * @param client the asynchronous S3 client
+     * @param bucketName the bucket name
+     * @param pathPrefix the path prefix for mementos, may be {@code null}
+     */
+    public S3AsyncMementoService(final S3AsyncClient client, final String bucketName, final String pathPrefix) {
+        this(client, bucketName, pathPrefix, DefaultConfig.INSTANCE);
+    }
+
+    /**
+     * Create an asynchronous S3-based memento service.
+     *
+     * <p>Any remaining settings are read from the given configuration.
+     *
+     * @param client the asynchronous S3 client
+     * @param bucketName the bucket name
+     * @param pathPrefix the path prefix for mementos, may be {@code null}
+     * @param config the configuration
+     */
+    public S3AsyncMementoService(final S3AsyncClient client, final String bucketName, final String pathPrefix,
+            final Config config) {
+        this.client = requireNonNull(client, "S3 client may not be null!");
+        this.bucketName = requireNonNull(bucketName, "AWS Bucket may not be null!");
+        this.pathPrefix = pathPrefix != null ? pathPrefix : "";
+        this.executor = IoExecutor.create("s3-async-memento",
+                config.getOptionalValue(CONFIG_MEMENTO_EXECUTOR_VIRTUAL, Boolean.class).orElse(false),
+                config.getOptionalValue(CONFIG_MEMENTO_EXECUTOR_THREADS, Integer.class)
+                    .orElse(DEFAULT_MAX_CONNECTIONS),
+                config.getOptionalValue(CONFIG_MEMENTO_EXECUTOR_QUEUE, Integer.class).orElse(DEFAULT_EXECUTOR_QUEUE));
+        this.format = MementoFormat.of(config.getOptionalValue(CONFIG_MEMENTO_FORMAT, String.class)
+                .orElse("nquads"));
+        this.compression = config.getOptionalValue(CONFIG_MEMENTO_COMPRESSION, String.class)
+            .map(BinaryCompression::getAvailableEncoding).orElse(null);
+        this.compressionLevel = config.getOptionalValue(CONFIG_MEMENTO_COMPRESSION_LEVEL, Integer.class)
+            .orElse(BinaryCompression.DEFAULT_LEVEL);
+        final long cacheSize = config.getOptionalValue(CONFIG_MEMENTO_CACHE_SIZE, Long.class).orElse(0L);
+        this.cache = cacheSize > 0 ? new MementoCache("s3-async-memento", cacheSize) : null;
+    }
+
+    @Override
+    public CompletionStage<Void> put(final Resource resource) {
+        final String key = getKey(pathPrefix, resource.getIdentifier(), resource.getModified());
+        return supplyAsync(() -> {
+            try {
+                final Path file = Files.createTempFile("trellis-memento-", format.getSuffix());
+                try (final OutputStream output = Files.newOutputStream(file)) {
+                    return new Memento(file, S3MementoService.write(resource, output, format, compression,
+                                compressionLevel));
+                } catch (final IOException | RuntimeException ex) {
+                    Files.delete(file);
+                    throw ex;
+                }
+            } catch (final IOException ex) {
+                throw new UncheckedIOException("Error buffering memento", ex);
+            }
+        }, executor).thenCompose(memento -> client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key)
+                    .contentType(format.getContentType()).contentEncoding(compression).metadata(memento.metadata)
+                    .build(),
+                    AsyncRequestBody.fromFile(memento.file))
+                .whenComplete((response, err) -> memento.delete()))
+            .thenApply(response -> null);
+    }
+
+    @Override
+    public CompletionStage<Resource> get(final IRI identifier, final Instant time) {
+        return head(getKey(pathPrefix, identifier, time)).thenCompose(resource -> {
+            if (resource != null) {
+                return completedFuture(resource);
+            }
+            LOGGER.debug("Fetching mementos for {}", identifier);
+            return mementos(identifier).thenCompose(allMementos -> {
+                if (allMementos.isEmpty()) {
+                    return completedFuture((Resource) MISSING_RESOURCE);
+                }
+                final SortedSet<Instant> possible = allMementos.headSet(time.truncatedTo(SECONDS));
+                return head(getKey(pathPrefix, identifier, possible.isEmpty() ? allMementos.first()
+                            : possible.last())).thenApply(r -> r != null ? r : MISSING_RESOURCE);
+            });
+        });
+    }
+
+    @Override
+    public CompletionStage<SortedSet<Instant>> mementos(final IRI identifier) {
+        final ListObjectsV2Request req = ListObjectsV2Request.builder().bucket(bucketName)
+            .prefix(getKey(pathPrefix, identifier)).delimiter("/").build();
+        return listMementos(req, new TreeSet<>()).thenApply(versions -> unmodifiableSortedSet(versions));
+    }
+
+    private CompletableFuture<SortedSet<Instant>> listMementos(final ListObjectsV2Request req,
+            final SortedSet<Instant> versions) {
+        return client.listObjectsV2(req).thenCompose(result -> {
+            result.contents().stream().map(S3Object::key).flatMap(S3MementoService::getInstant)
+                .forEachOrdered(versions::add);
+            if (Boolean.TRUE.equals(result.isTruncated())) {
+                return listMementos(req.toBuilder().continuationToken(result.nextContinuationToken()).build(),
+                        versions);
+            }
+            return completedFuture(versions);
+        });
+    }
+
+    private CompletableFuture<Resource> head(final String key) {
+        return client.headObject(HeadObjectRequest.builder().bucket(bucketName).key(key).build())
+            .handle((response, err) -> {
+                if (err == null) {
+                    return toResource(key, response);
+                }
+                final Throwable cause = err instanceof CompletionException ? err.getCause() : err;
+                if (cause instanceof S3Exception && ((S3Exception) cause).statusCode() == NOT_FOUND) {
+                    return null;
+                }
+                throw err instanceof CompletionException ? (CompletionException) err : new CompletionException(err);
+            });
+    }
+
+    private Resource toResource(final String key, final HeadObjectResponse response) {
+        // S3 lower-cases user metadata keys; the v1 metadata class looks them up case-insensitively
+        final ObjectMetadata metadata = new ObjectMetadata();
+        response.metadata().forEach(metadata::addUserMetadata);
+        metadata.setContentType(response.contentType());
+        metadata.setContentEncoding(response.contentEncoding());
+        return new S3Resource(metadata, key, () -> client.getObject(GetObjectRequest.builder().bucket(bucketName)
+                    .key(key).build(), AsyncResponseTransformer.toBlockingInputStream()).join(),
+                (from, to) -> client.getObject(GetObjectRequest.builder().bucket(bucketName).key(key)
+                    .range("bytes=" + from + "-" + to).build(), AsyncResponseTransformer.toBlockingInputStream())
+                    .join(), pathPrefix, cache, executor);
+    }
+
+    private static final class Memento {
+        private final Path file;
+        private final Map<String, String> metadata;
+
+        private Memento(final Path file, final Map<String, String> metadata) {
+            this.file = file;
+            this.metadata = metadata;
+        }
+
+        private void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (final IOException ex) {
+                LOGGER.warn("Unable to delete locally buffered memento {}: {}", file, ex.getMessage());
+            }
+        }
+    }
+}
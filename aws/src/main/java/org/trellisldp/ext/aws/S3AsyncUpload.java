@@ -0,0 +1,198 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.stream.Collectors.toList;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * An upload of a blocking input stream through the asynchronous S3 client.
+ *
+ * <p>The stream is read, one part at a time, on the supplied executor, since reading it may block.
+ * Each part is handed to the client as an {@link AsyncRequestBody} and sent without holding a thread,
+ * while the next part is read. At most {@code maxInFlight} parts are in flight at once. Content shorter
+ * than one part is written with a single PUT request.
+ */
+final class S3AsyncUpload {
+
+    private static final Logger LOGGER = getLogger(S3AsyncUpload.class);
+
+    private final S3AsyncClient client;
+    private final String bucketName;
+    private final String key;
+    private final String contentType;
+    private final int partSize;
+    private final Semaphore permits;
+    private final Executor executor;
+    private volatile Throwable failure;
+
+    /**
+     * Create an upload.
+     * @param client the asynchronous S3 client
+     * @param bucketName the bucket name
+     * @param key the object key
+     * @param contentType the content type, may be {@code null}
+     * @param partSize the part size
+     * @param maxInFlight the maximum number of parts in flight
+     * @param executor the executor on which the input stream is read
+     */
+    S3AsyncUpload(final S3AsyncClient client, final String bucketName, final String key, final String contentType,
+            final int partSize, final int maxInFlight, final Executor executor) {
+        if (partSize <= 0 || maxInFlight <= 0) {
+            throw new IllegalArgumentException("Part size and parts in flight must be positive!");
+        }
+        this.client = requireNonNull(client, "client may not be null!");
+        this.bucketName = requireNonNull(bucketName, "bucket name may not be null!");
+        this.key = requireNonNull(key, "key may not be null!");
+        this.executor = requireNonNull(executor, "executor may not be null!");
+        this.contentType = contentType;
+        this.partSize = partSize;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Upload the content of a stream.
+     *
+     * @implNote if any part fails to upload, the multipart upload is aborted before the stage completes
+     *           exceptionally
+     * @param stream the content
+     * @return the new completion stage
+     */
+    CompletableFuture<Void> upload(final InputStream stream) {
+        final byte[] buffer = new byte[partSize];
+        return supplyAsync(() -> readFirstPart(stream, buffer), executor).thenCompose(length -> {
+            if (length < partSize) {
+                return client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key)
+                        .contentType(contentType).contentLength((long) length).build(), body(buffer, length))
+                    .thenApply(response -> (Void) null);
+            }
+            return client.createMultipartUpload(CreateMultipartUploadRequest.builder().bucket(bucketName).key(key)
+                    .contentType(contentType).build())
+                .thenComposeAsync(created -> uploadParts(created.uploadId(), stream, buffer), executor);
+        });
+    }
+
+    private CompletableFuture<Void> uploadParts(final String uploadId, final InputStream stream,
+            final byte[] buffer) {
+        LOGGER.debug("Started multipart upload {} for {}", uploadId, key);
+        final List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        try {
+            int length = partSize;
+            while (length > 0) {
+                if (parts.size() == S3MultipartOutputStream.MAX_PARTS) {
+                    throw new IOException("Object " + key + " exceeds the maximum number of upload parts");
+                }
+                parts.add(uploadPart(uploadId, parts.size() + 1, buffer, length));
+                length = length == partSize ? IOUtils.read(stream, buffer) : 0;
+                if (failure != null) {
+                    throw new IOException("Error uploading part of " + key + " to S3", failure);
+                }
+            }
+        } catch (final IOException | RuntimeException ex) {
+            return abort(uploadId, parts, ex);
+        }
+
+        return allOf(parts.toArray(new CompletableFuture<?>[0]))
+            .thenCompose(v -> client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                        .bucket(bucketName).key(key).uploadId(uploadId)
+                        .multipartUpload(CompletedMultipartUpload.builder()
+                            .parts(parts.stream().map(CompletableFuture::join).collect(toList())).build())
+                        .build()))
+            .handle((response, err) -> err)
+            .thenCompose(err -> err == null ? completedFuture((Void) null) : abort(uploadId, parts, err));
+    }
+
+    private CompletableFuture<CompletedPart> uploadPart(final String uploadId, final int partNumber,
+            final byte[] buffer, final int length) throws InterruptedIOException {
+        try {
+            permits.acquire();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to upload part of " + key);
+        }
+        try {
+            final CompletableFuture<CompletedPart> part = client.uploadPart(UploadPartRequest.builder()
+                    .bucket(bucketName).key(key).uploadId(uploadId).partNumber(partNumber)
+                    .contentLength((long) length).build(), body(buffer, length))
+                .thenApply(response -> CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build());
+            part.whenComplete((completed, err) -> {
+                permits.release();
+                if (err != null) {
+                    failure = err;
+                }
+            });
+            return part;
+        } catch (final RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    private CompletableFuture<Void> abort(final String uploadId, final List<CompletableFuture<CompletedPart>> parts,
+            final Throwable cause) {
+        // Wait for parts in flight, so that none are stored after the upload is aborted
+        return allOf(parts.toArray(new CompletableFuture<?>[0])).handle((v, err) -> v)
+            .thenCompose(v -> client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                        .bucket(bucketName).key(key).uploadId(uploadId).build()))
+            .handle((response, err) -> {
+                if (err != null) {
+                    LOGGER.warn("Unable to abort multipart upload {} for {}: {}", uploadId, key, err.getMessage());
+                }
+                throw cause instanceof CompletionException ? (CompletionException) cause
+                    : new CompletionException(cause);
+            });
+    }
+
+    private int readFirstPart(final InputStream stream, final byte[] buffer) {
+        try {
+            return IOUtils.read(stream, buffer);
+        } catch (final IOException ex) {
+            throw new UncheckedIOException("Error reading binary content", ex);
+        }
+    }
+
+    private static AsyncRequestBody body(final byte[] buffer, final int length) {
+        // The request body takes a copy of the bytes, so the buffer can be refilled right away
+        return AsyncRequestBody.fromByteBuffer(ByteBuffer.wrap(buffer, 0, length));
+    }
+}
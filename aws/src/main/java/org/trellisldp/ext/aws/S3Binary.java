@@ -13,21 +13,42 @@
  */
 package org.trellisldp.ext.aws;
 
+import static java.util.Optional.ofNullable;
+import static org.trellisldp.ext.aws.BinaryCompression.isCompressed;
+
+import com.amazonaws.HttpMethod;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.ResponseHeaderOverrides;
+import com.amazonaws.services.s3.model.S3Object;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Optional;
 
-import org.trellisldp.api.Binary;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 
 /**
  * A Trellis binary implementation, based on an S3 data storage layer.
  */
-public class S3Binary implements Binary {
+public class S3Binary implements ChannelBinary {
 
     private final AmazonS3 client;
     private final String bucketName;
     private final String key;
+    private final ParallelDownloader downloader;
+    private final ObjectMetadataCache metadataCache;
+    private final ObjectMetadata pointer;
+    private volatile ObjectMetadata metadata;
 
     /**
      * Create an S3-based Binary object.
@@ -36,19 +57,199 @@ public class S3Binary implements Binary {
      * @param key the key
      */
     public S3Binary(final AmazonS3 client, final String bucketName, final String key) {
+        this(client, bucketName, key, null);
+    }
+
+    /**
+     * Create an S3-based Binary object.
+     * @param client the aws client
+     * @param bucketName the bucket name
+     * @param key the key
+     * @param downloader the parallel download settings, may be {@code null}
+     */
+    S3Binary(final AmazonS3 client, final String bucketName, final String key,
+            final ParallelDownloader downloader) {
+        this(client, bucketName, key, downloader, null);
+    }
+
+    /**
+     * Create an S3-based Binary object.
+     * @param client the aws client
+     * @param bucketName the bucket name
+     * @param key the key
+     * @param downloader the parallel download settings, may be {@code null}
+     * @param metadataCache the object metadata cache, may be {@code null}
+     */
+    S3Binary(final AmazonS3 client, final String bucketName, final String key,
+            final ParallelDownloader downloader, final ObjectMetadataCache metadataCache) {
+        this(client, bucketName, key, downloader, metadataCache, null);
+    }
+
+    /**
+     * Create an S3-based Binary object.
+     * @param client the aws client
+     * @param bucketName the bucket name
+     * @param key the key of the object that holds the content
+     * @param downloader the parallel download settings, may be {@code null}
+     * @param metadataCache the object metadata cache, may be {@code null}
+     * @param pointer the metadata of the binary's own object, when its content is shared, may be {@code null}
+     */
+    S3Binary(final AmazonS3 client, final String bucketName, final String key,
+            final ParallelDownloader downloader, final ObjectMetadataCache metadataCache,
+            final ObjectMetadata pointer) {
         this.client = client;
         this.bucketName = bucketName;
         this.key = key;
+        this.downloader = downloader;
+        this.metadataCache = metadataCache;
+        this.pointer = pointer;
+    }
+
+    /**
+     * Get the size of the binary as stored in S3.
+     *
+     * <p>When the binary is stored with a {@link #getContentEncoding content encoding}, this is the encoded size.
+     *
+     * @return the size, in bytes
+     */
+    public long getSize() {
+        return getMetadata().getContentLength();
+    }
+
+    /**
+     * Get the entity tag of the stored object.
+     * @return the entity tag
+     */
+    public String getETag() {
+        return getMetadata().getETag();
+    }
+
+    /**
+     * Get the time at which the stored object was last modified.
+     * @return the last modified time, if known
+     */
+    public Optional<Instant> getLastModified() {
+        return ofNullable(getMetadata().getLastModified()).map(Date::toInstant);
+    }
+
+    /**
+     * Get the content type of the binary.
+     * @return the content type, if one was stored
+     */
+    public Optional<String> getContentType() {
+        // Shared content keeps the type of whichever binary stored it first
+        return ofNullable((pointer != null ? pointer : getMetadata()).getContentType());
     }
 
     @Override
     public InputStream getContent() {
-        return client.getObject(new GetObjectRequest(bucketName, key)).getObjectContent();
+        if (downloader != null) {
+            final ObjectMetadata metadata = getMetadata();
+            final long length = metadata.getContentLength();
+            if (downloader.accepts(length)) {
+                return decode(metadata.getContentEncoding(), downloader.open(client, bucketName, key, 0, length - 1));
+            }
+        }
+        final S3Object object = client.getObject(new GetObjectRequest(bucketName, key));
+        return decode(object.getObjectMetadata().getContentEncoding(), object.getObjectContent());
     }
 
     @Override
-    public InputStream getContent(final int from, final int to) {
-        return client
-                .getObject(new GetObjectRequest(bucketName, key).withRange(from, to)).getObjectContent();
+    public ReadableByteChannel getChannel(final long from, final long to) {
+        // S3 content arrives as a stream, so the channel only adapts it
+        return Channels.newChannel(getContent(from, to));
+    }
+
+    @Override
+    public InputStream getContent(final long from, final long to) {
+        if (downloader != null && downloader.accepts(to - from + 1)) {
+            final ObjectMetadata metadata = getMetadata();
+            if (isCompressed(metadata.getContentEncoding())) {
+                return getDecodedRange(from, to);
+            }
+            // Clamp the range to the object size, since chunks past the end of the object cannot be fetched
+            final long last = Math.min(to, metadata.getContentLength() - 1);
+            if (downloader.accepts(last - from + 1)) {
+                return downloader.open(client, bucketName, key, from, last);
+            }
+        }
+        final S3Object object = client.getObject(new GetObjectRequest(bucketName, key).withRange(from, to));
+        if (isCompressed(object.getObjectMetadata().getContentEncoding())) {
+            // The stored bytes are compressed, so a range of them is not a range of the content
+            object.getObjectContent().abort();
+            return getDecodedRange(from, to);
+        }
+        return object.getObjectContent();
+    }
+
+    /**
+     * Get the content encoding with which the binary is stored.
+     * @return the content encoding, such as {@code gzip}, if the binary is stored compressed
+     */
+    public Optional<String> getContentEncoding() {
+        return ofNullable(getMetadata().getContentEncoding());
+    }
+
+    /**
+     * Get the content as stored in S3, without decoding it.
+     *
+     * <p>This allows compressed content to be passed through unchanged to a client that accepts its
+     * {@link #getContentEncoding content encoding}.
+     *
+     * @return the stored content
+     */
+    public InputStream getEncodedContent() {
+        return client.getObject(new GetObjectRequest(bucketName, key)).getObjectContent();
+    }
+
+    /**
+     * Get a presigned URL from which the stored content can be downloaded directly from S3.
+     *
+     * <p>The content is served as stored, so a client of the URL must accept its
+     * {@link #getContentEncoding content encoding}, if it has one.
+     *
+     * @param expiration the time at which the URL expires
+     * @param overrides the response headers, such as the content type, that S3 should send
+     * @return the presigned URL
+     */
+    public URL getPresignedUrl(final Date expiration, final ResponseHeaderOverrides overrides) {
+        return client.generatePresignedUrl(new GeneratePresignedUrlRequest(bucketName, key, HttpMethod.GET)
+                .withExpiration(expiration).withResponseHeaders(overrides));
+    }
+
+    private InputStream getDecodedRange(final long from, final long to) {
+        final InputStream content = getContent();
+        try {
+            IOUtils.skip(content, from);
+        } catch (final IOException ex) {
+            throw closeOnError(content, "Error reading binary from S3", ex);
+        }
+        return new BoundedInputStream(content, to - from + 1);
+    }
+
+    private static InputStream decode(final String encoding, final InputStream content) {
+        try {
+            return BinaryCompression.decompress(encoding, content);
+        } catch (final IOException ex) {
+            throw closeOnError(content, "Error decoding binary from S3", ex);
+        }
+    }
+
+    private static UncheckedIOException closeOnError(final InputStream content, final String message,
+            final IOException ex) {
+        try {
+            content.close();
+        } catch (final IOException inner) {
+            ex.addSuppressed(inner);
+        }
+        return new UncheckedIOException(message, ex);
+    }
+
+    private ObjectMetadata getMetadata() {
+        // The metadata is read at most once per binary, and shared between binaries through the cache
+        if (metadata == null) {
+            metadata = metadataCache != null ? metadataCache.get(key) : client.getObjectMetadata(bucketName, key);
+        }
+        return metadata;
     }
 }
@@ -13,37 +13,58 @@
  */
 package org.trellisldp.ext.aws;
 
+import static com.amazonaws.ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
 import static com.amazonaws.services.s3.AmazonS3ClientBuilder.defaultClient;
 import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Collections.emptyMap;
 import static java.util.Objects.requireNonNull;
-import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.function.Function.identity;
 import static org.eclipse.microprofile.config.ConfigProvider.getConfig;
+import static org.slf4j.LoggerFactory.getLogger;
+import static org.trellisldp.ext.aws.IoExecutor.daemonThreads;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectTaggingRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.ObjectTagging;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.SetObjectTaggingRequest;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.rdf.api.IRI;
 import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
 import org.trellisldp.api.Binary;
 import org.trellisldp.api.BinaryMetadata;
 import org.trellisldp.api.BinaryService;
 import org.trellisldp.api.DefaultIdentifierService;
 import org.trellisldp.api.IdentifierService;
 import org.trellisldp.api.RuntimeTrellisException;
+import org.trellisldp.ext.aws.PackIndex.PackEntry;
 
 /**
  * An S3-based binary service.
@@ -53,13 +74,93 @@ public class S3BinaryService implements BinaryService {
 
     public static final String CONFIG_BINARY_BUCKET = "trellis.s3.binary.bucket";
     public static final String CONFIG_BINARY_PATH_PREFIX = "trellis.s3.binary.path.prefix";
+    public static final String CONFIG_BINARY_KEY_SHARDS = "trellis.s3.binary.key.shards";
+    public static final String CONFIG_BINARY_UPLOAD_STREAMING = "trellis.s3.binary.upload.streaming";
+    public static final String CONFIG_BINARY_UPLOAD_PART_SIZE = "trellis.s3.binary.upload.part.size";
+    public static final String CONFIG_BINARY_UPLOAD_BUFFERS = "trellis.s3.binary.upload.buffers";
+    public static final String CONFIG_BINARY_UPLOAD_ADAPTIVE = "trellis.s3.binary.upload.adaptive";
+    public static final String CONFIG_BINARY_UPLOAD_RESUMABLE = "trellis.s3.binary.upload.resumable";
+    public static final String CONFIG_BINARY_UPLOAD_RESUMABLE_EXPIRY = "trellis.s3.binary.upload.resumable.expiry";
+    public static final String CONFIG_BINARY_UPLOAD_PART_SIZE_MIN = "trellis.s3.binary.upload.part.size.min";
+    public static final String CONFIG_BINARY_UPLOAD_PART_SIZE_MAX = "trellis.s3.binary.upload.part.size.max";
+    public static final String CONFIG_BINARY_UPLOAD_BUFFERS_MIN = "trellis.s3.binary.upload.buffers.min";
+    public static final String CONFIG_BINARY_UPLOAD_BUFFERS_MAX = "trellis.s3.binary.upload.buffers.max";
+    public static final String CONFIG_BINARY_DIRECT_UPLOAD = "trellis.s3.binary.direct.upload";
+    public static final String CONFIG_BINARY_DIRECT_UPLOAD_PART_SIZE = "trellis.s3.binary.direct.upload.part.size";
+    public static final String CONFIG_BINARY_DIRECT_UPLOAD_EXPIRY = "trellis.s3.binary.direct.upload.expiry";
+    public static final String CONFIG_BINARY_DOWNLOAD_PARALLELISM = "trellis.s3.binary.download.parallelism";
+    public static final String CONFIG_BINARY_DOWNLOAD_CHUNK_SIZE = "trellis.s3.binary.download.chunk.size";
+    public static final String CONFIG_BINARY_DOWNLOAD_THRESHOLD = "trellis.s3.binary.download.threshold";
+    public static final String CONFIG_BINARY_DOWNLOAD_THREADS = "trellis.s3.binary.download.threads";
+    public static final String CONFIG_BINARY_CONTENT_ADDRESSED = "trellis.s3.binary.content.addressed";
+    public static final String CONFIG_BINARY_CONTENT_ADDRESSED_INLINE_LIMIT
+        = "trellis.s3.binary.content.addressed.inline.limit";
+    public static final String CONFIG_BINARY_CONTENT_ADDRESSED_GRACE_PERIOD
+        = "trellis.s3.binary.content.addressed.grace.period";
+    public static final String CONFIG_BINARY_DIGESTS = "trellis.s3.binary.digests";
+    public static final String CONFIG_BINARY_COMPRESSION = "trellis.s3.binary.compression";
+    public static final String CONFIG_BINARY_COMPRESSION_TYPES = "trellis.s3.binary.compression.types";
+    public static final String CONFIG_BINARY_PACK_THRESHOLD = "trellis.s3.binary.pack.threshold";
+    public static final String CONFIG_BINARY_PACK_SIZE = "trellis.s3.binary.pack.size";
+    public static final String CONFIG_BINARY_PACK_FLUSH_INTERVAL = "trellis.s3.binary.pack.flush.interval";
+    public static final String CONFIG_BINARY_PACK_REPACK_INTERVAL = "trellis.s3.binary.pack.repack.interval";
+    public static final String CONFIG_BINARY_PACK_REPACK_RATIO = "trellis.s3.binary.pack.repack.ratio";
+    public static final String CONFIG_BINARY_METADATA_CACHE_SIZE = "trellis.s3.binary.metadata.cache.size";
+    public static final String CONFIG_BINARY_METADATA_CACHE_TTL = "trellis.s3.binary.metadata.cache.ttl";
+    public static final String CONFIG_BINARY_DELETE_BATCH_SIZE = "trellis.s3.binary.delete.batch.size";
+    public static final String CONFIG_BINARY_DELETE_FLUSH_INTERVAL = "trellis.s3.binary.delete.flush.interval";
+    public static final String CONFIG_BINARY_REPLICAS = "trellis.s3.binary.replicas";
+    public static final String CONFIG_BINARY_REPLICAS_PROBE_INTERVAL = "trellis.s3.binary.replicas.probe.interval";
+    public static final String CONFIG_BINARY_EXECUTOR_THREADS = "trellis.s3.binary.executor.threads";
+    public static final String CONFIG_BINARY_EXECUTOR_QUEUE = "trellis.s3.binary.executor.queue";
+    public static final String CONFIG_BINARY_EXECUTOR_VIRTUAL = "trellis.s3.binary.executor.virtual";
 
+    /** The smallest part size that S3 accepts for a multipart upload. */
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private static final Logger LOGGER = getLogger(S3BinaryService.class);
     private static final String PREFIX = "s3://";
+    private static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    private static final int DEFAULT_UPLOAD_BUFFERS = 8;
+    private static final int DEFAULT_MAX_PART_SIZE = 128 * 1024 * 1024;
+    private static final int DEFAULT_MAX_UPLOAD_BUFFERS = 32;
+    private static final long DEFAULT_RESUMABLE_EXPIRY = 24 * 60 * 60 * 1000L;
+    private static final long DEFAULT_DIRECT_UPLOAD_PART_SIZE = 64 * 1024 * 1024L;
+    private static final long DEFAULT_DIRECT_UPLOAD_EXPIRY = 24 * 60 * 60 * 1000L;
+    private static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int DEFAULT_INLINE_LIMIT = 1024 * 1024;
+    private static final long DEFAULT_CONTENT_GRACE_PERIOD = 60 * 60 * 1000L;
+    private static final int DEFAULT_EXECUTOR_QUEUE = 1000;
+    private static final int DEFAULT_PACK_SIZE = 64 * 1024 * 1024;
+    private static final long DEFAULT_PACK_FLUSH_INTERVAL = 1000L;
+    private static final double DEFAULT_PACK_REPACK_RATIO = 0.5;
+    private static final long DEFAULT_METADATA_CACHE_TTL = 60000L;
+    private static final long DEFAULT_DELETE_FLUSH_INTERVAL = 100L;
+    private static final long DEFAULT_PROBE_INTERVAL = 30000L;
+    private static final String DEFAULT_COMPRESSION_TYPES = "text/*,application/json,application/ld+json,"
+        + "application/xml,application/rdf+xml,application/n-triples,application/n-quads,application/javascript,"
+        + "image/svg+xml";
 
     private final IdentifierService idService = new DefaultIdentifierService();
     private final AmazonS3 client;
     private final String bucketName;
     private final String pathPrefix;
+    private final KeyShards keyShards;
+    private final Executor executor;
+    private final PartBufferPool uploadBuffers;
+    private final UploadTuner uploadTuner;
+    private final ResumableUploads resumableUploads;
+    private final ExecutorService uploadExecutor;
+    private final ParallelDownloader downloader;
+    private final ContentAddressedStorage contentStore;
+    private final S3Copier copier;
+    private final String[] digestAlgorithms;
+    private final BinaryCompression compression;
+    private final BinaryPacker packer;
+    private final ObjectMetadataCache metadataCache;
+    private final BatchDeleter deleter;
+    private final DirectUploads directUploads;
+    private final ReplicaRouter replicas;
 
     /**
      * Create an S3-based binary service.
@@ -69,66 +170,460 @@ public class S3BinaryService implements BinaryService {
         this(defaultClient(), getConfig());
     }
 
-    private S3BinaryService(final AmazonS3 client, final Config config) {
+    /**
+     * Create an S3-based binary service.
+     * @param client the client
+     * @param config the configuration
+     */
+    public S3BinaryService(final AmazonS3 client, final Config config) {
         this(client, config.getValue(CONFIG_BINARY_BUCKET, String.class),
-                config.getOptionalValue(CONFIG_BINARY_PATH_PREFIX, String.class).orElse(""));
+                config.getOptionalValue(CONFIG_BINARY_PATH_PREFIX, String.class).orElse(""), config);
     }
 
     /**
      * Create an S3-based binary service.
+     *
+     * <p>All other settings take their default values.
+     *
      * @param client the client
      * @param bucketName the bucket name
      * @param pathPrefix the path prefix, may be {@code null}
      */
     public S3BinaryService(final AmazonS3 client, final String bucketName, final String pathPrefix) {
+        this(client, bucketName, pathPrefix, DefaultConfig.INSTANCE);
+    }
+
+    /**
+     * Create an S3-based binary service.
+     *
+     * <p>Any remaining settings are read from the given configuration.
+     *
+     * @param client the client
+     * @param bucketName the bucket name
+     * @param pathPrefix the path prefix, may be {@code null}
+     * @param config the configuration
+     */
+    public S3BinaryService(final AmazonS3 client, final String bucketName, final String pathPrefix,
+            final Config config) {
         this.client = requireNonNull(client, "client may not be null!");
         this.bucketName = requireNonNull(bucketName, "bucket name may not be null!");
         this.pathPrefix = pathPrefix != null ? pathPrefix : "";
+        final int shards = config.getOptionalValue(CONFIG_BINARY_KEY_SHARDS, Integer.class).orElse(0);
+        this.keyShards = shards > 0 ? new KeyShards(shards) : null;
+        // By default, allow as many concurrent requests as the S3 client has connections
+        this.executor = IoExecutor.create("s3-binary",
+                config.getOptionalValue(CONFIG_BINARY_EXECUTOR_VIRTUAL, Boolean.class).orElse(false),
+                config.getOptionalValue(CONFIG_BINARY_EXECUTOR_THREADS, Integer.class)
+                    .orElse(DEFAULT_MAX_CONNECTIONS),
+                config.getOptionalValue(CONFIG_BINARY_EXECUTOR_QUEUE, Integer.class).orElse(DEFAULT_EXECUTOR_QUEUE));
+        this.copier = new S3Copier(client);
+        this.digestAlgorithms = config.getOptionalValue(CONFIG_BINARY_DIGESTS, String[].class)
+            .orElseGet(() -> new String[0]);
+        // Fail early on an unsupported algorithm, rather than on the first upload
+        new InlineDigests(digestAlgorithms);
+        this.compression = config.getOptionalValue(CONFIG_BINARY_COMPRESSION, String.class)
+            .filter(encoding -> !"none".equalsIgnoreCase(encoding))
+            .map(encoding -> new BinaryCompression(encoding, config.getOptionalValue(CONFIG_BINARY_COMPRESSION_TYPES,
+                            String[].class).orElseGet(() -> DEFAULT_COMPRESSION_TYPES.split(","))))
+            .orElse(null);
+
+        final boolean adaptive = config.getOptionalValue(CONFIG_BINARY_UPLOAD_ADAPTIVE, Boolean.class).orElse(false);
+        final boolean resumable = config.getOptionalValue(CONFIG_BINARY_UPLOAD_RESUMABLE, Boolean.class)
+            .orElse(false);
+        this.resumableUploads = resumable ? new ResumableUploads(client, bucketName, this.pathPrefix,
+                config.getOptionalValue(CONFIG_BINARY_UPLOAD_RESUMABLE_EXPIRY, Long.class)
+                    .orElse(DEFAULT_RESUMABLE_EXPIRY)) : null;
+        if (adaptive || resumable
+                || config.getOptionalValue(CONFIG_BINARY_UPLOAD_STREAMING, Boolean.class).orElse(false)) {
+            final int partSize = Math.max(MIN_PART_SIZE,
+                    config.getOptionalValue(CONFIG_BINARY_UPLOAD_PART_SIZE, Integer.class).orElse(DEFAULT_PART_SIZE));
+            final int buffers = config.getOptionalValue(CONFIG_BINARY_UPLOAD_BUFFERS, Integer.class)
+                .orElse(DEFAULT_UPLOAD_BUFFERS);
+            if (adaptive) {
+                final int maxBuffers = config.getOptionalValue(CONFIG_BINARY_UPLOAD_BUFFERS_MAX, Integer.class)
+                    .orElse(Math.max(buffers, DEFAULT_MAX_UPLOAD_BUFFERS));
+                this.uploadTuner = new UploadTuner("s3-binary", partSize, buffers,
+                        Math.max(MIN_PART_SIZE, config.getOptionalValue(CONFIG_BINARY_UPLOAD_PART_SIZE_MIN,
+                                Integer.class).orElse(MIN_PART_SIZE)),
+                        config.getOptionalValue(CONFIG_BINARY_UPLOAD_PART_SIZE_MAX, Integer.class)
+                            .orElse(Math.max(partSize, DEFAULT_MAX_PART_SIZE)),
+                        config.getOptionalValue(CONFIG_BINARY_UPLOAD_BUFFERS_MIN, Integer.class)
+                            .orElse(Math.min(2, maxBuffers)),
+                        maxBuffers);
+                this.uploadBuffers = uploadTuner.getPool();
+                this.uploadExecutor = newFixedThreadPool(maxBuffers, daemonThreads("trellis-s3-upload-"));
+            } else {
+                this.uploadTuner = null;
+                this.uploadBuffers = new PartBufferPool(partSize, buffers);
+                this.uploadExecutor = newFixedThreadPool(buffers, daemonThreads("trellis-s3-upload-"));
+            }
+        } else {
+            this.uploadTuner = null;
+            this.uploadBuffers = null;
+            this.uploadExecutor = null;
+        }
+
+        final int parallelism = config.getOptionalValue(CONFIG_BINARY_DOWNLOAD_PARALLELISM, Integer.class).orElse(1);
+        if (parallelism > 1) {
+            final int chunkSize = config.getOptionalValue(CONFIG_BINARY_DOWNLOAD_CHUNK_SIZE, Integer.class)
+                .orElse(DEFAULT_CHUNK_SIZE);
+            final long threshold = config.getOptionalValue(CONFIG_BINARY_DOWNLOAD_THRESHOLD, Long.class)
+                .orElse(2L * chunkSize);
+            // Each stream keeps at most parallelism requests in flight, on a pool shared by every stream
+            final int threads = config.getOptionalValue(CONFIG_BINARY_DOWNLOAD_THREADS, Integer.class)
+                .orElse(Math.max(parallelism, DEFAULT_MAX_CONNECTIONS));
+            this.downloader = new ParallelDownloader(threshold, chunkSize, parallelism,
+                    newFixedThreadPool(threads, daemonThreads("trellis-s3-download-")));
+        } else {
+            this.downloader = null;
+        }
+
+        if (config.getOptionalValue(CONFIG_BINARY_CONTENT_ADDRESSED, Boolean.class).orElse(false)) {
+            this.contentStore = new ContentAddressedStorage(client, bucketName, this.pathPrefix,
+                    config.getOptionalValue(CONFIG_BINARY_CONTENT_ADDRESSED_INLINE_LIMIT, Integer.class)
+                        .orElse(DEFAULT_INLINE_LIMIT), (key, md, stream) -> upload(key, md, stream, null), copier,
+                    config.getOptionalValue(CONFIG_BINARY_CONTENT_ADDRESSED_GRACE_PERIOD, Long.class)
+                        .orElse(DEFAULT_CONTENT_GRACE_PERIOD));
+        } else {
+            this.contentStore = null;
+        }
+
+        // The metadata cache is opt-in, since cached metadata may be stale for writes from other hosts
+        final int metadataCacheSize = config.getOptionalValue(CONFIG_BINARY_METADATA_CACHE_SIZE, Integer.class)
+            .orElse(0);
+        final long metadataCacheTtl = config.getOptionalValue(CONFIG_BINARY_METADATA_CACHE_TTL, Long.class)
+            .orElse(DEFAULT_METADATA_CACHE_TTL);
+        this.metadataCache = metadataCacheSize > 0 ? new ObjectMetadataCache(client, bucketName, metadataCacheSize,
+                metadataCacheTtl) : null;
+
+        final String[] replicaNames = config.getOptionalValue(CONFIG_BINARY_REPLICAS, String[].class)
+            .orElseGet(() -> new String[0]);
+        this.replicas = replicaNames.length > 0 ? new ReplicaRouter(new ReplicaRouter.Replica(client, bucketName,
+                        metadataCache), ReplicaRouter.connect(replicaNames, metadataCacheSize, metadataCacheTtl),
+                config.getOptionalValue(CONFIG_BINARY_REPLICAS_PROBE_INTERVAL, Long.class)
+                    .orElse(DEFAULT_PROBE_INTERVAL)) : null;
+
+        // Batching is opt-in; by default, or with a batch size of 1 or less, each delete is sent on its own
+        final int deleteBatchSize = config.getOptionalValue(CONFIG_BINARY_DELETE_BATCH_SIZE, Integer.class)
+            .orElse(1);
+        this.deleter = deleteBatchSize > 1 ? new BatchDeleter(client, bucketName, deleteBatchSize,
+                config.getOptionalValue(CONFIG_BINARY_DELETE_FLUSH_INTERVAL, Long.class)
+                    .orElse(DEFAULT_DELETE_FLUSH_INTERVAL)) : null;
+
+        final int packThreshold = config.getOptionalValue(CONFIG_BINARY_PACK_THRESHOLD, Integer.class).orElse(0);
+        if (packThreshold > 0 && contentStore != null) {
+            LOGGER.warn("Binary packing is not available with content-addressed storage; ignoring {}",
+                    CONFIG_BINARY_PACK_THRESHOLD);
+            this.packer = null;
+        } else if (packThreshold > 0 && compression != null) {
+            // Packed binaries are read as plain byte ranges of their pack, so they cannot be compressed
+            LOGGER.warn("Binary packing is not available with compression; ignoring {}",
+                    CONFIG_BINARY_PACK_THRESHOLD);
+            this.packer = null;
+        } else if (packThreshold > 0) {
+            this.packer = new BinaryPacker(client, bucketName, this.pathPrefix, packThreshold,
+                    config.getOptionalValue(CONFIG_BINARY_PACK_SIZE, Integer.class).orElse(DEFAULT_PACK_SIZE),
+                    config.getOptionalValue(CONFIG_BINARY_PACK_FLUSH_INTERVAL, Long.class)
+                        .orElse(DEFAULT_PACK_FLUSH_INTERVAL),
+                    config.getOptionalValue(CONFIG_BINARY_PACK_REPACK_INTERVAL, Long.class).orElse(0L),
+                    config.getOptionalValue(CONFIG_BINARY_PACK_REPACK_RATIO, Double.class)
+                        .orElse(DEFAULT_PACK_REPACK_RATIO));
+        } else {
+            this.packer = null;
+        }
+
+        final boolean direct = config.getOptionalValue(CONFIG_BINARY_DIRECT_UPLOAD, Boolean.class).orElse(false);
+        if (direct && contentStore != null) {
+            LOGGER.warn("Direct uploads are not available with content-addressed storage; ignoring {}",
+                    CONFIG_BINARY_DIRECT_UPLOAD);
+            this.directUploads = null;
+        } else if (direct) {
+            this.directUploads = new DirectUploads(client, bucketName, this.pathPrefix, Math.max(MIN_PART_SIZE,
+                        config.getOptionalValue(CONFIG_BINARY_DIRECT_UPLOAD_PART_SIZE, Long.class)
+                            .orElse(DEFAULT_DIRECT_UPLOAD_PART_SIZE)),
+                    config.getOptionalValue(CONFIG_BINARY_DIRECT_UPLOAD_EXPIRY, Long.class)
+                        .orElse(DEFAULT_DIRECT_UPLOAD_EXPIRY), copier);
+        } else {
+            this.directUploads = null;
+        }
+    }
+
+    /**
+     * Write any binaries that are waiting to be packed, send any queued deletions and stop the background
+     * tasks.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (packer != null) {
+            packer.shutdown();
+        }
+        if (deleter != null) {
+            deleter.shutdown();
+        }
+        if (resumableUploads != null) {
+            resumableUploads.shutdown();
+        }
+        if (directUploads != null) {
+            directUploads.shutdown();
+        }
+        if (replicas != null) {
+            replicas.shutdown();
+        }
+        if (downloader != null) {
+            downloader.shutdown();
+        }
+        if (contentStore != null) {
+            contentStore.shutdown();
+        }
+        if (uploadExecutor != null) {
+            uploadExecutor.shutdown();
+        }
+        copier.shutdown();
     }
 
     @Override
     public CompletionStage<Binary> get(final IRI identifier) {
-        return supplyAsync(() -> new S3Binary(client, bucketName, getKey(identifier)));
+        return supplyAsync(() -> {
+            final String key = getKey(identifier);
+            final Optional<PackEntry> packed = packer != null ? packer.find(key) : Optional.empty();
+            if (packed.isPresent()) {
+                return new PackedBinary(client, bucketName, packed.get());
+            }
+            final ObjectMetadata pointer = contentStore != null ? contentStore.getPointer(key).orElse(null) : null;
+            final String location = pointer != null ? ContentAddressedStorage.getContentKey(pointer) : key;
+            if (replicas != null) {
+                final Optional<ReplicaRouter.Replica> replica = locate(location);
+                if (replica.isPresent()) {
+                    return new S3Binary(replica.get().getClient(), replica.get().getBucketName(), location,
+                            downloader, replica.get().getMetadataCache(), pointer);
+                }
+            }
+            return new S3Binary(client, bucketName, location, downloader, metadataCache, pointer);
+        }, executor);
     }
 
     @Override
     public CompletionStage<Void> purgeContent(final IRI identifier) {
-        return runAsync(() -> client.deleteObject(bucketName, getKey(identifier)));
+        return supplyAsync(() -> {
+            final String key = getKey(identifier);
+            if (contentStore != null) {
+                contentStore.purge(key);
+            } else if (deleter != null) {
+                // The remaining work runs on the service executor, not on the thread that sends the batches
+                return deleter.delete(key).thenRunAsync(() -> afterPurge(key), executor);
+            } else {
+                client.deleteObject(bucketName, key);
+            }
+            afterPurge(key);
+            return completedFuture((Void) null);
+        }, executor).thenCompose(identity());
     }
 
     @Override
     public CompletionStage<Void> setContent(final BinaryMetadata metadata, final InputStream stream) {
-        return runAsync(() -> {
+        return supplyAsync(() -> {
+            final String key = getKey(metadata.getIdentifier());
             try {
-                bufferUpload(metadata, stream, Files.createTempFile("trellis-binary", ".tmp"));
+                if (directUploads != null) {
+                    // Content that a client uploaded directly to S3 arrives as a short token
+                    final byte[] head = new byte[DirectUploads.TOKEN_LENGTH + 1];
+                    final int length = IOUtils.read(stream, head);
+                    final Optional<String> staged = directUploads.claim(Arrays.copyOf(head, length));
+                    if (staged.isPresent()) {
+                        directUploads.transfer(staged.get(), key, getObjectMetadata(metadata));
+                        // As with any other upload, this replaces earlier packed content for the key
+                        afterPurge(key);
+                        return completedFuture((Void) null);
+                    }
+                    return store(key, metadata, new SequenceInputStream(new ByteArrayInputStream(head, 0, length),
+                                stream));
+                }
+                return store(key, metadata, stream);
             } catch (final IOException ex) {
-                throw new UncheckedIOException("Error buffering binary to local file", ex);
+                throw new UncheckedIOException("Error uploading binary to S3", ex);
             }
-        });
+        }, executor).thenCompose(identity());
     }
 
     @Override
     public String generateIdentifier() {
-        return idService.getSupplier(PREFIX).get();
+        final String id = idService.getSupplier(PREFIX).get();
+        return keyShards != null ? PREFIX + keyShards.apply(id.substring(PREFIX.length())) : id;
     }
 
-    private void bufferUpload(final BinaryMetadata metadata, final InputStream stream, final Path path)
+    /**
+     * Get a digest of a binary that was computed when its content was uploaded.
+     *
+     * <p>Only the algorithms named by {@link #CONFIG_BINARY_DIGESTS} are computed. The digest is read with a
+     * single HEAD request, which may be answered from the metadata cache, or, for a binary that was streamed to
+     * S3 in several parts, from its object tags; the content itself is not read back from S3. The
+     * {@link S3DigestFilter} uses this to answer {@code Want-Digest} requests.
+     *
+     * @param identifier the binary identifier
+     * @param algorithm the digest algorithm
+     * @return the new completion stage with the base64-encoded digest, if one was stored
+     */
+    public CompletionStage<Optional<String>> getDigest(final IRI identifier, final String algorithm) {
+        if (Arrays.stream(digestAlgorithms).noneMatch(name -> name.trim().equalsIgnoreCase(algorithm))) {
+            return completedFuture(Optional.empty());
+        }
+        return supplyAsync(() -> {
+            final String key = getKey(identifier);
+            final Optional<PackEntry> packed = packer != null ? packer.find(key) : Optional.empty();
+            if (packed.isPresent()) {
+                // Packed binaries share their object with other binaries, so their digests are in the pack index
+                return InlineDigests.getDigest(packed.get().getDigests(), algorithm);
+            }
+            final ObjectMetadata metadata = head(key);
+            final Optional<String> digest = InlineDigests.getDigest(metadata, algorithm);
+            if (digest.isPresent() || !InlineDigests.isTagged(metadata)) {
+                return digest;
+            }
+            return InlineDigests.getDigest(client.getObjectTagging(new GetObjectTaggingRequest(bucketName, key))
+                    .getTagSet(), algorithm);
+        }, executor);
+    }
+
+    /**
+     * Get the uploads that clients send directly to S3.
+     * @return the direct uploads, if they are enabled
+     */
+    Optional<DirectUploads> getDirectUploads() {
+        return Optional.ofNullable(directUploads);
+    }
+
+    private CompletableFuture<Void> store(final String key, final BinaryMetadata metadata, final InputStream stream)
             throws IOException {
+        final InlineDigests digests = new InlineDigests(digestAlgorithms);
+        if (contentStore != null) {
+            contentStore.store(key, getObjectMetadata(metadata), digests.wrap(stream), digests::getUserMetadata);
+        } else if (packer != null) {
+            return pack(key, getObjectMetadata(metadata), stream, digests).thenRun(() -> invalidate(key));
+        } else {
+            upload(key, getObjectMetadata(metadata), digests.wrap(stream), digests);
+        }
+        invalidate(key);
+        return completedFuture(null);
+    }
+
+    private Optional<ReplicaRouter.Replica> locate(final String key) {
+        try {
+            return Optional.of(replicas.locate(key).getReplica());
+        } catch (final AmazonS3Exception ex) {
+            if (ex.getStatusCode() == 404) {
+                // As without replicas, a missing binary is reported when it is read
+                return Optional.empty();
+            }
+            throw ex;
+        }
+    }
+
+    private void afterPurge(final String key) {
+        if (packer != null) {
+            packer.remove(key);
+        }
+        invalidate(key);
+    }
+
+    private ObjectMetadata head(final String key) {
+        return metadataCache != null ? metadataCache.get(key) : client.getObjectMetadata(bucketName, key);
+    }
+
+    private void invalidate(final String key) {
+        if (metadataCache != null) {
+            metadataCache.invalidate(key);
+        }
+    }
+
+    private CompletableFuture<Void> pack(final String key, final ObjectMetadata metadata, final InputStream stream,
+            final InlineDigests digests) throws IOException {
+        // Read one byte past the threshold to tell whether the binary is small enough to pack
+        final InputStream input = digests.wrap(stream);
+        final byte[] head = new byte[packer.getThreshold() + 1];
+        final int length = IOUtils.read(input, head);
+        if (length <= packer.getThreshold()) {
+            // The whole binary has been read, so its digests are complete
+            return packer.add(key, Arrays.copyOf(head, length), metadata.getContentType(),
+                    digests.getUserMetadata());
+        }
+        upload(key, metadata, new SequenceInputStream(new ByteArrayInputStream(head, 0, length), input), digests);
+        // A larger binary replaces any earlier packed content for the same key
+        packer.remove(key);
+        return completedFuture(null);
+    }
+
+    private void upload(final String key, final ObjectMetadata metadata, final InputStream stream,
+            final InlineDigests digests) throws IOException {
+        final String encoding = compression != null ? compression.getEncoding(metadata.getContentType()).orElse(null)
+            : null;
+        if (encoding != null) {
+            metadata.setContentEncoding(encoding);
+        }
+        if (uploadBuffers != null) {
+            streamUpload(key, metadata, stream, digests, encoding);
+        } else {
+            bufferUpload(key, metadata, stream, digests, encoding, Files.createTempFile("trellis-binary", ".tmp"));
+        }
+    }
+
+    private void bufferUpload(final String key, final ObjectMetadata metadata, final InputStream stream,
+            final InlineDigests digests, final String encoding, final Path path) throws IOException {
         // Buffer the file locally so that the PUT request can be parallelized for large objects
         try {
-            try (final OutputStream output = Files.newOutputStream(path, WRITE)) {
-                IOUtils.copy(stream, output);
+            try (final OutputStream output = Files.newOutputStream(path, WRITE);
+                    final OutputStream encoded = BinaryCompression.compress(encoding, output)) {
+                IOUtils.copy(stream, encoded);
             }
-            final ObjectMetadata md = new ObjectMetadata();
-            metadata.getMimeType().ifPresent(md::setContentType);
-            final PutObjectRequest req = new PutObjectRequest(bucketName, getKey(metadata.getIdentifier()),
-                    path.toFile()).withMetadata(md);
-            client.putObject(req);
+            addUserMetadata(metadata, digests);
+            client.putObject(new PutObjectRequest(bucketName, key, path.toFile()).withMetadata(metadata));
         } finally {
             Files.delete(path);
         }
     }
 
+    private void streamUpload(final String key, final ObjectMetadata metadata, final InputStream stream,
+            final InlineDigests digests, final String encoding) throws IOException {
+        // Send the content to S3 in parts as it arrives, holding at most a bounded number of parts in memory
+        if (digestAlgorithms.length > 0) {
+            // Mark the object before a multipart upload is initiated, in case the digests end up in its tags
+            InlineDigests.setTagged(metadata);
+        }
+        final S3MultipartOutputStream output = new S3MultipartOutputStream(client, bucketName, key, metadata,
+                uploadBuffers, uploadExecutor, uploadTuner, resumableUploads);
+        boolean complete = false;
+        Map<String, String> userMetadata = emptyMap();
+        try {
+            try (final OutputStream encoded = BinaryCompression.compress(encoding, output)) {
+                IOUtils.copy(stream, encoded);
+            }
+            userMetadata = addUserMetadata(metadata, digests);
+            output.close();
+            complete = true;
+        } finally {
+            if (!complete) {
+                output.abort();
+            }
+        }
+        if (!userMetadata.isEmpty() && output.isMultipart()) {
+            // Multipart uploads fix their metadata at initiation, so the digests are attached afterwards as
+            // object tags, which, unlike a copy of the object onto itself, do not rewrite the content
+            client.setObjectTagging(new SetObjectTaggingRequest(bucketName, key,
+                        new ObjectTagging(InlineDigests.toTags(userMetadata))));
+        }
+    }
+
+    private static Map<String, String> addUserMetadata(final ObjectMetadata metadata, final InlineDigests digests) {
+        final Map<String, String> userMetadata = digests != null ? digests.getUserMetadata() : emptyMap();
+        userMetadata.forEach(metadata::addUserMetadata);
+        return userMetadata;
+    }
+
+    private static ObjectMetadata getObjectMetadata(final BinaryMetadata metadata) {
+        final ObjectMetadata md = new ObjectMetadata();
+        metadata.getMimeType().ifPresent(md::setContentType);
+        return md;
+    }
+
     private String getKey(final IRI identifier) {
         final String id = identifier.getIRIString();
         if (id.startsWith(PREFIX)) {
@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Objects.requireNonNull;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Server-side copies of S3 objects of any size.
+ *
+ * <p>A single copy request is limited to 5 GB, so copies are delegated to a lazily created
+ * {@link TransferManager}, which switches to a multipart copy for larger objects.
+ */
+final class S3Copier {
+
+    private final AmazonS3 client;
+    private TransferManager transferManager;
+
+    /**
+     * Create a copier.
+     * @param client the S3 client
+     */
+    S3Copier(final AmazonS3 client) {
+        this.client = requireNonNull(client, "client may not be null!");
+    }
+
+    /**
+     * Copy an object, waiting for the copy to complete.
+     * @param req the copy request
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    void copy(final CopyObjectRequest req) throws InterruptedIOException {
+        try {
+            getTransferManager().copy(req).waitForCompletion();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while copying " + req.getSourceKey());
+        }
+    }
+
+    /**
+     * Stop the transfer manager, if one was created, without shutting down the S3 client.
+     */
+    synchronized void shutdown() {
+        if (transferManager != null) {
+            transferManager.shutdownNow(false);
+            transferManager = null;
+        }
+    }
+
+    private synchronized TransferManager getTransferManager() {
+        if (transferManager == null) {
+            transferManager = TransferManagerBuilder.standard().withS3Client(client).build();
+        }
+        return transferManager;
+    }
+}
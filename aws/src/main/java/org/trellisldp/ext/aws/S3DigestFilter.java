@@ -0,0 +1,169 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+import static javax.ws.rs.HttpMethod.GET;
+import static javax.ws.rs.HttpMethod.HEAD;
+import static javax.ws.rs.Priorities.USER;
+import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
+import static org.slf4j.LoggerFactory.getLogger;
+import static org.trellisldp.api.TrellisUtils.TRELLIS_DATA_PREFIX;
+import static org.trellisldp.api.TrellisUtils.getInstance;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.Priority;
+import javax.inject.Inject;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.rdf.api.RDF;
+import org.slf4j.Logger;
+import org.trellisldp.api.BinaryMetadata;
+import org.trellisldp.api.BinaryService;
+import org.trellisldp.api.Resource;
+import org.trellisldp.api.ResourceService;
+import org.trellisldp.vocabulary.LDP;
+
+/**
+ * A filter that answers {@code Want-Digest} requests for binaries from the digests stored when they were uploaded.
+ *
+ * <p>Without it, Trellis reads the whole binary back from S3 to compute a requested digest. When an
+ * {@link S3BinaryService} has stored a digest of the binary with one of the requested algorithms (see
+ * {@link S3BinaryService#CONFIG_BINARY_DIGESTS}), the {@code Want-Digest} header is removed from the request and
+ * the stored digest is sent in the {@code Digest} header of the response. Otherwise the request is left to
+ * Trellis.
+ */
+@Priority(USER)
+public class S3DigestFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    /** The request header with the digest algorithms that a client wants. */
+    public static final String WANT_DIGEST = "Want-Digest";
+
+    /** The response header with the digest. */
+    public static final String DIGEST = "Digest";
+
+    private static final Logger LOGGER = getLogger(S3DigestFilter.class);
+    private static final RDF rdf = getInstance();
+    private static final String DIGEST_PROPERTY = S3DigestFilter.class.getName() + ".digest";
+
+    private final ResourceService resourceService;
+    private final S3BinaryService binaryService;
+
+    /**
+     * Create a digest filter.
+     * @param resourceService the resource service
+     * @param binaryService the binary service
+     */
+    @Inject
+    public S3DigestFilter(final ResourceService resourceService, final BinaryService binaryService) {
+        this.resourceService = requireNonNull(resourceService, "resource service may not be null!");
+        requireNonNull(binaryService, "binary service may not be null!");
+        final BinaryService service = CachingBinaryService.unwrap(binaryService);
+        this.binaryService = service instanceof S3BinaryService ? (S3BinaryService) service : null;
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext ctx) {
+        final String wantDigest = ctx.getHeaderString(WANT_DIGEST);
+        if (binaryService == null || wantDigest == null || !GET.equals(ctx.getMethod())
+                && !HEAD.equals(ctx.getMethod()) || !ctx.getUriInfo().getQueryParameters().isEmpty()) {
+            return;
+        }
+        final String path = ctx.getUriInfo().getPath().replaceAll("^/+", "");
+        if (path.endsWith("/")) {
+            return;
+        }
+
+        final Resource resource = resourceService.get(rdf.createIRI(TRELLIS_DATA_PREFIX + path))
+            .toCompletableFuture().join();
+        if (!LDP.NonRDFSource.equals(resource.getInteractionModel())) {
+            return;
+        }
+        resource.getBinaryMetadata().filter(metadata -> wantsContent(ctx, metadata))
+            .flatMap(metadata -> getDigest(metadata, wantDigest)).ifPresent(digest -> {
+                LOGGER.debug("Answering {} of {} from its stored digest", WANT_DIGEST, path);
+                ctx.getHeaders().remove(WANT_DIGEST);
+                ctx.setProperty(DIGEST_PROPERTY, digest);
+            });
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext req, final ContainerResponseContext res) {
+        final Object digest = req.getProperty(DIGEST_PROPERTY);
+        if (digest != null && res.getStatus() == 200) {
+            res.getHeaders().putSingle(DIGEST, digest);
+        }
+    }
+
+    private Optional<String> getDigest(final BinaryMetadata metadata, final String wantDigest) {
+        for (final String algorithm : getAlgorithms(wantDigest)) {
+            final Optional<String> digest = binaryService.getDigest(metadata.getIdentifier(),
+                    getDigestAlgorithm(algorithm)).toCompletableFuture().join();
+            if (digest.isPresent()) {
+                return Optional.of(algorithm + "=" + digest.get());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static boolean wantsContent(final ContainerRequestContext ctx, final BinaryMetadata metadata) {
+        try {
+            return S3RedirectFilter.wantsContent(ctx.getAcceptableMediaTypes(),
+                    MediaType.valueOf(metadata.getMimeType().orElse(APPLICATION_OCTET_STREAM)));
+        } catch (final IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the requested digest algorithms, in order of preference.
+     * @param wantDigest the value of the {@code Want-Digest} header
+     * @return the algorithms, lower-cased, without those with a quality of zero
+     */
+    static List<String> getAlgorithms(final String wantDigest) {
+        return Arrays.stream(wantDigest.split(",")).map(value -> value.trim().toLowerCase(Locale.ROOT))
+            .filter(value -> !value.isEmpty()).map(value -> {
+                final String[] parts = value.split(";");
+                double quality = 1.0;
+                for (int i = 1; i < parts.length; i++) {
+                    final String param = parts[i].trim();
+                    if (param.startsWith("q=")) {
+                        try {
+                            quality = Double.parseDouble(param.substring(2));
+                        } catch (final NumberFormatException ex) {
+                            quality = 0.0;
+                        }
+                    }
+                }
+                return new SimpleEntry<>(parts[0].trim(), quality);
+            }).filter(entry -> entry.getValue() > 0.0)
+            .sorted((a, b) -> Double.compare(b.getValue(), a.getValue())).map(Map.Entry::getKey).collect(toList());
+    }
+
+    private static String getDigestAlgorithm(final String algorithm) {
+        // RFC 3230 names SHA-1 "SHA"
+        return "sha".equals(algorithm) ? "SHA-1" : algorithm.toUpperCase(Locale.ROOT);
+    }
+}
@@ -13,49 +13,62 @@
  */
 package org.trellisldp.ext.aws;
 
+import static com.amazonaws.ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
 import static com.amazonaws.services.s3.AmazonS3ClientBuilder.defaultClient;
 import static java.io.File.createTempFile;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.time.temporal.ChronoUnit.SECONDS;
 import static java.util.Collections.unmodifiableSortedSet;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.CompletableFuture.runAsync;
 import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static java.util.stream.Stream.of;
-import static org.apache.jena.riot.Lang.NQUADS;
 import static org.eclipse.microprofile.config.ConfigProvider.getConfig;
 import static org.slf4j.LoggerFactory.getLogger;
 import static org.trellisldp.api.Resource.SpecialResources.MISSING_RESOURCE;
 import static org.trellisldp.api.TrellisUtils.TRELLIS_DATA_PREFIX;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ListObjectsV2Request;
 import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.time.Instant;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.stream.Stream;
 
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.rdf.api.IRI;
 import org.apache.commons.rdf.api.Quad;
-import org.apache.commons.rdf.jena.JenaDataset;
 import org.apache.commons.rdf.jena.JenaRDF;
-import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
 import org.eclipse.microprofile.config.Config;
 import org.slf4j.Logger;
 import org.trellisldp.api.MementoService;
@@ -72,12 +85,33 @@ public class S3MementoService implements MementoService {
     public static final Logger LOGGER = getLogger(S3MementoService.class);
     public static final String CONFIG_MEMENTO_BUCKET = "trellis.s3.memento.bucket";
     public static final String CONFIG_MEMENTO_PATH_PREFIX = "trellis.s3.memento.path.prefix";
+    public static final String CONFIG_MEMENTO_FORMAT = "trellis.s3.memento.format";
+    public static final String CONFIG_MEMENTO_COMPRESSION = "trellis.s3.memento.compression";
+    public static final String CONFIG_MEMENTO_COMPRESSION_LEVEL = "trellis.s3.memento.compression.level";
+    public static final String CONFIG_MEMENTO_CACHE_SIZE = "trellis.s3.memento.cache.size";
+    public static final String CONFIG_MEMENTO_PREFETCH = "trellis.s3.memento.prefetch";
+    public static final String CONFIG_MEMENTO_REPLICAS = "trellis.s3.memento.replicas";
+    public static final String CONFIG_MEMENTO_REPLICAS_PROBE_INTERVAL = "trellis.s3.memento.replicas.probe.interval";
+    public static final String CONFIG_MEMENTO_EXECUTOR_THREADS = "trellis.s3.memento.executor.threads";
+    public static final String CONFIG_MEMENTO_EXECUTOR_QUEUE = "trellis.s3.memento.executor.queue";
+    public static final String CONFIG_MEMENTO_EXECUTOR_VIRTUAL = "trellis.s3.memento.executor.virtual";
 
     private static final JenaRDF rdf = new JenaRDF();
+    private static final int DEFAULT_EXECUTOR_QUEUE = 1000;
+    private static final long DEFAULT_PROBE_INTERVAL = 30000L;
+    private static final int MAX_USER_METADATA = 2048;
+    private static final String DEFAULT_GRAPH = org.apache.jena.sparql.core.Quad.defaultGraphIRI.getURI();
 
     private final AmazonS3 client;
     private final String bucketName;
     private final String pathPrefix;
+    private final Executor executor;
+    private final MementoFormat format;
+    private final String compression;
+    private final int compressionLevel;
+    private final MementoCache cache;
+    private final boolean prefetch;
+    private final ReplicaRouter replicas;
 
     /**
      * Create an S3-based memento service.
@@ -87,58 +121,92 @@ public class S3MementoService implements MementoService {
         this(defaultClient(), getConfig());
     }
 
-    private S3MementoService(final AmazonS3 client, final Config config) {
+    /**
+     * Create an S3-based memento service.
+     * @param client the S3 client
+     * @param config the configuration
+     */
+    public S3MementoService(final AmazonS3 client, final Config config) {
         this(client, config.getValue(CONFIG_MEMENTO_BUCKET, String.class),
-                config.getOptionalValue(CONFIG_MEMENTO_PATH_PREFIX, String.class).orElse(""));
+                config.getOptionalValue(CONFIG_MEMENTO_PATH_PREFIX, String.class).orElse(""), config);
     }
 
     /**
      * Create an S3-based memento service.
+     *
+     * <p>All other settings take their default values.
+     *
      * @param client the S3 client
      * @param bucketName the bucket name
      * @param pathPrefix the path prefix for mementos, may be {@code null}
      */
     public S3MementoService(final AmazonS3 client, final String bucketName, final String pathPrefix) {
+        this(client, bucketName, pathPrefix, DefaultConfig.INSTANCE);
+    }
+
+    /**
+     * Create an S3-based memento service.
+     *
+     * <p>Any remaining settings are read from the given configuration.
+     *
+     * @param client the S3 client
+     * @param bucketName the bucket name
+     * @param pathPrefix the path prefix for mementos, may be {@code null}
+     * @param config the configuration
+     */
+    public S3MementoService(final AmazonS3 client, final String bucketName, final String pathPrefix,
+            final Config config) {
         this.client = requireNonNull(client, "S3 client may not be null!");
         this.bucketName = requireNonNull(bucketName, "AWS Bucket may not be null!");
         this.pathPrefix = pathPrefix != null ? pathPrefix : "";
+        // By default, allow as many concurrent requests as the S3 client has connections
+        this.executor = IoExecutor.create("s3-memento",
+                config.getOptionalValue(CONFIG_MEMENTO_EXECUTOR_VIRTUAL, Boolean.class).orElse(false),
+                config.getOptionalValue(CONFIG_MEMENTO_EXECUTOR_THREADS, Integer.class)
+                    .orElse(DEFAULT_MAX_CONNECTIONS),
+                config.getOptionalValue(CONFIG_MEMENTO_EXECUTOR_QUEUE, Integer.class).orElse(DEFAULT_EXECUTOR_QUEUE));
+        this.format = MementoFormat.of(config.getOptionalValue(CONFIG_MEMENTO_FORMAT, String.class)
+                .orElse("nquads"));
+        this.compression = config.getOptionalValue(CONFIG_MEMENTO_COMPRESSION, String.class)
+            .map(BinaryCompression::getAvailableEncoding).orElse(null);
+        this.compressionLevel = config.getOptionalValue(CONFIG_MEMENTO_COMPRESSION_LEVEL, Integer.class)
+            .orElse(BinaryCompression.DEFAULT_LEVEL);
+        final long cacheSize = config.getOptionalValue(CONFIG_MEMENTO_CACHE_SIZE, Long.class).orElse(0L);
+        this.cache = cacheSize > 0 ? new MementoCache("s3-memento", cacheSize) : null;
+        this.prefetch = config.getOptionalValue(CONFIG_MEMENTO_PREFETCH, Boolean.class).orElse(true);
+        final String[] replicaNames = config.getOptionalValue(CONFIG_MEMENTO_REPLICAS, String[].class)
+            .orElseGet(() -> new String[0]);
+        this.replicas = replicaNames.length > 0 ? new ReplicaRouter(new ReplicaRouter.Replica(client, bucketName,
+                        null), ReplicaRouter.connect(replicaNames, 0, 0L),
+                config.getOptionalValue(CONFIG_MEMENTO_REPLICAS_PROBE_INTERVAL, Long.class)
+                    .orElse(DEFAULT_PROBE_INTERVAL)) : null;
+    }
+
+    /**
+     * Stop the background tasks.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (replicas != null) {
+            replicas.shutdown();
+        }
     }
 
     @Override
     public CompletionStage<Void> put(final Resource resource) {
         return runAsync(() -> {
             try {
-                final File file = createTempFile("trellis-memento-", ".nq");
+                final File file = createTempFile("trellis-memento-", format.getSuffix());
                 file.deleteOnExit();
-                final Map<String, String> metadata = new HashMap<>();
-                metadata.put(S3Resource.INTERACTION_MODEL, resource.getInteractionModel().getIRIString());
-                metadata.put(S3Resource.MODIFIED, resource.getModified().toString());
-                resource.getContainer().map(IRI::getIRIString).ifPresent(c -> metadata.put(S3Resource.CONTAINER, c));
-                resource.getBinaryMetadata().ifPresent(b -> {
-                    metadata.put(S3Resource.BINARY_LOCATION, b.getIdentifier().getIRIString());
-                    b.getMimeType().ifPresent(m -> metadata.put(S3Resource.BINARY_TYPE, m));
-                });
-                resource.getMembershipResource().map(IRI::getIRIString)
-                    .ifPresent(m -> metadata.put(S3Resource.MEMBERSHIP_RESOURCE, m));
-                resource.getMemberRelation().map(IRI::getIRIString)
-                    .ifPresent(m -> metadata.put(S3Resource.MEMBER_RELATION, m));
-                resource.getMemberOfRelation().map(IRI::getIRIString)
-                    .ifPresent(m -> metadata.put(S3Resource.MEMBER_OF_RELATION, m));
-                resource.getInsertedContentRelation().map(IRI::getIRIString)
-                    .ifPresent(m -> metadata.put(S3Resource.INSERTED_CONTENT_RELATION, m));
-
-                try (final JenaDataset dataset = rdf.createDataset();
-                        final OutputStream output = new FileOutputStream(file);
-                        final Stream<? extends Quad> quads = resource.stream()) {
-                    quads.forEachOrdered(dataset::add);
-
-                    if (dataset.contains(Optional.of(Trellis.PreferAccessControl), null, null, null)) {
-                        metadata.put(S3Resource.HAS_ACL, "true");
-                    }
-                    RDFDataMgr.write(output, dataset.asJenaDatasetGraph(), NQUADS);
+                final Map<String, String> metadata;
+                try (final OutputStream output = new FileOutputStream(file)) {
+                    metadata = write(resource, output, format, compression, compressionLevel);
                 }
                 final ObjectMetadata md = new ObjectMetadata();
-                md.setContentType("application/n-quads");
+                md.setContentType(format.getContentType());
+                if (compression != null) {
+                    md.setContentEncoding(compression);
+                }
                 md.setUserMetadata(metadata);
                 final PutObjectRequest req = new PutObjectRequest(bucketName, getKey(resource.getIdentifier(),
                             resource.getModified().truncatedTo(SECONDS)), file);
@@ -147,16 +215,16 @@ public class S3MementoService implements MementoService {
             } catch (final Exception ex) {
                 throw new RuntimeTrellisException("Error deleting locally buffered file", ex);
             }
-        });
+        }, executor);
     }
 
     @Override
     public CompletionStage<Resource> get(final IRI identifier, final Instant time) {
         return supplyAsync(() ->  {
             final String key = getKey(identifier, time.truncatedTo(SECONDS));
-            if (client.doesObjectExist(bucketName, key)) {
-                return new S3Resource(client.getObjectMetadata(bucketName, key), client,
-                        new GetObjectRequest(bucketName, key), pathPrefix);
+            final Optional<Resource> exact = fetch(key);
+            if (exact.isPresent()) {
+                return exact.get();
             }
             LOGGER.debug("Fetching mementos for {}", identifier);
             final SortedSet<Instant> allMementos = listMementos(identifier);
@@ -165,14 +233,58 @@ public class S3MementoService implements MementoService {
             }
             final SortedSet<Instant> possible = allMementos.headSet(time.truncatedTo(SECONDS));
             final String best = getKey(identifier, possible.isEmpty() ? allMementos.first() : possible.last());
-            return new S3Resource(client.getObjectMetadata(bucketName, best), client,
-                    new GetObjectRequest(bucketName, best), pathPrefix);
-        });
+            return fetch(best).orElse(MISSING_RESOURCE);
+        }, executor);
     }
 
     @Override
     public CompletionStage<SortedSet<Instant>> mementos(final IRI identifier) {
-        return supplyAsync(() -> listMementos(identifier));
+        return supplyAsync(() -> listMementos(identifier), executor);
+    }
+
+    private Optional<Resource> fetch(final String key) {
+        try {
+            if (replicas != null) {
+                return Optional.of(replicas.route(key, replica -> fetch(replica.getClient(),
+                                replica.getBucketName(), key)));
+            }
+            return Optional.of(fetch(client, bucketName, key));
+        } catch (final AmazonS3Exception ex) {
+            if (ex.getStatusCode() == 404) {
+                return Optional.empty();
+            }
+            throw ex;
+        }
+    }
+
+    private Resource fetch(final AmazonS3 s3, final String bucket, final String key) {
+        final GetObjectRequest req = new GetObjectRequest(bucket, key);
+        if (!prefetch) {
+            return new S3Resource(s3.getObjectMetadata(bucket, key), s3, req, pathPrefix, cache, executor);
+        }
+        // A bounded GET returns the metadata along with the head of the content, and is read to the end so that
+        // its connection is released at once
+        final S3Object object;
+        try {
+            object = s3.getObject(new GetObjectRequest(bucket, key).withRange(0, PrefetchedContent.HEAD_SIZE - 1));
+        } catch (final AmazonS3Exception ex) {
+            if (ex.getStatusCode() == 416) {
+                // An empty memento has no byte range to return
+                return new S3Resource(s3.getObjectMetadata(bucket, key), s3, req, pathPrefix, cache, executor);
+            }
+            throw ex;
+        }
+        final byte[] head;
+        try (final InputStream input = object.getObjectContent()) {
+            head = IOUtils.toByteArray(input);
+        } catch (final IOException ex) {
+            throw new RuntimeTrellisException("Error reading memento " + key, ex);
+        }
+        final PrefetchedContent content = new PrefetchedContent(head, object.getObjectMetadata().getInstanceLength(),
+                (from, to) -> s3.getObject(new GetObjectRequest(bucket, key).withRange(from, to))
+                    .getObjectContent());
+        return new S3Resource(object.getObjectMetadata(), key, content::stream, content::range, pathPrefix, cache,
+                executor);
     }
 
     private SortedSet<Instant> listMementos(final IRI identifier) {
@@ -182,23 +294,139 @@ public class S3MementoService implements MementoService {
         ListObjectsV2Result result;
         do {
             result = client.listObjectsV2(req);
-            result.getObjectSummaries().stream().map(S3ObjectSummary::getKey).flatMap(this::getInstant)
+            result.getObjectSummaries().stream().map(S3ObjectSummary::getKey).flatMap(S3MementoService::getInstant)
                 .map(i -> i.truncatedTo(SECONDS)).forEachOrdered(versions::add);
             req.setContinuationToken(result.getContinuationToken());
         } while (result.isTruncated());
         return unmodifiableSortedSet(versions);
     }
 
-    private Stream<Instant> getInstant(final String key) {
+    /**
+     * Write an uncompressed memento.
+     * @param resource the resource
+     * @param output the output stream
+     * @param format the memento format
+     * @return the S3 user metadata for the memento
+     */
+    static Map<String, String> write(final Resource resource, final OutputStream output,
+            final MementoFormat format) {
+        return write(resource, output, format, null, BinaryCompression.DEFAULT_LEVEL);
+    }
+
+    /**
+     * Write a memento.
+     *
+     * <p>Quads are written one graph at a time, and each graph is compressed on its own, so that a reader can
+     * fetch only the graphs it needs. The byte length of each graph is recorded in the returned metadata.
+     *
+     * @param resource the resource
+     * @param output the output stream
+     * @param format the memento format
+     * @param encoding the content encoding, or {@code null} to write the memento uncompressed
+     * @param level the compression level
+     * @return the S3 user metadata for the memento
+     */
+    static Map<String, String> write(final Resource resource, final OutputStream output,
+            final MementoFormat format, final String encoding, final int level) {
+        final Map<String, String> metadata = new HashMap<>();
+        metadata.put(S3Resource.INTERACTION_MODEL, resource.getInteractionModel().getIRIString());
+        metadata.put(S3Resource.MODIFIED, resource.getModified().toString());
+        resource.getContainer().map(IRI::getIRIString).ifPresent(c -> metadata.put(S3Resource.CONTAINER, c));
+        resource.getBinaryMetadata().ifPresent(b -> {
+            metadata.put(S3Resource.BINARY_LOCATION, b.getIdentifier().getIRIString());
+            b.getMimeType().ifPresent(m -> metadata.put(S3Resource.BINARY_TYPE, m));
+        });
+        resource.getMembershipResource().map(IRI::getIRIString)
+            .ifPresent(m -> metadata.put(S3Resource.MEMBERSHIP_RESOURCE, m));
+        resource.getMemberRelation().map(IRI::getIRIString)
+            .ifPresent(m -> metadata.put(S3Resource.MEMBER_RELATION, m));
+        resource.getMemberOfRelation().map(IRI::getIRIString)
+            .ifPresent(m -> metadata.put(S3Resource.MEMBER_OF_RELATION, m));
+        resource.getInsertedContentRelation().map(IRI::getIRIString)
+            .ifPresent(m -> metadata.put(S3Resource.INSERTED_CONTENT_RELATION, m));
+
+        // The audit graph, often the largest, is written last so that the other graphs form a single range
+        final Map<String, Set<org.apache.jena.sparql.core.Quad>> graphs = new TreeMap<>(Comparator
+                .comparing((final String graph) -> graph.equals(Trellis.PreferAudit.getIRIString()))
+                .thenComparing(Comparator.naturalOrder()));
+        final StringBuilder index = new StringBuilder();
+        try (final Stream<? extends Quad> quads = resource.stream()) {
+            quads.forEachOrdered(quad -> graphs.computeIfAbsent(quad.getGraphName().map(IRI::getIRIString)
+                        .orElse(DEFAULT_GRAPH), g -> new LinkedHashSet<>()).add(rdf.asJenaQuad(quad)));
+
+            if (graphs.containsKey(Trellis.PreferAccessControl.getIRIString())) {
+                metadata.put(S3Resource.HAS_ACL, "true");
+            }
+            for (final Map.Entry<String, Set<org.apache.jena.sparql.core.Quad>> graph : graphs.entrySet()) {
+                final CountingOutputStream counter = new CountingOutputStream(output);
+                try (final OutputStream encoded = BinaryCompression.compress(encoding, level, counter)) {
+                    final StreamRDF writer = StreamRDFWriter.getWriterStream(encoded, format.getFormat());
+                    writer.start();
+                    graph.getValue().forEach(writer::quad);
+                    writer.finish();
+                }
+                index.append(index.length() > 0 ? " " : "").append(S3Resource.encodeGraphName(graph.getKey()))
+                    .append('=')
+                    .append(counter.getByteCount());
+            }
+        } catch (final Exception ex) {
+            throw new RuntimeTrellisException("Error serializing memento", ex);
+        }
+        // S3 limits the size of all user metadata together, so the index is left out if it would not fit, and
+        // the mementos of a resource with many graphs are then read in full
+        if (getUserMetadataSize(metadata) + S3Resource.GRAPH_INDEX.length() + index.length() <= MAX_USER_METADATA) {
+            metadata.put(S3Resource.GRAPH_INDEX, index.toString());
+        }
+        return metadata;
+    }
+
+    /**
+     * Get the size of some user metadata, as S3 measures it against its limit: the number of bytes in the UTF-8
+     * form of each key and value.
+     * @param metadata the user metadata
+     * @return the size, in bytes
+     */
+    static int getUserMetadataSize(final Map<String, String> metadata) {
+        return metadata.entrySet().stream().mapToInt(e -> e.getKey().getBytes(UTF_8).length
+                + e.getValue().getBytes(UTF_8).length).sum();
+    }
+
+    /**
+     * Get the key prefix under which the mementos of a resource are stored.
+     * @param pathPrefix the path prefix
+     * @param identifier the resource identifier
+     * @return the key prefix
+     */
+    static String getKey(final String pathPrefix, final IRI identifier) {
+        return pathPrefix + identifier.getIRIString().substring(TRELLIS_DATA_PREFIX.length()) + "?version=";
+    }
+
+    /**
+     * Get the key of a memento.
+     * @param pathPrefix the path prefix
+     * @param identifier the resource identifier
+     * @param time the memento time
+     * @return the key
+     */
+    static String getKey(final String pathPrefix, final IRI identifier, final Instant time) {
+        return getKey(pathPrefix, identifier) + Long.toString(time.truncatedTo(SECONDS).getEpochSecond());
+    }
+
+    /**
+     * Get the time of a memento from its key.
+     * @param key the key
+     * @return the memento time, or an empty stream if the key is not a memento key
+     */
+    static Stream<Instant> getInstant(final String key) {
         return of(key).map(k -> k.split("\\?version=", 2)).filter(p -> p.length == 2).map(p -> p[1])
             .map(Long::parseLong).map(Instant::ofEpochSecond).map(i -> i.truncatedTo(SECONDS));
     }
 
     private String getKey(final IRI identifier) {
-        return pathPrefix + identifier.getIRIString().substring(TRELLIS_DATA_PREFIX.length()) + "?version=";
+        return getKey(pathPrefix, identifier);
     }
 
     private String getKey(final IRI identifier, final Instant time) {
-        return getKey(identifier) + Long.toString(time.truncatedTo(SECONDS).getEpochSecond());
+        return getKey(pathPrefix, identifier, time);
     }
 }
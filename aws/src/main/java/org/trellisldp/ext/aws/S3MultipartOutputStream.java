@@ -0,0 +1,365 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+
+/**
+ * An output stream that writes its content to an S3 object without buffering it on local disk.
+ *
+ * <p>Content is collected in part-sized buffers borrowed from a {@link PartBufferPool}. If the stream
+ * is closed before the first buffer is full, the object is written with a single PUT request. Otherwise,
+ * a multipart upload is started and each full buffer is sent as a part on the supplied executor while
+ * the rest of the content is still being written. Because buffers are only returned to the pool once
+ * their part has been uploaded, the pool size bounds both memory use and upload concurrency.
+ *
+ * <p>Closing the stream completes the upload. If the content could not be produced, {@link #abort}
+ * should be called instead, so that no partial object is written.
+ */
+class S3MultipartOutputStream extends OutputStream {
+
+    /** The maximum number of parts allowed in an S3 multipart upload. */
+    static final int MAX_PARTS = 10000;
+
+    private static final Logger LOGGER = getLogger(S3MultipartOutputStream.class);
+
+    private final AmazonS3 client;
+    private final String bucketName;
+    private final String key;
+    private final ObjectMetadata metadata;
+    private final PartBufferPool pool;
+    private final Executor executor;
+    private final UploadTuner tuner;
+    private final ResumableUploads uploads;
+    private final List<CompletableFuture<PartETag>> parts = new ArrayList<>();
+
+    private byte[] buffer;
+    private int position;
+    private String uploadId;
+    private ResumableUploads.Upload previous;
+    private boolean closed;
+    private volatile Throwable failure;
+
+    /**
+     * Create a streaming S3 upload.
+     * @param client the S3 client
+     * @param bucketName the bucket name
+     * @param key the object key
+     * @param metadata the object metadata
+     * @param pool the buffer pool
+     * @param executor the executor on which parts are uploaded
+     */
+    S3MultipartOutputStream(final AmazonS3 client, final String bucketName, final String key,
+            final ObjectMetadata metadata, final PartBufferPool pool, final Executor executor) {
+        this(client, bucketName, key, metadata, pool, executor, null, null);
+    }
+
+    /**
+     * Create a streaming S3 upload.
+     *
+     * <p>With a tuner, the part size and concurrency are adapted as parts complete; the pool must then be the
+     * tuner's own. With a record of resumable uploads, an earlier incomplete upload to the same key is
+     * continued, and a failed upload is kept so that a retry can continue it in turn.
+     *
+     * @param client the S3 client
+     * @param bucketName the bucket name
+     * @param key the object key
+     * @param metadata the object metadata
+     * @param pool the buffer pool
+     * @param executor the executor on which parts are uploaded
+     * @param tuner the upload tuner, may be {@code null}
+     * @param uploads the record of resumable uploads, may be {@code null}
+     */
+    S3MultipartOutputStream(final AmazonS3 client, final String bucketName, final String key,
+            final ObjectMetadata metadata, final PartBufferPool pool, final Executor executor,
+            final UploadTuner tuner, final ResumableUploads uploads) {
+        this.tuner = tuner;
+        this.uploads = uploads;
+        this.client = requireNonNull(client, "client may not be null!");
+        this.bucketName = requireNonNull(bucketName, "bucket name may not be null!");
+        this.key = requireNonNull(key, "key may not be null!");
+        this.metadata = requireNonNull(metadata, "metadata may not be null!");
+        this.pool = requireNonNull(pool, "buffer pool may not be null!");
+        this.executor = requireNonNull(executor, "executor may not be null!");
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        ensureBuffer();
+        buffer[position++] = (byte) b;
+        if (position == buffer.length) {
+            sendPart();
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            ensureBuffer();
+            final int count = Math.min(remaining, buffer.length - position);
+            System.arraycopy(b, offset, buffer, position, count);
+            position += count;
+            offset += count;
+            remaining -= count;
+            if (position == buffer.length) {
+                sendPart();
+            }
+        }
+    }
+
+    /**
+     * Complete the upload.
+     *
+     * @implNote if any part fails to upload, the multipart upload is aborted before the error is rethrown
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (uploadId == null) {
+            putObject();
+        } else {
+            try {
+                if (position > 0) {
+                    sendPart();
+                }
+                final List<PartETag> etags = new ArrayList<>();
+                for (final CompletableFuture<PartETag> part : parts) {
+                    etags.add(part.join());
+                }
+                client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, etags));
+            } catch (final IOException | RuntimeException ex) {
+                abortUpload();
+                throw unwrap(ex);
+            }
+            if (uploads != null) {
+                clearUpload();
+            }
+        }
+    }
+
+    /**
+     * Check whether the content is being sent as a multipart upload.
+     *
+     * <p>Object metadata is fixed when a multipart upload is initiated, so changes made to it after that
+     * point are not sent to S3.
+     *
+     * @return true if a multipart upload has been initiated
+     */
+    boolean isMultipart() {
+        return uploadId != null;
+    }
+
+    /**
+     * Abandon the upload, discarding any content already sent to S3, unless the upload is resumable.
+     */
+    void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        releaseBuffer();
+        if (uploadId != null) {
+            abortUpload();
+        }
+    }
+
+    private void putObject() throws IOException {
+        final byte[] data = buffer != null ? buffer : new byte[0];
+        try {
+            metadata.setContentLength(position);
+            client.putObject(new PutObjectRequest(bucketName, key, new ByteArrayInputStream(data, 0, position),
+                        metadata));
+        } catch (final RuntimeException ex) {
+            throw new IOException("Error uploading " + key + " to S3", ex);
+        } finally {
+            releaseBuffer();
+        }
+    }
+
+    private void ensureBuffer() throws IOException {
+        if (closed) {
+            throw new IOException("Upload stream is already closed");
+        }
+        if (buffer == null) {
+            buffer = pool.acquire();
+            position = 0;
+        }
+    }
+
+    private void sendPart() throws IOException {
+        checkParts();
+        if (uploadId == null) {
+            startUpload();
+        }
+        final int partNumber = parts.size() + 1;
+        if (partNumber > MAX_PARTS) {
+            throw new IOException("Object " + key + " exceeds the maximum number of upload parts");
+        }
+        final byte[] data = buffer;
+        final int length = position;
+        final PartETag uploaded = findUploadedPart(partNumber, data, length);
+        if (uploaded != null) {
+            LOGGER.debug("Skipping part {} of {}, which was already uploaded", partNumber, key);
+            releaseBuffer();
+            parts.add(completedFuture(uploaded));
+            return;
+        }
+        final UploadPartRequest req = new UploadPartRequest().withBucketName(bucketName).withKey(key)
+            .withUploadId(uploadId).withPartNumber(partNumber).withPartSize(length)
+            .withInputStream(new ByteArrayInputStream(data, 0, length));
+        buffer = null;
+        position = 0;
+        parts.add(supplyAsync(() -> uploadPart(req), executor)
+                .whenComplete((etag, err) -> {
+                    pool.release(data);
+                    if (err != null) {
+                        failure = err;
+                    }
+                }));
+    }
+
+    private void startUpload() {
+        if (uploads != null) {
+            previous = uploads.find(key, metadata).orElse(null);
+            if (previous != null) {
+                uploadId = previous.getUploadId();
+                LOGGER.info("Resuming multipart upload {} for {}", uploadId, key);
+                return;
+            }
+        }
+        uploadId = client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key, metadata))
+            .getUploadId();
+        LOGGER.debug("Started multipart upload {} for {}", uploadId, key);
+        if (uploads != null) {
+            uploads.record(key, uploadId, metadata);
+        }
+    }
+
+    private PartETag findUploadedPart(final int partNumber, final byte[] data, final int length) {
+        if (previous == null) {
+            return null;
+        }
+        return previous.getPart(partNumber).filter(part -> part.getSize() == length)
+            .filter(part -> stripQuotes(part.getETag()).equalsIgnoreCase(md5(data, length)))
+            .map(part -> new PartETag(partNumber, part.getETag())).orElse(null);
+    }
+
+    private PartETag uploadPart(final UploadPartRequest req) {
+        final long started = System.nanoTime();
+        try {
+            final PartETag etag = client.uploadPart(req).getPartETag();
+            if (tuner != null) {
+                tuner.record(req.getPartSize(), System.nanoTime() - started, null);
+            }
+            return etag;
+        } catch (final RuntimeException ex) {
+            if (tuner != null) {
+                tuner.record(req.getPartSize(), System.nanoTime() - started, ex);
+            }
+            throw ex;
+        }
+    }
+
+    private void checkParts() throws IOException {
+        final Throwable err = failure;
+        if (err != null) {
+            throw new IOException("Error uploading part of " + key + " to S3",
+                    err instanceof CompletionException && err.getCause() != null ? err.getCause() : err);
+        }
+    }
+
+    private void releaseBuffer() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void abortUpload() {
+        releaseBuffer();
+        // Let in-flight parts settle so that their buffers are returned and no part outlives the abort
+        parts.forEach(part -> part.handle((etag, err) -> null).join());
+        if (uploads != null) {
+            // Keep the parts that were uploaded, for a retry to continue from; the sweeper removes them otherwise
+            LOGGER.info("Keeping incomplete multipart upload {} for {}", uploadId, key);
+            return;
+        }
+        try {
+            client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+        } catch (final RuntimeException ex) {
+            LOGGER.warn("Unable to abort multipart upload {} for {}: {}", uploadId, key, ex.getMessage());
+        }
+    }
+
+    private void clearUpload() {
+        try {
+            uploads.clear(key);
+        } catch (final RuntimeException ex) {
+            LOGGER.warn("Unable to clear the upload state for {}: {}", key, ex.getMessage());
+        }
+    }
+
+    private static String md5(final byte[] data, final int length) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("MD5");
+            digest.update(data, 0, length);
+            return ContentAddressedStorage.toHex(digest.digest());
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("MD5 is not supported", ex);
+        }
+    }
+
+    private static String stripQuotes(final String etag) {
+        return etag.startsWith("\"") && etag.endsWith("\"") && etag.length() > 1
+            ? etag.substring(1, etag.length() - 1) : etag;
+    }
+
+    private static IOException unwrap(final Exception ex) {
+        if (ex instanceof IOException) {
+            return (IOException) ex;
+        }
+        final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        return new IOException("Error completing multipart upload", cause);
+    }
+}
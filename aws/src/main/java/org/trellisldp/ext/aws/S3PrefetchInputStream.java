@@ -0,0 +1,171 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * An input stream that reads a byte range of an S3 object using concurrent, ranged GET requests.
+ *
+ * <p>The range is split into consecutive chunks. Up to {@code parallelism} chunks are fetched ahead of
+ * the reader, and they are handed back in order, so at most {@code parallelism * chunkSize} bytes are
+ * held in memory at any time. Closing the stream cancels the chunks that have not started and aborts the
+ * requests that are still being read, so that their connections are not held until the chunks arrive.
+ */
+class S3PrefetchInputStream extends InputStream {
+
+    private final AmazonS3 client;
+    private final String bucketName;
+    private final String key;
+    private final long end;
+    private final int chunkSize;
+    private final int parallelism;
+    private final Executor executor;
+    private final Deque<CompletableFuture<byte[]>> chunks = new ArrayDeque<>();
+    private final Set<S3ObjectInputStream> fetching = ConcurrentHashMap.newKeySet();
+
+    private long nextOffset;
+    private byte[] current = new byte[0];
+    private int position;
+    private volatile boolean closed;
+
+    /**
+     * Create a prefetching input stream.
+     * @param client the S3 client
+     * @param bucketName the bucket name
+     * @param key the object key
+     * @param from the first byte to read
+     * @param to the last byte to read, inclusive
+     * @param chunkSize the size of each ranged request
+     * @param parallelism the maximum number of chunks to fetch ahead of the reader
+     * @param executor the executor on which chunks are fetched
+     */
+    S3PrefetchInputStream(final AmazonS3 client, final String bucketName, final String key, final long from,
+            final long to, final int chunkSize, final int parallelism, final Executor executor) {
+        this.client = requireNonNull(client, "client may not be null!");
+        this.bucketName = requireNonNull(bucketName, "bucket name may not be null!");
+        this.key = requireNonNull(key, "key may not be null!");
+        this.executor = requireNonNull(executor, "executor may not be null!");
+        this.nextOffset = from;
+        this.end = to;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        prefetch();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        final int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        chunks.forEach(chunk -> chunk.cancel(false));
+        chunks.clear();
+        fetching.forEach(S3ObjectInputStream::abort);
+        current = new byte[0];
+        position = 0;
+    }
+
+    private boolean ensureData() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        while (position == current.length) {
+            final CompletableFuture<byte[]> next = chunks.poll();
+            if (next == null) {
+                return false;
+            }
+            try {
+                current = next.join();
+                position = 0;
+            } catch (final CompletionException ex) {
+                close();
+                throw new IOException("Error fetching " + key + " from S3", ex.getCause());
+            }
+            prefetch();
+        }
+        return true;
+    }
+
+    private void prefetch() {
+        while (chunks.size() < parallelism && nextOffset <= end) {
+            final long start = nextOffset;
+            final long last = Math.min(end, start + chunkSize - 1);
+            nextOffset = last + 1;
+            chunks.add(supplyAsync(() -> fetch(start, last), executor));
+        }
+    }
+
+    private byte[] fetch(final long start, final long last) {
+        try (final S3Object object = client.getObject(new GetObjectRequest(bucketName, key)
+                    .withRange(start, last))) {
+            final S3ObjectInputStream content = object.getObjectContent();
+            fetching.add(content);
+            try {
+                if (closed) {
+                    // The reader closed the stream while this request was being sent
+                    content.abort();
+                }
+                return IOUtils.toByteArray(content);
+            } finally {
+                fetching.remove(content);
+            }
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
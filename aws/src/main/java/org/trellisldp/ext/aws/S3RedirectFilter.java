@@ -0,0 +1,262 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static javax.ws.rs.HttpMethod.GET;
+import static javax.ws.rs.Priorities.USER;
+import static javax.ws.rs.core.HttpHeaders.ACCEPT_ENCODING;
+import static javax.ws.rs.core.HttpHeaders.CACHE_CONTROL;
+import static javax.ws.rs.core.HttpHeaders.IF_MATCH;
+import static javax.ws.rs.core.HttpHeaders.IF_MODIFIED_SINCE;
+import static javax.ws.rs.core.HttpHeaders.IF_NONE_MATCH;
+import static javax.ws.rs.core.HttpHeaders.IF_UNMODIFIED_SINCE;
+import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
+import static org.eclipse.microprofile.config.ConfigProvider.getConfig;
+import static org.slf4j.LoggerFactory.getLogger;
+import static org.trellisldp.api.TrellisUtils.TRELLIS_DATA_PREFIX;
+import static org.trellisldp.api.TrellisUtils.getInstance;
+
+import com.amazonaws.services.s3.model.ResponseHeaderOverrides;
+
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+import javax.annotation.Priority;
+import javax.inject.Inject;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.RDF;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.trellisldp.api.BinaryMetadata;
+import org.trellisldp.api.BinaryService;
+import org.trellisldp.api.Resource;
+import org.trellisldp.api.ResourceService;
+import org.trellisldp.vocabulary.LDP;
+
+/**
+ * A request filter that redirects binary downloads to short-lived presigned S3 URLs.
+ *
+ * <p>When enabled with {@link #CONFIG_BINARY_REDIRECT}, a plain {@code GET} of a binary that is stored as its own
+ * S3 object is answered with a {@code 307} redirect, so that the content is served by S3 rather than through
+ * this application. The presigned URL makes S3 send the binary's content type and, if configured, a content
+ * disposition. Redirects can be limited to some content types and to binaries above a size threshold.
+ *
+ * <p>Requests with query parameters, such as for a binary description or a memento, requests for an RDF
+ * serialization, requests that ask for a digest and binaries stored in an encoding that the client does not
+ * accept are left to Trellis, as are conditional requests, since Trellis evaluates their preconditions before
+ * it serves the content. Requests that prefer an RDF syntax are passed on without looking up the
+ * resource, so a binary whose own type is an RDF syntax is only redirected if that type is configured
+ * explicitly. The filter runs after authorization, so only permitted requests are redirected.
+ */
+@Priority(USER)
+public class S3RedirectFilter implements ContainerRequestFilter {
+
+    public static final String CONFIG_BINARY_REDIRECT = "trellis.s3.binary.redirect";
+    public static final String CONFIG_BINARY_REDIRECT_TYPES = "trellis.s3.binary.redirect.types";
+    public static final String CONFIG_BINARY_REDIRECT_THRESHOLD = "trellis.s3.binary.redirect.threshold";
+    public static final String CONFIG_BINARY_REDIRECT_EXPIRY = "trellis.s3.binary.redirect.expiry";
+    public static final String CONFIG_BINARY_REDIRECT_DISPOSITION = "trellis.s3.binary.redirect.disposition";
+
+    private static final Logger LOGGER = getLogger(S3RedirectFilter.class);
+    private static final RDF rdf = getInstance();
+    private static final long DEFAULT_EXPIRY = 300L;
+    private static final List<String> CONDITIONAL_HEADERS = Arrays.asList(IF_MATCH, IF_NONE_MATCH,
+            IF_MODIFIED_SINCE, IF_UNMODIFIED_SINCE, "If-Range");
+    private static final List<String> RDF_SYNTAXES = Arrays.asList("text/turtle", "application/ld+json",
+            "application/n-triples", "application/rdf+xml");
+
+    private final ResourceService resourceService;
+    private final BinaryService binaryService;
+    private final boolean enabled;
+    private final MediaType[] types;
+    private final long threshold;
+    private final long expirySeconds;
+    private final String disposition;
+
+    /**
+     * Create a redirect filter.
+     * @param resourceService the resource service
+     * @param binaryService the binary service
+     */
+    @Inject
+    public S3RedirectFilter(final ResourceService resourceService, final BinaryService binaryService) {
+        this(resourceService, binaryService, getConfig());
+    }
+
+    /**
+     * Create a redirect filter.
+     * @param resourceService the resource service
+     * @param binaryService the binary service
+     * @param config the configuration
+     */
+    public S3RedirectFilter(final ResourceService resourceService, final BinaryService binaryService,
+            final Config config) {
+        this.resourceService = requireNonNull(resourceService, "resource service may not be null!");
+        // Redirects go to the binary in S3, even when a local cache holds a copy of it
+        this.binaryService = CachingBinaryService.unwrap(requireNonNull(binaryService,
+                    "binary service may not be null!"));
+        this.enabled = config.getOptionalValue(CONFIG_BINARY_REDIRECT, Boolean.class).orElse(false);
+        this.types = Arrays.stream(config.getOptionalValue(CONFIG_BINARY_REDIRECT_TYPES, String[].class)
+                .orElseGet(() -> new String[] {MediaType.WILDCARD})).map(String::trim).map(MediaType::valueOf)
+            .toArray(MediaType[]::new);
+        this.threshold = config.getOptionalValue(CONFIG_BINARY_REDIRECT_THRESHOLD, Long.class).orElse(0L);
+        this.expirySeconds = config.getOptionalValue(CONFIG_BINARY_REDIRECT_EXPIRY, Long.class)
+            .orElse(DEFAULT_EXPIRY);
+        this.disposition = config.getOptionalValue(CONFIG_BINARY_REDIRECT_DISPOSITION, String.class).orElse(null);
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext ctx) {
+        if (!enabled || !GET.equals(ctx.getMethod()) || !ctx.getUriInfo().getQueryParameters().isEmpty()
+                || ctx.getHeaderString("Want-Digest") != null || isConditional(ctx)) {
+            return;
+        }
+        final String path = ctx.getUriInfo().getPath().replaceAll("^/+", "");
+        final List<MediaType> acceptable = ctx.getAcceptableMediaTypes();
+        if (path.endsWith("/") || !mayWantContent(acceptable)) {
+            // Looking up the resource blocks the request thread, so it is skipped for requests that cannot redirect
+            return;
+        }
+
+        // The resource and binary lookups are chained into a single stage, so the request thread waits only once
+        final String acceptEncoding = ctx.getHeaderString(ACCEPT_ENCODING);
+        resourceService.get(rdf.createIRI(TRELLIS_DATA_PREFIX + path))
+            .thenCompose(resource -> getRedirect(resource, acceptable, acceptEncoding)).toCompletableFuture()
+            .join().ifPresent(url -> {
+                try {
+                    ctx.abortWith(Response.temporaryRedirect(url.toURI()).header(CACHE_CONTROL, "no-store").build());
+                } catch (final URISyntaxException ex) {
+                    LOGGER.warn("Unable to redirect to presigned URL: {}", ex.getMessage());
+                }
+            });
+    }
+
+    private CompletionStage<Optional<URL>> getRedirect(final Resource resource, final List<MediaType> acceptable,
+            final String acceptEncoding) {
+        if (!LDP.NonRDFSource.equals(resource.getInteractionModel())) {
+            return completedFuture(Optional.empty());
+        }
+        final Optional<BinaryMetadata> binaryMetadata = resource.getBinaryMetadata();
+        if (!binaryMetadata.isPresent()) {
+            return completedFuture(Optional.empty());
+        }
+        final BinaryMetadata metadata = binaryMetadata.get();
+        final String contentType = metadata.getMimeType().orElse(APPLICATION_OCTET_STREAM);
+        final MediaType mediaType;
+        try {
+            mediaType = MediaType.valueOf(contentType);
+        } catch (final IllegalArgumentException ex) {
+            return completedFuture(Optional.empty());
+        }
+        if (!isRedirected(mediaType) || !wantsContent(acceptable, mediaType)) {
+            return completedFuture(Optional.empty());
+        }
+
+        final IRI identifier = metadata.getIdentifier();
+        return binaryService.get(identifier).thenApply(binary -> {
+            if (!(binary instanceof S3Binary)) {
+                // Only binaries stored as their own S3 object can be served from a presigned URL
+                return Optional.empty();
+            }
+            final S3Binary s3Binary = (S3Binary) binary;
+            if (s3Binary.getSize() < threshold || !s3Binary.getContentEncoding()
+                    .map(encoding -> accepts(acceptEncoding, encoding)).orElse(true)) {
+                return Optional.empty();
+            }
+
+            final ResponseHeaderOverrides overrides = new ResponseHeaderOverrides().withContentType(contentType);
+            if (disposition != null) {
+                overrides.setContentDisposition(disposition);
+            }
+            LOGGER.debug("Redirecting {} to S3", identifier);
+            return Optional.of(s3Binary.getPresignedUrl(new Date(System.currentTimeMillis()
+                            + expirySeconds * 1000L), overrides));
+        });
+    }
+
+    /**
+     * Check whether a request carries conditions, which Trellis evaluates before it serves the content.
+     * @param ctx the request context
+     * @return true if the request is conditional
+     */
+    private static boolean isConditional(final ContainerRequestContext ctx) {
+        return CONDITIONAL_HEADERS.stream().anyMatch(header -> ctx.getHeaderString(header) != null);
+    }
+
+    private boolean isRedirected(final MediaType mediaType) {
+        return Arrays.stream(types).anyMatch(type -> type.isCompatible(mediaType));
+    }
+
+    /**
+     * Check, before the resource is looked up, whether a request may be for the content of a binary.
+     *
+     * <p>A request whose preferred type is an RDF syntax is for an RDF source or for the description of a
+     * binary, unless that syntax is named among the redirected types. Such requests, which include most reads
+     * of RDF sources by linked data clients, are left to Trellis without any lookup.
+     * @param acceptable the acceptable media types of the request, most preferred first
+     * @return true if the request may be redirected
+     */
+    private boolean mayWantContent(final List<MediaType> acceptable) {
+        if (acceptable.isEmpty() || !isRdfSyntax(acceptable.get(0))) {
+            return true;
+        }
+        return Arrays.stream(types).filter(type -> !type.isWildcardType() && !type.isWildcardSubtype())
+            .anyMatch(type -> type.isCompatible(acceptable.get(0)));
+    }
+
+    private static boolean isRdfSyntax(final MediaType type) {
+        return RDF_SYNTAXES.contains(type.getType() + "/" + type.getSubtype());
+    }
+
+    /**
+     * Check whether a request is for the content of a binary rather than for its RDF description.
+     * @param acceptable the acceptable media types of the request
+     * @param mediaType the media type of the binary
+     * @return true if the content is wanted
+     */
+    static boolean wantsContent(final List<MediaType> acceptable, final MediaType mediaType) {
+        for (final MediaType type : acceptable) {
+            if (type.isCompatible(mediaType)) {
+                return true;
+            }
+            if (isRdfSyntax(type)) {
+                // The client prefers an RDF description of the binary
+                return false;
+            }
+        }
+        return acceptable.isEmpty();
+    }
+
+    private static boolean accepts(final String acceptEncoding, final String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        return Arrays.stream(acceptEncoding.split(",")).map(value -> value.trim().toLowerCase(Locale.ROOT))
+            .anyMatch(value -> !value.endsWith("q=0") && (value.equals(encoding) || value.startsWith(encoding + ";")
+                        || value.equals("*")));
+    }
+}
@@ -13,27 +13,36 @@
  */
 package org.trellisldp.ext.aws;
 
+import static com.amazonaws.ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
-import static org.apache.jena.query.DatasetFactory.create;
-import static org.apache.jena.riot.Lang.NQUADS;
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterator.ORDERED;
+import static java.util.Spliterators.spliteratorUnknownSize;
+import static java.util.stream.Collectors.toSet;
 import static org.trellisldp.api.TrellisUtils.TRELLIS_DATA_PREFIX;
 
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 
-import java.io.IOException;
 import java.io.InputStream;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.commons.rdf.api.IRI;
 import org.apache.commons.rdf.api.Quad;
+import org.apache.commons.rdf.api.Triple;
 import org.apache.commons.rdf.jena.JenaRDF;
-import org.apache.jena.query.Dataset;
-import org.apache.jena.riot.RDFParser;
 import org.trellisldp.api.BinaryMetadata;
 import org.trellisldp.api.Resource;
 import org.trellisldp.api.RuntimeTrellisException;
@@ -54,13 +63,20 @@ public class S3Resource implements Resource {
     public static final String INSERTED_CONTENT_RELATION = "trellis.insertedContentRelation";
     public static final String BINARY_LOCATION = "trellis.binaryLocation";
     public static final String BINARY_TYPE = "trellis.binaryMimeType";
+    public static final String GRAPH_INDEX = "trellis.graphIndex";
 
     private static final JenaRDF rdf = new JenaRDF();
+    private static final int PIPE_CAPACITY = 1024;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final int DEFAULT_PARSER_QUEUE = 1000;
 
-    private final AmazonS3 client;
     private final ObjectMetadata metadata;
-    private final GetObjectRequest req;
+    private final String key;
+    private final Supplier<InputStream> content;
+    private final BiFunction<Long, Long, InputStream> ranges;
     private final String prefix;
+    private final MementoCache cache;
+    private final Executor parsers;
 
     /**
      * Create a Trellis resource from an S3Object.
@@ -71,16 +87,65 @@ public class S3Resource implements Resource {
      */
     public S3Resource(final ObjectMetadata metadata, final AmazonS3 client, final GetObjectRequest req,
             final String prefix) {
+        this(metadata, client, req, prefix, null, DefaultParsers.INSTANCE);
+    }
+
+    /**
+     * Create a Trellis resource from an S3Object.
+     * @param metadata the object metadata
+     * @param client the s3 client
+     * @param req the GET request
+     * @param prefix the prefix
+     * @param cache the memento cache, may be {@code null}
+     * @param parsers the executor that parses the memento content
+     */
+    S3Resource(final ObjectMetadata metadata, final AmazonS3 client, final GetObjectRequest req,
+            final String prefix, final MementoCache cache, final Executor parsers) {
+        this(metadata, requireNonNull(req, "s3 request may not be null!").getKey(),
+                () -> client.getObject(req).getObjectContent(),
+                (from, to) -> client.getObject(new GetObjectRequest(req.getBucketName(), req.getKey())
+                    .withRange(from, to)).getObjectContent(), prefix, cache, parsers);
+        requireNonNull(client, "s3 client may not be null!");
+    }
+
+    /**
+     * Create a Trellis resource from S3 object metadata and a source of its content.
+     * @param metadata the object metadata
+     * @param key the object key
+     * @param content a supplier that opens the object content
+     * @param prefix the prefix
+     */
+    S3Resource(final ObjectMetadata metadata, final String key, final Supplier<InputStream> content,
+            final String prefix) {
+        this(metadata, key, content, null, prefix, null, DefaultParsers.INSTANCE);
+    }
+
+    /**
+     * Create a Trellis resource from S3 object metadata and sources of its content.
+     * @param metadata the object metadata
+     * @param key the object key
+     * @param content a supplier that opens the object content
+     * @param ranges a function that opens an inclusive byte range of the object content, may be {@code null}
+     * @param prefix the prefix
+     * @param cache the memento cache, may be {@code null}
+     * @param parsers the executor that parses the memento content
+     */
+    S3Resource(final ObjectMetadata metadata, final String key, final Supplier<InputStream> content,
+            final BiFunction<Long, Long, InputStream> ranges, final String prefix, final MementoCache cache,
+            final Executor parsers) {
         this.metadata = requireNonNull(metadata, "s3 metadata may not be null!");
-        this.client = requireNonNull(client, "s3 client may not be null!");
-        this.req = requireNonNull(req, "s3 request may not be null!");
+        this.key = requireNonNull(key, "s3 key may not be null!");
+        this.content = requireNonNull(content, "s3 content may not be null!");
+        this.ranges = ranges;
         this.prefix = requireNonNull(prefix, "prefix may not be null!");
+        this.cache = cache;
+        this.parsers = requireNonNull(parsers, "parsers may not be null!");
     }
 
     @Override
     public IRI getIdentifier() {
-        final String key = req.getKey().startsWith(prefix) ? req.getKey().substring(prefix.length()) : req.getKey();
-        return rdf.createIRI(TRELLIS_DATA_PREFIX + key.split("\\?version=")[0]);
+        final String path = key.startsWith(prefix) ? key.substring(prefix.length()) : key;
+        return rdf.createIRI(TRELLIS_DATA_PREFIX + path.split("\\?version=")[0]);
     }
 
     @Override
@@ -135,13 +200,105 @@ public class S3Resource implements Resource {
 
     @Override
     public Stream<Quad> stream() {
-        final Dataset dataset = create();
-        try (final InputStream input = client.getObject(req).getObjectContent()) {
-            RDFParser.source(input).lang(NQUADS).parse(dataset);
-        } catch (final IOException ex) {
-            dataset.close();
-            throw new RuntimeTrellisException("Error parsing input from S3", ex);
+        final Iterator<org.apache.jena.sparql.core.Quad> cached = cache != null ? cache.get(key) : null;
+        if (cached != null) {
+            return toStream(cached);
         }
-        return rdf.asDataset(dataset).stream().map(Quad.class::cast).onClose(dataset::close);
+        return parse(content, cache != null);
+    }
+
+    @Override
+    public Stream<Triple> stream(final Collection<IRI> graphNames) {
+        final String index = metadata.getUserMetaDataOf(GRAPH_INDEX);
+        final Iterator<org.apache.jena.sparql.core.Quad> cached = cache != null ? cache.get(key) : null;
+        final Stream<Quad> quads;
+        if (cached != null) {
+            quads = toStream(cached);
+        } else if (index != null && ranges != null) {
+            // Graphs are stored one after another, so the requested graphs are read with a single ranged GET
+            final long[] span = getSpan(index, graphNames);
+            if (span.length == 0) {
+                return Stream.empty();
+            }
+            quads = parse(() -> ranges.apply(span[0], span[1]), false);
+        } else {
+            quads = parse(content, cache != null);
+        }
+        return quads.filter(quad -> quad.getGraphName().filter(graphNames::contains).isPresent())
+            .map(Quad::asTriple);
+    }
+
+    private Stream<Quad> parse(final Supplier<InputStream> source, final boolean fill) {
+        final InputStream input;
+        try {
+            input = source.get();
+        } catch (final Exception ex) {
+            throw new RuntimeTrellisException("Error reading input from S3", ex);
+        }
+        // Quads are parsed as the stream is consumed, and closing the stream releases the S3 connection
+        final QuadPipe pipe = new QuadPipe(input, metadata.getContentEncoding(),
+                MementoFormat.forContentType(metadata.getContentType()).getLang(), PIPE_CAPACITY, parsers);
+        // A memento that is read in full is kept in the cache
+        return toStream(fill ? cache.fill(key, pipe) : pipe).onClose(pipe::close);
+    }
+
+    private static Stream<Quad> toStream(final Iterator<org.apache.jena.sparql.core.Quad> quads) {
+        return StreamSupport.stream(spliteratorUnknownSize(quads, ORDERED | NONNULL), false).<Quad>map(rdf::asQuad);
+    }
+
+    /**
+     * Find the byte range that holds some graphs of a memento.
+     * @param index the graph index, a space-separated list of encoded graph names and byte lengths
+     * @param graphNames the graph names
+     * @return the first and last byte of the range, or an empty array if none of the graphs are stored
+     */
+    static long[] getSpan(final String index, final Collection<IRI> graphNames) {
+        final Set<String> names = graphNames.stream().map(IRI::getIRIString).map(S3Resource::encodeGraphName)
+            .collect(toSet());
+        long offset = 0L;
+        long start = -1L;
+        long end = -1L;
+        for (final String entry : index.trim().split("\\s+")) {
+            final int separator = entry.lastIndexOf('=');
+            if (separator < 0) {
+                continue;
+            }
+            final long length = Long.parseLong(entry.substring(separator + 1));
+            if (names.contains(entry.substring(0, separator))) {
+                start = start < 0 ? offset : start;
+                end = offset + length - 1;
+            }
+            offset += length;
+        }
+        return start < 0 ? new long[0] : new long[] {start, end};
+    }
+
+    /**
+     * Encode a graph name for the graph index.
+     *
+     * <p>S3 user metadata must be US-ASCII, and the index separates its entries with spaces and {@code =}
+     * signs, so every other byte of the UTF-8 form, and {@code %} itself, is percent-encoded. Most graph names
+     * are ASCII IRIs, which are left as they are.
+     * @param name the graph name
+     * @return the encoded graph name
+     */
+    static String encodeGraphName(final String name) {
+        final StringBuilder encoded = new StringBuilder(name.length());
+        for (final byte b : name.getBytes(UTF_8)) {
+            if (b > ' ' && b < 0x7f && b != '%' && b != '=') {
+                encoded.append((char) b);
+            } else {
+                encoded.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+            }
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Parses the content of resources that are created without an executor; only built when first used.
+     */
+    private static final class DefaultParsers {
+        private static final Executor INSTANCE = IoExecutor.create("s3-parse", false, DEFAULT_MAX_CONNECTIONS,
+                DEFAULT_PARSER_QUEUE);
     }
 }
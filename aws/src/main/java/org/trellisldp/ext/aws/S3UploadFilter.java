@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Collections.emptyList;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static javax.ws.rs.HttpMethod.POST;
+import static javax.ws.rs.HttpMethod.PUT;
+import static javax.ws.rs.Priorities.USER;
+import static javax.ws.rs.core.HttpHeaders.CACHE_CONTROL;
+import static javax.ws.rs.core.HttpHeaders.CONTENT_LENGTH;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
+import static javax.ws.rs.core.MediaType.TEXT_PLAIN_TYPE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import javax.annotation.Priority;
+import javax.inject.Inject;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.trellisldp.api.BinaryService;
+
+/**
+ * A request filter that lets clients upload binary content directly to S3.
+ *
+ * <p>The handshake uses the same {@code PUT} or {@code POST} request that would otherwise create or replace
+ * the binary, so it is authorized in the same way. A request with an empty body and an {@value #UPLOAD_LENGTH}
+ * header initiates an upload of that many bytes. The response is a JSON object with the upload handle, the
+ * part size, the expiration time and a presigned URL for each part:
+ *
+ * <pre>{"upload":"...","partSize":67108864,"expires":"...","parts":["https://...","https://..."]}</pre>
+ *
+ * <p>The client uploads each part to its URL and then repeats the request with the handle in an
+ * {@value #UPLOAD} header, and optionally the base64-encoded MD5 digest of each part, comma-separated and in
+ * order, in an {@value #UPLOAD_DIGEST} header. The upload is verified and completed, and the request continues
+ * to Trellis, which creates or replaces the binary without the content passing through this host. The
+ * {@code Content-Type} of that request is the type of the binary.
+ *
+ * <p>The filter is active when the binary service is an {@link S3BinaryService} with
+ * {@link S3BinaryService#CONFIG_BINARY_DIRECT_UPLOAD direct uploads} enabled.
+ */
+@Priority(USER)
+public class S3UploadFilter implements ContainerRequestFilter {
+
+    /** The request header with the length, in bytes, of an upload to initiate. */
+    public static final String UPLOAD_LENGTH = "Trellis-Upload-Length";
+
+    /** The request header with the handle of an upload to complete. */
+    public static final String UPLOAD = "Trellis-Upload";
+
+    /** The request header with the digests of the parts of an upload to complete. */
+    public static final String UPLOAD_DIGEST = "Trellis-Upload-Digest";
+
+    private static final Logger LOGGER = getLogger(S3UploadFilter.class);
+
+    private final DirectUploads uploads;
+
+    /**
+     * Create an upload filter.
+     * @param binaryService the binary service
+     */
+    @Inject
+    public S3UploadFilter(final BinaryService binaryService) {
+        requireNonNull(binaryService, "binary service may not be null!");
+        final BinaryService service = CachingBinaryService.unwrap(binaryService);
+        this.uploads = service instanceof S3BinaryService
+            ? ((S3BinaryService) service).getDirectUploads().orElse(null) : null;
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext ctx) {
+        if (uploads == null || !PUT.equals(ctx.getMethod()) && !POST.equals(ctx.getMethod())) {
+            return;
+        }
+        try {
+            final String handle = ctx.getHeaderString(UPLOAD);
+            final String length = ctx.getHeaderString(UPLOAD_LENGTH);
+            if (handle != null) {
+                complete(ctx, handle);
+            } else if (length != null) {
+                initiate(ctx, Long.parseLong(length.trim()));
+            }
+        } catch (final IllegalArgumentException ex) {
+            ctx.abortWith(badRequest(ex.getMessage()));
+        } catch (final AmazonS3Exception ex) {
+            if (ex.getStatusCode() != 404) {
+                throw ex;
+            }
+            ctx.abortWith(badRequest("No such upload"));
+        }
+    }
+
+    private void initiate(final ContainerRequestContext ctx, final long length) {
+        final DirectUploads.Upload upload = uploads.initiate(length, Optional.ofNullable(ctx.getMediaType())
+                .map(Object::toString).orElse(null));
+        final String json = "{\"upload\":\"" + upload.getHandle() + "\",\"partSize\":" + upload.getPartSize()
+            + ",\"expires\":\"" + upload.getExpiration().toInstant() + "\",\"parts\":["
+            + upload.getParts().stream().map(url -> "\"" + url + "\"").collect(joining(",")) + "]}";
+        ctx.abortWith(Response.ok(json, APPLICATION_JSON_TYPE).header(UPLOAD, upload.getHandle())
+                .header(CACHE_CONTROL, "no-store").build());
+    }
+
+    private void complete(final ContainerRequestContext ctx, final String handle) {
+        if (ctx.getHeaderString("Digest") != null) {
+            // The content does not pass through Trellis, so it cannot compute a digest of it
+            throw new IllegalArgumentException("A Digest header cannot be used with a direct upload; use "
+                    + UPLOAD_DIGEST);
+        }
+        final String digests = ctx.getHeaderString(UPLOAD_DIGEST);
+        final List<String> parts = digests != null ? Arrays.stream(digests.split(",")).map(String::trim)
+            .collect(toList()) : emptyList();
+        final byte[] token = uploads.complete(handle.trim(), parts).getBytes(StandardCharsets.UTF_8);
+        LOGGER.debug("Completed direct upload for {}", ctx.getUriInfo().getPath());
+        ctx.setEntityStream(new ByteArrayInputStream(token));
+        ctx.getHeaders().putSingle(CONTENT_LENGTH, Integer.toString(token.length));
+    }
+
+    private static Response badRequest(final String message) {
+        return Response.status(Response.Status.BAD_REQUEST).entity(message).type(TEXT_PLAIN_TYPE).build();
+    }
+}
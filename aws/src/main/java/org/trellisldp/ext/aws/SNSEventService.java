@@ -20,9 +20,14 @@ import static org.slf4j.LoggerFactory.getLogger;
 
 import com.amazonaws.services.sns.AmazonSNS;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
+import org.eclipse.microprofile.config.Config;
 import org.slf4j.Logger;
 import org.trellisldp.api.Event;
 import org.trellisldp.api.EventSerializationService;
@@ -30,17 +35,23 @@ import org.trellisldp.api.EventService;
 
 /**
  * An SNS notification service.
+ *
+ * <p>Events are published on the calling thread by default. With {@value #TRELLIS_SNS_EXECUTOR_VIRTUAL} set,
+ * they are published instead by a single virtual thread, one at a time and in the order they were emitted, so
+ * the caller does not wait on SNS.
  */
 @ApplicationScoped
 public class SNSEventService implements EventService {
 
     public static final String TRELLIS_SNS_TOPIC = "trellis.sns.topic";
+    public static final String TRELLIS_SNS_EXECUTOR_VIRTUAL = "trellis.sns.executor.virtual";
 
     private static final Logger LOGGER = getLogger(SNSEventService.class);
 
     private final EventSerializationService serializer;
     private final AmazonSNS sns;
     private final String topic;
+    private final ExecutorService publisher;
 
     /**
      * Cretae an SNS-bases notification service.
@@ -48,26 +59,73 @@ public class SNSEventService implements EventService {
      */
     @Inject
     public SNSEventService(final EventSerializationService serializer) {
-        this(serializer, defaultClient(), getConfig().getValue(TRELLIS_SNS_TOPIC, String.class));
+        this(serializer, defaultClient(), getConfig());
+    }
+
+    private SNSEventService(final EventSerializationService serializer, final AmazonSNS client,
+            final Config config) {
+        this(serializer, client, config.getValue(TRELLIS_SNS_TOPIC, String.class), config);
     }
 
     /**
      * Cretae an SNS-bases notification service.
+     *
+     * <p>Any remaining settings are read from the MicroProfile configuration.
+     *
      * @param serializer the event serializer
      * @param client the SNS client
      * @param topic the topic ARN
      */
     public SNSEventService(final EventSerializationService serializer, final AmazonSNS client, final String topic) {
+        this(serializer, client, topic, getConfig());
+    }
+
+    private SNSEventService(final EventSerializationService serializer, final AmazonSNS client, final String topic,
+            final Config config) {
         this.serializer = requireNonNull(serializer, "the event serializer may not be null!");
         this.sns = requireNonNull(client, "the SNS client may not be null!");
         this.topic = requireNonNull(topic, "the SNS topic may not be null!");
+        if (config.getOptionalValue(TRELLIS_SNS_EXECUTOR_VIRTUAL, Boolean.class).orElse(false)) {
+            // A single thread keeps the events in order
+            this.publisher = IoExecutor.virtualThreads("trellis-sns-").map(Executors::newSingleThreadExecutor)
+                .orElseGet(() -> {
+                    LOGGER.warn("Virtual threads are not available on this JDK, publishing SNS events "
+                            + "on the calling thread");
+                    return null;
+                });
+        } else {
+            this.publisher = null;
+        }
+    }
+
+    /**
+     * Publish any events that are still waiting and stop the publishing thread.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (publisher != null) {
+            publisher.shutdown();
+        }
     }
 
     @Override
     public void emit(final Event event) {
         requireNonNull(event, "Cannot emit a null event!");
         try {
-            sns.publish(topic, serializer.serialize(event));
+            final String message = serializer.serialize(event);
+            if (publisher != null) {
+                publisher.execute(() -> publish(message));
+            } else {
+                publish(message);
+            }
+        } catch (final Exception ex) {
+            LOGGER.error("Error writing to SNS topic {}: {}", topic, ex.getMessage());
+        }
+    }
+
+    private void publish(final String message) {
+        try {
+            sns.publish(topic, message);
         } catch (final Exception ex) {
             LOGGER.error("Error writing to SNS topic {}: {}", topic, ex.getMessage());
         }
@@ -0,0 +1,52 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of heap buffers for copying content between channels.
+ *
+ * <p>Most channels here adapt an S3 object stream, which reads into a byte array whatever the buffer, so a
+ * direct buffer saves no copy. Reusing heap buffers avoids allocating a new one for every transfer; buffers
+ * beyond the pool size are left to the garbage collector.
+ */
+final class TransferBuffers {
+
+    /** The size of each buffer. */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int POOL_SIZE = 32;
+    private static final BlockingQueue<ByteBuffer> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /**
+     * Take a buffer from the pool, or allocate one if the pool is empty.
+     * @return an empty buffer
+     */
+    static ByteBuffer acquire() {
+        final ByteBuffer buffer = POOL.poll();
+        return buffer != null ? buffer : ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Return a buffer to the pool.
+     * @param buffer a buffer that was taken with {@link #acquire()}, and is no longer used
+     */
+    static void release(final ByteBuffer buffer) {
+        buffer.clear();
+        POOL.offer(buffer);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.amazonaws.AmazonServiceException;
+
+import java.util.concurrent.CompletionException;
+
+/**
+ * Adapts the part size and part concurrency of multipart uploads to the measured upload performance.
+ *
+ * <p>Parts are drawn from a {@link PartBufferPool} whose buffer size and count the tuner adjusts. After each
+ * window of parts, one per part in flight, the aggregate throughput of the window is compared with that of
+ * the previous window. While adding a part in flight still raises the throughput, the concurrency grows by
+ * one; when S3 throttles a request, or a part fails, it is halved. The part size doubles while parts complete
+ * quickly, so that per-request overhead does not dominate, and halves when parts become slow, so that a
+ * retried part costs less. Both stay within the configured bounds, so memory use never exceeds the maximum
+ * part size times the maximum concurrency.
+ */
+final class UploadTuner implements UploadTunerMXBean {
+
+    private static final double GROWTH = 1.05;
+    private static final double WEIGHT = 0.2;
+    private static final long FAST_PART_NANOS = SECONDS.toNanos(1L);
+    private static final long SLOW_PART_NANOS = SECONDS.toNanos(10L);
+
+    private final PartBufferPool pool;
+    private final int minPartSize;
+    private final int maxPartSize;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+
+    private long windowStart;
+    private long windowBytes;
+    private int windowParts;
+    private double throughput;
+    private double previousThroughput;
+    private double averagePartNanos;
+    private long partCount;
+    private long throttleCount;
+    private long errorCount;
+
+    /**
+     * Create an upload tuner.
+     * @param name the service name, used for the JMX object name
+     * @param partSize the initial part size
+     * @param concurrency the initial number of parts in flight
+     * @param minPartSize the smallest part size
+     * @param maxPartSize the largest part size
+     * @param minConcurrency the smallest number of parts in flight
+     * @param maxConcurrency the largest number of parts in flight
+     */
+    UploadTuner(final String name, final int partSize, final int concurrency, final int minPartSize,
+            final int maxPartSize, final int minConcurrency, final int maxConcurrency) {
+        if (minPartSize > maxPartSize || minConcurrency > maxConcurrency || minConcurrency <= 0) {
+            throw new IllegalArgumentException("Invalid upload bounds!");
+        }
+        this.minPartSize = minPartSize;
+        this.maxPartSize = maxPartSize;
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.pool = new PartBufferPool(clamp(partSize, minPartSize, maxPartSize),
+                clamp(concurrency, minConcurrency, maxConcurrency));
+        IoExecutor.export("Upload", name, this, UploadTunerMXBean.class);
+    }
+
+    /**
+     * Get the buffer pool from which upload parts are drawn.
+     * @return the buffer pool
+     */
+    PartBufferPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Record the outcome of a part upload.
+     * @param bytes the size of the part
+     * @param nanos the time taken to upload the part, in nanoseconds
+     * @param error the error, or {@code null} if the part was uploaded
+     */
+    synchronized void record(final long bytes, final long nanos, final Throwable error) {
+        if (error != null) {
+            if (isThrottled(error)) {
+                throttleCount++;
+            } else {
+                errorCount++;
+            }
+            // Back off multiplicatively, and measure the reduced concurrency afresh
+            pool.resize(pool.getBufferSize(), Math.max(minConcurrency, pool.getMaxBuffers() / 2));
+            windowParts = 0;
+            windowBytes = 0;
+            previousThroughput = 0;
+            return;
+        }
+
+        partCount++;
+        averagePartNanos = averagePartNanos == 0 ? nanos : WEIGHT * nanos + (1 - WEIGHT) * averagePartNanos;
+        final long now = System.nanoTime();
+        if (windowParts == 0) {
+            windowStart = now - nanos;
+        }
+        windowBytes += bytes;
+        windowParts++;
+        if (windowParts >= pool.getMaxBuffers()) {
+            throughput = windowBytes * (double) SECONDS.toNanos(1L) / Math.max(1L, now - windowStart);
+            adjust();
+            windowParts = 0;
+            windowBytes = 0;
+        }
+    }
+
+    @Override
+    public synchronized int getPartSize() {
+        return pool.getBufferSize();
+    }
+
+    @Override
+    public synchronized int getConcurrency() {
+        return pool.getMaxBuffers();
+    }
+
+    @Override
+    public synchronized double getThroughput() {
+        return throughput;
+    }
+
+    @Override
+    public synchronized double getAveragePartMillis() {
+        return averagePartNanos / NANOSECONDS.convert(1L, MILLISECONDS);
+    }
+
+    @Override
+    public synchronized long getPartCount() {
+        return partCount;
+    }
+
+    @Override
+    public synchronized long getThrottleCount() {
+        return throttleCount;
+    }
+
+    @Override
+    public synchronized long getErrorCount() {
+        return errorCount;
+    }
+
+    private void adjust() {
+        int concurrency = pool.getMaxBuffers();
+        if (throughput >= previousThroughput * GROWTH && concurrency < maxConcurrency) {
+            concurrency++;
+        }
+        long partSize = pool.getBufferSize();
+        if (averagePartNanos < FAST_PART_NANOS) {
+            partSize = Math.min(maxPartSize, partSize * 2);
+        } else if (averagePartNanos > SLOW_PART_NANOS) {
+            partSize = Math.max(minPartSize, partSize / 2);
+        }
+        previousThroughput = throughput;
+        pool.resize((int) partSize, concurrency);
+    }
+
+    static boolean isThrottled(final Throwable error) {
+        final Throwable cause = error instanceof CompletionException && error.getCause() != null
+            ? error.getCause() : error;
+        if (cause instanceof AmazonServiceException) {
+            final AmazonServiceException ex = (AmazonServiceException) cause;
+            return ex.getStatusCode() == 503 || "SlowDown".equals(ex.getErrorCode());
+        }
+        return false;
+    }
+
+    private static int clamp(final int value, final int min, final int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
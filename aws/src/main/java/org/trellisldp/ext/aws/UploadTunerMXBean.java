@@ -0,0 +1,64 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+/**
+ * Metrics for the adaptive multipart upload engine of a binary service.
+ *
+ * <p>These are exported over JMX as {@code org.trellisldp.ext.aws:type=Upload,name=<service>}.
+ */
+public interface UploadTunerMXBean {
+
+    /**
+     * Get the size of the parts that new uploads are currently split into.
+     * @return the part size, in bytes
+     */
+    int getPartSize();
+
+    /**
+     * Get the number of parts that may currently be in flight at once.
+     * @return the part concurrency
+     */
+    int getConcurrency();
+
+    /**
+     * Get the aggregate upload throughput measured over the most recent window of parts.
+     * @return the throughput, in bytes per second
+     */
+    double getThroughput();
+
+    /**
+     * Get the moving average of the time taken to upload a part.
+     * @return the average part time, in milliseconds
+     */
+    double getAveragePartMillis();
+
+    /**
+     * Get the number of parts that were uploaded.
+     * @return the number of uploaded parts
+     */
+    long getPartCount();
+
+    /**
+     * Get the number of parts that failed because S3 asked for the request rate to be reduced.
+     * @return the number of throttled parts
+     */
+    long getThrottleCount();
+
+    /**
+     * Get the number of parts that failed for any other reason.
+     * @return the number of failed parts
+     */
+    long getErrorCount();
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.DeleteObjectsResult.DeletedObject;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class BatchDeleterTest {
+
+    private AmazonS3 mockClient;
+
+    @BeforeEach
+    public void setUp() {
+        mockClient = mock(AmazonS3.class);
+        when(mockClient.deleteObjects(any(DeleteObjectsRequest.class))).thenAnswer(inv ->
+                new DeleteObjectsResult(deleted(((DeleteObjectsRequest) inv.getArgument(0)).getKeys().stream()
+                        .map(KeyVersion::getKey).collect(toList()))));
+    }
+
+    @Test
+    public void testBatches() {
+        final BatchDeleter deleter = new BatchDeleter(mockClient, "bucket", 1000, 60000L);
+        final CompletableFuture<Void> first = deleter.delete("first");
+        final CompletableFuture<Void> repeated = deleter.delete("first");
+        final CompletableFuture<Void> second = deleter.delete("second");
+        final CompletableFuture<Void> third = deleter.delete("third");
+        assertSame(first, repeated);
+        assertEquals(3, deleter.getQueueDepth());
+
+        deleter.flush();
+        first.join();
+        second.join();
+        third.join();
+        assertEquals(0, deleter.getQueueDepth());
+        verify(mockClient).deleteObjects(any(DeleteObjectsRequest.class));
+        deleter.shutdown();
+    }
+
+    @Test
+    public void testFlushOnSize() throws Exception {
+        final BatchDeleter deleter = new BatchDeleter(mockClient, "bucket", 2, 60000L);
+        deleter.delete("first");
+        deleter.delete("second").get(5, SECONDS);
+        verify(mockClient).deleteObjects(any(DeleteObjectsRequest.class));
+        deleter.shutdown();
+    }
+
+    @Test
+    public void testShutdownDrainsQueue() {
+        final BatchDeleter deleter = new BatchDeleter(mockClient, "bucket", 1000, 60000L);
+        final CompletableFuture<Void> deleted = deleter.delete("key");
+        verify(mockClient, never()).deleteObjects(any(DeleteObjectsRequest.class));
+        deleter.shutdown();
+        assertTrue(deleted.isDone());
+        assertFalse(deleted.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testDeleteAfterShutdown() {
+        final BatchDeleter deleter = new BatchDeleter(mockClient, "bucket", 2, 60000L);
+        deleter.shutdown();
+        final CompletableFuture<Void> first = deleter.delete("first");
+        final CompletableFuture<Void> second = deleter.delete("second");
+        assertTrue(first.isDone());
+        assertFalse(first.isCompletedExceptionally());
+        assertTrue(second.isDone());
+        assertEquals(0, deleter.getQueueDepth());
+        verify(mockClient).deleteObject(eq("bucket"), eq("first"));
+        verify(mockClient).deleteObject(eq("bucket"), eq("second"));
+        verify(mockClient, never()).deleteObjects(any(DeleteObjectsRequest.class));
+    }
+
+    @Test
+    public void testPartialFailure() {
+        final DeleteError error = new DeleteError();
+        error.setKey("denied");
+        error.setCode("AccessDenied");
+        error.setMessage("Access Denied");
+        doThrow(new MultiObjectDeleteException(singletonList(error), deleted(singletonList("allowed"))))
+            .when(mockClient).deleteObjects(any(DeleteObjectsRequest.class));
+
+        final BatchDeleter deleter = new BatchDeleter(mockClient, "bucket", 1000, 60000L);
+        final CompletableFuture<Void> allowed = deleter.delete("allowed");
+        final CompletableFuture<Void> denied = deleter.delete("denied");
+        deleter.flush();
+        allowed.join();
+        final ExecutionException ex = assertThrows(ExecutionException.class, denied::get);
+        assertEquals("AccessDenied", ((AmazonS3Exception) ex.getCause()).getErrorCode());
+        deleter.shutdown();
+    }
+
+    @Test
+    public void testRequestFailure() {
+        doThrow(new AmazonS3Exception("Error")).when(mockClient).deleteObjects(any(DeleteObjectsRequest.class));
+        final BatchDeleter deleter = new BatchDeleter(mockClient, "bucket", 1000, 60000L);
+        final CompletableFuture<Void> deleted = deleter.delete("key");
+        deleter.flush();
+        assertTrue(deleted.isCompletedExceptionally());
+        deleter.shutdown();
+    }
+
+    private static List<DeletedObject> deleted(final List<String> keys) {
+        final List<DeletedObject> deleted = new ArrayList<>();
+        for (final String key : keys) {
+            final DeletedObject object = new DeletedObject();
+            object.setKey(key);
+            deleted.add(object);
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+public class BinaryCompressionTest {
+
+    private static final String content = "A sample text file, stored with gzip compression.";
+
+    @Test
+    public void testContentTypes() {
+        final BinaryCompression compression = new BinaryCompression("GZIP", "text/*", "application/json");
+        assertEquals("gzip", compression.getEncoding("text/plain").orElse(null));
+        assertEquals("gzip", compression.getEncoding("text/csv; charset=UTF-8").orElse(null));
+        assertEquals("gzip", compression.getEncoding("Application/JSON").orElse(null));
+        assertFalse(compression.getEncoding("image/jpeg").isPresent());
+        assertFalse(compression.getEncoding(null).isPresent());
+    }
+
+    @Test
+    public void testUnsupported() {
+        assertThrows(IllegalArgumentException.class, () -> new BinaryCompression("brotli", "text/*"));
+    }
+
+    @Test
+    public void testAvailableEncoding() {
+        assertEquals("gzip", BinaryCompression.getAvailableEncoding(" Gzip"));
+        assertThrows(IllegalArgumentException.class, () -> BinaryCompression.getAvailableEncoding("deflate"));
+    }
+
+    @Test
+    public void testLevels() throws IOException {
+        final StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            repeated.append(content).append(i % 7);
+        }
+        final ByteArrayOutputStream fast = new ByteArrayOutputStream();
+        final ByteArrayOutputStream best = new ByteArrayOutputStream();
+        try (final OutputStream output = BinaryCompression.compress("gzip", 1, fast)) {
+            output.write(repeated.toString().getBytes(UTF_8));
+        }
+        try (final OutputStream output = BinaryCompression.compress("gzip", 9, best)) {
+            output.write(repeated.toString().getBytes(UTF_8));
+        }
+        assertTrue(best.size() <= fast.size());
+        assertEquals(repeated.toString(), IOUtils.toString(BinaryCompression.decompress("gzip",
+                        new ByteArrayInputStream(best.toByteArray())), UTF_8));
+        assertThrows(IllegalArgumentException.class, () -> BinaryCompression.compress("gzip", 12,
+                    new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final byte[] compressed = gzip(content);
+        assertEquals(content, IOUtils.toString(BinaryCompression.decompress("gzip",
+                        new ByteArrayInputStream(compressed)), UTF_8));
+        assertEquals(content, IOUtils.toString(BinaryCompression.decompress(null,
+                        new ByteArrayInputStream(content.getBytes(UTF_8))), UTF_8));
+    }
+
+    @Test
+    public void testCompressedBinary() throws IOException {
+        final byte[] compressed = gzip(content);
+        final AmazonS3 mockClient = mock(AmazonS3.class);
+        when(mockClient.getObject(any(GetObjectRequest.class))).thenAnswer(inv -> {
+            final ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentEncoding("gzip");
+            final S3Object object = new S3Object();
+            object.setObjectMetadata(metadata);
+            final long[] range = ((GetObjectRequest) inv.getArgument(0)).getRange();
+            object.setObjectContent(range == null ? new ByteArrayInputStream(compressed)
+                    : new ByteArrayInputStream(compressed, (int) range[0], (int) (range[1] - range[0] + 1)));
+            return object;
+        });
+
+        final S3Binary binary = new S3Binary(mockClient, "bucket", "key");
+        try (final InputStream input = binary.getContent()) {
+            assertEquals(content, IOUtils.toString(input, UTF_8));
+        }
+        try (final InputStream input = binary.getContent(9L, 17L)) {
+            assertEquals("text file", IOUtils.toString(input, UTF_8));
+        }
+        try (final InputStream input = binary.getEncodedContent()) {
+            assertArrayEquals(compressed, IOUtils.toByteArray(input));
+        }
+    }
+
+    private static byte[] gzip(final String data) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final OutputStream output = BinaryCompression.compress("gzip", bytes)) {
+            output.write(data.getBytes(UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.trellisldp.ext.aws.PackIndex.PackEntry;
+
+public class BinaryPackerTest {
+
+    private final Map<String, byte[]> objects = new TreeMap<>();
+    private AmazonS3 mockClient;
+    private Runnable onListPacks;
+
+    @BeforeEach
+    public void setUp() {
+        objects.clear();
+        onListPacks = () -> { };
+        mockClient = mock(AmazonS3.class);
+        when(mockClient.putObject(eq("bucket"), anyString(), any(InputStream.class), any(ObjectMetadata.class)))
+            .thenAnswer(inv -> {
+                objects.put(inv.getArgument(1), IOUtils.toByteArray((InputStream) inv.getArgument(2)));
+                return null;
+            });
+        when(mockClient.getObject(eq("bucket"), anyString())).thenAnswer(inv ->
+                getObject(inv.getArgument(1), 0, Integer.MAX_VALUE));
+        when(mockClient.getObject(any(GetObjectRequest.class))).thenAnswer(inv -> {
+            final GetObjectRequest req = inv.getArgument(0);
+            return getObject(req.getKey(), req.getRange()[0], req.getRange()[1]);
+        });
+        when(mockClient.deleteObjects(any(DeleteObjectsRequest.class))).thenAnswer(inv -> {
+            ((DeleteObjectsRequest) inv.getArgument(0)).getKeys().forEach(key -> objects.remove(key.getKey()));
+            return new DeleteObjectsResult(new ArrayList<>());
+        });
+        when(mockClient.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(inv -> {
+            final ListObjectsV2Request req = inv.getArgument(0);
+            if (req.getDelimiter() != null) {
+                // Only the repacker lists the packs themselves
+                onListPacks.run();
+            }
+            final ListObjectsV2Result result = new ListObjectsV2Result();
+            objects.forEach((key, value) -> {
+                if (key.startsWith(req.getPrefix()) && (req.getStartAfter() == null
+                            || key.compareTo(req.getStartAfter()) > 0) && (req.getDelimiter() == null
+                            || !key.substring(req.getPrefix().length()).contains(req.getDelimiter()))) {
+                    final S3ObjectSummary summary = new S3ObjectSummary();
+                    summary.setKey(key);
+                    summary.setSize(value.length);
+                    result.getObjectSummaries().add(summary);
+                }
+            });
+            return result;
+        });
+    }
+
+    @Test
+    public void testPackAndRead() throws IOException {
+        final BinaryPacker packer = new BinaryPacker(mockClient, "bucket", "prefix/", 64, 1024, 60000L, 0L, 0.5);
+        final CompletableFuture<Void> first = packer.add("prefix/first", "A first binary.".getBytes(UTF_8),
+                "text/plain", singletonMap("trellis.digest.md5", "ZGlnZXN0"));
+        final CompletableFuture<Void> second = packer.add("prefix/second", "A second binary.".getBytes(UTF_8), null,
+                emptyMap());
+        assertFalse(first.isDone());
+        assertFalse(packer.find("prefix/first").isPresent());
+
+        packer.flush();
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+
+        final PackEntry entry = packer.find("prefix/second").orElseThrow(AssertionError::new);
+        assertEquals(15L, entry.getOffset());
+        assertEquals(16L, entry.getLength());
+        final PackedBinary binary = new PackedBinary(mockClient, "bucket", entry);
+        assertEquals("A second binary.", IOUtils.toString(binary.getContent(), UTF_8));
+        assertEquals("second", IOUtils.toString(binary.getContent(2L, 7L), UTF_8));
+        // Ranges never extend into the next binary of the pack
+        assertEquals("binary.", IOUtils.toString(binary.getContent(9L, 100L), UTF_8));
+        assertEquals("", IOUtils.toString(binary.getContent(20L, 30L), UTF_8));
+        packer.shutdown();
+    }
+
+    @Test
+    public void testIndexIsShared() {
+        final BinaryPacker packer = new BinaryPacker(mockClient, "bucket", "prefix/", 64, 1024, 60000L, 0L, 0.5);
+        packer.add("prefix/binary", "A sample binary.".getBytes(UTF_8), null, emptyMap());
+        packer.flush();
+
+        final PackIndex index = new PackIndex(mockClient, "bucket", "prefix/packs/", 0L);
+        final PackEntry entry = index.find("prefix/binary").orElseThrow(AssertionError::new);
+        assertTrue(entry.getPackKey().startsWith("prefix/packs/"));
+        assertEquals(16L, entry.getLength());
+        assertFalse(index.find("prefix/other").isPresent());
+        packer.shutdown();
+    }
+
+    @Test
+    public void testStoredMetadata() {
+        final BinaryPacker packer = new BinaryPacker(mockClient, "bucket", "prefix/", 64, 1024, 60000L, 0L, 0.5);
+        packer.add("prefix/binary", "A sample binary.".getBytes(UTF_8), "text/plain; charset=utf-8",
+                singletonMap("trellis.digest.sha-256", "a+b/c=="));
+        packer.add("prefix/other", "Another binary.".getBytes(UTF_8), null, emptyMap());
+        packer.flush();
+
+        // The content type and digests are read back from the shared index
+        final PackIndex index = new PackIndex(mockClient, "bucket", "prefix/packs/", 0L);
+        final PackEntry entry = index.find("prefix/binary").orElseThrow(AssertionError::new);
+        assertEquals(Optional.of("text/plain; charset=utf-8"), entry.getContentType());
+        assertEquals(Optional.of("a+b/c=="), InlineDigests.getDigest(entry.getDigests(), "SHA-256"));
+        final PackEntry other = index.find("prefix/other").orElseThrow(AssertionError::new);
+        assertFalse(other.getContentType().isPresent());
+        assertTrue(other.getDigests().isEmpty());
+        assertEquals(Optional.of("text/plain; charset=utf-8"),
+                new PackedBinary(mockClient, "bucket", entry).getContentType());
+        packer.shutdown();
+    }
+
+    @Test
+    public void testRemove() {
+        final BinaryPacker packer = new BinaryPacker(mockClient, "bucket", "prefix/", 64, 1024, 60000L, 0L, 0.5);
+        packer.add("prefix/binary", "A sample binary.".getBytes(UTF_8), null, emptyMap());
+        packer.flush();
+        packer.remove("prefix/binary");
+        assertFalse(packer.find("prefix/binary").isPresent());
+
+        // Another node sees the tombstone, which is newer than the pack entry
+        assertFalse(new PackIndex(mockClient, "bucket", "prefix/packs/", 0L).find("prefix/binary").isPresent());
+        packer.shutdown();
+    }
+
+    @Test
+    public void testRepack() {
+        final BinaryPacker packer = new BinaryPacker(mockClient, "bucket", "prefix/", 64, 1024, 60000L, 0L, 0.5);
+        packer.add("prefix/live", "A live binary.".getBytes(UTF_8), null, emptyMap());
+        packer.add("prefix/dead", "A binary that has been purged.".getBytes(UTF_8), null, emptyMap());
+        packer.flush();
+        final String original = packer.find("prefix/live").orElseThrow(AssertionError::new).getPackKey();
+        packer.remove("prefix/dead");
+
+        packer.repack();
+        final PackEntry moved = packer.find("prefix/live").orElseThrow(AssertionError::new);
+        assertNotEquals(original, moved.getPackKey());
+        assertTrue(objects.containsKey(original));
+
+        // The original pack has no live binaries left, so the next run deletes it
+        packer.repack();
+        verify(mockClient).deleteObject(eq("bucket"), eq(original));
+        packer.shutdown();
+    }
+
+    @Test
+    public void testRepackAfterPurge() {
+        final BinaryPacker packer = new BinaryPacker(mockClient, "bucket", "prefix/", 64, 1024, 60000L, 0L, 0.5);
+        packer.add("prefix/live", "A live binary.".getBytes(UTF_8), null, emptyMap());
+        packer.add("prefix/dead", "A binary that has been purged.".getBytes(UTF_8), null, emptyMap());
+        packer.flush();
+        packer.remove("prefix/dead");
+
+        // Another node purges the binary after the repacker has read the index, but before it records the move
+        onListPacks = () -> new PackIndex(mockClient, "bucket", "prefix/packs/", 0L).record(PackIndex.newPackId(),
+                singletonMap("prefix/live", PackEntry.tombstone()));
+        packer.repack();
+        assertFalse(packer.find("prefix/live").isPresent());
+        assertFalse(new PackIndex(mockClient, "bucket", "prefix/packs/", 0L).find("prefix/live").isPresent());
+        packer.shutdown();
+    }
+
+    @Test
+    public void testMovedBinaryKeepsVersion() {
+        final BinaryPacker packer = new BinaryPacker(mockClient, "bucket", "prefix/", 64, 1024, 60000L, 0L, 0.5);
+        packer.add("prefix/live", "A live binary.".getBytes(UTF_8), null, emptyMap());
+        packer.add("prefix/dead", "A binary that has been purged.".getBytes(UTF_8), null, emptyMap());
+        packer.flush();
+        packer.remove("prefix/dead");
+
+        // A node that read the index before the move purges the binary afterwards
+        final PackIndex other = new PackIndex(mockClient, "bucket", "prefix/packs/", 0L);
+        assertTrue(other.find("prefix/live").isPresent());
+        final String tombstoneVersion = PackIndex.newPackId();
+        packer.repack();
+        assertTrue(packer.find("prefix/live").isPresent());
+        other.record(tombstoneVersion, singletonMap("prefix/live", PackEntry.tombstone()));
+
+        // The tombstone is older than the pack that the binary moved to, but newer than the write that stored it
+        assertFalse(new PackIndex(mockClient, "bucket", "prefix/packs/", 0L).find("prefix/live").isPresent());
+        packer.shutdown();
+    }
+
+    @Test
+    public void testCompactIndex() {
+        // A tombstone from long ago has nothing left to override
+        new PackIndex(mockClient, "bucket", "prefix/packs/", 0L).record(String.format("%013d-old", 1L),
+                singletonMap("prefix/gone", PackEntry.tombstone()));
+        final BinaryPacker packer = new BinaryPacker(mockClient, "bucket", "prefix/", 64, 1024, 60000L, 0L, 0.5);
+        for (int i = 0; i < 20; i++) {
+            packer.add("prefix/binary" + i, ("Binary " + i).getBytes(UTF_8), null, emptyMap());
+            packer.flush();
+        }
+        packer.remove("prefix/binary0");
+        final long deltas = indexObjects().count();
+
+        packer.repack();
+        assertTrue(indexObjects().count() < deltas);
+        assertTrue(indexObjects().count() <= PackIndex.SHARDS);
+        assertTrue(indexObjects().map(objects::get).map(bytes -> new String(bytes, UTF_8))
+                .noneMatch(delta -> delta.contains("prefix%2Fgone")));
+
+        final PackIndex reloaded = new PackIndex(mockClient, "bucket", "prefix/packs/", 0L);
+        assertFalse(reloaded.find("prefix/binary0").isPresent());
+        for (int i = 1; i < 20; i++) {
+            assertTrue(reloaded.find("prefix/binary" + i).isPresent());
+        }
+        packer.shutdown();
+    }
+
+    private Stream<String> indexObjects() {
+        return objects.keySet().stream().filter(key -> key.startsWith("prefix/packs/index/"));
+    }
+
+    private S3Object getObject(final String key, final long from, final long to) {
+        final byte[] content = objects.get(key);
+        final S3Object object = new S3Object();
+        object.setKey(key);
+        object.setObjectContent(new ByteArrayInputStream(Arrays.copyOfRange(content, (int) from,
+                        (int) Math.min(to + 1, content.length))));
+        return object;
+    }
+}
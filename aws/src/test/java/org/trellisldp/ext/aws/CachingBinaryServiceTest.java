@@ -0,0 +1,192 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.trellisldp.api.TrellisUtils.getInstance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.RDF;
+import org.eclipse.microprofile.config.Config;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.trellisldp.api.Binary;
+import org.trellisldp.api.BinaryMetadata;
+import org.trellisldp.api.BinaryService;
+
+public class CachingBinaryServiceTest {
+
+    private static final RDF rdf = getInstance();
+    private static final IRI identifier = rdf.createIRI("s3://binaries/cached");
+    private static final String content = "A sample binary file.";
+
+    @TempDir
+    public Path directory;
+
+    private BinaryService mockService;
+    private Binary mockBinary;
+
+    @BeforeEach
+    public void setUp() {
+        mockService = mock(BinaryService.class);
+        mockBinary = mock(Binary.class);
+        when(mockService.get(any(IRI.class))).thenAnswer(inv -> completedFuture(mockBinary));
+        when(mockService.purgeContent(any(IRI.class))).thenAnswer(inv -> completedFuture(null));
+        when(mockService.setContent(any(BinaryMetadata.class), any(InputStream.class))).thenAnswer(inv -> {
+            IOUtils.toByteArray((InputStream) inv.getArgument(1));
+            return completedFuture(null);
+        });
+        when(mockBinary.getContent()).thenAnswer(inv -> new ByteArrayInputStream(content.getBytes(UTF_8)));
+    }
+
+    @Test
+    public void testWriteThrough() throws IOException {
+        final BinaryService svc = new CachingBinaryService(mockService, directory, 1024L);
+        svc.setContent(BinaryMetadata.builder(identifier).build(),
+                new ByteArrayInputStream(content.getBytes(UTF_8))).toCompletableFuture().join();
+
+        final Binary binary = svc.get(identifier).toCompletableFuture().join();
+        assertEquals(content, IOUtils.toString(binary.getContent(), UTF_8));
+        assertEquals("ple bi", IOUtils.toString(binary.getContent(5, 10), UTF_8));
+        verify(mockService, never()).get(any(IRI.class));
+    }
+
+    @Test
+    public void testChannels() throws IOException {
+        final BinaryService svc = new CachingBinaryService(mockService, directory, 1024L);
+        svc.setContent(BinaryMetadata.builder(identifier).build(),
+                new ByteArrayInputStream(content.getBytes(UTF_8))).toCompletableFuture().join();
+
+        final ChannelBinary binary = (ChannelBinary) svc.get(identifier).toCompletableFuture().join();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(6L, binary.transferTo(5L, 10L, Channels.newChannel(output)));
+        assertEquals("ple bi", new String(output.toByteArray(), UTF_8));
+        try (final InputStream input = Channels.newInputStream(binary.getChannel(9L, 100L))) {
+            assertEquals("binary file.", IOUtils.toString(input, UTF_8));
+        }
+    }
+
+    @Test
+    public void testDirectUploadToken() {
+        final String token = "trellis-s3-upload:0123456789abcdef0123456789abcdef";
+        assertEquals(DirectUploads.TOKEN_LENGTH, token.length());
+        final CachingBinaryService svc = new CachingBinaryService(mockService, directory, 1024L);
+        svc.setContent(BinaryMetadata.builder(identifier).build(),
+                new ByteArrayInputStream(content.getBytes(UTF_8))).toCompletableFuture().join();
+        assertEquals(content.length(), svc.getCacheSize());
+
+        // A direct upload replaces the cached content, but its token is not content and is not cached
+        svc.setContent(BinaryMetadata.builder(identifier).build(),
+                new ByteArrayInputStream(token.getBytes(UTF_8))).toCompletableFuture().join();
+        assertEquals(0L, svc.getCacheSize());
+        verify(mockService, times(2)).setContent(any(BinaryMetadata.class), any(InputStream.class));
+        svc.get(identifier).toCompletableFuture().join();
+        verify(mockService).get(eq(identifier));
+    }
+
+    @Test
+    public void testSetContentReadsNothingUpFront() {
+        final CompletableFuture<Void> upload = new CompletableFuture<>();
+        doReturn(upload).when(mockService).setContent(any(BinaryMetadata.class), any(InputStream.class));
+        final ByteArrayInputStream input = new ByteArrayInputStream(content.getBytes(UTF_8));
+        final CachingBinaryService svc = new CachingBinaryService(mockService, directory, 1024L);
+        final CompletionStage<Void> stage = svc.setContent(BinaryMetadata.builder(identifier).build(), input);
+        // The stream is only read once the delegate uploads it
+        assertEquals(content.length(), input.available());
+
+        upload.completeExceptionally(new IllegalStateException("Expected"));
+        assertThrows(CompletionException.class, () -> stage.toCompletableFuture().join());
+        assertEquals(0L, svc.getCacheSize());
+    }
+
+    @Test
+    public void testWrap() {
+        final Config mockConfig = mock(Config.class);
+        doReturn(Optional.empty()).when(mockConfig).getOptionalValue(anyString(), any());
+        assertSame(mockService, CachingBinaryService.wrap(mockService, mockConfig));
+
+        doReturn(Optional.of(true)).when(mockConfig)
+            .getOptionalValue(eq(CachingBinaryService.CONFIG_BINARY_CACHE), eq(Boolean.class));
+        when(mockConfig.getValue(eq(CachingBinaryService.CONFIG_BINARY_CACHE_DIRECTORY), eq(String.class)))
+            .thenReturn(directory.toString());
+        final BinaryService svc = CachingBinaryService.wrap(mockService, mockConfig);
+        assertTrue(svc instanceof CachingBinaryService);
+        assertSame(mockService, CachingBinaryService.unwrap(svc));
+    }
+
+    @Test
+    public void testReadThrough() throws IOException {
+        final BinaryService svc = new CachingBinaryService(mockService, directory, 1024L);
+        try (final InputStream input = svc.get(identifier).toCompletableFuture().join().getContent()) {
+            assertEquals(content, IOUtils.toString(input, UTF_8));
+        }
+        try (final InputStream input = svc.get(identifier).toCompletableFuture().join().getContent()) {
+            assertEquals(content, IOUtils.toString(input, UTF_8));
+        }
+        verify(mockService, times(1)).get(eq(identifier));
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        final CachingBinaryService svc = new CachingBinaryService(mockService, directory, 30L);
+        final IRI other = rdf.createIRI("s3://binaries/other");
+        svc.setContent(BinaryMetadata.builder(identifier).build(),
+                new ByteArrayInputStream(content.getBytes(UTF_8))).toCompletableFuture().join();
+        svc.setContent(BinaryMetadata.builder(other).build(),
+                new ByteArrayInputStream(content.getBytes(UTF_8))).toCompletableFuture().join();
+        assertEquals(content.length(), svc.getCacheSize());
+
+        svc.get(other).toCompletableFuture().join();
+        verify(mockService, never()).get(any(IRI.class));
+        svc.get(identifier).toCompletableFuture().join();
+        verify(mockService).get(eq(identifier));
+    }
+
+    @Test
+    public void testPurge() {
+        final CachingBinaryService svc = new CachingBinaryService(mockService, directory, 1024L);
+        svc.setContent(BinaryMetadata.builder(identifier).build(),
+                new ByteArrayInputStream(content.getBytes(UTF_8))).toCompletableFuture().join();
+        svc.purgeContent(identifier).toCompletableFuture().join();
+        assertEquals(0L, svc.getCacheSize());
+        verify(mockService).purgeContent(eq(identifier));
+
+        // A restarted cache starts out empty after a purge
+        assertEquals(0L, new CachingBinaryService(mockService, directory, 1024L).getCacheSize());
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static java.util.Optional.of;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ContentAddressedStorageTest {
+
+    private static final long GRACE_PERIOD = 60000L;
+    private static final String content = "A sample binary file.";
+    private static final String digest = ContentAddressedStorage.toHex(ContentAddressedStorage.getDigest()
+            .digest(content.getBytes(UTF_8)));
+    private static final String contentKey = "prefix/sha256/" + digest;
+    private static final String orphanKey = "prefix/orphans/" + digest;
+
+    private AmazonS3 mockClient;
+
+    @BeforeEach
+    public void setUp() {
+        mockClient = mock(AmazonS3.class);
+        final AmazonS3Exception notFound = new AmazonS3Exception("Not Found");
+        notFound.setStatusCode(404);
+        when(mockClient.getObjectMetadata(anyString(), anyString())).thenThrow(notFound);
+        // Server-side copies go through a transfer manager, which reads the size of the source first
+        final ObjectMetadata source = new ObjectMetadata();
+        source.setContentLength(content.length());
+        when(mockClient.getObjectMetadata(any(GetObjectMetadataRequest.class))).thenReturn(source);
+        when(mockClient.copyObject(any(CopyObjectRequest.class))).thenReturn(new CopyObjectResult());
+    }
+
+    @Test
+    public void testStoreNewContent() throws IOException {
+        final ContentAddressedStorage store = new ContentAddressedStorage(mockClient, "bucket", "prefix/", 1024,
+                (key, md, stream) -> fail("Small content should not be staged"), new S3Copier(mockClient),
+                GRACE_PERIOD);
+        store.store("prefix/binary", new ObjectMetadata(), new ByteArrayInputStream(content.getBytes(UTF_8)),
+                Collections::emptyMap);
+        verify(mockClient).putObject(argThat((PutObjectRequest req) -> req.getKey().equals(contentKey)));
+        verify(mockClient).putObject(argThat((PutObjectRequest req) -> req.getKey().equals(contentKey
+                        + "/refs/binary")));
+        verify(mockClient).putObject(argThat((PutObjectRequest req) -> req.getKey().equals("prefix/binary")
+                    && contentKey.equals(req.getMetadata().getUserMetaDataOf(ContentAddressedStorage.CONTENT_KEY))));
+    }
+
+    @Test
+    public void testStoreDuplicateContent() throws IOException {
+        when(mockClient.doesObjectExist(eq("bucket"), eq(contentKey))).thenReturn(true);
+        final ContentAddressedStorage store = new ContentAddressedStorage(mockClient, "bucket", "prefix/", 1024,
+                (key, md, stream) -> fail("Small content should not be staged"), new S3Copier(mockClient),
+                GRACE_PERIOD);
+        store.store("prefix/binary", new ObjectMetadata(), new ByteArrayInputStream(content.getBytes(UTF_8)),
+                Collections::emptyMap);
+        verify(mockClient, never()).putObject(argThat((PutObjectRequest req) -> req.getKey().equals(contentKey)));
+        verify(mockClient, times(2)).putObject(any(PutObjectRequest.class));
+    }
+
+    @Test
+    public void testStoreStagedDuplicate() throws IOException {
+        when(mockClient.doesObjectExist(eq("bucket"), eq(contentKey))).thenReturn(true);
+        final ContentAddressedStorage store = new ContentAddressedStorage(mockClient, "bucket", "prefix/", 4,
+                (key, md, stream) -> {
+                    assertTrue(key.startsWith("prefix/staging/"));
+                    assertEquals(content, IOUtils.toString(stream, UTF_8));
+                }, new S3Copier(mockClient), GRACE_PERIOD);
+        store.store("prefix/binary", new ObjectMetadata(), new ByteArrayInputStream(content.getBytes(UTF_8)),
+                Collections::emptyMap);
+        verify(mockClient).deleteObject(eq("bucket"), argThat((String key) -> key.startsWith("prefix/staging/")));
+        verify(mockClient, never()).putObject(argThat((PutObjectRequest req) -> req.getKey().equals(contentKey)));
+    }
+
+    @Test
+    public void testPurge() {
+        final ObjectMetadata pointer = new ObjectMetadata();
+        pointer.setUserMetadata(singletonMap(ContentAddressedStorage.CONTENT_KEY, contentKey));
+        final ListObjectsV2Result empty = new ListObjectsV2Result();
+        final ListObjectsV2Result referenced = new ListObjectsV2Result();
+        final S3ObjectSummary ref = new S3ObjectSummary();
+        ref.setKey(contentKey + "/refs/other");
+        referenced.getObjectSummaries().addAll(singletonList(ref));
+        doReturn(pointer).when(mockClient).getObjectMetadata(eq("bucket"), eq("prefix/binary"));
+        when(mockClient.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(referenced).thenReturn(empty);
+
+        final ContentAddressedStorage store = new ContentAddressedStorage(mockClient, "bucket", "prefix/", 1024,
+                (key, md, stream) -> fail("Unexpected upload"), new S3Copier(mockClient), GRACE_PERIOD);
+        assertEquals(of(contentKey), store.getPointer("prefix/binary").map(ContentAddressedStorage::getContentKey));
+        assertFalse(store.getPointer("prefix/legacy").isPresent());
+
+        store.purge("prefix/binary");
+        verify(mockClient).deleteObject(eq("bucket"), eq(contentKey + "/refs/binary"));
+        verify(mockClient, never()).deleteObject(eq("bucket"), eq(contentKey));
+        verify(mockClient, never()).putObject(argThat((PutObjectRequest req) -> req.getKey().equals(orphanKey)));
+
+        // The last reference is gone, but the content is only marked for the sweep
+        store.purge("prefix/binary");
+        verify(mockClient).putObject(argThat((PutObjectRequest req) -> req.getKey().equals(orphanKey)));
+        verify(mockClient, never()).deleteObject(eq("bucket"), eq(contentKey));
+        verify(mockClient, never()).copyObject(any(CopyObjectRequest.class));
+        store.shutdown();
+    }
+
+    @Test
+    public void testSweep() {
+        final String referencedKey = "prefix/sha256/referenced";
+        final Date old = new Date(System.currentTimeMillis() - 2 * GRACE_PERIOD);
+        when(mockClient.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(inv -> {
+            final ListObjectsV2Request req = inv.getArgument(0);
+            final ListObjectsV2Result result = new ListObjectsV2Result();
+            if (req.getPrefix().equals("prefix/orphans/")) {
+                result.getObjectSummaries().add(summary(orphanKey, old));
+                result.getObjectSummaries().add(summary("prefix/orphans/referenced", old));
+                result.getObjectSummaries().add(summary("prefix/orphans/recent", new Date()));
+            } else if (req.getPrefix().equals(referencedKey + "/refs/")) {
+                // The content was stored again after it was released
+                result.getObjectSummaries().add(summary(referencedKey + "/refs/other", old));
+            }
+            return result;
+        });
+
+        final ContentAddressedStorage store = new ContentAddressedStorage(mockClient, "bucket", "prefix/", 1024,
+                (key, md, stream) -> fail("Unexpected upload"), new S3Copier(mockClient), GRACE_PERIOD);
+        store.sweep();
+        verify(mockClient).deleteObject(eq("bucket"), eq(contentKey));
+        verify(mockClient).deleteObject(eq("bucket"), eq(orphanKey));
+        verify(mockClient, never()).deleteObject(eq("bucket"), eq(referencedKey));
+        verify(mockClient).deleteObject(eq("bucket"), eq("prefix/orphans/referenced"));
+        verify(mockClient, never()).deleteObject(eq("bucket"), eq("prefix/sha256/recent"));
+        verify(mockClient, never()).deleteObject(eq("bucket"), eq("prefix/orphans/recent"));
+        store.shutdown();
+    }
+
+    @Test
+    public void testPointerContentType() {
+        final ObjectMetadata pointer = new ObjectMetadata();
+        pointer.setContentType("text/plain");
+        pointer.setUserMetadata(singletonMap(ContentAddressedStorage.CONTENT_KEY, contentKey));
+        final ObjectMetadata shared = new ObjectMetadata();
+        shared.setContentType("application/octet-stream");
+        doReturn(pointer).when(mockClient).getObjectMetadata(eq("bucket"), eq("prefix/binary"));
+        doReturn(shared).when(mockClient).getObjectMetadata(eq("bucket"), eq(contentKey));
+
+        final ContentAddressedStorage store = new ContentAddressedStorage(mockClient, "bucket", "prefix/", 1024,
+                (key, md, stream) -> fail("Unexpected upload"), new S3Copier(mockClient), GRACE_PERIOD);
+        final ObjectMetadata found = store.getPointer("prefix/binary").orElseThrow(AssertionError::new);
+        // The shared content keeps the type it was first stored with, while the binary has its own
+        final S3Binary binary = new S3Binary(mockClient, "bucket", ContentAddressedStorage.getContentKey(found),
+                null, null, found);
+        assertEquals(of("text/plain"), binary.getContentType());
+        store.shutdown();
+    }
+
+    @Test
+    public void testReplaceReleasesPreviousContent() throws IOException {
+        final String previous = "prefix/sha256/previous";
+        final ObjectMetadata pointer = new ObjectMetadata();
+        pointer.setUserMetadata(singletonMap(ContentAddressedStorage.CONTENT_KEY, previous));
+        doReturn(pointer).when(mockClient).getObjectMetadata(eq("bucket"), eq("prefix/binary"));
+        when(mockClient.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(new ListObjectsV2Result());
+
+        final ContentAddressedStorage store = new ContentAddressedStorage(mockClient, "bucket", "prefix/", 1024,
+                (key, md, stream) -> fail("Small content should not be staged"), new S3Copier(mockClient),
+                GRACE_PERIOD);
+        store.store("prefix/binary", new ObjectMetadata(), new ByteArrayInputStream(content.getBytes(UTF_8)),
+                Collections::emptyMap);
+
+        verify(mockClient).putObject(argThat((PutObjectRequest req) -> req.getKey().equals("prefix/binary")
+                    && contentKey.equals(req.getMetadata().getUserMetaDataOf(ContentAddressedStorage.CONTENT_KEY))));
+        verify(mockClient).deleteObject(eq("bucket"), eq(previous + "/refs/binary"));
+        verify(mockClient).putObject(argThat((PutObjectRequest req) -> req.getKey().equals("prefix/orphans/previous")));
+        verify(mockClient, never()).deleteObject(eq("bucket"), eq(previous));
+        verify(mockClient, never()).deleteObject(eq("bucket"), eq(contentKey + "/refs/binary"));
+    }
+
+    private static S3ObjectSummary summary(final String key, final Date lastModified) {
+        final S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setKey(key);
+        summary.setLastModified(lastModified);
+        return summary;
+    }
+}
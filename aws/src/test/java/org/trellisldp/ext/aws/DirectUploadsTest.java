@@ -0,0 +1,177 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class DirectUploadsTest {
+
+    private static final long PART_SIZE = 5L * 1024 * 1024;
+    private static final String FIRST = "0123456789abcdef0123456789abcdef";
+    private static final String SECOND = "fedcba9876543210fedcba9876543210";
+
+    private final List<PartSummary> parts = new ArrayList<>();
+    private final ObjectMetadata metadata = new ObjectMetadata();
+    private AmazonS3 mockClient;
+    private DirectUploads uploads;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        parts.clear();
+        mockClient = mock(AmazonS3.class);
+        final InitiateMultipartUploadResult initiated = new InitiateMultipartUploadResult();
+        initiated.setUploadId("upload-id");
+        when(mockClient.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiated);
+        when(mockClient.generatePresignedUrl(any(GeneratePresignedUrlRequest.class)))
+            .thenReturn(new URL("https://bucket.s3.amazonaws.com/part"));
+        when(mockClient.listParts(any(ListPartsRequest.class))).thenAnswer(inv -> {
+            final PartListing listing = new PartListing();
+            listing.setParts(parts);
+            return listing;
+        });
+        when(mockClient.getObjectMetadata(eq("bucket"), anyString())).thenReturn(metadata);
+        uploads = new DirectUploads(mockClient, "bucket", "prefix/", PART_SIZE, 60000L, new S3Copier(mockClient));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        uploads.shutdown();
+    }
+
+    @Test
+    public void testInitiate() {
+        final DirectUploads.Upload upload = uploads.initiate(PART_SIZE + 1, "image/png");
+        assertEquals(PART_SIZE, upload.getPartSize());
+        assertEquals(2, upload.getParts().size());
+        assertTrue(upload.getHandle().endsWith(":upload-id"));
+        verify(mockClient, times(2)).generatePresignedUrl(any(GeneratePresignedUrlRequest.class));
+    }
+
+    @Test
+    public void testInitiateLargeUpload() {
+        // The part size grows so that the number of parts stays bounded
+        final DirectUploads.Upload upload = uploads.initiate(DirectUploads.MAX_PARTS * PART_SIZE * 2, null);
+        assertEquals(2 * PART_SIZE, upload.getPartSize());
+        assertEquals(DirectUploads.MAX_PARTS, upload.getParts().size());
+    }
+
+    @Test
+    public void testInvalidLength() {
+        assertThrows(IllegalArgumentException.class, () -> uploads.initiate(0L, null));
+        verify(mockClient, never()).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void testComplete() {
+        final String handle = uploads.initiate(PART_SIZE + 10, null).getHandle();
+        parts.add(part(1, PART_SIZE, FIRST));
+        parts.add(part(2, 10L, SECOND));
+        setLength(PART_SIZE + 10, PART_SIZE + 10);
+
+        final String token = uploads.complete(handle, asList(base64(FIRST), base64(SECOND)));
+        assertEquals(DirectUploads.TOKEN_LENGTH, token.length());
+        verify(mockClient).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+
+        final String key = uploads.claim(token.getBytes(UTF_8)).orElseThrow(AssertionError::new);
+        assertTrue(key.startsWith("prefix/direct/"));
+        assertTrue(handle.startsWith(key.substring("prefix/direct/".length()) + ":"));
+        // A token can only be claimed once
+        assertFalse(uploads.claim(token.getBytes(UTF_8)).isPresent());
+    }
+
+    @Test
+    public void testMissingPart() {
+        final String handle = uploads.initiate(PART_SIZE + 10, null).getHandle();
+        parts.add(part(2, 10L, SECOND));
+        assertThrows(IllegalArgumentException.class, () -> uploads.complete(handle, emptyList()));
+        verify(mockClient, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void testDigestMismatch() {
+        final String handle = uploads.initiate(PART_SIZE + 10, null).getHandle();
+        parts.add(part(1, PART_SIZE, FIRST));
+        parts.add(part(2, 10L, SECOND));
+        assertThrows(IllegalArgumentException.class, () ->
+                uploads.complete(handle, asList(base64(SECOND), base64(FIRST))));
+        assertThrows(IllegalArgumentException.class, () -> uploads.complete(handle, asList(base64(FIRST))));
+        verify(mockClient, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void testLengthMismatch() {
+        final String handle = uploads.initiate(PART_SIZE + 10, null).getHandle();
+        parts.add(part(1, PART_SIZE, FIRST));
+        setLength(PART_SIZE, PART_SIZE + 10);
+        assertThrows(IllegalArgumentException.class, () -> uploads.complete(handle, emptyList()));
+        verify(mockClient).deleteObject(eq("bucket"), anyString());
+    }
+
+    @Test
+    public void testInvalidHandle() {
+        assertThrows(IllegalArgumentException.class, () -> uploads.complete("../other:upload-id", emptyList()));
+        assertFalse(uploads.claim("not a token".getBytes(UTF_8)).isPresent());
+    }
+
+    private void setLength(final long length, final long declared) {
+        metadata.setContentLength(length);
+        metadata.addUserMetadata("trellis.upload.length", Long.toString(declared));
+    }
+
+    private static PartSummary part(final int partNumber, final long size, final String md5) {
+        final PartSummary part = new PartSummary();
+        part.setPartNumber(partNumber);
+        part.setSize(size);
+        part.setETag("\"" + md5 + "\"");
+        return part;
+    }
+
+    private static String base64(final String hex) {
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+}
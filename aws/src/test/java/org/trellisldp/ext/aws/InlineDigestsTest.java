@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.Tag;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+public class InlineDigestsTest {
+
+    private static final String content = "A sample binary file.";
+
+    @Test
+    public void testDigests() throws IOException {
+        final InlineDigests digests = new InlineDigests("md5", "SHA-256");
+        try (final InputStream input = digests.wrap(new ByteArrayInputStream(content.getBytes(UTF_8)))) {
+            assertEquals(content, IOUtils.toString(input, UTF_8));
+        }
+        final Map<String, String> userMetadata = digests.getUserMetadata();
+        assertEquals(2, userMetadata.size());
+
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setUserMetadata(userMetadata);
+        assertEquals("fLRywC6lAMes32F20wE2VQ==", InlineDigests.getDigest(metadata, "MD5").orElse(null));
+        assertTrue(InlineDigests.getDigest(metadata, "sha-256").isPresent());
+        assertFalse(InlineDigests.getDigest(metadata, "SHA-1").isPresent());
+    }
+
+    @Test
+    public void testTaggedDigests() throws IOException {
+        final InlineDigests digests = new InlineDigests("MD5");
+        try (final InputStream input = digests.wrap(new ByteArrayInputStream(content.getBytes(UTF_8)))) {
+            IOUtils.toString(input, UTF_8);
+        }
+        final List<Tag> tags = InlineDigests.toTags(digests.getUserMetadata());
+        assertEquals("fLRywC6lAMes32F20wE2VQ==", InlineDigests.getDigest(tags, "md5").orElse(null));
+        assertFalse(InlineDigests.getDigest(tags, "SHA-256").isPresent());
+
+        final ObjectMetadata metadata = new ObjectMetadata();
+        assertFalse(InlineDigests.isTagged(metadata));
+        InlineDigests.setTagged(metadata);
+        assertTrue(InlineDigests.isTagged(metadata));
+        assertFalse(InlineDigests.getDigest(metadata, "MD5").isPresent());
+    }
+
+    @Test
+    public void testNoDigests() {
+        assertTrue(new InlineDigests().getUserMetadata().isEmpty());
+    }
+
+    @Test
+    public void testUnsupportedAlgorithm() {
+        assertThrows(IllegalArgumentException.class, () -> new InlineDigests("not-a-digest"));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+public class IoExecutorTest {
+
+    @Test
+    public void testCallerRuns() throws Exception {
+        final IoExecutor executor = new IoExecutor("test-caller-runs", 1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<Void> running = runAsync(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, executor);
+        started.await();
+        final CompletableFuture<Void> queued = runAsync(() -> { }, executor);
+        assertEquals(1, executor.getActiveCount());
+        assertEquals(1, executor.getQueueDepth());
+
+        final Thread caller = Thread.currentThread();
+        runAsync(() -> assertEquals(caller, Thread.currentThread()), executor).join();
+        assertEquals(1L, executor.getCallerRunsCount());
+
+        release.countDown();
+        running.join();
+        queued.join();
+        assertEquals(0, executor.getQueueDepth());
+        assertTrue(executor.getMaximumWaitMillis() >= executor.getAverageWaitMillis());
+    }
+
+    @Test
+    public void testThreadNames() {
+        final IoExecutor executor = new IoExecutor("test-names", 2, 10);
+        runAsync(() -> assertTrue(Thread.currentThread().getName().startsWith("trellis-test-names-")), executor)
+            .join();
+        assertEquals(2, executor.getMaximumThreads());
+        assertEquals(10, executor.getQueueCapacity());
+    }
+
+    @Test
+    public void testMetricsExported() throws Exception {
+        final IoExecutor executor = new IoExecutor("test-metrics", 1, 5);
+        runAsync(() -> { }, executor).join();
+        final ObjectName name = new ObjectName("org.trellisldp.ext.aws:type=Executor,name=test-metrics");
+        assertEquals(5, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "QueueCapacity"));
+    }
+
+    @Test
+    public void testVirtualThreads() {
+        final IoExecutor executor = IoExecutor.create("test-virtual", true, 2, 10);
+        runAsync(() -> assertTrue(Thread.currentThread().getName().startsWith("trellis-test-virtual-")), executor)
+            .join();
+        // Older JDKs fall back to a bounded pool
+        assertEquals(IoExecutor.newVirtualThreadExecutor("test-").isPresent(), executor.isVirtualThreads());
+        assertEquals(executor.isVirtualThreads() ? -1 : 2, executor.getMaximumThreads());
+    }
+
+    @Test
+    public void testPlatformThreads() {
+        assertFalse(IoExecutor.create("test-platform", false, 2, 10).isVirtualThreads());
+    }
+
+    @Test
+    public void testInvalidSize() {
+        assertThrows(IllegalArgumentException.class, () -> new IoExecutor("test-invalid", 0, 1));
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+public class KeyShardsTest {
+
+    @Test
+    public void testLayout() {
+        final KeyShards shards = new KeyShards(256);
+        final String name = UUID.randomUUID().toString();
+        final String key = shards.apply(name);
+        assertTrue(key.matches("[0-9a-f]{2}/" + name));
+        assertEquals(key, shards.apply(name));
+        assertTrue(new KeyShards(16).apply(name).matches("[0-9a-f]/" + name));
+        assertTrue(new KeyShards(1).apply(name).matches("0/" + name));
+    }
+
+    @Test
+    public void testSpread() {
+        final KeyShards shards = new KeyShards(16);
+        final Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 16000; i++) {
+            counts.merge(shards.apply(UUID.randomUUID().toString()).substring(0, 1), 1, Integer::sum);
+        }
+        assertEquals(16, counts.size());
+        counts.values().forEach(count -> assertTrue(count > 800 && count < 1200, "Uneven shard: " + count));
+    }
+
+    @Test
+    public void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> new KeyShards(0));
+        assertThrows(IllegalArgumentException.class, () -> new KeyShards(KeyShards.MAX_SHARDS + 1));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.junit.jupiter.api.Test;
+import org.trellisldp.api.Resource;
+
+public class MementoCacheTest {
+
+    private static final Node subject = NodeFactory.createURI("http://example.com/s");
+    private static final Node predicate = NodeFactory.createURI("http://example.com/p");
+    private static final Node graph = NodeFactory.createURI("http://example.com/g");
+
+    @Test
+    public void testRoundTrip() {
+        final List<Quad> quads = asList(
+                new Quad(graph, subject, predicate, NodeFactory.createLiteral("plain")),
+                new Quad(graph, subject, predicate, NodeFactory.createLiteral("titre", "fr")),
+                new Quad(graph, subject, predicate, NodeFactory.createLiteral("42", XSDDatatype.XSDinteger)),
+                new Quad(graph, subject, predicate, NodeFactory.createBlankNode("b0")),
+                new Quad(Quad.defaultGraphNodeGenerated, subject, predicate, NodeFactory.createLiteral("café")));
+        final MementoCache cache = new MementoCache("test-roundtrip", 1024L * 1024L);
+        assertNull(cache.get("key"));
+        cache.put("key", quads);
+
+        final List<Quad> cached = new ArrayList<>();
+        cache.get("key").forEachRemaining(cached::add);
+        assertEquals(quads, cached);
+        assertTrue(cached.get(4).isDefaultGraph());
+        assertEquals(1L, cache.getHitCount());
+        assertEquals(1L, cache.getMissCount());
+        assertEquals(1, cache.getEntryCount());
+        assertTrue(cache.getSize() > 0L);
+    }
+
+    @Test
+    public void testEviction() {
+        final List<Quad> quads = singletonList(new Quad(graph, subject, predicate,
+                    NodeFactory.createLiteral("a literal value of some length")));
+        final MementoCache cache = new MementoCache("test-eviction", 300L);
+        cache.put("first", quads);
+        cache.put("second", quads);
+        cache.get("first");
+        cache.put("third", quads);
+
+        assertEquals(2, cache.getEntryCount());
+        assertTrue(cache.getSize() <= cache.getBudget());
+        assertEquals(1L, cache.getEvictionCount());
+        // The least recently used entry was evicted
+        assertNotNull(cache.get("first"));
+        assertNull(cache.get("second"));
+    }
+
+    @Test
+    public void testFillOnlyWhenRead() {
+        final List<Quad> quads = asList(new Quad(graph, subject, predicate, NodeFactory.createLiteral("one")),
+                new Quad(graph, subject, predicate, NodeFactory.createLiteral("two")));
+        final MementoCache cache = new MementoCache("test-fill", 1024L);
+
+        final Iterator<Quad> partial = cache.fill("key", quads.iterator());
+        partial.next();
+        assertEquals(0, cache.getEntryCount());
+
+        final Iterator<Quad> full = cache.fill("key", quads.iterator());
+        full.forEachRemaining(quad -> { });
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void testResourceCacheHit() {
+        final String nquads = "<http://example.com/s> <http://example.com/p> \"value\" <http://example.com/g> .\n";
+        final AtomicInteger reads = new AtomicInteger();
+        final MementoCache cache = new MementoCache("test-resource", 1024L);
+        final Resource memento = new S3Resource(new ObjectMetadata(), "resource?version=1", () -> {
+            reads.incrementAndGet();
+            return new ByteArrayInputStream(nquads.getBytes(UTF_8));
+        }, null, "", cache, ForkJoinPool.commonPool());
+
+        try (final Stream<? extends org.apache.commons.rdf.api.Quad> quads = memento.stream()) {
+            assertEquals(1L, quads.count());
+        }
+        try (final Stream<? extends org.apache.commons.rdf.api.Quad> quads = memento.stream()) {
+            assertEquals(1L, quads.count());
+        }
+        assertEquals(1, reads.get());
+        assertEquals(1L, cache.getHitCount());
+    }
+}
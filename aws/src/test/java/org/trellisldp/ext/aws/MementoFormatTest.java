@@ -0,0 +1,96 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.time.Instant.now;
+import static java.util.Optional.empty;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.trellisldp.api.TrellisUtils.TRELLIS_DATA_PREFIX;
+import static org.trellisldp.api.TrellisUtils.getInstance;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.Quad;
+import org.apache.commons.rdf.api.RDF;
+import org.junit.jupiter.api.Test;
+import org.trellisldp.api.Resource;
+import org.trellisldp.vocabulary.DC;
+import org.trellisldp.vocabulary.LDP;
+import org.trellisldp.vocabulary.Trellis;
+
+public class MementoFormatTest {
+
+    private static final RDF rdf = getInstance();
+
+    @Test
+    public void testNames() {
+        assertEquals(MementoFormat.NQUADS, MementoFormat.of("nquads"));
+        assertEquals(MementoFormat.THRIFT, MementoFormat.of(" Thrift "));
+        assertThrows(IllegalArgumentException.class, () -> MementoFormat.of("turtle"));
+    }
+
+    @Test
+    public void testContentTypes() {
+        assertEquals(MementoFormat.THRIFT, MementoFormat.forContentType("application/rdf+thrift"));
+        assertEquals(MementoFormat.NQUADS, MementoFormat.forContentType("application/n-quads; charset=UTF-8"));
+        assertEquals(MementoFormat.NQUADS, MementoFormat.forContentType(null));
+        assertEquals(MementoFormat.NQUADS, MementoFormat.forContentType("binary/octet-stream"));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final IRI identifier = rdf.createIRI(TRELLIS_DATA_PREFIX + "resource");
+        final Quad title = rdf.createQuad(Trellis.PreferUserManaged, identifier, DC.title, rdf.createLiteral("Title"));
+        final Quad subject = rdf.createQuad(Trellis.PreferUserManaged, identifier, DC.subject,
+                rdf.createLiteral("Sujet", "fr"));
+        final Resource res = mock(Resource.class);
+        when(res.getModified()).thenReturn(now());
+        when(res.getIdentifier()).thenReturn(identifier);
+        when(res.getContainer()).thenReturn(empty());
+        when(res.getInteractionModel()).thenReturn(LDP.RDFSource);
+        when(res.getBinaryMetadata()).thenReturn(empty());
+        when(res.getMembershipResource()).thenReturn(empty());
+        when(res.getMemberRelation()).thenReturn(empty());
+        when(res.getMemberOfRelation()).thenReturn(empty());
+        when(res.getInsertedContentRelation()).thenReturn(empty());
+        when(res.stream()).thenAnswer(inv -> Stream.of(title, subject));
+
+        for (final MementoFormat format : MementoFormat.values()) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            final Map<String, String> userMetadata = S3MementoService.write(res, output, format);
+            final ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setUserMetadata(userMetadata);
+            metadata.setContentType(format.getContentType());
+
+            final Resource memento = new S3Resource(metadata, "resource?version=" + now().getEpochSecond(),
+                    () -> new ByteArrayInputStream(output.toByteArray()), "");
+            try (final Stream<Quad> quads = memento.stream()) {
+                final List<Quad> parsed = quads.collect(toList());
+                assertEquals(2, parsed.size(), "Unexpected quad count for " + format);
+                assertTrue(parsed.contains(title));
+                assertTrue(parsed.contains(subject));
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ObjectMetadataCacheTest {
+
+    private AmazonS3 mockClient;
+
+    @BeforeEach
+    public void setUp() {
+        mockClient = mock(AmazonS3.class);
+        when(mockClient.getObjectMetadata(eq("bucket"), anyString())).thenAnswer(inv -> {
+            final ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(10L);
+            metadata.setContentType("text/plain");
+            return metadata;
+        });
+    }
+
+    @Test
+    public void testCached() {
+        final ObjectMetadataCache cache = new ObjectMetadataCache(mockClient, "bucket", 10, 60000L);
+        assertEquals(10L, cache.get("key").getContentLength());
+        assertEquals("text/plain", cache.get("key").getContentType());
+        verify(mockClient, times(1)).getObjectMetadata(eq("bucket"), eq("key"));
+
+        cache.invalidate("key");
+        cache.get("key");
+        verify(mockClient, times(2)).getObjectMetadata(eq("bucket"), eq("key"));
+    }
+
+    @Test
+    public void testEviction() {
+        final ObjectMetadataCache cache = new ObjectMetadataCache(mockClient, "bucket", 2, 60000L);
+        cache.get("first");
+        cache.get("second");
+        cache.get("first");
+        cache.get("third");
+        assertEquals(2, cache.size());
+
+        // The least recently used entry was evicted
+        cache.get("first");
+        cache.get("second");
+        verify(mockClient, times(1)).getObjectMetadata(eq("bucket"), eq("first"));
+        verify(mockClient, times(2)).getObjectMetadata(eq("bucket"), eq("second"));
+    }
+
+    @Test
+    public void testExpiry() {
+        final ObjectMetadataCache cache = new ObjectMetadataCache(mockClient, "bucket", 10, 0L);
+        cache.get("key");
+        cache.get("key");
+        verify(mockClient, times(2)).getObjectMetadata(eq("bucket"), eq("key"));
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(mockClient.getObjectMetadata(eq("bucket"), eq("hot"))).thenAnswer(inv -> {
+            started.countDown();
+            release.await();
+            return new ObjectMetadata();
+        });
+        final ObjectMetadataCache cache = new ObjectMetadataCache(mockClient, "bucket", 10, 60000L);
+
+        final CompletableFuture<ObjectMetadata> first = supplyAsync(() -> cache.get("hot"));
+        assertTrue(started.await(5, SECONDS));
+        final CompletableFuture<ObjectMetadata> second = supplyAsync(() -> cache.get("hot"));
+        release.countDown();
+        assertSame(first.get(5, SECONDS), second.get(5, SECONDS));
+        verify(mockClient, times(1)).getObjectMetadata(eq("bucket"), eq("hot"));
+    }
+
+    @Test
+    public void testNotFound() {
+        final AmazonS3Exception notFound = new AmazonS3Exception("Not Found");
+        notFound.setStatusCode(404);
+        when(mockClient.getObjectMetadata(eq("bucket"), eq("missing"))).thenThrow(notFound);
+        final ObjectMetadataCache cache = new ObjectMetadataCache(mockClient, "bucket", 10, 60000L);
+        assertThrows(AmazonS3Exception.class, () -> cache.get("missing"));
+        assertEquals(0, cache.size());
+    }
+}
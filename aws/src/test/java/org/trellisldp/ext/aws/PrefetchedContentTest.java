@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+public class PrefetchedContentTest {
+
+    private static final byte[] CONTENT = "some content".getBytes(UTF_8);
+
+    private final List<long[]> fetched = new ArrayList<>();
+
+    @Test
+    public void testWholeObjectInHead() throws IOException {
+        final PrefetchedContent content = new PrefetchedContent(CONTENT, CONTENT.length, this::fetch);
+        try (final InputStream input = content.stream()) {
+            assertEquals("some content", IOUtils.toString(input, UTF_8));
+        }
+        try (final InputStream input = content.range(5L, 8L)) {
+            assertEquals("cont", IOUtils.toString(input, UTF_8));
+        }
+        assertTrue(fetched.isEmpty());
+    }
+
+    @Test
+    public void testRestFetchedLazily() throws IOException {
+        final PrefetchedContent content = new PrefetchedContent("some".getBytes(UTF_8), CONTENT.length,
+                this::fetch);
+        try (final InputStream input = content.stream()) {
+            assertEquals('s', input.read());
+            assertTrue(fetched.isEmpty());
+            assertEquals("ome content", IOUtils.toString(input, UTF_8));
+        }
+        assertEquals(1, fetched.size());
+        assertArrayEquals(new long[]{4L, CONTENT.length - 1L}, fetched.get(0));
+    }
+
+    @Test
+    public void testRangeBeyondHead() throws IOException {
+        final PrefetchedContent content = new PrefetchedContent("some".getBytes(UTF_8), CONTENT.length,
+                this::fetch);
+        try (final InputStream input = content.range(1L, 2L)) {
+            assertEquals("om", IOUtils.toString(input, UTF_8));
+        }
+        assertTrue(fetched.isEmpty());
+        try (final InputStream input = content.range(2L, 6L)) {
+            assertEquals("me co", IOUtils.toString(input, UTF_8));
+        }
+        assertEquals(1, fetched.size());
+    }
+
+    private InputStream fetch(final long from, final long to) {
+        fetched.add(new long[]{from, to});
+        return new ByteArrayInputStream(CONTENT, (int) from, (int) (to - from + 1));
+    }
+}
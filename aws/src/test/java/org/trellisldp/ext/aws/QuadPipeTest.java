@@ -0,0 +1,183 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.jena.riot.Lang.NQUADS;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.jena.sparql.core.Quad;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.trellisldp.api.RuntimeTrellisException;
+
+public class QuadPipeTest {
+
+    private static final ExecutorService PARSERS = Executors.newCachedThreadPool();
+
+    @AfterAll
+    public static void tearDown() {
+        PARSERS.shutdownNow();
+    }
+
+    @Test
+    public void testParse() {
+        final String nquads = "<http://example.com/s> <http://example.com/p> \"first\" .\n"
+            + "<http://example.com/s> <http://example.com/p> \"second\" <http://example.com/g> .\n";
+        final List<Quad> quads = new ArrayList<>();
+        try (final QuadPipe pipe = new QuadPipe(input(nquads), NQUADS, 1, PARSERS)) {
+            pipe.forEachRemaining(quads::add);
+            assertFalse(pipe.hasNext());
+        }
+        assertEquals(2, quads.size());
+        assertTrue(quads.get(0).isDefaultGraph());
+        assertEquals("first", quads.get(0).getObject().getLiteralLexicalForm());
+        assertEquals("http://example.com/g", quads.get(1).getGraph().getURI());
+    }
+
+    @Test
+    public void testParseOnReaderThread() {
+        final String nquads = "<http://example.com/s> <http://example.com/p> \"first\" .\n"
+            + "<http://example.com/s> <http://example.com/p> \"second\" .\n"
+            + "<http://example.com/s> <http://example.com/p> \"third\" .\n";
+        final List<Quad> quads = new ArrayList<>();
+        // A saturated executor runs the parser on the calling thread, which hands it to a thread of its own
+        // rather than buffer more quads than the capacity allows
+        try (final QuadPipe pipe = new QuadPipe(input(nquads), NQUADS, 1, Runnable::run)) {
+            pipe.forEachRemaining(quads::add);
+        }
+        assertEquals(3, quads.size());
+        assertEquals("third", quads.get(2).getObject().getLiteralLexicalForm());
+    }
+
+    @Test
+    public void testParseError() {
+        final String nquads = "<http://example.com/s> <http://example.com/p> \"first\" .\n"
+            + "<http://example.com/s> <http://example.com/p> unquoted .\n";
+        try (final QuadPipe pipe = new QuadPipe(input(nquads), NQUADS, 8, PARSERS)) {
+            assertTrue(pipe.hasNext());
+            assertEquals("first", pipe.next().getObject().getLiteralLexicalForm());
+            assertThrows(RuntimeTrellisException.class, pipe::hasNext);
+            assertFalse(pipe.hasNext());
+        }
+    }
+
+    @Test
+    public void testCloseEarly() throws Exception {
+        final StringBuilder nquads = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            nquads.append("<http://example.com/s> <http://example.com/p> \"").append(i).append("\" .\n");
+        }
+        final CountDownLatch released = new CountDownLatch(1);
+        final InputStream input = new ByteArrayInputStream(nquads.toString().getBytes(UTF_8)) {
+            @Override
+            public void close() {
+                released.countDown();
+            }
+        };
+        final QuadPipe pipe = new QuadPipe(input, NQUADS, 4, PARSERS);
+        assertEquals("0", pipe.next().getObject().getLiteralLexicalForm());
+        pipe.close();
+        assertTrue(released.await(5, TimeUnit.SECONDS));
+        assertFalse(pipe.hasNext());
+    }
+
+    @Test
+    public void testParsedInputClosed() throws Exception {
+        final AtomicBoolean aborted = new AtomicBoolean();
+        final CountDownLatch released = new CountDownLatch(1);
+        final InputStream input = s3Input("<http://example.com/s> <http://example.com/p> \"first\" .\n", aborted,
+                released);
+        try (final QuadPipe pipe = new QuadPipe(input, NQUADS, 4, PARSERS)) {
+            assertEquals("first", pipe.next().getObject().getLiteralLexicalForm());
+            assertFalse(pipe.hasNext());
+        }
+        assertTrue(released.await(5, TimeUnit.SECONDS));
+        // Input that was read to its end leaves its connection to be reused
+        assertFalse(aborted.get());
+    }
+
+    @Test
+    public void testCloseEarlyAborts() throws Exception {
+        final StringBuilder nquads = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            nquads.append("<http://example.com/s> <http://example.com/p> \"").append(i).append("\" .\n");
+        }
+        final AtomicBoolean aborted = new AtomicBoolean();
+        final CountDownLatch released = new CountDownLatch(1);
+        final QuadPipe pipe = new QuadPipe(s3Input(nquads.toString(), aborted, released), NQUADS, 4, PARSERS);
+        assertEquals("0", pipe.next().getObject().getLiteralLexicalForm());
+        pipe.close();
+        assertTrue(released.await(5, TimeUnit.SECONDS));
+        assertTrue(aborted.get());
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+        final String nquads = "<http://example.com/s> <http://example.com/p> \"first\" .\n"
+            + "<http://example.com/s> <http://example.com/p> \"second\" <http://example.com/g> .\n";
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final OutputStream output = BinaryCompression.compress("gzip", 9, bytes)) {
+            output.write(nquads.getBytes(UTF_8));
+        }
+        final List<Quad> quads = new ArrayList<>();
+        try (final QuadPipe pipe = new QuadPipe(new ByteArrayInputStream(bytes.toByteArray()), "gzip", NQUADS, 1,
+                    PARSERS)) {
+            pipe.forEachRemaining(quads::add);
+        }
+        assertEquals(2, quads.size());
+        assertEquals("second", quads.get(1).getObject().getLiteralLexicalForm());
+    }
+
+    @Test
+    public void testCompressedError() {
+        final String nquads = "<http://example.com/s> <http://example.com/p> \"first\" .\n";
+        try (final QuadPipe pipe = new QuadPipe(input(nquads), "gzip", NQUADS, 1, PARSERS)) {
+            assertThrows(RuntimeTrellisException.class, pipe::hasNext);
+        }
+    }
+
+    private static InputStream s3Input(final String content, final AtomicBoolean aborted,
+            final CountDownLatch released) {
+        return new S3ObjectInputStream(input(content), null) {
+            @Override
+            public void abort() {
+                aborted.set(true);
+            }
+
+            @Override
+            public void close() {
+                released.countDown();
+            }
+        };
+    }
+
+    private static InputStream input(final String content) {
+        return new ByteArrayInputStream(content.getBytes(UTF_8));
+    }
+}
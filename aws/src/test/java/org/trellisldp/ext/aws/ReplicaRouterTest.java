@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.HeadBucketRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ReplicaRouterTest {
+
+    private AmazonS3 mockPrimary;
+    private AmazonS3 mockReplica;
+    private ReplicaRouter.Replica replica;
+    private ReplicaRouter router;
+
+    @BeforeEach
+    public void setUp() {
+        mockPrimary = mock(AmazonS3.class);
+        mockReplica = mock(AmazonS3.class);
+        // The primary bucket is further away
+        when(mockPrimary.headBucket(any(HeadBucketRequest.class))).thenAnswer(inv -> {
+            Thread.sleep(20L);
+            return null;
+        });
+        when(mockPrimary.getObjectMetadata(eq("primary"), eq("key"))).thenReturn(new ObjectMetadata());
+        when(mockReplica.getObjectMetadata(eq("replica"), eq("key"))).thenReturn(new ObjectMetadata());
+        replica = new ReplicaRouter.Replica(mockReplica, "replica", null);
+        router = new ReplicaRouter(new ReplicaRouter.Replica(mockPrimary, "primary", null), singletonList(replica),
+                60000L);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        router.shutdown();
+    }
+
+    @Test
+    public void testNearest() {
+        final ReplicaRouter.Located located = router.locate("key");
+        assertSame(replica, located.getReplica());
+        assertTrue(replica.getLatency() < 20000000.0);
+        verify(mockPrimary, times(0)).getObjectMetadata(eq("primary"), eq("key"));
+    }
+
+    @Test
+    public void testNotReplicated() {
+        when(mockReplica.getObjectMetadata(eq("replica"), eq("key"))).thenThrow(error(404));
+        final ReplicaRouter.Located located = router.locate("key");
+        assertEquals("primary", located.getReplica().getBucketName());
+        // The replica is only behind, not failing
+        assertTrue(replica.isHealthy());
+    }
+
+    @Test
+    public void testFailedReplica() {
+        when(mockReplica.getObjectMetadata(eq("replica"), eq("key"))).thenThrow(error(500));
+        assertEquals("primary", router.locate("key").getReplica().getBucketName());
+        assertFalse(replica.isHealthy());
+
+        assertEquals("primary", router.locate("key").getReplica().getBucketName());
+        verify(mockReplica, times(1)).getObjectMetadata(eq("replica"), eq("key"));
+
+        router.probe();
+        assertTrue(replica.isHealthy());
+    }
+
+    @Test
+    public void testMissing() {
+        when(mockReplica.getObjectMetadata(eq("replica"), eq("missing"))).thenThrow(error(404));
+        when(mockPrimary.getObjectMetadata(eq("primary"), eq("missing"))).thenThrow(error(404));
+        final AmazonS3Exception ex = assertThrows(AmazonS3Exception.class, () -> router.locate("missing"));
+        assertEquals(404, ex.getStatusCode());
+    }
+
+    private static AmazonS3Exception error(final int status) {
+        final AmazonS3Exception ex = new AmazonS3Exception("Error");
+        ex.setStatusCode(status);
+        return ex;
+    }
+}
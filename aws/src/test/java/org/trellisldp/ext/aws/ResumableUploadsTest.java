@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListMultipartUploadsRequest;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.MultipartUpload;
+import com.amazonaws.services.s3.model.MultipartUploadListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+import java.util.Date;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ResumableUploadsTest {
+
+    private AmazonS3 mockClient;
+
+    @BeforeEach
+    public void setUp() {
+        mockClient = mock(AmazonS3.class);
+        final ObjectMetadata state = new ObjectMetadata();
+        state.addUserMetadata("trellis.upload.id", "stale-id");
+        state.addUserMetadata("trellis.upload.fingerprint", "text/plain;");
+        when(mockClient.getObjectMetadata(eq("bucket"), eq("prefix/uploads/stale"))).thenReturn(state);
+    }
+
+    @Test
+    public void testSweep() {
+        final MultipartUpload stale = new MultipartUpload();
+        stale.setKey("prefix/stale");
+        stale.setUploadId("stale-id");
+        stale.setInitiated(new Date(System.currentTimeMillis() - 120000L));
+        final MultipartUpload recent = new MultipartUpload();
+        recent.setKey("prefix/recent");
+        recent.setUploadId("recent-id");
+        recent.setInitiated(new Date());
+        final MultipartUploadListing listing = new MultipartUploadListing();
+        listing.setMultipartUploads(asList(stale, recent));
+        when(mockClient.listMultipartUploads(any(ListMultipartUploadsRequest.class))).thenReturn(listing);
+
+        final ResumableUploads uploads = new ResumableUploads(mockClient, "bucket", "prefix/", 60000L);
+        uploads.sweep();
+        uploads.shutdown();
+        verify(mockClient).abortMultipartUpload(argThat((AbortMultipartUploadRequest req) ->
+                    "stale-id".equals(req.getUploadId())));
+        verify(mockClient, never()).abortMultipartUpload(argThat((AbortMultipartUploadRequest req) ->
+                    "recent-id".equals(req.getUploadId())));
+        verify(mockClient).deleteObject(eq("bucket"), eq("prefix/uploads/stale"));
+    }
+
+    @Test
+    public void testMetadataMismatch() {
+        final ResumableUploads uploads = new ResumableUploads(mockClient, "bucket", "prefix/", 60000L);
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType("image/png");
+        assertFalse(uploads.find("prefix/stale", metadata).isPresent());
+        uploads.shutdown();
+        verify(mockClient, never()).listParts(any(ListPartsRequest.class));
+    }
+}
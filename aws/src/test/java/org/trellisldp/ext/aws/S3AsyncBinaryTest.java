@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.microprofile.config.Config;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+public class S3AsyncBinaryTest {
+
+    private static final String content = "A sample binary file.";
+
+    private final Map<String, GetObjectResponse> responses = new HashMap<>();
+    private final Map<String, byte[]> objects = new HashMap<>();
+    private S3AsyncClient mockClient;
+
+    @BeforeEach
+    public void setUp() {
+        mockClient = mock(S3AsyncClient.class);
+        doAnswer(inv -> {
+            final GetObjectRequest req = inv.getArgument(0);
+            final byte[] bytes = objects.get(req.key());
+            if (req.range() != null) {
+                if (bytes.length == 0) {
+                    final CompletableFuture<Object> invalid = new CompletableFuture<>();
+                    invalid.completeExceptionally(S3Exception.builder().statusCode(416).message("Invalid Range")
+                            .build());
+                    return invalid;
+                }
+                final String[] range = req.range().substring("bytes=".length()).split("-");
+                final int from = Integer.parseInt(range[0]);
+                final int to = Math.min(Integer.parseInt(range[1]), bytes.length - 1);
+                return completedFuture(stream(responses.get(req.key()), bytes, from, to - from + 1));
+            }
+            return completedFuture(stream(responses.get(req.key()), bytes, 0, bytes.length));
+        }).when(mockClient).getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class));
+    }
+
+    @Test
+    public void testPlainContent() throws IOException {
+        put("binary", GetObjectResponse.builder().build(), content.getBytes(UTF_8));
+        final S3AsyncBinary binary = new S3AsyncBinary(mockClient, "bucket", "binary");
+        assertEquals(content, IOUtils.toString(binary.getContent(), UTF_8));
+        assertEquals("sample", IOUtils.toString(binary.getContent(2, 7), UTF_8));
+    }
+
+    @Test
+    public void testCompressedContent() throws IOException {
+        put("binary", GetObjectResponse.builder().contentEncoding("gzip").build(), gzip(content));
+        final S3AsyncBinary binary = new S3AsyncBinary(mockClient, "bucket", "binary");
+        assertEquals(content, IOUtils.toString(binary.getContent(), UTF_8));
+        assertEquals("sample", IOUtils.toString(binary.getContent(2, 7), UTF_8));
+    }
+
+    @Test
+    public void testContentAddressedPointer() throws IOException {
+        final Map<String, String> pointer = singletonMap(ContentAddressedStorage.CONTENT_KEY.toLowerCase(Locale.ROOT),
+                "sha256/abc");
+        put("binary", GetObjectResponse.builder().metadata(pointer).build(), new byte[0]);
+        put("sha256/abc", GetObjectResponse.builder().metadata(emptyMap()).build(), content.getBytes(UTF_8));
+        doReturn(completedFuture(HeadObjectResponse.builder().metadata(pointer).build())).when(mockClient)
+            .headObject(any(HeadObjectRequest.class));
+
+        final S3AsyncBinary binary = new S3AsyncBinary(mockClient, "bucket", "binary");
+        assertEquals(content, IOUtils.toString(binary.getContent(), UTF_8));
+        assertEquals("sample", IOUtils.toString(binary.getContent(2, 7), UTF_8));
+    }
+
+    @Test
+    public void testUnsupportedModes() {
+        final Config mockConfig = mock(Config.class);
+        doReturn(Optional.empty()).when(mockConfig).getOptionalValue(any(String.class), any());
+        doReturn(Optional.of(4096)).when(mockConfig)
+            .getOptionalValue(S3BinaryService.CONFIG_BINARY_PACK_THRESHOLD, Integer.class);
+        assertThrows(IllegalArgumentException.class, () ->
+                new S3AsyncBinaryService(mockClient, "bucket", "prefix/", mockConfig));
+    }
+
+    private void put(final String key, final GetObjectResponse response, final byte[] bytes) {
+        responses.put(key, response);
+        objects.put(key, bytes);
+    }
+
+    private static ResponseInputStream<GetObjectResponse> stream(final GetObjectResponse response, final byte[] bytes,
+            final int offset, final int length) {
+        return new ResponseInputStream<>(response, AbortableInputStream.create(new ByteArrayInputStream(bytes, offset,
+                        length)));
+    }
+
+    private static byte[] gzip(final String data) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final OutputStream output = new GZIPOutputStream(bytes)) {
+            output.write(data.getBytes(UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.time.Instant.ofEpochSecond;
+import static java.util.Collections.singletonMap;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.trellisldp.api.Resource.SpecialResources.MISSING_RESOURCE;
+import static org.trellisldp.api.TrellisUtils.TRELLIS_DATA_PREFIX;
+import static org.trellisldp.api.TrellisUtils.getInstance;
+
+import java.time.Instant;
+import java.util.SortedSet;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.RDF;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.trellisldp.api.Resource;
+import org.trellisldp.vocabulary.LDP;
+
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+public class S3AsyncMementoServiceTest {
+
+    private static final RDF rdf = getInstance();
+    private static final IRI identifier = rdf.createIRI(TRELLIS_DATA_PREFIX + "resource");
+
+    private S3AsyncClient mockClient;
+
+    @BeforeEach
+    public void setUp() {
+        mockClient = mock(S3AsyncClient.class);
+        final CompletableFuture<HeadObjectResponse> notFound = new CompletableFuture<>();
+        notFound.completeExceptionally(NoSuchKeyException.builder().statusCode(404).message("Not Found").build());
+        when(mockClient.headObject(any(HeadObjectRequest.class))).thenReturn(notFound);
+        doReturn(completedFuture(HeadObjectResponse.builder()
+                    .metadata(singletonMap("trellis.interactionmodel", LDP.Container.getIRIString())).build()))
+            .when(mockClient).headObject(argThat((HeadObjectRequest req) -> req.key().endsWith("?version=10")));
+        when(mockClient.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(inv -> {
+            final ListObjectsV2Request req = inv.getArgument(0);
+            if (req.continuationToken() == null) {
+                return completedFuture(ListObjectsV2Response.builder().isTruncated(true).nextContinuationToken("next")
+                        .contents(S3Object.builder().key("prefix/resource?version=10").build()).build());
+            }
+            return completedFuture(ListObjectsV2Response.builder().isTruncated(false)
+                    .contents(S3Object.builder().key("prefix/resource?version=20").build()).build());
+        });
+    }
+
+    @Test
+    public void testMementos() {
+        final S3AsyncMementoService svc = new S3AsyncMementoService(mockClient, "bucket", "prefix/");
+        final SortedSet<Instant> mementos = svc.mementos(identifier).toCompletableFuture().join();
+        assertEquals(2, mementos.size());
+        assertEquals(ofEpochSecond(10L), mementos.first());
+        assertEquals(ofEpochSecond(20L), mementos.last());
+    }
+
+    @Test
+    public void testGetNearest() {
+        final S3AsyncMementoService svc = new S3AsyncMementoService(mockClient, "bucket", "prefix/");
+        final Resource res = svc.get(identifier, ofEpochSecond(15L)).toCompletableFuture().join();
+        assertEquals(identifier, res.getIdentifier());
+        assertEquals(LDP.Container, res.getInteractionModel());
+    }
+
+    @Test
+    public void testGetMissing() {
+        final S3AsyncMementoService svc = new S3AsyncMementoService(mockClient, "bucket", "prefix/");
+        doReturn(completedFuture(ListObjectsV2Response.builder().isTruncated(false).build()))
+            .when(mockClient).listObjectsV2(any(ListObjectsV2Request.class));
+        assertEquals(MISSING_RESOURCE, svc.get(identifier, ofEpochSecond(15L)).toCompletableFuture().join());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.ForkJoinPool.commonPool;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+public class S3AsyncUploadTest {
+
+    private static final byte[] content = "A sample binary file, uploaded in several parts.".getBytes(UTF_8);
+
+    private S3AsyncClient mockClient;
+
+    @BeforeEach
+    public void setUp() {
+        mockClient = mock(S3AsyncClient.class);
+        when(mockClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+            .thenReturn(completedFuture(PutObjectResponse.builder().build()));
+        when(mockClient.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+            .thenReturn(completedFuture(CreateMultipartUploadResponse.builder().uploadId("upload").build()));
+        when(mockClient.uploadPart(any(UploadPartRequest.class), any(AsyncRequestBody.class))).thenAnswer(inv ->
+                completedFuture(UploadPartResponse.builder()
+                    .eTag("etag-" + ((UploadPartRequest) inv.getArgument(0)).partNumber()).build()));
+        when(mockClient.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+            .thenReturn(completedFuture(CompleteMultipartUploadResponse.builder().build()));
+        when(mockClient.abortMultipartUpload(any(AbortMultipartUploadRequest.class)))
+            .thenReturn(completedFuture(AbortMultipartUploadResponse.builder().build()));
+    }
+
+    @Test
+    public void testSinglePut() {
+        new S3AsyncUpload(mockClient, "bucket", "key", "text/plain", 1024, 2, commonPool())
+            .upload(new ByteArrayInputStream(content)).join();
+        verify(mockClient).putObject(argThat((PutObjectRequest req) -> req.contentLength() == content.length
+                    && "text/plain".equals(req.contentType())), any(AsyncRequestBody.class));
+        verify(mockClient, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void testMultipart() {
+        new S3AsyncUpload(mockClient, "bucket", "key", null, 10, 2, commonPool())
+            .upload(new ByteArrayInputStream(content)).join();
+        verify(mockClient, times(5)).uploadPart(any(UploadPartRequest.class), any(AsyncRequestBody.class));
+        verify(mockClient).uploadPart(argThat((UploadPartRequest req) -> req.partNumber() == 5
+                    && req.contentLength() == 8L), any(AsyncRequestBody.class));
+        verify(mockClient).completeMultipartUpload(argThat((CompleteMultipartUploadRequest req) ->
+                    req.multipartUpload().parts().size() == 5
+                    && "etag-5".equals(req.multipartUpload().parts().get(4).eTag())));
+        verify(mockClient, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void testPartFailure() {
+        final CompletableFuture<UploadPartResponse> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("Expected"));
+        doReturn(failed).when(mockClient).uploadPart(any(UploadPartRequest.class), any(AsyncRequestBody.class));
+
+        final CompletableFuture<Void> upload = new S3AsyncUpload(mockClient, "bucket", "key", null, 10, 2,
+                commonPool()).upload(new ByteArrayInputStream(content));
+        assertThrows(CompletionException.class, upload::join);
+        verify(mockClient).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(mockClient, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.trellisldp.api.TrellisUtils.TRELLIS_DATA_PREFIX;
+import static org.trellisldp.api.TrellisUtils.getInstance;
+
+import java.util.Optional;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.RDF;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.trellisldp.api.BinaryMetadata;
+import org.trellisldp.api.BinaryService;
+import org.trellisldp.api.Resource;
+import org.trellisldp.api.ResourceService;
+import org.trellisldp.vocabulary.LDP;
+
+public class S3DigestFilterTest {
+
+    private static final RDF rdf = getInstance();
+    private static final IRI identifier = rdf.createIRI(TRELLIS_DATA_PREFIX + "binary");
+    private static final IRI binaryIdentifier = rdf.createIRI("s3://bucket/binary");
+    private static final String md5 = "fLRywC6lAMes32F20wE2VQ==";
+
+    private ResourceService mockResourceService;
+    private S3BinaryService mockBinaryService;
+    private Resource mockResource;
+    private ContainerRequestContext mockContext;
+    private MultivaluedMap<String, String> headers;
+
+    @BeforeEach
+    public void setUp() {
+        mockResource = mock(Resource.class);
+        when(mockResource.getInteractionModel()).thenReturn(LDP.NonRDFSource);
+        when(mockResource.getBinaryMetadata()).thenReturn(Optional.of(BinaryMetadata.builder(binaryIdentifier)
+                    .mimeType("image/png").build()));
+        mockResourceService = mock(ResourceService.class);
+        when(mockResourceService.get(eq(identifier))).thenAnswer(inv -> completedFuture(mockResource));
+        mockBinaryService = mock(S3BinaryService.class);
+        when(mockBinaryService.getDigest(any(IRI.class), anyString())).thenReturn(completedFuture(Optional.empty()));
+        when(mockBinaryService.getDigest(eq(binaryIdentifier), eq("MD5")))
+            .thenReturn(completedFuture(Optional.of(md5)));
+
+        final UriInfo mockUriInfo = mock(UriInfo.class);
+        when(mockUriInfo.getPath()).thenReturn("binary");
+        when(mockUriInfo.getQueryParameters()).thenReturn(new MultivaluedHashMap<>());
+        headers = new MultivaluedHashMap<>();
+        mockContext = mock(ContainerRequestContext.class);
+        when(mockContext.getMethod()).thenReturn("GET");
+        when(mockContext.getUriInfo()).thenReturn(mockUriInfo);
+        when(mockContext.getHeaders()).thenReturn(headers);
+        when(mockContext.getHeaderString(anyString())).thenAnswer(inv -> headers.getFirst(inv.getArgument(0)));
+        when(mockContext.getAcceptableMediaTypes()).thenReturn(emptyList());
+    }
+
+    @Test
+    public void testStoredDigest() {
+        headers.putSingle(S3DigestFilter.WANT_DIGEST, "sha-256;q=0.3, md5;q=0.5");
+        final S3DigestFilter filter = new S3DigestFilter(mockResourceService, mockBinaryService);
+        filter.filter(mockContext);
+        assertNull(headers.getFirst(S3DigestFilter.WANT_DIGEST));
+        verify(mockContext).setProperty(anyString(), eq("md5=" + md5));
+
+        when(mockContext.getProperty(anyString())).thenReturn("md5=" + md5);
+        final ContainerResponseContext mockResponse = mock(ContainerResponseContext.class);
+        final MultivaluedMap<String, Object> responseHeaders = new MultivaluedHashMap<>();
+        when(mockResponse.getStatus()).thenReturn(200);
+        when(mockResponse.getHeaders()).thenReturn(responseHeaders);
+        filter.filter(mockContext, mockResponse);
+        assertEquals("md5=" + md5, responseHeaders.getFirst(S3DigestFilter.DIGEST));
+    }
+
+    @Test
+    public void testNoStoredDigest() {
+        headers.putSingle(S3DigestFilter.WANT_DIGEST, "sha");
+        new S3DigestFilter(mockResourceService, mockBinaryService).filter(mockContext);
+        verify(mockBinaryService).getDigest(eq(binaryIdentifier), eq("SHA-1"));
+        assertEquals("sha", headers.getFirst(S3DigestFilter.WANT_DIGEST));
+        verify(mockContext, never()).setProperty(anyString(), any());
+    }
+
+    @Test
+    public void testDescription() {
+        headers.putSingle(S3DigestFilter.WANT_DIGEST, "md5");
+        when(mockContext.getAcceptableMediaTypes()).thenReturn(singletonList(MediaType.valueOf("text/turtle")));
+        new S3DigestFilter(mockResourceService, mockBinaryService).filter(mockContext);
+        verify(mockBinaryService, never()).getDigest(any(IRI.class), anyString());
+        assertEquals("md5", headers.getFirst(S3DigestFilter.WANT_DIGEST));
+    }
+
+    @Test
+    public void testNoWantDigest() {
+        new S3DigestFilter(mockResourceService, mockBinaryService).filter(mockContext);
+        verify(mockResourceService, never()).get(any(IRI.class));
+    }
+
+    @Test
+    public void testOtherBinaryService() {
+        headers.putSingle(S3DigestFilter.WANT_DIGEST, "md5");
+        new S3DigestFilter(mockResourceService, mock(BinaryService.class)).filter(mockContext);
+        verify(mockResourceService, never()).get(any(IRI.class));
+    }
+
+    @Test
+    public void testAlgorithms() {
+        assertEquals(asList("sha-256", "md5"), S3DigestFilter.getAlgorithms("MD5;q=0.3, SHA-256, sha;q=0"));
+    }
+}
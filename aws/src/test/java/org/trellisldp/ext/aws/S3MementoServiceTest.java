@@ -14,6 +14,7 @@
 package org.trellisldp.ext.aws;
 
 import static com.amazonaws.services.s3.AmazonS3ClientBuilder.defaultClient;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.time.Instant.now;
 import static java.time.temporal.ChronoUnit.SECONDS;
 import static java.util.Arrays.asList;
@@ -23,14 +24,21 @@ import static java.util.Optional.of;
 import static java.util.function.Predicate.isEqual;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.trellisldp.api.Resource.SpecialResources.MISSING_RESOURCE;
 import static org.trellisldp.api.TrellisUtils.TRELLIS_DATA_PREFIX;
 import static org.trellisldp.api.TrellisUtils.getInstance;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ListObjectsV2Request;
 import com.amazonaws.services.s3.model.ListObjectsV2Result;
@@ -38,6 +46,7 @@ import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.SortedSet;
@@ -250,6 +259,106 @@ public class S3MementoServiceTest {
         assertEquals(2L, m.size());
     }
 
+    @Test
+    public void testPrefetch() {
+        final byte[] nquads = ("<" + TRELLIS_DATA_PREFIX + "resource> <http://purl.org/dc/terms/title> \"Title\" <"
+                + Trellis.PreferUserManaged.getIRIString() + "> .\n").getBytes(UTF_8);
+        final AmazonS3 mockClient = mock(AmazonS3.class);
+        when(mockClient.getObject(any(GetObjectRequest.class))).thenAnswer(inv -> s3Object(nquads,
+                    ((GetObjectRequest) inv.getArgument(0)).getRange()));
+        final Instant time = Instant.ofEpochSecond(1544042743L);
+        final MementoService svc = new S3MementoService(mockClient, "bucket", null);
+
+        final Resource r = svc.get(rdf.createIRI(TRELLIS_DATA_PREFIX + "resource"), time).toCompletableFuture()
+            .join();
+        assertEquals(LDP.RDFSource, r.getInteractionModel());
+        assertEquals(time, r.getModified());
+        try (final Stream<? extends Quad> quads = r.stream()) {
+            assertEquals(1L, quads.count());
+        }
+        verify(mockClient).getObject(argThat((GetObjectRequest req) -> req.getRange() != null
+                    && req.getRange()[0] == 0L && req.getRange()[1] == PrefetchedContent.HEAD_SIZE - 1));
+        verify(mockClient, never()).getObject(argThat((GetObjectRequest req) -> req.getRange() == null));
+        verify(mockClient, never()).getObjectMetadata(anyString(), anyString());
+    }
+
+    @Test
+    public void testPrefetchLargeMemento() {
+        final StringBuilder nquads = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            nquads.append("<").append(TRELLIS_DATA_PREFIX).append("resource> <http://purl.org/dc/terms/title> \"")
+                .append(i).append("\" <").append(Trellis.PreferUserManaged.getIRIString()).append("> .\n");
+        }
+        final byte[] bytes = nquads.toString().getBytes(UTF_8);
+        final AmazonS3 mockClient = mock(AmazonS3.class);
+        when(mockClient.getObject(any(GetObjectRequest.class))).thenAnswer(inv -> s3Object(bytes,
+                    ((GetObjectRequest) inv.getArgument(0)).getRange()));
+        final MementoService svc = new S3MementoService(mockClient, "bucket", null);
+
+        final Resource r = svc.get(rdf.createIRI(TRELLIS_DATA_PREFIX + "resource"),
+                Instant.ofEpochSecond(1544042743L)).toCompletableFuture().join();
+        try (final Stream<? extends Quad> quads = r.stream()) {
+            assertEquals(2000L, quads.count());
+        }
+        // The rest of the memento is fetched after the head
+        verify(mockClient).getObject(argThat((GetObjectRequest req) -> req.getRange() != null
+                    && req.getRange()[0] == PrefetchedContent.HEAD_SIZE && req.getRange()[1] == bytes.length - 1));
+        verify(mockClient, times(2)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void testPrefetchStreamedTwice() {
+        final byte[] nquads = ("<" + TRELLIS_DATA_PREFIX + "resource> <http://purl.org/dc/terms/title> \"Title\" <"
+                + Trellis.PreferUserManaged.getIRIString() + "> .\n").getBytes(UTF_8);
+        final AmazonS3 mockClient = mock(AmazonS3.class);
+        when(mockClient.getObject(any(GetObjectRequest.class))).thenAnswer(inv -> s3Object(nquads,
+                    ((GetObjectRequest) inv.getArgument(0)).getRange()));
+        final MementoService svc = new S3MementoService(mockClient, "bucket", null);
+
+        final Resource r = svc.get(rdf.createIRI(TRELLIS_DATA_PREFIX + "resource"),
+                Instant.ofEpochSecond(1544042743L)).toCompletableFuture().join();
+        try (final Stream<? extends Quad> quads = r.stream()) {
+            assertEquals(1L, quads.count());
+        }
+        // The whole memento fits in the head, so the second read needs no further GET
+        try (final Stream<? extends Quad> quads = r.stream()) {
+            assertEquals(1L, quads.count());
+        }
+        verify(mockClient).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void testPrefetchEmptyMemento() {
+        final AmazonS3 mockClient = mock(AmazonS3.class);
+        when(mockClient.getObject(any(GetObjectRequest.class))).thenAnswer(inv -> s3Object(new byte[0], null));
+        final MementoService svc = new S3MementoService(mockClient, "bucket", null);
+
+        final Resource r = svc.get(rdf.createIRI(TRELLIS_DATA_PREFIX + "resource"),
+                Instant.ofEpochSecond(1544042743L)).toCompletableFuture().join();
+        assertEquals(LDP.RDFSource, r.getInteractionModel());
+        try (final Stream<? extends Quad> quads = r.stream()) {
+            assertEquals(0L, quads.count());
+        }
+        verify(mockClient, never()).getObjectMetadata(anyString(), anyString());
+    }
+
+    @Test
+    public void testPrefetchUnsatisfiableRange() {
+        final AmazonS3Exception ex = new AmazonS3Exception("Requested range not satisfiable");
+        ex.setStatusCode(416);
+        final AmazonS3 mockClient = mock(AmazonS3.class);
+        when(mockClient.getObject(any(GetObjectRequest.class))).thenThrow(ex)
+            .thenAnswer(inv -> s3Object(new byte[0], null));
+        when(mockClient.getObjectMetadata(anyString(), anyString()))
+            .thenAnswer(inv -> s3Object(new byte[0], null).getObjectMetadata());
+        final MementoService svc = new S3MementoService(mockClient, "bucket", null);
+
+        final Resource r = svc.get(rdf.createIRI(TRELLIS_DATA_PREFIX + "resource"),
+                Instant.ofEpochSecond(1544042743L)).toCompletableFuture().join();
+        assertEquals(LDP.RDFSource, r.getInteractionModel());
+        verify(mockClient).getObjectMetadata(anyString(), anyString());
+    }
+
     @Test
     public void testResourceError() {
         final AmazonS3 mockClient = mock(AmazonS3.class);
@@ -265,4 +374,21 @@ public class S3MementoServiceTest {
         final Resource testResource = new S3Resource(mockMetadata, mockClient, mockRequest, "");
         assertThrows(RuntimeTrellisException.class, testResource::stream);
     }
+
+    private static S3Object s3Object(final byte[] content, final long[] range) {
+        final int from = range != null ? (int) range[0] : 0;
+        final int to = range != null ? (int) Math.min(range[1], content.length - 1) : content.length - 1;
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.addUserMetadata(S3Resource.INTERACTION_MODEL, LDP.RDFSource.getIRIString());
+        metadata.addUserMetadata(S3Resource.MODIFIED, Instant.ofEpochSecond(1544042743L).toString());
+        metadata.setContentType("application/n-quads");
+        metadata.setContentLength(to - from + 1L);
+        if (range != null) {
+            metadata.setHeader(Headers.CONTENT_RANGE, "bytes " + from + "-" + to + "/" + content.length);
+        }
+        final S3Object object = new S3Object();
+        object.setObjectMetadata(metadata);
+        object.setObjectContent(new ByteArrayInputStream(content, from, to - from + 1));
+        return object;
+    }
 }
@@ -0,0 +1,173 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+import static java.util.Collections.singletonList;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.Executor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class S3MultipartOutputStreamTest {
+
+    private static final Executor direct = Runnable::run;
+
+    private AmazonS3 mockClient;
+
+    @BeforeEach
+    public void setUp() {
+        mockClient = mock(AmazonS3.class);
+        final InitiateMultipartUploadResult initiated = new InitiateMultipartUploadResult();
+        initiated.setUploadId("upload-id");
+        when(mockClient.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiated);
+        when(mockClient.uploadPart(any(UploadPartRequest.class))).thenAnswer(inv -> {
+            final UploadPartRequest req = inv.getArgument(0);
+            final UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(req.getPartNumber());
+            result.setETag("etag-" + req.getPartNumber());
+            return result;
+        });
+    }
+
+    @Test
+    public void testSmallObject() throws IOException {
+        final PartBufferPool pool = new PartBufferPool(64, 2);
+        try (final S3MultipartOutputStream output = new S3MultipartOutputStream(mockClient, "bucket", "key",
+                    new ObjectMetadata(), pool, direct)) {
+            output.write("A small binary".getBytes(UTF_8));
+        }
+        verify(mockClient).putObject(any(PutObjectRequest.class));
+        verify(mockClient, never()).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void testMultipartObject() throws IOException {
+        final PartBufferPool pool = new PartBufferPool(10, 2);
+        try (final S3MultipartOutputStream output = new S3MultipartOutputStream(mockClient, "bucket", "key",
+                    new ObjectMetadata(), pool, direct)) {
+            output.write("This content spans three parts".getBytes(UTF_8));
+            output.write('!');
+        }
+        verify(mockClient, never()).putObject(any(PutObjectRequest.class));
+        verify(mockClient, times(4)).uploadPart(any(UploadPartRequest.class));
+        verify(mockClient).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void testPartFailure() {
+        doThrow(new IllegalStateException("Expected")).when(mockClient).uploadPart(any(UploadPartRequest.class));
+        final PartBufferPool pool = new PartBufferPool(10, 2);
+        final S3MultipartOutputStream output = new S3MultipartOutputStream(mockClient, "bucket", "key",
+                    new ObjectMetadata(), pool, direct);
+        assertThrows(IOException.class, () -> {
+            output.write("Two partial parts".getBytes(UTF_8));
+            output.close();
+        });
+        verify(mockClient).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(mockClient, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void testAbort() throws IOException {
+        final PartBufferPool pool = new PartBufferPool(10, 2);
+        final S3MultipartOutputStream output = new S3MultipartOutputStream(mockClient, "bucket", "key",
+                    new ObjectMetadata(), pool, direct);
+        output.write("This content spans two parts".getBytes(UTF_8));
+        output.abort();
+        output.close();
+        verify(mockClient).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(mockClient, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        assertThrows(IOException.class, () -> output.write('a'));
+    }
+
+    @Test
+    public void testResumeUpload() throws Exception {
+        final ObjectMetadata state = new ObjectMetadata();
+        state.addUserMetadata("trellis.upload.id", "previous-id");
+        state.addUserMetadata("trellis.upload.fingerprint", ";");
+        when(mockClient.getObjectMetadata(eq("bucket"), eq("uploads/key"))).thenReturn(state);
+        final PartSummary part = new PartSummary();
+        part.setPartNumber(1);
+        part.setSize(10L);
+        part.setETag("\"" + ContentAddressedStorage.toHex(MessageDigest.getInstance("MD5")
+                    .digest("This conte".getBytes(UTF_8))) + "\"");
+        final PartListing listing = new PartListing();
+        listing.setParts(singletonList(part));
+        when(mockClient.listParts(any(ListPartsRequest.class))).thenReturn(listing);
+
+        final ResumableUploads uploads = new ResumableUploads(mockClient, "bucket", "", 60000L);
+        try (final S3MultipartOutputStream output = new S3MultipartOutputStream(mockClient, "bucket", "key",
+                    new ObjectMetadata(), new PartBufferPool(10, 2), direct, null, uploads)) {
+            output.write("This content spans three parts".getBytes(UTF_8));
+            output.write('!');
+        }
+        uploads.shutdown();
+        verify(mockClient, never()).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+        verify(mockClient, never()).uploadPart(argThat((UploadPartRequest req) -> req.getPartNumber() == 1));
+        verify(mockClient, times(3)).uploadPart(any(UploadPartRequest.class));
+        verify(mockClient).completeMultipartUpload(argThat((CompleteMultipartUploadRequest req) ->
+                    "previous-id".equals(req.getUploadId()) && req.getPartETags().size() == 4));
+        verify(mockClient).deleteObject(eq("bucket"), eq("uploads/key"));
+    }
+
+    @Test
+    public void testKeepFailedUpload() {
+        final AmazonS3Exception notFound = new AmazonS3Exception("Not Found");
+        notFound.setStatusCode(404);
+        when(mockClient.getObjectMetadata(eq("bucket"), anyString())).thenThrow(notFound);
+        doThrow(new IllegalStateException("Expected")).when(mockClient).uploadPart(any(UploadPartRequest.class));
+
+        final ResumableUploads uploads = new ResumableUploads(mockClient, "bucket", "", 60000L);
+        final S3MultipartOutputStream output = new S3MultipartOutputStream(mockClient, "bucket", "key",
+                    new ObjectMetadata(), new PartBufferPool(10, 2), direct, null, uploads);
+        assertThrows(IOException.class, () -> {
+            output.write("Two partial parts".getBytes(UTF_8));
+            output.close();
+        });
+        uploads.shutdown();
+        verify(mockClient).putObject(eq("bucket"), eq("uploads/key"), any(InputStream.class),
+                argThat((ObjectMetadata md) -> "upload-id".equals(md.getUserMetaDataOf("trellis.upload.id"))));
+        verify(mockClient, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+}
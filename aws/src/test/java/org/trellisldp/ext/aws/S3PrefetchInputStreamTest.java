@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.ForkJoinPool.commonPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class S3PrefetchInputStreamTest {
+
+    private static final byte[] content = "A sample binary file, fetched in several ranges.".getBytes(UTF_8);
+
+    private AmazonS3 mockClient;
+
+    @BeforeEach
+    public void setUp() {
+        mockClient = mock(AmazonS3.class);
+        when(mockClient.getObject(any(GetObjectRequest.class))).thenAnswer(inv -> {
+            final long[] range = ((GetObjectRequest) inv.getArgument(0)).getRange();
+            final S3Object object = new S3Object();
+            object.setObjectContent(new ByteArrayInputStream(content, (int) range[0],
+                        (int) (range[1] - range[0] + 1)));
+            return object;
+        });
+    }
+
+    @Test
+    public void testFullContent() throws IOException {
+        try (final InputStream input = new S3PrefetchInputStream(mockClient, "bucket", "key", 0,
+                    content.length - 1, 5, 3, commonPool())) {
+            assertArrayEquals(content, IOUtils.toByteArray(input));
+        }
+        verify(mockClient, times(10)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void testRange() throws IOException {
+        try (final InputStream input = new S3PrefetchInputStream(mockClient, "bucket", "key", 2, 15, 4, 2,
+                    commonPool())) {
+            assertEquals("sample binary ", IOUtils.toString(input, UTF_8));
+        }
+    }
+
+    @Test
+    public void testError() {
+        doThrow(new IllegalStateException("Expected")).when(mockClient).getObject(any(GetObjectRequest.class));
+        final InputStream input = new S3PrefetchInputStream(mockClient, "bucket", "key", 0, content.length - 1, 5,
+                3, commonPool());
+        assertThrows(IOException.class, () -> IOUtils.toByteArray(input));
+    }
+    @Test
+    public void testCloseAbortsFetches() throws Exception {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch aborted = new CountDownLatch(1);
+        doAnswer(inv -> {
+            final S3Object object = new S3Object();
+            object.setObjectContent(new S3ObjectInputStream(new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    reading.countDown();
+                    try {
+                        aborted.await();
+                    } catch (final InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IOException("Aborted");
+                }
+            }, null) {
+                @Override
+                public void abort() {
+                    aborted.countDown();
+                }
+
+                @Override
+                public void close() {
+                    // Nothing to release
+                }
+            });
+            return object;
+        }).when(mockClient).getObject(any(GetObjectRequest.class));
+        final InputStream input = new S3PrefetchInputStream(mockClient, "bucket", "key", 0, content.length - 1, 5,
+                1, commonPool());
+        assertTrue(reading.await(5, SECONDS));
+        input.close();
+        // The chunk that was being read is aborted rather than left to hold its connection
+        assertTrue(aborted.await(5, SECONDS));
+    }
+
+    @Test
+    public void testDownloader() {
+        final ParallelDownloader downloader = new ParallelDownloader(20, 5, 2, commonPool());
+        assertFalse(downloader.accepts(10));
+        assertTrue(downloader.accepts(content.length));
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static javax.ws.rs.core.HttpHeaders.ACCEPT_ENCODING;
+import static javax.ws.rs.core.HttpHeaders.CACHE_CONTROL;
+import static javax.ws.rs.core.HttpHeaders.IF_NONE_MATCH;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.trellisldp.api.TrellisUtils.TRELLIS_DATA_PREFIX;
+import static org.trellisldp.api.TrellisUtils.getInstance;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+import java.net.URL;
+import java.util.Optional;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.RDF;
+import org.eclipse.microprofile.config.Config;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.trellisldp.api.BinaryMetadata;
+import org.trellisldp.api.BinaryService;
+import org.trellisldp.api.Resource;
+import org.trellisldp.api.ResourceService;
+import org.trellisldp.vocabulary.LDP;
+
+public class S3RedirectFilterTest {
+
+    private static final RDF rdf = getInstance();
+    private static final IRI identifier = rdf.createIRI(TRELLIS_DATA_PREFIX + "binary");
+    private static final IRI binaryIdentifier = rdf.createIRI("s3://bucket/binary");
+
+    private AmazonS3 mockClient;
+    private ObjectMetadata metadata;
+    private ResourceService mockResourceService;
+    private BinaryService mockBinaryService;
+    private Resource mockResource;
+    private ContainerRequestContext mockContext;
+    private UriInfo mockUriInfo;
+    private Config mockConfig;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        metadata = new ObjectMetadata();
+        metadata.setContentLength(1000L);
+        mockClient = mock(AmazonS3.class);
+        when(mockClient.getObjectMetadata(eq("bucket"), eq("binary"))).thenReturn(metadata);
+        when(mockClient.generatePresignedUrl(any(GeneratePresignedUrlRequest.class)))
+            .thenReturn(new URL("https://bucket.s3.amazonaws.com/binary?X-Amz-Signature=abc"));
+
+        mockResource = mock(Resource.class);
+        when(mockResource.getInteractionModel()).thenReturn(LDP.NonRDFSource);
+        when(mockResource.getBinaryMetadata()).thenReturn(Optional.of(BinaryMetadata.builder(binaryIdentifier)
+                    .mimeType("image/png").build()));
+        mockResourceService = mock(ResourceService.class);
+        when(mockResourceService.get(eq(identifier))).thenAnswer(inv -> completedFuture(mockResource));
+        mockBinaryService = mock(BinaryService.class);
+        when(mockBinaryService.get(eq(binaryIdentifier))).thenAnswer(inv ->
+                completedFuture(new S3Binary(mockClient, "bucket", "binary")));
+
+        mockUriInfo = mock(UriInfo.class);
+        when(mockUriInfo.getPath()).thenReturn("binary");
+        when(mockUriInfo.getQueryParameters()).thenReturn(new MultivaluedHashMap<>());
+        mockContext = mock(ContainerRequestContext.class);
+        when(mockContext.getMethod()).thenReturn("GET");
+        when(mockContext.getUriInfo()).thenReturn(mockUriInfo);
+        when(mockContext.getAcceptableMediaTypes()).thenReturn(emptyList());
+
+        mockConfig = mock(Config.class);
+        doReturn(Optional.empty()).when(mockConfig).getOptionalValue(anyString(), any());
+        doReturn(Optional.of(true)).when(mockConfig)
+            .getOptionalValue(eq(S3RedirectFilter.CONFIG_BINARY_REDIRECT), eq(Boolean.class));
+    }
+
+    @Test
+    public void testRedirect() {
+        doReturn(Optional.of("attachment")).when(mockConfig)
+            .getOptionalValue(eq(S3RedirectFilter.CONFIG_BINARY_REDIRECT_DISPOSITION), eq(String.class));
+        new S3RedirectFilter(mockResourceService, mockBinaryService, mockConfig).filter(mockContext);
+
+        final ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        verify(mockContext).abortWith(response.capture());
+        assertEquals(307, response.getValue().getStatus());
+        assertEquals("no-store", response.getValue().getHeaderString(CACHE_CONTROL));
+        assertEquals("bucket.s3.amazonaws.com", response.getValue().getLocation().getHost());
+
+        final ArgumentCaptor<GeneratePresignedUrlRequest> request
+            = ArgumentCaptor.forClass(GeneratePresignedUrlRequest.class);
+        verify(mockClient).generatePresignedUrl(request.capture());
+        assertEquals("binary", request.getValue().getKey());
+        assertEquals("image/png", request.getValue().getResponseHeaders().getContentType());
+        assertEquals("attachment", request.getValue().getResponseHeaders().getContentDisposition());
+    }
+
+    @Test
+    public void testDisabled() {
+        doReturn(Optional.empty()).when(mockConfig)
+            .getOptionalValue(eq(S3RedirectFilter.CONFIG_BINARY_REDIRECT), eq(Boolean.class));
+        new S3RedirectFilter(mockResourceService, mockBinaryService, mockConfig).filter(mockContext);
+        verify(mockContext, never()).abortWith(any(Response.class));
+        verify(mockResourceService, never()).get(any(IRI.class));
+    }
+
+    @Test
+    public void testQueryParameters() {
+        final MultivaluedHashMap<String, String> params = new MultivaluedHashMap<>();
+        params.putSingle("ext", "description");
+        when(mockUriInfo.getQueryParameters()).thenReturn(params);
+        new S3RedirectFilter(mockResourceService, mockBinaryService, mockConfig).filter(mockContext);
+        verify(mockContext, never()).abortWith(any(Response.class));
+    }
+
+    @Test
+    public void testConditionalRequest() {
+        when(mockContext.getHeaderString(IF_NONE_MATCH)).thenReturn("\"etag\"");
+        new S3RedirectFilter(mockResourceService, mockBinaryService, mockConfig).filter(mockContext);
+        verify(mockContext, never()).abortWith(any(Response.class));
+        // Trellis answers conditional requests itself, so the resource is not looked up here
+        verify(mockResourceService, never()).get(any(IRI.class));
+    }
+
+    @Test
+    public void testRangeConditionalRequest() {
+        when(mockContext.getHeaderString("If-Range")).thenReturn("Wed, 21 Oct 2015 07:28:00 GMT");
+        new S3RedirectFilter(mockResourceService, mockBinaryService, mockConfig).filter(mockContext);
+        verify(mockContext, never()).abortWith(any(Response.class));
+    }
+
+    @Test
+    public void testContainer() {
+        when(mockResource.getInteractionModel()).thenReturn(LDP.BasicContainer);
+        new S3RedirectFilter(mockResourceService, mockBinaryService, mockConfig).filter(mockContext);
+        verify(mockContext, never()).abortWith(any(Response.class));
+    }
+
+    @Test
+    public void testBelowThreshold() {
+        doReturn(Optional.of(4096L)).when(mockConfig)
+            .getOptionalValue(eq(S3RedirectFilter.CONFIG_BINARY_REDIRECT_THRESHOLD), eq(Long.class));
+        new S3RedirectFilter(mockResourceService, mockBinaryService, mockConfig).filter(mockContext);
+        verify(mockContext, never()).abortWith(any(Response.class));
+    }
+
+    @Test
+    public void testUnmatchedType() {
+        doReturn(Optional.of(new String[] {"video/*", "audio/*"})).when(mockConfig)
+            .getOptionalValue(eq(S3RedirectFilter.CONFIG_BINARY_REDIRECT_TYPES), eq(String[].class));
+        new S3RedirectFilter(mockResourceService, mockBinaryService, mockConfig).filter(mockContext);
+        verify(mockContext, never()).abortWith(any(Response.class));
+    }
+
+    @Test
+    public void testRdfRequested() {
+        when(mockContext.getAcceptableMediaTypes()).thenReturn(singletonList(MediaType.valueOf("text/turtle")));
+        new S3RedirectFilter(mockResourceService, mockBinaryService, mockConfig).filter(mockContext);
+        verify(mockContext, never()).abortWith(any(Response.class));
+        verify(mockResourceService, never()).get(any(IRI.class));
+    }
+
+    @Test
+    public void testRdfTypeRedirected() {
+        when(mockResource.getBinaryMetadata()).thenReturn(Optional.of(BinaryMetadata.builder(binaryIdentifier)
+                    .mimeType("text/turtle").build()));
+        when(mockContext.getAcceptableMediaTypes()).thenReturn(singletonList(MediaType.valueOf("text/turtle")));
+        doReturn(Optional.of(new String[] {"text/turtle"})).when(mockConfig)
+            .getOptionalValue(eq(S3RedirectFilter.CONFIG_BINARY_REDIRECT_TYPES), eq(String[].class));
+        new S3RedirectFilter(mockResourceService, mockBinaryService, mockConfig).filter(mockContext);
+        verify(mockContext).abortWith(any(Response.class));
+    }
+
+    @Test
+    public void testRdfSource() {
+        when(mockResource.getInteractionModel()).thenReturn(LDP.RDFSource);
+        when(mockResource.getBinaryMetadata()).thenReturn(Optional.empty());
+        when(mockContext.getAcceptableMediaTypes()).thenReturn(singletonList(MediaType.WILDCARD_TYPE));
+        new S3RedirectFilter(mockResourceService, mockBinaryService, mockConfig).filter(mockContext);
+        verify(mockContext, never()).abortWith(any(Response.class));
+        verify(mockBinaryService, never()).get(any(IRI.class));
+        verify(mockClient, never()).getObjectMetadata(anyString(), anyString());
+    }
+
+    @Test
+    public void testContentEncoding() {
+        metadata.setContentEncoding("gzip");
+        new S3RedirectFilter(mockResourceService, mockBinaryService, mockConfig).filter(mockContext);
+        verify(mockContext, never()).abortWith(any(Response.class));
+
+        when(mockContext.getHeaderString(eq(ACCEPT_ENCODING))).thenReturn("gzip, deflate");
+        new S3RedirectFilter(mockResourceService, mockBinaryService, mockConfig).filter(mockContext);
+        verify(mockContext).abortWith(any(Response.class));
+    }
+}
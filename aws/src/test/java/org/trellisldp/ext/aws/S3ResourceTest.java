@@ -0,0 +1,166 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.time.Instant.now;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.trellisldp.api.TrellisUtils.TRELLIS_DATA_PREFIX;
+import static org.trellisldp.api.TrellisUtils.getInstance;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.Quad;
+import org.apache.commons.rdf.api.RDF;
+import org.apache.commons.rdf.api.Triple;
+import org.junit.jupiter.api.Test;
+import org.trellisldp.api.Resource;
+import org.trellisldp.vocabulary.ACL;
+import org.trellisldp.vocabulary.DC;
+import org.trellisldp.vocabulary.LDP;
+import org.trellisldp.vocabulary.PROV;
+import org.trellisldp.vocabulary.Trellis;
+
+public class S3ResourceTest {
+
+    private static final RDF rdf = getInstance();
+    private static final IRI identifier = rdf.createIRI(TRELLIS_DATA_PREFIX + "resource");
+    private static final Quad title = rdf.createQuad(Trellis.PreferUserManaged, identifier, DC.title,
+            rdf.createLiteral("Title"));
+    private static final Quad acl = rdf.createQuad(Trellis.PreferAccessControl, identifier, ACL.mode, ACL.Read);
+    private static final Quad audit = rdf.createQuad(Trellis.PreferAudit, identifier, PROV.wasGeneratedBy,
+            rdf.createIRI("http://example.com/activity"));
+
+    @Test
+    public void testSpan() {
+        final String index = "http://example.com/a=10 http://example.com/b=5 http://example.com/c=20";
+        assertArrayEquals(new long[] {10L, 14L}, S3Resource.getSpan(index,
+                    singleton(rdf.createIRI("http://example.com/b"))));
+        assertArrayEquals(new long[] {0L, 34L}, S3Resource.getSpan(index,
+                    asList(rdf.createIRI("http://example.com/a"), rdf.createIRI("http://example.com/c"))));
+        assertEquals(0, S3Resource.getSpan(index, singleton(rdf.createIRI("http://example.com/d"))).length);
+        assertEquals(0, S3Resource.getSpan("", singleton(rdf.createIRI("http://example.com/a"))).length);
+    }
+
+    @Test
+    public void testEncodedSpan() {
+        assertEquals("http://example.com/a", S3Resource.encodeGraphName("http://example.com/a"));
+        assertEquals("http://example.com/%C3%A9%20a%3Db%25",
+                S3Resource.encodeGraphName("http://example.com/\u00e9 a=b%"));
+        final String index = "http://example.com/a=10 " + S3Resource.encodeGraphName("http://example.com/\u00e9")
+            + "=5";
+        assertTrue(index.chars().allMatch(c -> c < 0x80), "The index is US-ASCII");
+        assertArrayEquals(new long[] {10L, 14L}, S3Resource.getSpan(index,
+                    singleton(rdf.createIRI("http://example.com/\u00e9"))));
+    }
+
+    @Test
+    public void testIndexLimit() {
+        final Resource res = mockResource();
+        final StringBuilder container = new StringBuilder(TRELLIS_DATA_PREFIX);
+        while (container.length() < 1800) {
+            container.append("container/");
+        }
+        when(res.getContainer()).thenReturn(of(rdf.createIRI(container.toString())));
+        final Map<String, String> metadata = S3MementoService.write(res, new ByteArrayOutputStream(),
+                MementoFormat.NQUADS, null, BinaryCompression.DEFAULT_LEVEL);
+        // The index on its own is short, but does not fit alongside the other metadata
+        assertFalse(metadata.containsKey(S3Resource.GRAPH_INDEX));
+        assertTrue(S3MementoService.getUserMetadataSize(metadata) <= 2048);
+
+        final Map<String, String> small = S3MementoService.write(mockResource(), new ByteArrayOutputStream(),
+                MementoFormat.NQUADS, null, BinaryCompression.DEFAULT_LEVEL);
+        assertTrue(small.containsKey(S3Resource.GRAPH_INDEX));
+    }
+
+    @Test
+    public void testPartialRead() {
+        assertPartialRead(null);
+    }
+
+    @Test
+    public void testCompressedPartialRead() {
+        assertPartialRead("gzip");
+    }
+
+    private static void assertPartialRead(final String encoding) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final ObjectMetadata metadata = new ObjectMetadata();
+        final Map<String, String> userMetadata = S3MementoService.write(mockResource(), output, MementoFormat.NQUADS,
+                encoding, BinaryCompression.DEFAULT_LEVEL);
+        metadata.setUserMetadata(userMetadata);
+        metadata.setContentType(MementoFormat.NQUADS.getContentType());
+        metadata.setContentEncoding(encoding);
+        final String index = userMetadata.get(S3Resource.GRAPH_INDEX);
+        assertTrue(index.indexOf(Trellis.PreferAudit.getIRIString())
+                > index.indexOf(Trellis.PreferUserManaged.getIRIString()), "The audit graph is stored last");
+
+        final byte[] bytes = output.toByteArray();
+        final List<long[]> requested = new ArrayList<>();
+        final Resource memento = new S3Resource(metadata, "resource", () -> new ByteArrayInputStream(bytes),
+                (from, to) -> {
+                    requested.add(new long[] {from, to});
+                    return new ByteArrayInputStream(bytes, from.intValue(), (int) (to - from + 1));
+                }, "", null, ForkJoinPool.commonPool());
+
+        try (final Stream<Triple> triples = memento.stream(asList(Trellis.PreferUserManaged,
+                        Trellis.PreferAccessControl))) {
+            final List<Triple> read = triples.collect(toList());
+            assertEquals(2, read.size());
+            assertTrue(read.contains(title.asTriple()));
+            assertTrue(read.contains(acl.asTriple()));
+        }
+        assertEquals(1, requested.size());
+        assertTrue(requested.get(0)[1] < bytes.length - 1, "The audit graph is not read");
+
+        try (final Stream<Triple> triples = memento.stream(singleton(Trellis.PreferServerManaged))) {
+            assertEquals(0L, triples.count());
+        }
+        assertEquals(1, requested.size());
+        try (final Stream<Quad> quads = memento.stream()) {
+            assertEquals(3L, quads.count());
+        }
+        assertTrue(memento.hasAcl());
+    }
+
+    private static Resource mockResource() {
+        final Resource res = mock(Resource.class);
+        when(res.getModified()).thenReturn(now());
+        when(res.getIdentifier()).thenReturn(identifier);
+        when(res.getContainer()).thenReturn(empty());
+        when(res.getInteractionModel()).thenReturn(LDP.RDFSource);
+        when(res.getBinaryMetadata()).thenReturn(empty());
+        when(res.getMembershipResource()).thenReturn(empty());
+        when(res.getMemberRelation()).thenReturn(empty());
+        when(res.getMemberOfRelation()).thenReturn(empty());
+        when(res.getInsertedContentRelation()).thenReturn(empty());
+        when(res.stream()).thenAnswer(inv -> Stream.of(audit, title, acl));
+        return res;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Optional;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.trellisldp.api.BinaryService;
+
+public class S3UploadFilterTest {
+
+    private AmazonS3 mockClient;
+    private DirectUploads uploads;
+    private S3BinaryService mockBinaryService;
+    private ContainerRequestContext mockContext;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        mockClient = mock(AmazonS3.class);
+        final InitiateMultipartUploadResult initiated = new InitiateMultipartUploadResult();
+        initiated.setUploadId("upload-id");
+        when(mockClient.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiated);
+        when(mockClient.generatePresignedUrl(any(GeneratePresignedUrlRequest.class)))
+            .thenReturn(new URL("https://bucket.s3.amazonaws.com/part"));
+        uploads = new DirectUploads(mockClient, "bucket", "", S3BinaryService.MIN_PART_SIZE, 60000L,
+                new S3Copier(mockClient));
+        mockBinaryService = mock(S3BinaryService.class);
+        when(mockBinaryService.getDirectUploads()).thenReturn(Optional.of(uploads));
+
+        final UriInfo mockUriInfo = mock(UriInfo.class);
+        when(mockUriInfo.getPath()).thenReturn("binary");
+        mockContext = mock(ContainerRequestContext.class);
+        when(mockContext.getMethod()).thenReturn("PUT");
+        when(mockContext.getUriInfo()).thenReturn(mockUriInfo);
+        when(mockContext.getHeaders()).thenReturn(new MultivaluedHashMap<>());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        uploads.shutdown();
+    }
+
+    @Test
+    public void testInitiate() {
+        when(mockContext.getHeaderString(eq(S3UploadFilter.UPLOAD_LENGTH))).thenReturn("1000");
+        new S3UploadFilter(mockBinaryService).filter(mockContext);
+
+        final ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        verify(mockContext).abortWith(response.capture());
+        assertEquals(200, response.getValue().getStatus());
+        final String handle = response.getValue().getHeaderString(S3UploadFilter.UPLOAD);
+        assertTrue(handle.endsWith(":upload-id"));
+        final String json = (String) response.getValue().getEntity();
+        assertTrue(json.contains("\"upload\":\"" + handle + "\""));
+        assertTrue(json.contains("\"parts\":[\"https://bucket.s3.amazonaws.com/part\"]"));
+    }
+
+    @Test
+    public void testInvalidLength() {
+        when(mockContext.getHeaderString(eq(S3UploadFilter.UPLOAD_LENGTH))).thenReturn("many");
+        new S3UploadFilter(mockBinaryService).filter(mockContext);
+
+        final ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        verify(mockContext).abortWith(response.capture());
+        assertEquals(400, response.getValue().getStatus());
+    }
+
+    @Test
+    public void testComplete() throws Exception {
+        final String handle = uploads.initiate(10L, null).getHandle();
+        final PartSummary part = new PartSummary();
+        part.setPartNumber(1);
+        part.setSize(10L);
+        part.setETag("\"etag\"");
+        final PartListing listing = new PartListing();
+        listing.getParts().add(part);
+        when(mockClient.listParts(any(ListPartsRequest.class))).thenReturn(listing);
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(10L);
+        metadata.addUserMetadata("trellis.upload.length", "10");
+        when(mockClient.getObjectMetadata(eq("bucket"), anyString())).thenReturn(metadata);
+        when(mockContext.getHeaderString(eq(S3UploadFilter.UPLOAD))).thenReturn(handle);
+
+        new S3UploadFilter(mockBinaryService).filter(mockContext);
+        verify(mockContext, never()).abortWith(any(Response.class));
+        final ArgumentCaptor<InputStream> entity = ArgumentCaptor.forClass(InputStream.class);
+        verify(mockContext).setEntityStream(entity.capture());
+        final String token = IOUtils.toString(entity.getValue(), UTF_8);
+        assertTrue(uploads.claim(token.getBytes(UTF_8)).isPresent());
+    }
+
+    @Test
+    public void testDigestHeader() {
+        when(mockContext.getHeaderString(eq(S3UploadFilter.UPLOAD))).thenReturn("handle");
+        when(mockContext.getHeaderString(eq("Digest"))).thenReturn("md5=HUXZLQLMuI/KZ5KDcJPcOA==");
+        new S3UploadFilter(mockBinaryService).filter(mockContext);
+
+        final ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        verify(mockContext).abortWith(response.capture());
+        assertEquals(400, response.getValue().getStatus());
+    }
+
+    @Test
+    public void testOtherRequests() {
+        when(mockContext.getMethod()).thenReturn("GET");
+        when(mockContext.getHeaderString(eq(S3UploadFilter.UPLOAD_LENGTH))).thenReturn("1000");
+        new S3UploadFilter(mockBinaryService).filter(mockContext);
+        new S3UploadFilter(mock(BinaryService.class)).filter(mockContext);
+        verify(mockContext, never()).abortWith(any(Response.class));
+        verify(mockClient, never()).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+    }
+}
@@ -18,11 +18,16 @@ import static java.time.Instant.now;
 import static java.util.Collections.singleton;
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.trellisldp.api.TrellisUtils.getInstance;
 
+import com.amazonaws.services.sns.AmazonSNS;
+
 import java.time.Instant;
 
 import org.apache.commons.rdf.api.IRI;
@@ -70,6 +75,16 @@ public class SNSEventServiceTest {
         verify(mockEvent).getIdentifier();
     }
 
+    @Test
+    public void testPublishOnCallingThread() {
+        final AmazonSNS mockClient = mock(AmazonSNS.class);
+        final SNSEventService svc = new SNSEventService(serializer, mockClient, "topic");
+        svc.emit(mockEvent);
+        // Without a publishing thread, the event has been sent by the time emit returns
+        verify(mockClient).publish(eq("topic"), anyString());
+        svc.shutdown();
+    }
+
     @Test
     public void testEventError() {
         final EventService svc = new SNSEventService(serializer, defaultClient(),
@@ -0,0 +1,38 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+public class TransferBuffersTest {
+
+    @Test
+    public void testReuse() {
+        final ByteBuffer buffer = TransferBuffers.acquire();
+        assertFalse(buffer.isDirect());
+        assertEquals(TransferBuffers.BUFFER_SIZE, buffer.capacity());
+        buffer.put((byte) 1);
+        TransferBuffers.release(buffer);
+
+        final ByteBuffer reused = TransferBuffers.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(TransferBuffers.BUFFER_SIZE, reused.remaining());
+        TransferBuffers.release(reused);
+    }
+}
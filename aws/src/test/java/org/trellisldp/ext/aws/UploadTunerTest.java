@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trellisldp.ext.aws;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+public class UploadTunerTest {
+
+    private static final int MIB = 1024 * 1024;
+
+    @Test
+    public void testGrowsWhileFast() {
+        final UploadTuner tuner = new UploadTuner("test-fast", 8 * MIB, 2, 5 * MIB, 32 * MIB, 1, 4);
+        for (int i = 0; i < 2; i++) {
+            tuner.record(8 * MIB, MILLISECONDS.toNanos(100L), null);
+        }
+        assertEquals(3, tuner.getConcurrency());
+        assertEquals(16 * MIB, tuner.getPartSize());
+        assertEquals(16 * MIB, tuner.getPool().getBufferSize());
+        assertEquals(2L, tuner.getPartCount());
+        assertTrue(tuner.getThroughput() > 0);
+        assertEquals(100.0, tuner.getAveragePartMillis(), 0.001);
+    }
+
+    @Test
+    public void testBounds() {
+        final UploadTuner tuner = new UploadTuner("test-bounds", 64 * MIB, 8, 5 * MIB, 32 * MIB, 1, 4);
+        assertEquals(32 * MIB, tuner.getPartSize());
+        assertEquals(4, tuner.getConcurrency());
+        for (int i = 0; i < 4; i++) {
+            tuner.record(32 * MIB, MILLISECONDS.toNanos(100L), null);
+        }
+        assertEquals(4, tuner.getConcurrency());
+        assertEquals(32 * MIB, tuner.getPartSize());
+    }
+
+    @Test
+    public void testShrinksWhenSlow() {
+        final UploadTuner tuner = new UploadTuner("test-slow", 16 * MIB, 1, 5 * MIB, 32 * MIB, 1, 1);
+        tuner.record(16 * MIB, SECONDS.toNanos(20L), null);
+        assertEquals(8 * MIB, tuner.getPartSize());
+    }
+
+    @Test
+    public void testBacksOffWhenThrottled() {
+        final UploadTuner tuner = new UploadTuner("test-throttled", 8 * MIB, 8, 5 * MIB, 32 * MIB, 1, 16);
+        final AmazonS3Exception slowDown = new AmazonS3Exception("Please reduce your request rate.");
+        slowDown.setStatusCode(503);
+        slowDown.setErrorCode("SlowDown");
+        tuner.record(8 * MIB, SECONDS.toNanos(1L), slowDown);
+        assertEquals(4, tuner.getConcurrency());
+        assertEquals(1L, tuner.getThrottleCount());
+
+        tuner.record(8 * MIB, SECONDS.toNanos(1L), new IllegalStateException("Expected"));
+        assertEquals(2, tuner.getConcurrency());
+        assertEquals(1L, tuner.getErrorCount());
+        assertEquals(0L, tuner.getPartCount());
+    }
+
+    @Test
+    public void testMetricsExported() throws Exception {
+        new UploadTuner("test-metrics", 8 * MIB, 2, 5 * MIB, 32 * MIB, 1, 4);
+        assertEquals(8 * MIB, ManagementFactory.getPlatformMBeanServer().getAttribute(
+                    new ObjectName("org.trellisldp.ext.aws:type=Upload,name=test-metrics"), "PartSize"));
+    }
+
+    @Test
+    public void testInvalidBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new UploadTuner("test-invalid", 8 * MIB, 2, 32 * MIB,
+                    5 * MIB, 1, 4));
+    }
+}
@@ -16,6 +16,9 @@ package org.trellisldp.ext.aws.neptune.app;
 import io.dropwizard.setup.Environment;
 
 import org.trellisldp.dropwizard.AbstractTrellisApplication;
+import org.trellisldp.ext.aws.S3DigestFilter;
+import org.trellisldp.ext.aws.S3RedirectFilter;
+import org.trellisldp.ext.aws.S3UploadFilter;
 import org.trellisldp.http.core.ServiceBundler;
 
 /**
@@ -44,5 +47,10 @@ public class TrellisApplication extends AbstractTrellisApplication<AppConfigurat
     protected void initialize(final AppConfiguration config, final Environment environment) {
         super.initialize(config, environment);
         this.serviceBundler = new TrellisServiceBundler(config, environment);
+        environment.jersey().register(new S3RedirectFilter(serviceBundler.getResourceService(),
+                serviceBundler.getBinaryService()));
+        environment.jersey().register(new S3UploadFilter(serviceBundler.getBinaryService()));
+        environment.jersey().register(new S3DigestFilter(serviceBundler.getResourceService(),
+                serviceBundler.getBinaryService()));
     }
 }
@@ -32,6 +32,7 @@ import org.trellisldp.audit.DefaultAuditService;
 import org.trellisldp.constraint.LdpConstraintService;
 import org.trellisldp.dropwizard.TrellisCache;
 import org.trellisldp.event.jackson.DefaultEventSerializationService;
+import org.trellisldp.ext.aws.CachingBinaryService;
 import org.trellisldp.ext.aws.S3BinaryService;
 import org.trellisldp.ext.aws.S3MementoService;
 import org.trellisldp.ext.aws.SNSEventService;
@@ -58,7 +59,7 @@ public class TrellisServiceBundler extends BaseServiceBundler {
     public TrellisServiceBundler(final AppConfiguration config, final Environment environment) {
         auditService = new DefaultAuditService();
         mementoService = new S3MementoService();
-        binaryService = new S3BinaryService();
+        binaryService = CachingBinaryService.wrap(new S3BinaryService());
         eventService = new SNSEventService(new DefaultEventSerializationService());
         timemapGenerator = new DefaultTimemapGenerator();
         constraintServices = new DefaultConstraintServices(singletonList(new LdpConstraintService()));
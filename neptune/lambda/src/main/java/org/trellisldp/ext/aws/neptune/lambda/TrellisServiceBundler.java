@@ -24,6 +24,7 @@ import org.trellisldp.app.DefaultConstraintServices;
 import org.trellisldp.audit.DefaultAuditService;
 import org.trellisldp.constraint.LdpConstraintService;
 import org.trellisldp.event.jackson.DefaultEventSerializationService;
+import org.trellisldp.ext.aws.CachingBinaryService;
 import org.trellisldp.ext.aws.DefaultNamespaceService;
 import org.trellisldp.ext.aws.S3BinaryService;
 import org.trellisldp.ext.aws.S3MementoService;
@@ -55,7 +56,7 @@ public class TrellisServiceBundler extends BaseServiceBundler {
         ioService = new JenaIOService(nsService, new DefaultRdfaWriterService(nsService));
         auditService = new DefaultAuditService();
         mementoService = new S3MementoService();
-        binaryService = new S3BinaryService();
+        binaryService = CachingBinaryService.wrap(new S3BinaryService());
         eventService = new SNSEventService(new DefaultEventSerializationService());
         timemapGenerator = new DefaultTimemapGenerator();
         constraintServices = new DefaultConstraintServices(singletonList(new LdpConstraintService()));
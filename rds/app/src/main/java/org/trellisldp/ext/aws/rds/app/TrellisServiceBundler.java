@@ -32,6 +32,7 @@ import org.trellisldp.audit.DefaultAuditService;
 import org.trellisldp.constraint.LdpConstraintService;
 import org.trellisldp.dropwizard.TrellisCache;
 import org.trellisldp.event.jackson.DefaultEventSerializationService;
+import org.trellisldp.ext.aws.CachingBinaryService;
 import org.trellisldp.ext.aws.S3BinaryService;
 import org.trellisldp.ext.aws.S3MementoService;
 import org.trellisldp.ext.aws.SNSEventService;
@@ -60,7 +61,7 @@ public class TrellisServiceBundler extends BaseServiceBundler {
         final Jdbi jdbi = new JdbiFactory().build(environment, config.getDataSourceFactory(), "trellis");
         auditService = new DefaultAuditService();
         mementoService = new DBWrappedMementoService(jdbi, new S3MementoService());
-        binaryService = new S3BinaryService();
+        binaryService = CachingBinaryService.wrap(new S3BinaryService());
         eventService = new SNSEventService(new DefaultEventSerializationService());
         timemapGenerator = new DefaultTimemapGenerator();
         constraintServices = new DefaultConstraintServices(singletonList(new LdpConstraintService()));
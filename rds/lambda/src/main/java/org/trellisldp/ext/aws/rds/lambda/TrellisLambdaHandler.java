@@ -24,6 +24,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.glassfish.jersey.server.ResourceConfig;
+import org.trellisldp.ext.aws.S3DigestFilter;
+import org.trellisldp.ext.aws.S3RedirectFilter;
+import org.trellisldp.ext.aws.S3UploadFilter;
 import org.trellisldp.http.TrellisHttpResource;
 import org.trellisldp.http.core.ServiceBundler;
 
@@ -32,7 +35,10 @@ public class TrellisLambdaHandler implements RequestStreamHandler {
     private static final ServiceBundler serviceBundler = new AWSServiceBundler();
 
     private static final ResourceConfig jerseyApplication
-        = new ResourceConfig().register(new TrellisHttpResource(serviceBundler));
+        = new ResourceConfig().register(new TrellisHttpResource(serviceBundler))
+            .register(new S3RedirectFilter(serviceBundler.getResourceService(), serviceBundler.getBinaryService()))
+            .register(new S3UploadFilter(serviceBundler.getBinaryService()))
+            .register(new S3DigestFilter(serviceBundler.getResourceService(), serviceBundler.getBinaryService()));
 
     private static final JerseyLambdaContainerHandler<AwsProxyRequest, AwsProxyResponse> handler
             = JerseyLambdaContainerHandler.getAwsProxyHandler(jerseyApplication);